@@ -0,0 +1,125 @@
+package business.benchmarks;
+
+import business.meshing.HullDescription;
+import business.meshing.Mesher;
+import business.meshing.shapes.BoxShape;
+import business.meshing.shapes.Shape;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Deterministic shape layouts shared by the benchmarks. Everything is
+ * drawn from seeded generators, so that two runs measure the same work.
+ */
+public class BenchmarkScenes
+{
+
+    public static final long SEED = 42;
+
+    /**
+     * Creates a shape of the given type ("box", "ellipsoid" or "cylinder"),
+     * randomly placed, rotated and scaled around the origin.
+     */
+    public static Shape randomShape(String type, Random random)
+    {
+        Vector3f translation = new Vector3f(4 * random.nextFloat() - 2, 2 * random.nextFloat() - 1, 4 * random.nextFloat() - 2);
+        Quaternion rotation = new Quaternion().fromAngles(FastMath.TWO_PI * random.nextFloat(), FastMath.TWO_PI * random.nextFloat(), FastMath.TWO_PI * random.nextFloat());
+        Vector3f scale = new Vector3f(0.5f + 1.5f * random.nextFloat(), 0.5f + 1.5f * random.nextFloat(), 0.5f + 1.5f * random.nextFloat());
+        return HullDescription.createShape(type, translation, rotation, scale);
+    }
+
+    /**
+     * Returns n shapes of random types, cycling through boxes, ellipsoids and
+     * cylinders.
+     */
+    public static ArrayList<Shape> randomShapes(int n, long seed)
+    {
+        String[] types =
+        {
+            "box", "ellipsoid", "cylinder"
+        };
+        Random random = new Random(seed);
+        ArrayList<Shape> shapes = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+        {
+            shapes.add(randomShape(types[i % types.length], random));
+        }
+        return shapes;
+    }
+
+    /**
+     * Returns n shapes laid out like a hull: elongated sections stacked along
+     * the Z axis from bow to stern, tapering at both ends, mirrored in port
+     * and starboard pairs across the x = 0 plane, with a keel of boxes.
+     */
+    public static ArrayList<Shape> hullLikeShapes(int n, long seed)
+    {
+        String[] types =
+        {
+            "box", "ellipsoid", "cylinder"
+        };
+        Random random = new Random(seed);
+        ArrayList<Shape> shapes = new ArrayList<>();
+        int sections = Math.max(1, n / 3);
+        for (int i = 0; shapes.size() < n; i++)
+        {
+            // Position along the hull, from -1 (stern) to 1 (bow).
+            float s = 2f * (i % sections) / Math.max(1, sections - 1) - 1;
+            float beam = 0.4f + 1.2f * (1 - s * s);
+            float z = 6 * s;
+
+            // Keel. Random shapes are still drawn where only part of them is
+            // kept, so that the layouts stay the same across versions.
+            randomShape("box", random);
+            shapes.add(new BoxShape(new Vector3f(0, -beam, z), Quaternion.IDENTITY, new Vector3f(0.2f, 0.3f, 1.2f)));
+
+            // Port and starboard sections.
+            String type = types[random.nextInt(types.length)];
+            Quaternion rotation = randomShape(type, random).getRotation();
+            Vector3f translation = new Vector3f(beam * 0.6f, 0.2f * random.nextFloat(), z);
+            Vector3f scale = new Vector3f(beam * 0.7f, beam * 0.8f, 1.3f);
+            randomShape(type, random);
+            shapes.add(HullDescription.createShape(type, translation, rotation, scale));
+            shapes.add(HullDescription.createShape(type, new Vector3f(-translation.x, translation.y, z), mirror(rotation), scale));
+        }
+
+        while (shapes.size() > n)
+        {
+            shapes.remove(shapes.size() - 1);
+        }
+        return shapes;
+    }
+
+    /**
+     * Returns the rotation mirrored across the x = 0 plane.
+     */
+    private static Quaternion mirror(Quaternion q)
+    {
+        return new Quaternion(q.getX(), -q.getY(), -q.getZ(), q.getW());
+    }
+
+    /**
+     * Returns the min and max corners of the root cell the Mesher would use.
+     */
+    public static Vector3f[] bounds(ArrayList<Shape> shapes)
+    {
+        return Mesher.getBounds(shapes, false);
+    }
+
+    /**
+     * Returns n random points inside the given bounds.
+     */
+    public static Vector3f[] randomPoints(int n, Vector3f[] bounds, Random random)
+    {
+        Vector3f size = bounds[1].subtract(bounds[0]);
+        Vector3f[] points = new Vector3f[n];
+        for (int i = 0; i < n; i++)
+        {
+            points[i] = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat()).multLocal(size).addLocal(bounds[0]);
+        }
+        return points;
+    }
+}
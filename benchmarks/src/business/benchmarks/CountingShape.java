@@ -0,0 +1,80 @@
+package business.benchmarks;
+
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Wraps a shape and counts its evaluations. Counts are striped by thread
+ * to keep contention away from the measured code.
+ */
+public final class CountingShape extends Shape
+{
+
+    /**
+     * Stripes are 16 longs (128 bytes) apart to avoid false sharing.
+     */
+    private static final int STRIPES = 64;
+    private static final int PADDING = 16;
+    private final AtomicLongArray counters = new AtomicLongArray(STRIPES * PADDING);
+    private final Shape shape;
+
+    public CountingShape(Shape shape)
+    {
+        super(shape.getTranslation(), shape.getRotation(), shape.getScale());
+        this.shape = shape;
+    }
+
+    private void count()
+    {
+        int stripe = (int) (Thread.currentThread().getId() % STRIPES);
+        counters.incrementAndGet(stripe * PADDING);
+    }
+
+    /**
+     * Returns the number of evaluations since the last reset.
+     */
+    public long getCount()
+    {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++)
+        {
+            sum += counters.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < STRIPES; i++)
+        {
+            counters.set(i * PADDING, 0);
+        }
+    }
+
+    @Override
+    public float getPointValue(Vector3f worldPoint)
+    {
+        count();
+        return shape.getPointValue(worldPoint);
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint)
+    {
+        return shape.getPointNormal(worldPoint);
+    }
+
+    @Override
+    public float getBoundingRadius()
+    {
+        return shape.getBoundingRadius();
+    }
+
+    @Override
+    protected float getLocalRadius()
+    {
+        // Unused: the bounding radius is the wrapped shape's.
+        return 0;
+    }
+}
@@ -0,0 +1,139 @@
+package business.benchmarks;
+
+import business.meshing.HullField;
+import business.meshing.shapes.Shape;
+import business.meshing.DualContouring;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The per-cell kernels of the construction: cube classification, edge
+ * intersection search and vertex placement. All of them run on cells that
+ * cross the surface, as they do during meshing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DualContouringBenchmark
+{
+
+    private static final int SAMPLES = 256;
+    @Param(
+    {
+        "8"
+    })
+    public int primitiveCount;
+    private ArrayList<Shape> shapes;
+    // Cells crossing the surface.
+    private Vector3f[] cellMin = new Vector3f[SAMPLES];
+    private Vector3f[] cellMax = new Vector3f[SAMPLES];
+    // Edges crossing the surface, with the field values at their ends.
+    private Vector3f[] edgeStart = new Vector3f[SAMPLES];
+    private Vector3f[] edgeEnd = new Vector3f[SAMPLES];
+    private float[] startValue = new float[SAMPLES];
+    private float[] endValue = new float[SAMPLES];
+    // Hermite data of each cell.
+    private ArrayList<ArrayList<Vector3f>> cellPoints = new ArrayList<>();
+    private ArrayList<ArrayList<Vector3f>> cellNormals = new ArrayList<>();
+    private float[] cellDiagonal = new float[SAMPLES];
+    private int index = 0;
+
+    @Setup
+    public void setup()
+    {
+        shapes = BenchmarkScenes.randomShapes(primitiveCount, BenchmarkScenes.SEED);
+        Vector3f[] bounds = BenchmarkScenes.bounds(shapes);
+        // Cells the size of the construction's leaves at depth 6.
+        float cellSize = (bounds[1].x - bounds[0].x) / 64;
+        Random random = new Random(BenchmarkScenes.SEED);
+
+        int found = 0;
+        while (found < SAMPLES)
+        {
+            Vector3f min = BenchmarkScenes.randomPoints(1, bounds, random)[0];
+            Vector3f max = min.add(cellSize, cellSize, cellSize);
+            int cubeIndex = DualContouring.getCubeIndex(shapes, min, max);
+            if (cubeIndex == 0 || cubeIndex == 0xff)
+            {
+                continue;
+            }
+
+            cellMin[found] = min;
+            cellMax[found] = max;
+            cellDiagonal[found] = max.distance(min);
+
+            // Gather the Hermite data like the construction does.
+            ArrayList<Vector3f> points = new ArrayList<>();
+            ArrayList<Vector3f> normals = new ArrayList<>();
+            int edgeInfo = DualContouring.edgeTable[cubeIndex];
+            for (int i = 0; i < 12; i++)
+            {
+                if ((edgeInfo & (1 << i)) == 0)
+                {
+                    continue;
+                }
+                Vector3f p1 = corner(min, max, DualContouring.intersections[i][0]);
+                Vector3f p2 = corner(min, max, DualContouring.intersections[i][1]);
+                float v1 = HullField.getValueAt(p1, shapes);
+                float v2 = HullField.getValueAt(p2, shapes);
+                Vector3f point = HullField.exactIntersection(shapes, p1, p2, v1, v2, 5);
+                points.add(point);
+                normals.add(HullField.getNormalAt(point, shapes));
+
+                // Keep the first crossing edge of each cell.
+                if (edgeStart[found] == null)
+                {
+                    edgeStart[found] = p1;
+                    edgeEnd[found] = p2;
+                    startValue[found] = v1;
+                    endValue[found] = v2;
+                }
+            }
+            cellPoints.add(points);
+            cellNormals.add(normals);
+            found++;
+        }
+    }
+
+    private static Vector3f corner(Vector3f min, Vector3f max, int[] offset)
+    {
+        return new Vector3f(offset[0] != 0 ? max.x : min.x, offset[1] != 0 ? max.y : min.y, offset[2] != 0 ? max.z : min.z);
+    }
+
+    private int next()
+    {
+        index = (index + 1) % SAMPLES;
+        return index;
+    }
+
+    @Benchmark
+    public int getCubeIndex()
+    {
+        int i = next();
+        return DualContouring.getCubeIndex(shapes, cellMin[i], cellMax[i]);
+    }
+
+    @Benchmark
+    public Vector3f exactIntersection()
+    {
+        int i = next();
+        return HullField.exactIntersection(shapes, edgeStart[i], edgeEnd[i], startValue[i], endValue[i], 5);
+    }
+
+    @Benchmark
+    public Vector3f vertexFromParticle()
+    {
+        int i = next();
+        return DualContouring.vertexFromParticle(cellPoints.get(i), cellNormals.get(i), cellDiagonal[i] / 1000);
+    }
+}
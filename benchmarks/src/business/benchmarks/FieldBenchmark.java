@@ -0,0 +1,73 @@
+package business.benchmarks;
+
+import business.meshing.HullField;
+import business.meshing.codegen.FieldCompiler;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Field evaluation: the CSG value and normal of the whole hull, generic and
+ * specialized to the shapes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FieldBenchmark
+{
+
+    @Param(
+    {
+        "1", "8", "32", "64"
+    })
+    public int primitiveCount;
+    private ArrayList<Shape> shapes;
+    /**
+     * The shapes as a single specialized field.
+     */
+    private ArrayList<Shape> specialized;
+    private Vector3f[] points;
+    private int index = 0;
+
+    @Setup
+    public void setup()
+    {
+        shapes = BenchmarkScenes.randomShapes(primitiveCount, BenchmarkScenes.SEED);
+        specialized = new FieldCompiler().specialize(shapes);
+        points = BenchmarkScenes.randomPoints(1024, BenchmarkScenes.bounds(shapes), new Random(BenchmarkScenes.SEED));
+    }
+
+    private Vector3f nextPoint()
+    {
+        index = (index + 1) & 1023;
+        return points[index];
+    }
+
+    @Benchmark
+    public float getValueAt()
+    {
+        return HullField.getValueAt(nextPoint(), shapes);
+    }
+
+    @Benchmark
+    public float getValueAtSpecialized()
+    {
+        return HullField.getValueAt(nextPoint(), specialized);
+    }
+
+    @Benchmark
+    public Vector3f getNormalAt()
+    {
+        return HullField.getNormalAt(nextPoint(), shapes);
+    }
+}
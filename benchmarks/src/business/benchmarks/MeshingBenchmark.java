@@ -0,0 +1,114 @@
+package business.benchmarks;
+
+import business.meshing.shapes.Shape;
+import business.meshing.tasks.AdaptiveDualContouringTask;
+import business.meshing.tasks.OctreeConstructionTask;
+import business.meshing.MeshUtils;
+import business.meshing.OctreeNode;
+import business.meshing.Vector3i;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The stages of HullField.buildPreviewMesh, each measured on the output of the
+ * previous one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MeshingBenchmark
+{
+
+    @Param(
+    {
+        "4", "16"
+    })
+    public int primitiveCount;
+    @Param(
+    {
+        "5", "6"
+    })
+    public int maxDepth;
+    private ArrayList<Shape> shapes;
+    private Vector3f[] bounds;
+    private ForkJoinPool pool;
+    // Output of the construction and of the contouring.
+    private OctreeNode octree;
+    private ArrayList<Vector3f> vertices;
+    private ArrayList<Vector3i> triangles;
+    // Fresh copies for the normals, which modify their input.
+    private ArrayList<Vector3f> verticesCopy;
+    private ArrayList<Vector3i> trianglesCopy;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        shapes = BenchmarkScenes.randomShapes(primitiveCount, BenchmarkScenes.SEED);
+        bounds = BenchmarkScenes.bounds(shapes);
+        pool = new ForkJoinPool();
+
+        octree = new OctreeNode(bounds[0].clone(), bounds[1].clone());
+        OctreeConstructionTask constructionTask = new OctreeConstructionTask(octree, shapes, 3, maxDepth);
+        pool.invoke(constructionTask);
+        vertices = constructionTask.getVertices();
+
+        AdaptiveDualContouringTask contouringTask = new AdaptiveDualContouringTask(octree, shapes);
+        pool.invoke(contouringTask);
+        triangles = contouringTask.getTriangles();
+    }
+
+    @Setup(Level.Invocation)
+    public void copyMesh()
+    {
+        verticesCopy = new ArrayList<>(vertices.size());
+        for (Vector3f vertex : vertices)
+        {
+            verticesCopy.add(vertex.clone());
+        }
+        trianglesCopy = new ArrayList<>(triangles.size());
+        for (Vector3i triangle : triangles)
+        {
+            trianglesCopy.add(triangle.clone());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public OctreeNode octreeConstruction()
+    {
+        OctreeNode root = new OctreeNode(bounds[0].clone(), bounds[1].clone());
+        pool.invoke(new OctreeConstructionTask(root, shapes, 3, maxDepth));
+        return root;
+    }
+
+    @Benchmark
+    public ArrayList<Vector3i> adaptiveContouring()
+    {
+        AdaptiveDualContouringTask task = new AdaptiveDualContouringTask(octree, shapes);
+        pool.invoke(task);
+        return task.getTriangles();
+    }
+
+    @Benchmark
+    public Vector3f[] facetedNormals()
+    {
+        return MeshUtils.facetedNormalsFromFaces(trianglesCopy, verticesCopy, shapes, (float) Math.toRadians(10));
+    }
+}
@@ -0,0 +1,62 @@
+package business.benchmarks;
+
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Field evaluation of a single primitive of each type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PrimitiveBenchmark
+{
+
+    @Param(
+    {
+        "box", "ellipsoid", "cylinder"
+    })
+    public String type;
+    private Shape shape;
+    private Vector3f[] points;
+    private int index = 0;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(BenchmarkScenes.SEED);
+        shape = BenchmarkScenes.randomShape(type, random);
+        ArrayList<Shape> shapes = new ArrayList<>();
+        shapes.add(shape);
+        points = BenchmarkScenes.randomPoints(1024, BenchmarkScenes.bounds(shapes), random);
+    }
+
+    private Vector3f nextPoint()
+    {
+        index = (index + 1) & 1023;
+        return points[index];
+    }
+
+    @Benchmark
+    public float getPointValue()
+    {
+        return shape.getPointValue(nextPoint());
+    }
+
+    @Benchmark
+    public Vector3f getPointNormal()
+    {
+        return shape.getPointNormal(nextPoint());
+    }
+}
@@ -0,0 +1,346 @@
+package business.benchmarks;
+
+import business.meshing.MeshData;
+import business.meshing.Mesher;
+import business.meshing.MeshingMetrics;
+import business.meshing.OctreeNode;
+import business.meshing.shapes.Shape;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * End-to-end meshing benchmark. Sweeps scenes, primitive counts, octree depths
+ * and thread counts, meshes each configuration with a Mesher set up like the
+ * editor's, and writes to a CSV file the wall time of each stage, read from
+ * the run's metrics, then the whole run's: its time, output size, octree
+ * size, field evaluations and peak heap. Given a baseline CSV, also flags the
+ * regressions against it.
+ *
+ * The mesher snaps its root to the editor's lattice, unless --lattice is 0,
+ * and can mesh symmetric hulls, specialize the field or build the octree
+ * breadth first, as the editor and BatchMesher can.
+ *
+ * Arguments (all optional):
+ * --scenes random,hull --primitives 4,16,64 --minDepth 3 --maxDepth 5,6
+ * --parallelism 1,4 --lattice 0.015625 --symmetric false --specialize false
+ * --breadthFirst false --repeat 3 --out results.csv --baseline baseline.csv
+ * --tolerance 0.1
+ */
+public class ScalingBenchmark
+{
+
+    private static final String HEADER = "scene,primitives,minDepth,maxDepth,parallelism,lattice,symmetric,specialize,breadthFirst,"
+            + "stage,wallMs,vertices,triangles,nodes,leaves,fieldEvaluations,peakHeapMB";
+    /**
+     * The stages of the mesher, then the whole run.
+     */
+    private static final MeshingMetrics.Stage[] MESHER_STAGES =
+    {
+        MeshingMetrics.Stage.CONSTRUCTION, MeshingMetrics.Stage.CONTOURING, MeshingMetrics.Stage.SEAM,
+        MeshingMetrics.Stage.NORMALS, MeshingMetrics.Stage.MIRROR
+    };
+    private static final String[] STAGES =
+    {
+        "construction", "contouring", "seam", "normals", "mirror", "total"
+    };
+    /**
+     * The columns of the configuration and stage, the wall time and the field
+     * evaluations in a row.
+     */
+    private static final int KEY_COLUMNS = 10, WALL_MS_COLUMN = 10, FIELD_EVALUATIONS_COLUMN = 15;
+
+    /**
+     * Measures of one stage - its wall time only - or of the whole run.
+     */
+    private static class StageResult
+    {
+
+        double wallMs;
+        long vertices;
+        long triangles;
+        long nodes;
+        long leaves;
+        long fieldEvaluations;
+        double peakHeapMB;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        HashMap<String, String> options = new HashMap<>();
+        options.put("scenes", "random,hull");
+        options.put("primitives", "4,16,64");
+        options.put("minDepth", "3");
+        options.put("maxDepth", "5,6");
+        options.put("parallelism", "1," + Runtime.getRuntime().availableProcessors());
+        options.put("lattice", Float.toString(1f / 64));
+        options.put("symmetric", "false");
+        options.put("specialize", "false");
+        options.put("breadthFirst", "false");
+        options.put("repeat", "3");
+        options.put("out", "scaling.csv");
+        options.put("tolerance", "0.1");
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+
+        int repeat = Integer.parseInt(options.get("repeat"));
+        if (repeat < 1)
+        {
+            // The first run only warms up: at least one must be measured.
+            System.err.println("--repeat must be at least 1");
+            System.exit(2);
+        }
+        ArrayList<String> rows = new ArrayList<>();
+        for (String scene : options.get("scenes").split(","))
+        {
+            for (int primitiveCount : parseInts(options.get("primitives")))
+            {
+                for (int minDepth : parseInts(options.get("minDepth")))
+                {
+                    for (int maxDepth : parseInts(options.get("maxDepth")))
+                    {
+                        if (maxDepth < minDepth)
+                        {
+                            continue;
+                        }
+                        for (int parallelism : parseInts(options.get("parallelism")))
+                        {
+                            Mesher mesher = new Mesher();
+                            mesher.setMinDepth(minDepth);
+                            mesher.setMaxDepth(maxDepth);
+                            mesher.setLatticeCellSize(Float.parseFloat(options.get("lattice")));
+                            mesher.setSymmetric(Boolean.parseBoolean(options.get("symmetric")));
+                            mesher.setSpecializing(Boolean.parseBoolean(options.get("specialize")));
+                            mesher.setBreadthFirst(Boolean.parseBoolean(options.get("breadthFirst")));
+                            // For the octree's size.
+                            mesher.setKeepingOctree(true);
+                            StageResult[] results = runConfiguration(scene, primitiveCount, mesher, parallelism, repeat);
+                            String configuration = String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%s,%b,%b,%b", scene, primitiveCount, minDepth, maxDepth,
+                                    parallelism, options.get("lattice"), mesher.isSymmetric(), mesher.isSpecializing(), mesher.isBreadthFirst());
+                            for (int stage = 0; stage < STAGES.length; stage++)
+                            {
+                                String row = toRow(configuration, STAGES[stage], results[stage]);
+                                rows.add(row);
+                                System.out.println(row);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        try (PrintWriter writer = new PrintWriter(options.get("out"), "UTF-8"))
+        {
+            writer.println(HEADER);
+            for (String row : rows)
+            {
+                writer.println(row);
+            }
+        }
+
+        if (options.containsKey("baseline"))
+        {
+            int regressions = compare(rows, new File(options.get("baseline")), Double.parseDouble(options.get("tolerance")));
+            if (regressions > 0)
+            {
+                System.err.println(regressions + " regression(s) against " + options.get("baseline"));
+                System.exit(1);
+            }
+            System.out.println("No regression against " + options.get("baseline"));
+        }
+    }
+
+    private static int[] parseInts(String list)
+    {
+        String[] items = list.split(",");
+        int[] values = new int[items.length];
+        for (int i = 0; i < items.length; i++)
+        {
+            values[i] = Integer.parseInt(items[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * Meshes a scene once to warm up, then repeat times, and keeps the fastest
+     * run of each stage.
+     */
+    private static StageResult[] runConfiguration(String scene, int primitiveCount, Mesher mesher, int parallelism, int repeat)
+    {
+        ArrayList<Shape> shapes = scene.equals("hull")
+                ? BenchmarkScenes.hullLikeShapes(primitiveCount, BenchmarkScenes.SEED)
+                : BenchmarkScenes.randomShapes(primitiveCount, BenchmarkScenes.SEED);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        StageResult[] best = null;
+        try
+        {
+            for (int run = 0; run <= repeat; run++)
+            {
+                StageResult[] results = mesh(mesher, shapes, pool);
+                // The first run only warms up.
+                if (run == 1)
+                {
+                    best = results;
+                } else if (run > 1)
+                {
+                    for (int stage = 0; stage < STAGES.length; stage++)
+                    {
+                        if (results[stage].wallMs < best[stage].wallMs)
+                        {
+                            best[stage] = results[stage];
+                        }
+                    }
+                }
+            }
+        } finally
+        {
+            pool.shutdown();
+        }
+        return best;
+    }
+
+    /**
+     * Meshes the shapes with the mesher, measuring each stage and the whole
+     * run.
+     */
+    private static StageResult[] mesh(Mesher mesher, ArrayList<Shape> shapes, ForkJoinPool pool)
+    {
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (memoryPool.getType() == MemoryType.HEAP)
+            {
+                memoryPool.resetPeakUsage();
+            }
+        }
+        long start = System.nanoTime();
+        MeshData data = mesher.mesh(shapes, pool);
+        double wallMs = (System.nanoTime() - start) / 1e6;
+
+        StageResult[] results = new StageResult[STAGES.length];
+        MeshingMetrics metrics = data.getMetrics();
+        for (int stage = 0; stage < MESHER_STAGES.length; stage++)
+        {
+            results[stage] = new StageResult();
+            results[stage].wallMs = metrics.getStageMillis(MESHER_STAGES[stage]);
+        }
+
+        // Whole run
+        StageResult total = new StageResult();
+        total.wallMs = wallMs;
+        total.vertices = data.getVertexCount();
+        total.triangles = data.getTriangleCount();
+        long[] nodeCounts = new long[2];
+        countNodes(data.getOctree(), nodeCounts);
+        total.nodes = nodeCounts[0];
+        total.leaves = nodeCounts[1];
+        total.fieldEvaluations = metrics.getFieldEvaluations();
+        long peak = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (memoryPool.getType() == MemoryType.HEAP)
+            {
+                peak += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+        total.peakHeapMB = peak / (1024.0 * 1024.0);
+        results[MESHER_STAGES.length] = total;
+
+        return results;
+    }
+
+    /**
+     * Counts the nodes and the leaves of an octree, in counts[0] and [1].
+     */
+    private static void countNodes(OctreeNode node, long[] counts)
+    {
+        if (node == null)
+        {
+            return;
+        }
+        counts[0]++;
+        if (node.isLeaf() || node.getVertexIndex() != -1)
+        {
+            counts[1]++;
+            return;
+        }
+        for (OctreeNode child : node.getChildren())
+        {
+            countNodes(child, counts);
+        }
+    }
+
+    private static String toRow(String configuration, String stage, StageResult result)
+    {
+        return String.format(Locale.ROOT, "%s,%s,%.3f,%d,%d,%d,%d,%d,%.1f", configuration, stage,
+                result.wallMs, result.vertices, result.triangles, result.nodes, result.leaves, result.fieldEvaluations, result.peakHeapMB);
+    }
+
+    /**
+     * Compares the rows with a baseline CSV, and prints every regression: a
+     * wall time above the baseline's by more than the tolerance, or more field
+     * evaluations than the baseline (they are deterministic). Returns the
+     * number of regressions.
+     */
+    private static int compare(ArrayList<String> rows, File baselineFile, double tolerance) throws IOException
+    {
+        HashMap<String, String[]> baseline = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(baselineFile)))
+        {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null)
+            {
+                String[] fields = line.split(",");
+                baseline.put(key(fields), fields);
+            }
+        }
+
+        int regressions = 0;
+        for (String row : rows)
+        {
+            String[] fields = row.split(",");
+            String[] reference = baseline.get(key(fields));
+            if (reference == null)
+            {
+                continue;
+            }
+
+            double wallMs = Double.parseDouble(fields[WALL_MS_COLUMN]);
+            double referenceWallMs = Double.parseDouble(reference[WALL_MS_COLUMN]);
+            if (wallMs > referenceWallMs * (1 + tolerance))
+            {
+                System.err.println(String.format(Locale.ROOT, "REGRESSION %s: %.3f ms, baseline %.3f ms (%+.1f%%)", key(fields), wallMs, referenceWallMs, 100 * (wallMs / referenceWallMs - 1)));
+                regressions++;
+            }
+
+            long evaluations = Long.parseLong(fields[FIELD_EVALUATIONS_COLUMN]);
+            long referenceEvaluations = Long.parseLong(reference[FIELD_EVALUATIONS_COLUMN]);
+            if (evaluations > referenceEvaluations)
+            {
+                System.err.println(String.format(Locale.ROOT, "REGRESSION %s: %d field evaluations, baseline %d", key(fields), evaluations, referenceEvaluations));
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * The configuration and stage of a row.
+     */
+    private static String key(String[] fields)
+    {
+        return Arrays.toString(Arrays.copyOfRange(fields, 0, KEY_COLUMNS));
+    }
+}
@@ -0,0 +1,131 @@
+package business.checks;
+
+import business.meshing.Mesher;
+import business.meshing.OctreeNode;
+import business.meshing.shapes.BoxShape;
+import business.meshing.shapes.CylinderShape;
+import business.meshing.shapes.EllipsoidShape;
+import business.meshing.shapes.Shape;
+import business.meshing.tasks.AdaptiveDualContouringTask;
+import business.meshing.tasks.OctreeConstructionTask;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Allocation regression check of the construction and contouring stages,
+ * run by the test target: runs them on the calling thread, once the JIT has
+ * warmed up, on a fixed scene, and fails, with exit code 1, if a stage
+ * leaves garbage behind its output.
+ *
+ * A stage's garbage is what it allocates, counted by the thread's allocated
+ * bytes counter, less what it keeps, measured on the heap after a full
+ * collection. Only the growth of the output lists should be left: a byte or
+ * two per octree node. Any per cell scratch object - a vector, a list, an
+ * array - takes at least 16 bytes, so the limit is half of that.
+ */
+public class AllocationCheck
+{
+
+    /**
+     * The garbage allowed per octree node, for each stage.
+     */
+    private static final double GARBAGE_BYTES_PER_NODE = 8;
+    private static final int MAX_DEPTH = 6;
+    private static final int WARMUP = 5;
+
+    public static void main(String[] args)
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+        {
+            System.err.println("This JVM does not count allocated bytes per thread");
+            System.exit(2);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        ArrayList<Shape> shapes = scene();
+        Vector3f[] bounds = Mesher.getBounds(shapes, false);
+        long constructionGarbage = 0;
+        long contouringGarbage = 0;
+        long nodes = 0;
+        int triangles = 0;
+        for (int run = 0; run <= WARMUP; run++)
+        {
+            // A min depth of 0 keeps all the work on this thread.
+            OctreeNode octree = new OctreeNode(bounds[0], bounds[1]);
+            OctreeConstructionTask construction = new OctreeConstructionTask(octree, shapes, 0, MAX_DEPTH);
+            AdaptiveDualContouringTask contouring = new AdaptiveDualContouringTask(octree, shapes);
+            long heapBefore = collect();
+            long start = threads.getThreadAllocatedBytes(thread);
+            construction.compute();
+            long middle = threads.getThreadAllocatedBytes(thread);
+            long heapMiddle = collect();
+            long restart = threads.getThreadAllocatedBytes(thread);
+            contouring.compute();
+            long end = threads.getThreadAllocatedBytes(thread);
+            long heapAfter = collect();
+            constructionGarbage = (middle - start) - (heapMiddle - heapBefore);
+            contouringGarbage = (end - restart) - (heapAfter - heapMiddle);
+            nodes = countNodes(octree);
+            triangles = contouring.getTriangles().size();
+        }
+
+        double constructionPerNode = (double) constructionGarbage / nodes;
+        double contouringPerNode = (double) contouringGarbage / nodes;
+        System.out.println(String.format(Locale.ROOT, "%d nodes, %d triangles: garbage per node %.1f bytes in construction, %.1f in contouring (limit %.0f)",
+                nodes, triangles, constructionPerNode, contouringPerNode, GARBAGE_BYTES_PER_NODE));
+        if (constructionPerNode > GARBAGE_BYTES_PER_NODE || contouringPerNode > GARBAGE_BYTES_PER_NODE)
+        {
+            System.err.println("Allocation regression");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns a hull-like scene: a keel of boxes, and ellipsoid sections with
+     * cylinder bilges, tapering from midships to both ends.
+     */
+    private static ArrayList<Shape> scene()
+    {
+        ArrayList<Shape> shapes = new ArrayList<>();
+        for (int i = -2; i <= 2; i++)
+        {
+            float z = 2.5f * i;
+            float beam = 1.6f - 0.25f * i * i;
+            shapes.add(new BoxShape(new Vector3f(0, -beam, z), Quaternion.IDENTITY, new Vector3f(0.2f, 0.3f, 1.2f)));
+            shapes.add(new EllipsoidShape(new Vector3f(0, 0, z), new Quaternion().fromAngles(0, 0.1f * i, 0), new Vector3f(beam, 0.8f * beam, 1.6f)));
+            shapes.add(new CylinderShape(new Vector3f(0, -0.5f * beam, z), new Quaternion().fromAngles(0, 0, 0.3f), new Vector3f(0.7f * beam, 0.4f, 1.4f)));
+        }
+        return shapes;
+    }
+
+    /**
+     * Returns the bytes used on the heap, after full collections.
+     */
+    private static long collect()
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long countNodes(OctreeNode node)
+    {
+        long count = 1;
+        for (OctreeNode child : node.getChildren())
+        {
+            if (child != null && child != node)
+            {
+                count += countNodes(child);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,89 @@
+package business.hull;
+
+import business.meshing.EventRecorder;
+import business.meshing.RecordedEvent;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records GenerateMeshEvent into the Flight Recorder.
+ */
+public final class JfrHullRecorder implements EventRecorder
+{
+
+    @Name("business.hull.GenerateMesh")
+    @Label("Generate Hull Mesh")
+    @Category(
+    {
+        "Hull Editor"
+    })
+    @Description("A remesh of the edited hull")
+    @StackTrace(false)
+    static final class GenerateMesh extends Event
+    {
+
+        @Label("Edit")
+        @Description("The last edit of the hull before the remesh")
+        String edit;
+        @Label("Edit Number")
+        long editNumber;
+        @Label("Primitives")
+        int primitiveCount;
+        @Label("Symmetric")
+        boolean symmetric;
+        @Label("Vertices")
+        int vertices;
+        @Label("Triangles")
+        int triangles;
+    }
+    private static final EventType GENERATE_MESH_TYPE = EventType.getEventType(GenerateMesh.class);
+
+    @Override
+    public boolean isEnabled(Class<? extends RecordedEvent> type)
+    {
+        return GENERATE_MESH_TYPE.isEnabled();
+    }
+
+    @Override
+    public Object begin(RecordedEvent event)
+    {
+        GenerateMesh recording = new GenerateMesh();
+        if (!recording.isEnabled())
+        {
+            return null;
+        }
+        recording.begin();
+        return recording;
+    }
+
+    @Override
+    public void end(Object recording)
+    {
+        ((Event) recording).end();
+    }
+
+    @Override
+    public boolean shouldCommit(Object recording)
+    {
+        return ((Event) recording).shouldCommit();
+    }
+
+    @Override
+    public void commit(Object recording, RecordedEvent event)
+    {
+        GenerateMesh generate = (GenerateMesh) recording;
+        GenerateMeshEvent values = (GenerateMeshEvent) event;
+        generate.edit = values.edit;
+        generate.editNumber = values.editNumber;
+        generate.primitiveCount = values.primitiveCount;
+        generate.symmetric = values.symmetric;
+        generate.vertices = values.vertices;
+        generate.triangles = values.triangles;
+        generate.commit();
+    }
+}
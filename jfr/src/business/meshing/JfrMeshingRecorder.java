@@ -0,0 +1,162 @@
+package business.meshing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Records the meshing's events into the Flight Recorder, as the JFR events
+ * below. Like every JFR event, they cost nothing but the enabled check when
+ * recording is off.
+ */
+public final class JfrMeshingRecorder implements EventRecorder
+{
+
+    @Name("business.meshing.Mesh")
+    @Label("Meshing")
+    @Category(
+    {
+        "Hull Editor", "Meshing"
+    })
+    @Description("A run of the Mesher")
+    @StackTrace(false)
+    static class Mesh extends Event
+    {
+
+        @Label("Shapes")
+        int shapeCount;
+        @Label("Min Depth")
+        int minDepth;
+        @Label("Max Depth")
+        int maxDepth;
+        @Label("Symmetric")
+        boolean symmetric;
+        @Label("Parallelism")
+        @Description("Parallelism of the fork-join pool running the tasks")
+        int parallelism;
+        @Label("Vertices")
+        int vertices;
+        @Label("Triangles")
+        int triangles;
+    }
+
+    @Name("business.meshing.Stage")
+    @Label("Meshing Stage")
+    @Category(
+    {
+        "Hull Editor", "Meshing"
+    })
+    @Description("One stage of a meshing run: construction, contouring, seam, normals, mirror or upload")
+    @StackTrace(false)
+    static final class Stage extends Mesh
+    {
+
+        @Label("Stage")
+        String stage;
+    }
+
+    @Name("business.meshing.TaskSplit")
+    @Label("Meshing Task Split")
+    @Category(
+    {
+        "Hull Editor", "Meshing"
+    })
+    @Description("A sampled split decision of a meshing task")
+    @StackTrace(false)
+    static final class TaskSplit extends Event
+    {
+
+        @Label("Task")
+        String task;
+        @Label("Depth")
+        int depth;
+        @Label("Forked")
+        @Description("Number of subtasks forked, 0 if the node was processed directly")
+        int forked;
+    }
+    private static final EventType MESH_TYPE = EventType.getEventType(Mesh.class);
+    private static final EventType STAGE_TYPE = EventType.getEventType(Stage.class);
+    private static final EventType TASK_SPLIT_TYPE = EventType.getEventType(TaskSplit.class);
+
+    @Override
+    public boolean isEnabled(Class<? extends RecordedEvent> type)
+    {
+        if (MeshingStageEvent.class.isAssignableFrom(type))
+        {
+            return STAGE_TYPE.isEnabled();
+        } else if (MeshingEvent.class.isAssignableFrom(type))
+        {
+            return MESH_TYPE.isEnabled();
+        } else
+        {
+            return TASK_SPLIT_TYPE.isEnabled();
+        }
+    }
+
+    @Override
+    public Object begin(RecordedEvent event)
+    {
+        Event recording;
+        if (event instanceof MeshingStageEvent)
+        {
+            recording = new Stage();
+        } else if (event instanceof MeshingEvent)
+        {
+            recording = new Mesh();
+        } else
+        {
+            recording = new TaskSplit();
+        }
+        if (!recording.isEnabled())
+        {
+            return null;
+        }
+        recording.begin();
+        return recording;
+    }
+
+    @Override
+    public void end(Object recording)
+    {
+        ((Event) recording).end();
+    }
+
+    @Override
+    public boolean shouldCommit(Object recording)
+    {
+        return ((Event) recording).shouldCommit();
+    }
+
+    @Override
+    public void commit(Object recording, RecordedEvent event)
+    {
+        if (recording instanceof Mesh)
+        {
+            Mesh mesh = (Mesh) recording;
+            MeshingEvent values = (MeshingEvent) event;
+            mesh.shapeCount = values.shapeCount;
+            mesh.minDepth = values.minDepth;
+            mesh.maxDepth = values.maxDepth;
+            mesh.symmetric = values.symmetric;
+            mesh.parallelism = values.parallelism;
+            mesh.vertices = values.vertices;
+            mesh.triangles = values.triangles;
+            if (recording instanceof Stage)
+            {
+                ((Stage) recording).stage = ((MeshingStageEvent) event).stage;
+            }
+        } else
+        {
+            TaskSplit split = (TaskSplit) recording;
+            TaskSplitEvent values = (TaskSplitEvent) event;
+            split.task = values.task;
+            split.depth = values.depth;
+            split.forked = values.forked;
+        }
+        ((Event) recording).commit();
+    }
+}
@@ -1,6 +1,7 @@
 package business;
 
 import business.appstates.EditHullState;
+import business.hull.primitives.Primitive;
 import com.jme3.app.SimpleApplication;
 import com.jme3.collision.CollisionResult;
 import com.jme3.collision.CollisionResults;
@@ -32,6 +33,9 @@ public class MainApplication extends SimpleApplication
         // Disable the FlyCam
         flyCam.setEnabled(false);
 
+        // Load the primitives' materials.
+        Primitive.initMaterials(assetManager);
+
         // Start the base state.
         EditHullState state = new EditHullState();
         stateManager.attach(state);
@@ -60,12 +64,9 @@ public class MainApplication extends SimpleApplication
     public static Node getNodeClicked(Camera camera, Vector3f contactPoint, Vector3f contactNormal, Node... nodes)
     {
         CollisionResults results = new CollisionResults();
-        Vector2f click2d = MainApplication.getInstance().getInputManager().getCursorPosition();
-        Vector3f click3d = camera.getWorldCoordinates(new Vector2f(click2d.x, click2d.y), 0f).clone();
-        Vector3f dir = camera.getWorldCoordinates(new Vector2f(click2d.x, click2d.y), 1f).subtractLocal(click3d).normalizeLocal();
 
         // 2. Aim the ray from cam loc to cam direction.
-        Ray ray = new Ray(click3d, dir);
+        Ray ray = getCursorRay(camera);
 
 
         // 3. Collect intersections between Ray and Shootables in results list.
@@ -105,6 +106,19 @@ public class MainApplication extends SimpleApplication
         }
     }
 
+    /**
+     * Returns the ray going from the camera through the mouse cursor, in world
+     * coordinates.
+     */
+    public static Ray getCursorRay(Camera camera)
+    {
+        Vector2f click2d = MainApplication.getInstance().getInputManager().getCursorPosition();
+        Vector3f click3d = camera.getWorldCoordinates(new Vector2f(click2d.x, click2d.y), 0f).clone();
+        Vector3f dir = camera.getWorldCoordinates(new Vector2f(click2d.x, click2d.y), 1f).subtractLocal(click3d).normalizeLocal();
+
+        return new Ray(click3d, dir);
+    }
+
     /**
      * Returns the closest node, among the list passed as argument, under the
      * mouse cursor.
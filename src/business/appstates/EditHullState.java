@@ -2,10 +2,16 @@ package business.appstates;
 
 import business.MainApplication;
 import business.hull.Hull;
+import business.hull.primitives.MeshPart;
 import business.hull.primitives.Primitive;
+import business.meshing.CostReport;
+import business.meshing.MeshingMetrics;
+import business.meshing.csg.CsgNode;
+import business.meshing.shapes.TriangleMesh;
 import business.misc.Carousel;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
+import com.jme3.font.BitmapText;
 import com.jme3.input.KeyInput;
 import com.jme3.input.MouseInput;
 import com.jme3.input.controls.ActionListener;
@@ -22,6 +28,10 @@ import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.Node;
+import com.jme3.scene.Spatial.CullHint;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 
 public class EditHullState extends AbstractAppState
 {
@@ -30,13 +40,43 @@ public class EditHullState extends AbstractAppState
      * Fraction of the screen reserved for the carousel.
      */
     private static final float splitScreenRatio = 0.2f;
+    /**
+     * Where F5 saves the hull, and F9 opens it from.
+     */
+    private static final File HULL_FILE = new File("hull.dch");
+    /**
+     * Where E exports the mesh.
+     */
+    private static final File EXPORT_FILE = new File("hull.stl");
+    /**
+     * Where I imports a part from: the first of them found.
+     */
+    private static final File[] PART_FILES =
+    {
+        new File("part.stl"), new File("part.obj")
+    };
     private Camera camera2;
     private Node hullNode = new Node("Hull");
     private Node previewNode = new Node("Preview");
     private Hull hull;
     private Carousel<Primitive> carousel;
     private Primitive currentPrimitive;
+    /**
+     * How the next primitives combine with the hull, which O cycles.
+     */
+    private CsgNode.Operator currentOperation = CsgNode.Operator.UNION;
     private InputListener inputListener;
+    /**
+     * Performance overlay: the metrics of the last remesh.
+     */
+    private BitmapText metricsText;
+    private MeshingMetrics displayedMetrics = null;
+    /**
+     * True when the primitive being placed was scaled, or moved while
+     * previewed: its ghost is requested once at the next frame, whatever the
+     * number of input events.
+     */
+    private boolean previewDirty = false;
 
     @Override
     public void stateAttached(AppStateManager stateManager)
@@ -47,6 +87,7 @@ public class EditHullState extends AbstractAppState
         setInput();
         createScene();
         setupCams();
+        createMetricsOverlay();
     }
 
     /**
@@ -72,10 +113,21 @@ public class EditHullState extends AbstractAppState
         // Keyboard.
         MainApplication.getInstance().getInputManager().addMapping("LCtrl", new KeyTrigger(KeyInput.KEY_LCONTROL));
         MainApplication.getInstance().getInputManager().addMapping("LShift", new KeyTrigger(KeyInput.KEY_LSHIFT));
+        MainApplication.getInstance().getInputManager().addMapping("Symmetry", new KeyTrigger(KeyInput.KEY_M));
+        MainApplication.getInstance().getInputManager().addMapping("Metrics", new KeyTrigger(KeyInput.KEY_P));
+        MainApplication.getInstance().getInputManager().addMapping("Costs", new KeyTrigger(KeyInput.KEY_C));
+        MainApplication.getInstance().getInputManager().addMapping("CostReport", new KeyTrigger(KeyInput.KEY_X));
+        MainApplication.getInstance().getInputManager().addMapping("Save", new KeyTrigger(KeyInput.KEY_F5));
+        MainApplication.getInstance().getInputManager().addMapping("Open", new KeyTrigger(KeyInput.KEY_F9));
+        MainApplication.getInstance().getInputManager().addMapping("Export", new KeyTrigger(KeyInput.KEY_E));
+        MainApplication.getInstance().getInputManager().addMapping("Operation", new KeyTrigger(KeyInput.KEY_O));
+        MainApplication.getInstance().getInputManager().addMapping("Undo", new KeyTrigger(KeyInput.KEY_Z));
+        MainApplication.getInstance().getInputManager().addMapping("Redo", new KeyTrigger(KeyInput.KEY_Y));
+        MainApplication.getInstance().getInputManager().addMapping("Import", new KeyTrigger(KeyInput.KEY_I));
 
         // Set relevant listeners.
         MainApplication.getInstance().getInputManager().addListener(new InputListener(), "MouseLeft", "MouseRight",
-                "MouseDown", "MouseUp", "MouseWheelUp", "MouseWheelDown", "LButton", "RButton", "LCtrl", "LShift");
+                "MouseDown", "MouseUp", "MouseWheelUp", "MouseWheelDown", "LButton", "RButton", "LCtrl", "LShift", "Symmetry", "Metrics", "Costs", "CostReport", "Save", "Open", "Export", "Operation", "Undo", "Redo", "Import");
     }
 
     /**
@@ -141,6 +193,45 @@ public class EditHullState extends AbstractAppState
         viewPort2.attachScene(carousel);
     }
 
+    /**
+     * Creates the performance overlay, hidden until toggled.
+     */
+    private void createMetricsOverlay()
+    {
+        metricsText = new BitmapText(MainApplication.getInstance().getAssetManager().loadFont("Interface/Fonts/Default.fnt"));
+        metricsText.setColor(ColorRGBA.White);
+        metricsText.setLocalTranslation(MainApplication.getInstance().getCamera().getWidth() * splitScreenRatio + 10,
+                MainApplication.getInstance().getCamera().getHeight() - 10, 0);
+        metricsText.setCullHint(CullHint.Always);
+        MainApplication.getInstance().getGuiNode().attachChild(metricsText);
+    }
+
+    /**
+     * Reads the first part file found, and adds a part of its mesh to the
+     * carousel.
+     */
+    private void importPart()
+    {
+        for (File file : PART_FILES)
+        {
+            if (file.isFile())
+            {
+                try
+                {
+                    ArrayList<Primitive> parts = new ArrayList<>();
+                    parts.add(new MeshPart(TriangleMesh.read(file)));
+                    carousel.addElements(parts);
+                    System.out.println("Part imported from " + file.getAbsolutePath());
+                } catch (IOException e)
+                {
+                    System.err.println("Could not import the part: " + e.getMessage());
+                }
+                return;
+            }
+        }
+        System.err.println("No part to import: put a part.stl or part.obj in " + new File("").getAbsolutePath());
+    }
+
     /**
      * This global listener wraps the analog and action listeners for the scene.
      */
@@ -167,9 +258,10 @@ public class EditHullState extends AbstractAppState
             {
                 Vector3f contactPoint = new Vector3f();
                 Vector3f contactNormal = new Vector3f();
-                Node nodeAimed = MainApplication.getNodeClicked(MainApplication.getInstance().getCamera(), contactPoint, contactNormal, hull);
+                // Trace the field rather than the mesh: no collision data to rebuild after each remesh.
+                boolean hullAimed = hull.pick(MainApplication.getCursorRay(MainApplication.getInstance().getCamera()), contactPoint, contactNormal);
                 // If something was aimed at:
-                if (nodeAimed != null)
+                if (hullAimed)
                 {
                     // Attach the preview frame.to the hullnode - not the
                     // Hull itself, to avoid selecting the preview after that.
@@ -181,6 +273,7 @@ public class EditHullState extends AbstractAppState
 
                     //  contactNormal=hullNode.worldToLocal(contactNormal, null);
                     currentPrimitive.lookAt(contactNormal.negate(), contactNormal.cross(Vector3f.UNIT_X).normalizeLocal());
+                    previewDirty |= hull.isPreviewing();
                 } else
                 {
                     // If nothing was aimed at, either there *is* nothing and we can add 
@@ -196,6 +289,8 @@ public class EditHullState extends AbstractAppState
                         // for the user to aim it, and do nothing otherwise.
                         previewNode.detachChild(currentPrimitive);
                         hull.detach(currentPrimitive);
+                        hull.clearPreview();
+                        previewDirty = false;
                     }
                 }
             }
@@ -214,6 +309,9 @@ public class EditHullState extends AbstractAppState
                         // Copy it to the current node.
                         previewNode.detachAllChildren();
                         currentPrimitive = carousel.getInstanceOfCurrent();
+                        currentPrimitive.setOperation(currentOperation);
+                        hull.clearPreview();
+                        previewDirty = false;
 
                     } else
                     {
@@ -230,6 +328,8 @@ public class EditHullState extends AbstractAppState
                             // When mousescrolling over the hull, rescale the current part:
                             currentPrimitive.scale(1 - step * 0.1f);
                         }
+                        // Show the ghost of the hull with the part, until it is placed.
+                        previewDirty = currentPrimitive.getParent() != null;
                     }
                     break;
                 case "MouseLeft":
@@ -285,6 +385,116 @@ public class EditHullState extends AbstractAppState
                 case "LButton":
                     leftButtonDown = isPressed;
                     break;
+                case "Symmetry":
+                    // Toggle the mirror symmetry, and remesh accordingly.
+                    if (isPressed)
+                    {
+                        hull.setSymmetric(!hull.isSymmetric());
+                        hull.generateMesh();
+                    }
+                    break;
+                case "Metrics":
+                    // Toggle the performance overlay.
+                    if (isPressed)
+                    {
+                        boolean visible = metricsText.getCullHint() == CullHint.Always;
+                        metricsText.setCullHint(visible ? CullHint.Never : CullHint.Always);
+                    }
+                    break;
+                case "Costs":
+                    // Toggle the cost heatmap, and remesh to profile.
+                    if (isPressed)
+                    {
+                        hull.setShowingCosts(!hull.isShowingCosts());
+                        hull.generateMesh();
+                    }
+                    break;
+                case "CostReport":
+                    // Export the hottest cells of the last profiled remesh.
+                    if (isPressed && hull.getProfiledOctree() != null)
+                    {
+                        File file = new File("cost-report.txt");
+                        try
+                        {
+                            CostReport.write(file, hull.getProfiledOctree(), hull.getHeatmapDepth(), 20, hull.getShapes());
+                            System.out.println("Cost report written to " + file.getAbsolutePath());
+                        } catch (IOException e)
+                        {
+                            System.err.println("Could not write the cost report: " + e.getMessage());
+                        }
+                    }
+                    break;
+                case "Save":
+                    if (isPressed)
+                    {
+                        try
+                        {
+                            hull.save(HULL_FILE);
+                            System.out.println("Hull saved to " + HULL_FILE.getAbsolutePath());
+                        } catch (IOException e)
+                        {
+                            System.err.println("Could not save the hull: " + e.getMessage());
+                        }
+                    }
+                    break;
+                case "Open":
+                    if (isPressed && HULL_FILE.isFile())
+                    {
+                        try
+                        {
+                            hull.load(HULL_FILE);
+                        } catch (IOException e)
+                        {
+                            System.err.println("Could not open the hull: " + e.getMessage());
+                        }
+                    }
+                    break;
+                case "Export":
+                    // Export the mesh for other tools.
+                    if (isPressed && !hull.isEmpty())
+                    {
+                        try
+                        {
+                            hull.export(EXPORT_FILE);
+                            System.out.println("Mesh exported to " + EXPORT_FILE.getAbsolutePath());
+                        } catch (IOException e)
+                        {
+                            System.err.println("Could not export the mesh: " + e.getMessage());
+                        }
+                    }
+                    break;
+                case "Import":
+                    // Add a part of a triangle mesh to the carousel.
+                    if (isPressed)
+                    {
+                        importPart();
+                    }
+                    break;
+                case "Undo":
+                    // Ctrl+Z: back to the hull before the last edit, unmeshed.
+                    if (isPressed && ctrlDown && hull.undo())
+                    {
+                        previewDirty = false;
+                    }
+                    break;
+                case "Redo":
+                    // Ctrl+Y: forward to the hull of the last undone edit.
+                    if (isPressed && ctrlDown && hull.redo())
+                    {
+                        previewDirty = false;
+                    }
+                    break;
+                case "Operation":
+                    // Cycle how the primitive combines: add, subtract, intersect, blend.
+                    if (isPressed)
+                    {
+                        CsgNode.Operator[] operators = CsgNode.Operator.values();
+                        currentOperation = operators[(currentOperation.ordinal() + 1) % operators.length];
+                        currentPrimitive.setOperation(currentOperation);
+                        System.out.println("Operation: " + currentOperation.name().toLowerCase());
+                        previewDirty = hull.isPreviewing();
+                    }
+                    break;
                 case "RButton":
                     // On click:
                     if (isPressed)
@@ -298,13 +508,12 @@ public class EditHullState extends AbstractAppState
                             // On right-clicking on the hull part, place the part where it is now.
                             Vector3f contactPoint = new Vector3f();
                             Vector3f contactNormal = new Vector3f();
-                            Node nodeClicked;
-                            nodeClicked = MainApplication.getNodeClicked(MainApplication.getInstance().getCamera(), contactPoint, contactNormal, hull);
+                            boolean hullClicked = hull.pick(MainApplication.getCursorRay(MainApplication.getInstance().getCamera()), contactPoint, contactNormal);
 
                             // If we clicked somewhere on a non-empty hull, add the primitive to it.
                             boolean reGenerate = false;
 
-                            if (nodeClicked != null)
+                            if (hullClicked)
                             {
                                 // Convert coordinates to local system
                                 Vector3f localPosition = hullNode.worldToLocal(contactPoint, null);
@@ -331,9 +540,12 @@ public class EditHullState extends AbstractAppState
                                 // Add the preview and regenerate.
                                 previewNode.detachAllChildren();
                                 hull.attach(currentPrimitive);
+                                // The full quality mesh replaces the preview.
                                 hull.generateMesh();
+                                previewDirty = false;
                                 // Reload the current primitive.
                                 currentPrimitive = carousel.getInstanceOfCurrent();
+                                currentPrimitive.setOperation(currentOperation);
                             }
                         }
                     }
@@ -351,5 +563,22 @@ public class EditHullState extends AbstractAppState
 
         // Update the carousel
         carousel.update(tpf);
+
+        // Request a ghost once per frame at most, and show the last one
+        // meshed.
+        if (previewDirty)
+        {
+            previewDirty = false;
+            hull.generatePreview(currentPrimitive);
+        }
+        hull.updatePreview();
+
+        // Refresh the overlay after each remesh.
+        if (hull.getLastMetrics() != displayedMetrics)
+        {
+            displayedMetrics = hull.getLastMetrics();
+            metricsText.setText("Last remesh (P to hide)\n" + displayedMetrics.format()
+                    + "\n" + hull.getCache().format());
+        }
     }
 }
@@ -0,0 +1,82 @@
+package business.hull;
+
+import business.hull.primitives.Primitive;
+import business.meshing.CostReport;
+import business.meshing.OctreeNode;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.util.BufferUtils;
+import java.util.ArrayList;
+
+/**
+ * Draws the cells of a profiled octree as wire boxes, coloured from blue
+ * (cheap) to red (the most expensive) by the time spent building them.
+ */
+public class CostHeatmap
+{
+
+    /**
+     * The twelve edges of a cell, as pairs of corners (0bZYX).
+     */
+    private static final int[] EDGES =
+    {
+        0, 1, 2, 3, 4, 5, 6, 7,
+        0, 2, 1, 3, 4, 6, 5, 7,
+        0, 4, 1, 5, 2, 6, 3, 7
+    };
+
+    /**
+     * Creates the heatmap of the cells of the given depth (and the leaves
+     * above it).
+     */
+    public static Geometry create(OctreeNode root, int depth)
+    {
+        ArrayList<OctreeNode> cells = CostReport.getCells(root, depth);
+        long[] nanos = new long[cells.size()];
+        long maxNanos = 1;
+        for (int i = 0; i < cells.size(); i++)
+        {
+            nanos[i] = CostReport.getSubtreeCost(cells.get(i)).getNanos();
+            maxNanos = Math.max(maxNanos, nanos[i]);
+        }
+
+        float[] positions = new float[cells.size() * 8 * 3];
+        float[] colors = new float[cells.size() * 8 * 4];
+        int[] indices = new int[cells.size() * EDGES.length];
+        for (int i = 0; i < cells.size(); i++)
+        {
+            // Log scale: a few cells usually take most of the time.
+            float t = (float) (Math.log1p(nanos[i]) / Math.log1p(maxNanos));
+            for (int corner = 0; corner < 8; corner++)
+            {
+                Vector3f p = cells.get(i).getCorner(corner);
+                int vertex = 8 * i + corner;
+                positions[3 * vertex] = p.x;
+                positions[3 * vertex + 1] = p.y;
+                positions[3 * vertex + 2] = p.z;
+                colors[4 * vertex] = t;
+                colors[4 * vertex + 1] = 0.2f;
+                colors[4 * vertex + 2] = 1 - t;
+                colors[4 * vertex + 3] = 1;
+            }
+            for (int j = 0; j < EDGES.length; j++)
+            {
+                indices[EDGES.length * i + j] = 8 * i + EDGES[j];
+            }
+        }
+
+        Mesh mesh = new Mesh();
+        mesh.setMode(Mesh.Mode.Lines);
+        mesh.setBuffer(Type.Position, 3, BufferUtils.createFloatBuffer(positions));
+        mesh.setBuffer(Type.Color, 4, BufferUtils.createFloatBuffer(colors));
+        mesh.setBuffer(Type.Index, 2, BufferUtils.createIntBuffer(indices));
+        mesh.updateBound();
+        mesh.setStatic();
+
+        Geometry geometry = new Geometry("Cost heatmap", mesh);
+        geometry.setMaterial(Primitive.vertexColorMaterial);
+        return geometry;
+    }
+}
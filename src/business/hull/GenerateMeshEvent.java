@@ -0,0 +1,31 @@
+package business.hull;
+
+import business.meshing.EventRecorder;
+import business.meshing.RecordedEvent;
+
+/**
+ * Flight Recorder event spanning a Hull.generateMesh run, meshing and upload
+ * included, with the edit that triggered it: a long frame in a recording can
+ * be traced back to the edit that caused it. Recorded as
+ * business.hull.GenerateMesh.
+ */
+class GenerateMeshEvent extends RecordedEvent
+{
+
+    private static final EventRecorder RECORDER = load("business.hull.JfrHullRecorder");
+    /**
+     * The last edit of the hull before the remesh.
+     */
+    String edit;
+    long editNumber;
+    int primitiveCount;
+    boolean symmetric;
+    int vertices;
+    int triangles;
+
+    @Override
+    protected EventRecorder getRecorder()
+    {
+        return RECORDER;
+    }
+}
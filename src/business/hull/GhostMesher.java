@@ -0,0 +1,289 @@
+package business.hull;
+
+import business.meshing.CachedMesh;
+import business.meshing.HullField;
+import business.meshing.MeshData;
+import business.meshing.UniformMesher;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Meshes the ghost of the primitive being placed: the surface of the hull
+ * with the primitive added, in the box around the primitive only, where it
+ * changes the hull. Elsewhere, the hull's mesh still stands. The ghost is
+ * meshed as surface nets in the background, so the render thread never
+ * waits: it requests ghosts, and polls for the last one.
+ *
+ * Each ghost must be done within the time budget. Its depth is the deepest
+ * whose cells fit the budget, at the cost per cell measured so far; a run
+ * over budget is abandoned, and the cost per cell raised. The hull's shapes
+ * away from the box are left out, and only the triangles of the primitive's
+ * own surface are kept, so that the ghost blends into the hull's mesh.
+ */
+public class GhostMesher
+{
+
+    /**
+     * Coarsest depth, whatever the budget.
+     */
+    private static final int MIN_DEPTH = 2;
+    /**
+     * Margin around the primitive's bounding sphere, as a fraction of its
+     * radius.
+     */
+    private static final float MARGIN = 0.25f;
+    private final UniformMesher mesher = new UniformMesher();
+    private final ForkJoinPool pool;
+    /**
+     * Runs the ghosts one at a time, their bands running in the pool.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "Ghost mesher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private long timeBudget = 8000000L;
+    private int maxDepth = 6;
+    /**
+     * Measured nanoseconds per grid cell, only touched by the ghost thread.
+     */
+    private double cellNanos = 1000;
+    private Future<CachedMesh> running = null;
+    /**
+     * The last request, not yet started.
+     */
+    private ArrayList<Shape> pendingShapes = null;
+    private Shape pendingPrimitive = null;
+    private boolean pendingCombined = false;
+    /**
+     * Bumped on cancel, so that the ghost running then is dropped.
+     */
+    private int generation = 0;
+    private int runningGeneration = 0;
+
+    public GhostMesher(ForkJoinPool pool)
+    {
+        this.pool = pool;
+        mesher.setSurfaceNets(true);
+    }
+
+    /**
+     * Requests the ghost of the primitive added to the hull's shapes. Only
+     * the last request made while a ghost is running is meshed next.
+     */
+    public void request(ArrayList<Shape> hullShapes, Shape primitive)
+    {
+        pendingShapes = hullShapes;
+        pendingPrimitive = primitive;
+        pendingCombined = false;
+        startPending();
+    }
+
+    /**
+     * Requests the ghost of shapes the primitive is already combined in, as
+     * when it is subtracted: all the triangles in the box around the
+     * primitive are kept.
+     */
+    public void requestCombined(ArrayList<Shape> shapes, Shape primitive)
+    {
+        pendingShapes = shapes;
+        pendingPrimitive = primitive;
+        pendingCombined = true;
+        startPending();
+    }
+
+    /**
+     * Drops the pending request and the running ghost.
+     */
+    public void cancel()
+    {
+        pendingShapes = null;
+        pendingPrimitive = null;
+        generation++;
+    }
+
+    /**
+     * Returns the ghost finished since the last poll, and starts the pending
+     * request. Never waits.
+     *
+     * @return the ghost, or null if none finished, or if it was abandoned or
+     * cancelled.
+     */
+    public CachedMesh poll()
+    {
+        if (running == null || !running.isDone())
+        {
+            return null;
+        }
+
+        CachedMesh ghost = null;
+        try
+        {
+            ghost = running.get();
+        } catch (InterruptedException | ExecutionException e)
+        {
+            System.err.println("Could not mesh the ghost: " + e.getMessage());
+        }
+        if (runningGeneration != generation)
+        {
+            ghost = null;
+        }
+        running = null;
+        startPending();
+        return ghost;
+    }
+
+    private void startPending()
+    {
+        if (running != null || pendingPrimitive == null)
+        {
+            return;
+        }
+
+        final ArrayList<Shape> hullShapes = pendingShapes;
+        final Shape primitive = pendingPrimitive;
+        final boolean combined = pendingCombined;
+        pendingShapes = null;
+        pendingPrimitive = null;
+        runningGeneration = generation;
+        running = executor.submit(new Callable<CachedMesh>()
+        {
+            @Override
+            public CachedMesh call()
+            {
+                return mesh(hullShapes, primitive, combined);
+            }
+        });
+    }
+
+    /**
+     * Meshes a ghost, on the ghost thread.
+     */
+    private CachedMesh mesh(ArrayList<Shape> hullShapes, Shape primitive, boolean combined)
+    {
+        // The box around the primitive, and the shapes reaching into it.
+        float radius = primitive.getBoundingRadius() * (1 + MARGIN);
+        Vector3f minBound = primitive.getTranslation().subtract(radius, radius, radius);
+        Vector3f maxBound = primitive.getTranslation().add(radius, radius, radius);
+        ArrayList<Shape> nearShapes = new ArrayList<>();
+        for (Shape shape : hullShapes)
+        {
+            if (reaches(shape, minBound, maxBound))
+            {
+                nearShapes.add(shape);
+            }
+        }
+        ArrayList<Shape> shapes = new ArrayList<>(nearShapes);
+        if (!combined)
+        {
+            shapes.add(primitive);
+        }
+
+        // The deepest grid the budget affords, at the cost measured so far.
+        int depth = MIN_DEPTH;
+        while (depth < maxDepth && (1L << 3 * (depth + 1)) * cellNanos <= timeBudget)
+        {
+            depth++;
+        }
+        mesher.setMaxDepth(depth);
+        mesher.setTimeBudget(timeBudget);
+        long start = System.nanoTime();
+        MeshData data = mesher.mesh(shapes, minBound, maxBound, pool);
+        double nanos = System.nanoTime() - start;
+        double cells = 1L << 3 * depth;
+        if (data == null)
+        {
+            // Over budget: it costs at least that much, likely more.
+            cellNanos = Math.max(2 * cellNanos, nanos / cells);
+            return null;
+        }
+        cellNanos = (cellNanos + nanos / cells) / 2;
+
+        return CachedMesh.fromData(combined ? data : keepPrimitiveTriangles(data, nearShapes, primitive));
+    }
+
+    /**
+     * Returns true iff the shape's bounding sphere reaches into the box.
+     */
+    private static boolean reaches(Shape shape, Vector3f minBound, Vector3f maxBound)
+    {
+        Vector3f center = shape.getTranslation();
+        float dx = Math.max(0, Math.max(minBound.x - center.x, center.x - maxBound.x));
+        float dy = Math.max(0, Math.max(minBound.y - center.y, center.y - maxBound.y));
+        float dz = Math.max(0, Math.max(minBound.z - center.z, center.z - maxBound.z));
+        float radius = shape.getBoundingRadius();
+        return dx * dx + dy * dy + dz * dz <= radius * radius;
+    }
+
+    /**
+     * Keeps the triangles with a vertex on the primitive's own surface: the
+     * rest of the surface in the box is the hull's, already meshed.
+     */
+    private static MeshData keepPrimitiveTriangles(MeshData data, ArrayList<Shape> hullShapes, Shape primitive)
+    {
+        float[] positions = data.getPositions();
+        boolean[] onPrimitive = new boolean[positions.length / 3];
+        Vector3f point = new Vector3f();
+        for (int i = 0; i < onPrimitive.length; i++)
+        {
+            point.set(positions[3 * i], positions[3 * i + 1], positions[3 * i + 2]);
+            onPrimitive[i] = hullShapes.isEmpty()
+                    || primitive.getPointValue(point) <= HullField.getValueAt(point, hullShapes);
+        }
+
+        int[] indices = data.getIndices();
+        int[] kept = new int[indices.length];
+        int count = 0;
+        for (int i = 0; i < indices.length; i += 3)
+        {
+            if (onPrimitive[indices[i]] || onPrimitive[indices[i + 1]] || onPrimitive[indices[i + 2]])
+            {
+                kept[count++] = indices[i];
+                kept[count++] = indices[i + 1];
+                kept[count++] = indices[i + 2];
+            }
+        }
+        return new MeshData(positions, data.getNormals(), Arrays.copyOf(kept, count), data.getMillis(), data.getMetrics());
+    }
+
+    public long getTimeBudget()
+    {
+        return timeBudget;
+    }
+
+    /**
+     * @param timeBudget the nanoseconds a ghost may take: a frame, or less.
+     */
+    public void setTimeBudget(long timeBudget)
+    {
+        this.timeBudget = timeBudget;
+    }
+
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    /**
+     * @param maxDepth the finest depth of the ghost's grid, however large the
+     * budget.
+     */
+    public void setMaxDepth(int maxDepth)
+    {
+        this.maxDepth = maxDepth;
+    }
+}
@@ -1,13 +1,23 @@
 package business.hull;
 
-import business.misc.MeshUtils;
-import business.misc.OctreeNode;
-import business.misc.Vector3i;
 import business.hull.primitives.Primitive;
-import business.hull.tasks.AdaptiveDualContouringTask;
-import business.hull.tasks.OctreeConstructionTask;
-import com.jme3.bounding.BoundingBox;
-import com.jme3.math.Quaternion;
+import business.meshing.CachedMesh;
+import business.meshing.HullField;
+import business.meshing.HullDocument;
+import business.meshing.HullHash;
+import business.meshing.MeshData;
+import business.meshing.MeshCache;
+import business.meshing.Mesher;
+import business.meshing.MeshingPool;
+import business.meshing.MeshingMetrics;
+import business.meshing.MeshingStageEvent;
+import business.meshing.OctreeDag;
+import business.meshing.OctreeNode;
+import business.meshing.csg.CsgNode;
+import business.meshing.csg.CsgShape;
+import business.meshing.export.MeshExporter;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Ray;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.queue.RenderQueue.ShadowMode;
 import com.jme3.scene.Geometry;
@@ -15,15 +25,90 @@ import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial.CullHint;
 import com.jme3.scene.VertexBuffer.Type;
-import com.jme3.util.BufferUtils;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.concurrent.ForkJoinPool;
+import java.util.List;
 
+/**
+ * The edited hull: its primitives, and the mesh the Mesher builds from their
+ * shapes.
+ */
 public class Hull extends Node
 {
 
+    /**
+     * The fillet width of the smooth unions, in field units.
+     */
+    private static final float SMOOTH_BLEND = 0.3f;
+    /**
+     * The size of the finest cells of the global lattice.
+     */
+    private static final float LATTICE_CELL_SIZE = 1f / 64;
     private Geometry meshGeometry = null;
+    /**
+     * The ghost of the hull with the primitive being placed, shown over the
+     * mesh while editing.
+     */
+    private Geometry previewGeometry = null;
+    private boolean previewing = false;
+    /**
+     * The octree cells coloured by cost, when showing costs.
+     */
+    private Geometry costGeometry = null;
+    private OctreeNode profiledOctree = null;
+    /**
+     * The last mesh, its hash, and the graph of its octree (null if it came
+     * from the cache), to save them.
+     */
+    private CachedMesh lastMesh = null;
+    private String lastHash = null;
+    private OctreeDag lastOctree = null;
+    /**
+     * The opened document, whose octree is only parsed if saved again.
+     */
+    private HullDocument openedDocument = null;
     private ArrayList<Primitive> primitives = new ArrayList<>();
+    /**
+     * The primitives' shapes, in the hull's space. Rebuilt whenever the
+     * primitives change.
+     */
+    private ArrayList<Shape> shapes = null;
+    private final Mesher mesher = new Mesher();
+    /**
+     * Meshes the ghosts, in the pool the hull is meshed in.
+     */
+    private final GhostMesher ghostMesher = new GhostMesher(MeshingPool.get());
+    /**
+     * The meshes built so far, so that undoing an edit or toggling a primitive
+     * back shows its mesh again without meshing.
+     */
+    private final MeshCache cache = new MeshCache(64L << 20,
+            new File(System.getProperty("java.io.tmpdir"), "dual-contouring-meshes"), 512L << 20);
+    /**
+     * The states after each remesh, for undo and redo.
+     */
+    private final HullHistory history = new HullHistory(64L << 20);
+    /**
+     * Metrics of the last remesh, upload included.
+     */
+    private MeshingMetrics lastMetrics = new MeshingMetrics();
+    /**
+     * The last edit of the hull, and the number of edits so far, reported in
+     * the Flight Recorder events.
+     */
+    private String lastEdit = "none";
+    private long editCount = 0;
+
+    public Hull()
+    {
+        // Keep the octree, to save it with the hull.
+        mesher.setKeepingOctree(true);
+
+        // Snap the root to the global lattice, so that cells away from an
+        // edit keep their place and their samples.
+        mesher.setLatticeCellSize(LATTICE_CELL_SIZE);
+    }
 
     /**
      * Adds an primitive to the hull.
@@ -33,12 +118,18 @@ public class Hull extends Node
         int returnValue = attachChild(primitive);
         //Also store the primitive in a list for further computing.
         primitives.add(primitive);
+        shapes = null;
+        edited("attach " + primitive.getClass().getSimpleName());
         return returnValue;
     }
 
     public int detach(Primitive primitive)
     {
-        primitives.remove(primitive);
+        if (primitives.remove(primitive))
+        {
+            shapes = null;
+            edited("detach " + primitive.getClass().getSimpleName());
+        }
         return detachChild(primitive);
     }
 
@@ -46,253 +137,555 @@ public class Hull extends Node
     {
         if (!primitives.isEmpty())
         {
-            // Save local rotation
-            Quaternion q1 = getParent().getLocalRotation().clone();
-            Quaternion q2 = getParent().getParent().getLocalRotation().clone();
-            // Align to Zero rotation.
-            getParent().setLocalRotation(Quaternion.IDENTITY);
-            getParent().getParent().setLocalRotation(Quaternion.IDENTITY);
-            setLocalRotation(Quaternion.IDENTITY);
-
-
-            // Discard previous mesh then reload it 
-            if (meshGeometry != null)
-            {
-                detachChild(meshGeometry);
-            }
+            GenerateMeshEvent event = new GenerateMeshEvent();
+            event.begin();
+            clearPreview();
 
             // Build the hull again.
-            Mesh mesh = buildPreviewMesh();
+            showMesh(buildPreviewMesh(), event);
+        }
+    }
 
-            // Re-attach the hull
-            meshGeometry = new Geometry("OurMesh", mesh);
-            // meshGeometry.setMaterial(Primitive.showNormalsWireframeMaterial);
-            //meshGeometry.setMaterial(Primitive.showNormalsMaterial);
-             meshGeometry.setMaterial(Primitive.simpleLightMaterial);
-            // meshGeometry.setMaterial(Primitive.simpleLightWireframeMaterial);
+    /**
+     * Replaces the shown mesh, and ends the event of the remesh.
+     */
+    private void showMesh(Mesh mesh, GenerateMeshEvent event)
+    {
+        // Discard previous mesh then reload it 
+        if (meshGeometry != null)
+        {
+            detachChild(meshGeometry);
+        }
 
-            attachChild(meshGeometry);
-            meshGeometry.setShadowMode(ShadowMode.CastAndReceive);
+        // Re-attach the hull
+        meshGeometry = new Geometry("OurMesh", mesh);
+        // meshGeometry.setMaterial(Primitive.showNormalsWireframeMaterial);
+        //meshGeometry.setMaterial(Primitive.showNormalsMaterial);
+         meshGeometry.setMaterial(Primitive.simpleLightMaterial);
+        // meshGeometry.setMaterial(Primitive.simpleLightWireframeMaterial);
 
+        attachChild(meshGeometry);
+        meshGeometry.setShadowMode(ShadowMode.CastAndReceive);
 
+        // Draw the octree cells coloured by their cost.
+        if (costGeometry != null)
+        {
+            detachChild(costGeometry);
+            costGeometry = null;
+        }
+        if (profiledOctree != null)
+        {
+            costGeometry = CostHeatmap.create(profiledOctree, getHeatmapDepth());
+            attachChild(costGeometry);
+        }
 
-            // Restore rotation
-            getParent().setLocalRotation(q1);
-            getParent().getParent().setLocalRotation(q2);
+        // Hide all frames.
+        for (Primitive a : primitives)
+        {
+            a.setCullHint(CullHint.Always);
+        }
 
-            // Hide all frames.
-            for (Primitive a : primitives)
-            {
-                a.setCullHint(CullHint.Always);
-            }
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.edit = lastEdit;
+            event.editNumber = editCount;
+            event.primitiveCount = primitives.size();
+            event.symmetric = isSymmetric();
+            event.vertices = mesh.getVertexCount();
+            event.triangles = mesh.getTriangleCount();
+            event.commit();
         }
     }
 
     /**
-     * Removes and returns the last added Primitive.
+     * Goes back to the hull before the last edit, showing its mesh from the
+     * history: nothing is meshed.
+     *
+     * @return false if there is nothing to undo.
      */
-    Primitive popFrame()
+    public boolean undo()
     {
-        return primitives.remove(primitives.size() - 1);
+        return restore(history.undo(), "undo");
     }
 
     /**
-     * Computes which points are inside the hull
+     * Goes forward to the hull of the last undone edit.
+     *
+     * @return false if there is nothing to redo.
      */
-    private Mesh buildPreviewMesh()
+    public boolean redo()
     {
-         long start = System.currentTimeMillis();
-
-        // First get the bounding box. 
-        updateWorldBound();
-
-        BoundingBox bound = (BoundingBox) getWorldBound();
-        Vector3f maxBound = bound.getMax(null);
-        Vector3f originPoint = bound.getMin(null);
-        originPoint.x = Math.min(originPoint.x, -maxBound.x);
-        originPoint.y = Math.min(originPoint.y, -maxBound.y);
-        originPoint.z = Math.min(originPoint.z, -maxBound.z);
-
-
-        // Thread Pool
-        ForkJoinPool pool = new ForkJoinPool();
-
-        // Create an octree from the data
-        OctreeNode octree = new OctreeNode(originPoint, maxBound);
-        OctreeConstructionTask dcOctreeTask = new OctreeConstructionTask(octree, primitives, 3, 6);
-        pool.invoke(dcOctreeTask);
-
-        // Contour the octree.
-        AdaptiveDualContouringTask adaptiveTask = new AdaptiveDualContouringTask(octree, primitives);
-        pool.invoke(adaptiveTask);
+        return restore(history.redo(), "redo");
+    }
 
-        // Retrieve computed data.
-        ArrayList<Vector3f> verticesList = dcOctreeTask.getVertices();
-        ArrayList<Vector3i> triangles = adaptiveTask.getTriangles();
+    private boolean restore(HullHistory.State state, String edit)
+    {
+        if (state == null)
+        {
+            return false;
+        }
+        GenerateMeshEvent event = new GenerateMeshEvent();
+        event.begin();
+        clearPreview();
 
-        int numberOfVerticesBefore = verticesList.size();
-        int numberOfTrianglesBefore = triangles.size();
+        for (Primitive primitive : primitives)
+        {
+            detachChild(primitive);
+        }
+        primitives = new ArrayList<>(state.getPrimitives());
+        for (Primitive primitive : primitives)
+        {
+            attachChild(primitive);
+        }
+        shapes = null;
+        mesher.setSymmetric(state.isSymmetric());
+        edited(edit);
+
+        // The octree is not kept in the history: a save writes none.
+        lastOctree = null;
+        openedDocument = null;
+        profiledOctree = null;
+        lastMetrics = new MeshingMetrics();
+        if (primitives.isEmpty())
+        {
+            // Back to the hull before its first edit: no mesh.
+            lastMesh = null;
+            lastHash = null;
+            if (meshGeometry != null)
+            {
+                detachChild(meshGeometry);
+                meshGeometry = null;
+            }
+            if (costGeometry != null)
+            {
+                detachChild(costGeometry);
+                costGeometry = null;
+            }
+            event.end();
+        } else
+        {
+            lastMesh = state.getMesh().toMesh();
+            lastHash = state.getHash();
+            // Nothing meshed: report the hit and the mesh's size.
+            lastMetrics.countHistoryHit();
+            lastMetrics.countVertices(lastMesh.getVertexCount());
+            lastMetrics.countTriangles(lastMesh.getTriangleCount());
+            mesher.getMetrics().countHistoryHit();
+            showMesh(upload(lastMesh, lastMetrics), event);
+        }
+        return true;
+    }
 
-        // Compute normals both from data and triangles.
-        Vector3f normals[] = MeshUtils.facetedNormalsFromFaces(triangles, verticesList, primitives, (float) Math.toRadians(10));
+    /**
+     * Requests a ghost of the hull with the given primitive added, shown
+     * over the mesh around the primitive, until the next generateMesh or
+     * clearPreview. The ghost is meshed in the background, within a frame's
+     * time: see updatePreview.
+     */
+    public void generatePreview(Primitive primitive)
+    {
+        ghostMesher.setMaxDepth(mesher.getMaxDepth());
+        if (primitive.getOperation() == CsgNode.Operator.UNION)
+        {
+            ghostMesher.request(getShapes(), primitive.toShape());
+        } else
+        {
+            // The primitive changes the hull's tree, not only what it adds.
+            ArrayList<Primitive> edited = new ArrayList<>(primitives);
+            edited.add(primitive);
+            ghostMesher.requestCombined(buildShapes(edited), primitive.toShape());
+        }
+        previewing = true;
+    }
 
-        // Drop the triangles to an array.
-        int index = 0;
-        int[] triangleList = new int[3 * triangles.size()];
-        for (Vector3i v : triangles)
+    /**
+     * Shows the last ghost meshed, if any. To be called every frame; never
+     * waits.
+     */
+    public void updatePreview()
+    {
+        CachedMesh ghost = ghostMesher.poll();
+        if (ghost == null)
         {
-            triangleList[index++] = v.x;
-            triangleList[index++] = v.y;
-            triangleList[index++] = v.z;
+            return;
         }
 
-        // Finally, make the mesh itself:
         Mesh mesh = new Mesh();
-        mesh.setBuffer(Type.Position, 3, BufferUtils.createFloatBuffer(verticesList.toArray(new Vector3f[0])));
-        mesh.setBuffer(Type.Index, 3, BufferUtils.createIntBuffer(triangleList));
-        mesh.setBuffer(Type.Normal, 3, BufferUtils.createFloatBuffer(normals));
+        mesh.setBuffer(Type.Position, 3, ghost.getPositions());
+        mesh.setBuffer(Type.Index, 3, ghost.getIndices());
+        mesh.setBuffer(Type.Normal, 3, ghost.getNormals());
         mesh.updateBound();
-        mesh.setStatic();
+        mesh.setDynamic();
+        if (previewGeometry == null)
+        {
+            previewGeometry = new Geometry("Preview", mesh);
+            previewGeometry.setMaterial(Primitive.simpleLightMaterial);
+            attachChild(previewGeometry);
+        } else
+        {
+            previewGeometry.setMesh(mesh);
+        }
+    }
 
-        long timeTaken = System.currentTimeMillis() - start;
-        System.out.println(String.format("%d Vertices, %d Triangles in %d Milliseconds",verticesList.size(), triangles.size(), timeTaken));
+    /**
+     * @return true iff a ghost was requested since the last clearPreview.
+     */
+    public boolean isPreviewing()
+    {
+        return previewing;
+    }
 
-        return mesh;
+    /**
+     * Removes the ghost, and drops the one being meshed.
+     */
+    public void clearPreview()
+    {
+        ghostMesher.cancel();
+        previewing = false;
+        if (previewGeometry != null)
+        {
+            detachChild(previewGeometry);
+            previewGeometry = null;
+        }
     }
 
     /**
-     * Interpolates the intersection point from CSG values at both corners.
+     * Records an edit of the hull.
      */
-    public static Vector3f interpolateIntersection(ArrayList<Primitive> primitives, Vector3f p1, Vector3f p2, float v1, float v2)
+    private void edited(String edit)
     {
-        // If one of the values is too small, snap to the other point.
-        if (Math.abs(v1) < 0.001f)
+        lastEdit = edit;
+        editCount++;
+    }
+
+    /**
+     * Returns the primitives' shapes, placed by their local transforms: the
+     * mesh is built in the hull's space, whatever the hull's own rotation.
+     */
+    public ArrayList<Shape> getShapes()
+    {
+        if (shapes == null)
         {
-            return p1.clone();
+            shapes = buildShapes(primitives);
         }
-        if (Math.abs(v2) < 0.001f)
+        return shapes;
+    }
+
+    /**
+     * Returns the shapes of the primitives: their plain list if they are all
+     * added, which keeps the plain union's fast path, or else the CSG tree
+     * of their operations, as a single shape.
+     */
+    private static ArrayList<Shape> buildShapes(List<Primitive> primitives)
+    {
+        ArrayList<Shape> primitiveShapes = new ArrayList<>();
+        ArrayList<CsgNode.Operator> operators = new ArrayList<>();
+        boolean unionOnly = true;
+        for (Primitive primitive : primitives)
         {
-            return p2.clone();
+            // There is nothing to apply the first primitive to: it is added.
+            unionOnly &= primitiveShapes.isEmpty() || primitive.getOperation() == CsgNode.Operator.UNION;
+            primitiveShapes.add(primitive.toShape());
+            operators.add(primitive.getOperation());
         }
-        // Also, if the two values are too close, return p1.
-        if (Math.abs(v2 - v1) < 0.001f)
+        if (unionOnly)
         {
-            return p1.clone();
+            return primitiveShapes;
         }
 
-        v1 = Math.abs(v1);
-        v2 = Math.abs(v2);
-
-        Vector3f intersectionPoint = new Vector3f();
-
-        float v = v1 + v2;
-        intersectionPoint.x = (v2 * p1.x + v1 * p2.x) / v;
-        intersectionPoint.y = (v2 * p1.y + v1 * p2.y) / v;
-        intersectionPoint.z = (v2 * p1.z + v1 * p2.z) / v;
-
-        return intersectionPoint;
+        ArrayList<Shape> tree = new ArrayList<>();
+        tree.add(new CsgShape(CsgNode.fromList(primitiveShapes, operators, SMOOTH_BLEND)));
+        return tree;
     }
 
     /**
-     * Recursively interpolates the intersection point from CSG values at each
-     * point.
+     * Meshes the shapes - unless their mesh is cached - then uploads the
+     * result to a jME mesh.
      */
-    public static Vector3f exactIntersection(ArrayList<Primitive> primitives, Vector3f p1, Vector3f p2, float v1, float v2, int depth)
+    private Mesh buildPreviewMesh()
     {
-        Vector3f p = interpolateIntersection(primitives, p1, p2, v1, v2);
-        if (depth == 0)
+        // A profiled remesh is never cached, as it needs the octree.
+        String hash = HullHash.compute(getShapes(), mesher);
+        CachedMesh cached = mesher.isProfiling() ? null : cache.get(hash);
+        MeshingMetrics metrics;
+        if (cached == null)
         {
-            return p;
+            MeshData data = mesher.mesh(getShapes());
+            cached = cache.put(hash, data);
+            metrics = data.getMetrics();
+            profiledOctree = mesher.isProfiling() ? data.getOctree() : null;
+            // Keep the octree merged, a fraction of its size.
+            lastOctree = data.getOctree() == null ? null : OctreeDag.build(data.getOctree(), cached.getPositions(), getShapes());
+            openedDocument = null;
+            System.out.println(String.format("%d Vertices, %d Triangles in %d Milliseconds", data.getVertexCount(), data.getTriangleCount(), data.getMillis()));
         } else
         {
-            float newValue = Hull.getValueAt(p, primitives);
-            if ((newValue < 0 && v1 < 0) || (newValue > 0 && v1 > 0))
-            {
-                return (exactIntersection(primitives, p, p2, newValue, v2, depth - 1));
-            } else
+            // Nothing meshed: report the hit and the mesh's size.
+            metrics = new MeshingMetrics();
+            metrics.countCacheHit();
+            metrics.countVertices(cached.getVertexCount());
+            metrics.countTriangles(cached.getTriangleCount());
+            mesher.getMetrics().countCacheHit();
+            profiledOctree = null;
+            if (!hash.equals(lastHash))
             {
-                return (exactIntersection(primitives, p1, p, v1, newValue, depth - 1));
+                lastOctree = null;
+                openedDocument = null;
             }
         }
+
+        lastMesh = cached;
+        lastHash = hash;
+        history.record(primitives, isSymmetric(), hash, cached);
+        lastMetrics = metrics;
+        return upload(cached, metrics);
     }
 
     /**
-     * Returns true iff the node contains at least one intersection, after
-     * sampling at the MaxDepth level.
+     * Makes a jME mesh of the cached one, and records the upload in the
+     * metrics.
      */
-    public static boolean containsIntersection(OctreeNode octreeNode, int maxDepth, ArrayList<Primitive> primitives)
+    private Mesh upload(CachedMesh cached, MeshingMetrics metrics)
     {
-        // First off, check if the node is null. 
-        if (octreeNode == null)
+        // The cached buffers are direct, jME uploads them as they are.
+        long uploadStart = System.nanoTime();
+        MeshingStageEvent uploadEvent = new MeshingStageEvent();
+        uploadEvent.begin();
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(Type.Position, 3, cached.getPositions());
+        mesh.setBuffer(Type.Index, 3, cached.getIndices());
+        mesh.setBuffer(Type.Normal, 3, cached.getNormals());
+        mesh.updateBound();
+        mesh.setStatic();
+        long uploadNanos = System.nanoTime() - uploadStart;
+        metrics.recordStage(MeshingMetrics.Stage.UPLOAD, uploadNanos);
+        mesher.getMetrics().recordStage(MeshingMetrics.Stage.UPLOAD, uploadNanos);
+        uploadEvent.end();
+        if (uploadEvent.shouldCommit())
         {
-            return false;
+            // The upload runs on the render thread alone.
+            uploadEvent.setSettings(mesher, getShapes().size(), 1);
+            uploadEvent.stage = MeshingMetrics.Stage.UPLOAD.name();
+            uploadEvent.vertices = cached.getVertexCount();
+            uploadEvent.triangles = cached.getTriangleCount();
+            uploadEvent.commit();
         }
 
-        // Subdivide to the finest possible level.
-        // The subdivision level equals 2^n, where n is max-current depth.
-        int divisionLevel = 1 << (maxDepth - octreeNode.getDepth());
+        return mesh;
+    }
 
-        Vector3f startPoint = octreeNode.getMinBound();
-        Vector3f offset = octreeNode.getMaxBound().subtract(startPoint).divideLocal(divisionLevel);
-        boolean sign = getValueAt(startPoint, primitives) > 0;
-        Vector3f currentPoint = new Vector3f();
-        for (int i = 0; i < divisionLevel + 1; i++)
+    /**
+     * Saves the hull as a HullDocument, with its mesh and octree if they are
+     * up to date.
+     */
+    public void save(File file) throws IOException
+    {
+        HullDocument document = new HullDocument(getShapes(), mesher);
+        if (lastMesh != null && HullHash.compute(getShapes(), mesher).equals(lastHash))
         {
-            for (int j = 0; j < divisionLevel + 1; j++)
+            document.setMesh(lastMesh);
+            if (lastOctree != null)
+            {
+                document.setOctreeDag(lastOctree);
+            } else if (openedDocument != null && openedDocument.hasOctree())
             {
-                for (int k = 0; k < divisionLevel + 1; k++)
-                {
-                    currentPoint.x = startPoint.x + i * offset.x;
-                    currentPoint.y = startPoint.y + j * offset.y;
-                    currentPoint.z = startPoint.z + k * offset.z;
-
-                    if (getValueAt(currentPoint, primitives) > 0 != sign)
-                    {
-                        return true;
-                    }
-                }
+                document.setOctreeDag(openedDocument.getOctreeDag());
             }
         }
+        document.write(file);
+    }
 
-        return false;
+    /**
+     * Exports the last mesh, in the format of the file's extension (stl, ply
+     * or obj).
+     */
+    public void export(File file) throws IOException
+    {
+        if (lastMesh == null)
+        {
+            throw new IOException("The hull was not meshed yet");
+        }
+        MeshExporter.export(file, lastMesh);
     }
 
-    /** Returns the function's normal at the given point. */
-    public static Vector3f getNormalAt(Vector3f p, ArrayList<Primitive> primitives)
+    /**
+     * Replaces the hull's primitives by the ones of a HullDocument, and
+     * shows its mesh - without meshing if the document has one.
+     */
+    public void load(File file) throws IOException
     {
-        float bestValue = Float.MAX_VALUE;
-        Primitive bestPrimitive = null;
+        HullDocument document = HullDocument.read(file);
 
+        // The editor's primitives apply in turn to the ones before them.
+        ArrayList<CsgNode> nodes = new ArrayList<>();
+        for (Shape shape : document.getShapes())
+        {
+            nodes.add(shape instanceof CsgShape ? ((CsgShape) shape).getRoot() : CsgNode.shape(shape));
+        }
+        ArrayList<Shape> documentShapes = new ArrayList<>();
+        ArrayList<CsgNode.Operator> operators = new ArrayList<>();
+        if (!nodes.isEmpty() && !CsgNode.union(nodes).flatten(documentShapes, operators))
+        {
+            throw new IOException(file + ": its CSG tree cannot be edited as a list of primitives");
+        }
 
-        // Find the primitive which surface is the closest to the isosurface.
         for (Primitive primitive : primitives)
         {
-            float newValue = Math.abs(primitive.getPointValue(p));
-            if (newValue < bestValue)
+            detachChild(primitive);
+        }
+        primitives.clear();
+        for (int i = 0; i < documentShapes.size(); i++)
+        {
+            Primitive primitive = Primitive.fromShape(documentShapes.get(i));
+            primitive.setOperation(operators.get(i));
+            attachChild(primitive);
+            primitives.add(primitive);
+        }
+        shapes = null;
+        document.applySettings(mesher);
+        edited("load " + file.getName());
+
+        // Seed the cache with the saved mesh, so that showing it is instant -
+        // or, if only the octree was saved, with the contour of its graph,
+        // which samples nothing.
+        if (document.getMesh() != null)
+        {
+            cache.put(HullHash.compute(getShapes(), mesher), document.getMesh());
+        } else if (document.hasOctree() && !mesher.isSymmetric() && !primitives.isEmpty())
+        {
+            cache.put(HullHash.compute(getShapes(), mesher), mesher.contour(document.getOctreeDag(), getShapes(), MeshingPool.get()));
+        }
+        if (primitives.isEmpty())
+        {
+            if (meshGeometry != null)
             {
-                bestValue = newValue;
-                bestPrimitive = primitive;
+                detachChild(meshGeometry);
+                meshGeometry = null;
             }
+        } else
+        {
+            generateMesh();
         }
-        
-        // Get the normal from that primitive.
-        Vector3f result = bestPrimitive.getPointNormal(p);
-
-        return result;
+        openedDocument = document;
     }
 
-    /** Returns the function's value at the given point. */
-    public static float getValueAt(Vector3f p, ArrayList<Primitive> primitives)
+    /**
+     * Casts the given (world space) ray against the primitives' field and
+     * stores the first surface point and its normal in the given vectors (if
+     * not null). Unlike a collision against the mesh geometry, this needs no
+     * collision data and returns the exact surface, not the faceted one.
+     *
+     * @return true iff the ray hits the hull.
+     */
+    public boolean pick(Ray ray, Vector3f contactPoint, Vector3f contactNormal)
     {
-        float bestValue = Float.MAX_VALUE;
+        if (primitives.isEmpty())
+        {
+            return false;
+        }
 
-        // Find the primitive which surface is the closest to the isosurface.
-        for (Primitive primitive : primitives)
+        // Trace in the hull's space, where the shapes are.
+        Vector3f origin = worldToLocal(ray.getOrigin(), null);
+        Vector3f direction = worldToLocal(ray.getOrigin().add(ray.getDirection()), null).subtractLocal(origin).normalizeLocal();
+        Vector3f point = HullField.sphereTrace(getShapes(), origin, direction, 256);
+        if (point == null)
         {
-            bestValue = Math.min(primitive.getPointValue(p), bestValue);
+            return false;
+        }
+
+        if (contactNormal != null)
+        {
+            Vector3f normal = HullField.getNormalAt(point, getShapes()).addLocal(point);
+            localToWorld(normal, contactNormal).subtractLocal(localToWorld(point, null)).normalizeLocal();
         }
-        
-        return bestValue;
+        if (contactPoint != null)
+        {
+            localToWorld(point, contactPoint);
+        }
+        return true;
+    }
+
+    /**
+     * @return true iff the hull is meshed as symmetric across the x = 0 plane.
+     */
+    public boolean isSymmetric()
+    {
+        return mesher.isSymmetric();
+    }
+
+    /**
+     * @param symmetric true to mesh only the x >= 0 half of the hull and mirror
+     * it, which halves meshing time and memory for symmetric designs.
+     */
+    public void setSymmetric(boolean symmetric)
+    {
+        mesher.setSymmetric(symmetric);
+        edited(symmetric ? "symmetry on" : "symmetry off");
+    }
+
+    /**
+     * @return the metrics of the last remesh.
+     */
+    public MeshingMetrics getLastMetrics()
+    {
+        return lastMetrics;
+    }
+
+    /**
+     * @param showingCosts true to profile the next remeshes, and draw the
+     * octree cells coloured by what they cost to build.
+     */
+    public void setShowingCosts(boolean showingCosts)
+    {
+        mesher.setProfiling(showingCosts);
+    }
+
+    public boolean isShowingCosts()
+    {
+        return mesher.isProfiling();
+    }
+
+    /**
+     * @return the octree of the last remesh, with its cell costs, or null if
+     * it was not profiled.
+     */
+    public OctreeNode getProfiledOctree()
+    {
+        return profiledOctree;
+    }
+
+    /**
+     * @return the depth of the cells drawn in the heatmap: one below the
+     * cells of the construction tasks.
+     */
+    public int getHeatmapDepth()
+    {
+        return Math.min(mesher.getMaxDepth(), mesher.getMinDepth() + 1);
+    }
+
+    /**
+     * @return the cache of the meshes built so far.
+     */
+    public MeshCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * @return the undo history, to read or budget its memory.
+     */
+    public HullHistory getHistory()
+    {
+        return history;
+    }
+
+    /**
+     * @return the mesher, to tune it or read its metrics.
+     */
+    public Mesher getMesher()
+    {
+        return mesher;
     }
 
     public boolean isEmpty()
@@ -0,0 +1,253 @@
+package business.hull;
+
+import business.hull.primitives.Primitive;
+import business.meshing.CachedMesh;
+import business.meshing.MeshSnapshot;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The states of the hull, for undo and redo: each state keeps the primitives
+ * and a snapshot of the mesh, so that going back to it needs no meshing. The
+ * snapshots share their unchanged chunks with the one before them, so that a
+ * state costs memory in proportion to the region its edit changed.
+ *
+ * The states form a line, the current one somewhere along it: recording a
+ * state drops the ones after the current one. The line starts with the empty
+ * hull, so that the first edit can be undone too. When the history outgrows
+ * its memory budget, the oldest states are dropped.
+ */
+public class HullHistory
+{
+
+    /**
+     * The number of chunks across the first mesh, along its largest axis.
+     */
+    private static final float CHUNKS_PER_EXTENT = 16;
+
+    /**
+     * A state of the hull.
+     */
+    public static class State
+    {
+
+        private final ArrayList<Primitive> primitives;
+        private final boolean symmetric;
+        private final String hash;
+        private final MeshSnapshot mesh;
+
+        private State(List<Primitive> primitives, boolean symmetric, String hash, MeshSnapshot mesh)
+        {
+            this.primitives = new ArrayList<>(primitives);
+            this.symmetric = symmetric;
+            this.hash = hash;
+            this.mesh = mesh;
+        }
+
+        public ArrayList<Primitive> getPrimitives()
+        {
+            return primitives;
+        }
+
+        public boolean isSymmetric()
+        {
+            return symmetric;
+        }
+
+        /**
+         * @return the HullHash of the state's shapes and settings, null for
+         * the empty hull.
+         */
+        public String getHash()
+        {
+            return hash;
+        }
+
+        /**
+         * @return the snapshot of the state's mesh, null for the empty hull.
+         */
+        public MeshSnapshot getMesh()
+        {
+            return mesh;
+        }
+    }
+    private final ArrayList<State> states = new ArrayList<>();
+    private int current = -1;
+    private long memoryBudget;
+    /**
+     * The memory held by the snapshots: the first one whole, and what each
+     * other one added to the one before it.
+     */
+    private long bytes = 0;
+
+    public HullHistory(long memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Records the hull's state after an edit, unless it is the current state
+     * already.
+     */
+    public void record(List<Primitive> primitives, boolean symmetric, String hash, CachedMesh mesh)
+    {
+        if (current >= 0 && hash.equals(states.get(current).hash))
+        {
+            return;
+        }
+        if (states.isEmpty())
+        {
+            // The hull before its first edit.
+            states.add(new State(new ArrayList<Primitive>(), symmetric, null, null));
+            current = 0;
+        }
+
+        // A new edit forgets the undone ones.
+        while (states.size() > current + 1)
+        {
+            dropLast();
+        }
+
+        // The chunks keep the lattice of the first snapshot.
+        MeshSnapshot previous = current >= 0 ? states.get(current).mesh : null;
+        float chunkSize = previous == null ? getChunkSize(mesh) : previous.getChunkSize();
+        MeshSnapshot snapshot = MeshSnapshot.build(mesh, previous, chunkSize);
+        states.add(new State(primitives, symmetric, hash, snapshot));
+        current++;
+        bytes += previous == null ? snapshot.getBytes() : snapshot.getAddedBytes();
+        enforceBudget();
+    }
+
+    /**
+     * Drops the oldest states, then the undone ones, until the snapshots fit
+     * the budget or only the current state is left.
+     */
+    private void enforceBudget()
+    {
+        while (bytes > memoryBudget && current > 0)
+        {
+            dropFirst();
+        }
+        while (bytes > memoryBudget && states.size() > current + 1)
+        {
+            dropLast();
+        }
+    }
+
+    /**
+     * Sizes the chunks on the mesh's largest extent from the origin.
+     */
+    private static float getChunkSize(CachedMesh mesh)
+    {
+        FloatBuffer positions = mesh.getPositions();
+        float extent = 0;
+        for (int i = 0; i < positions.limit(); i++)
+        {
+            extent = Math.max(extent, Math.abs(positions.get(i)));
+        }
+        return extent > 0 ? 2 * extent / CHUNKS_PER_EXTENT : 1;
+    }
+
+    private void dropLast()
+    {
+        State last = states.remove(states.size() - 1);
+        bytes -= states.isEmpty() ? getBytes(last.mesh) : getAddedBytes(last.mesh);
+    }
+
+    private void dropFirst()
+    {
+        State first = states.remove(0);
+        current--;
+        if (states.isEmpty())
+        {
+            bytes = 0;
+            return;
+        }
+        // The new first snapshot now holds what it shared with the old one.
+        MeshSnapshot second = states.get(0).mesh;
+        bytes -= getBytes(first.mesh) - getBytes(second) + getAddedBytes(second);
+    }
+
+    /**
+     * @return the memory the snapshot holds, 0 for the empty hull's.
+     */
+    private static long getBytes(MeshSnapshot snapshot)
+    {
+        return snapshot == null ? 0 : snapshot.getBytes();
+    }
+
+    private static long getAddedBytes(MeshSnapshot snapshot)
+    {
+        return snapshot == null ? 0 : snapshot.getAddedBytes();
+    }
+
+    /**
+     * Steps back to the previous state.
+     *
+     * @return the previous state, or null if there is none.
+     */
+    public State undo()
+    {
+        if (current <= 0)
+        {
+            return null;
+        }
+        return states.get(--current);
+    }
+
+    /**
+     * Steps forward to the state undone last.
+     *
+     * @return that state, or null if there is none.
+     */
+    public State redo()
+    {
+        if (current + 1 >= states.size())
+        {
+            return null;
+        }
+        return states.get(++current);
+    }
+
+    public boolean canUndo()
+    {
+        return current > 0;
+    }
+
+    public boolean canRedo()
+    {
+        return current + 1 < states.size();
+    }
+
+    /**
+     * @return the number of states kept.
+     */
+    public int size()
+    {
+        return states.size();
+    }
+
+    /**
+     * @return the memory the snapshots hold, shared nodes counted once.
+     */
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    public long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    /**
+     * @param memoryBudget the memory the snapshots may hold. The current
+     * state is always kept, whatever its size.
+     */
+    public void setMemoryBudget(long memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+        enforceBudget();
+    }
+}
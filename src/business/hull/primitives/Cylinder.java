@@ -1,5 +1,7 @@
 package business.hull.primitives;
 
+import business.meshing.shapes.CylinderShape;
+import business.meshing.shapes.Shape;
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.queue.RenderQueue.Bucket;
@@ -13,7 +15,7 @@ public final class Cylinder extends Primitive
 {
 
     static final private Mesh mesh;
-    private static final float size = 1 / FastMath.sqrt(2);
+    private static final float size = CylinderShape.SIZE;
 
     // Create the cylindric mesh
     static
@@ -99,39 +101,8 @@ public final class Cylinder extends Primitive
     }
 
     @Override
-    public float getPointValue(final Vector3f worldPoint)
+    public Shape toShape()
     {
-        Vector3f v = worldToLocal(worldPoint, null);
-        float length = Math.abs(v.y);
-        float radius = FastMath.sqrt(v.x * v.x + v.z * v.z);
-
-        return Math.max(length - size, radius - 1);
-    }
-
-    @Override
-    public Vector3f getPointNormal(Vector3f worldPoint)
-    {
-        Vector3f v = new Vector3f();
-        worldToLocal(worldPoint, v);
-
-        // If the point is on top of the cylinder, up- or downward normal.
-        if (Math.abs(v.y) - size > FastMath.sqrt(v.x * v.x + v.z * v.z) - 1)
-        {
-            if (v.y < 0)
-            {
-                v.set(0, -100f, 0);
-            } else
-            {
-                v.set(0, 100f, 0);
-            }
-        } else
-        {
-            v.y = 0;
-        }
-
-        // Turn back to world then substract origin point to get the vector.
-        localToWorld(v, v).subtractLocal(getWorldTranslation()).normalizeLocal();
-
-        return v;
+        return new CylinderShape(getLocalTransform());
     }
 }
@@ -1,6 +1,7 @@
 package business.hull.primitives;
 
-import com.jme3.math.Vector3f;
+import business.meshing.shapes.EllipsoidShape;
+import business.meshing.shapes.Shape;
 import com.jme3.renderer.queue.RenderQueue.Bucket;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.shape.Sphere;
@@ -23,25 +24,8 @@ public final class Ellipsoid extends Primitive
     }
 
     @Override
-    public float getPointValue(final Vector3f worldPoint)
+    public Shape toShape()
     {
-        Vector3f v = worldToLocal(worldPoint, null);
-        
-        // Value = norm 2.
-        return v.length() - 1;
-    }
-
-    @Override
-    public Vector3f getPointNormal(final Vector3f worldPoint)
-    {
-        // Turn the point to local coordinates
-        Vector3f v = worldToLocal(worldPoint, null);
-
-        v.divideLocal(getLocalScale());
-
-        // Turn back to world then substract origin point to get the vector.
-        localToWorld(v, v).subtractLocal(getWorldTranslation()).normalizeLocal();
-
-        return v;
+        return new EllipsoidShape(getLocalTransform());
     }
 }
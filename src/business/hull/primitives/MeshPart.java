@@ -0,0 +1,67 @@
+package business.hull.primitives;
+
+import business.meshing.shapes.MeshShape;
+import business.meshing.shapes.Shape;
+import business.meshing.shapes.TriangleMesh;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.util.BufferUtils;
+
+/**
+ * A part imported from a triangle mesh, shown as the mesh itself. Its clones
+ * share the mesh.
+ */
+public final class MeshPart extends Primitive
+{
+
+    private final TriangleMesh triangleMesh;
+
+    public MeshPart(TriangleMesh triangleMesh)
+    {
+        super();
+        this.triangleMesh = triangleMesh;
+
+        float[] positions = new float[3 * triangleMesh.getVertexCount()];
+        Vector3f vertex = new Vector3f();
+        for (int i = 0; i < triangleMesh.getVertexCount(); i++)
+        {
+            triangleMesh.getVertex(i, vertex);
+            positions[3 * i] = vertex.x;
+            positions[3 * i + 1] = vertex.y;
+            positions[3 * i + 2] = vertex.z;
+        }
+        int[] indices = new int[3 * triangleMesh.getTriangleCount()];
+        for (int i = 0; i < indices.length; i++)
+        {
+            indices[i] = triangleMesh.getIndex(i / 3, i % 3);
+        }
+        Mesh mesh = new Mesh();
+        mesh.setBuffer(Type.Position, 3, BufferUtils.createFloatBuffer(positions));
+        mesh.setBuffer(Type.Index, 3, BufferUtils.createIntBuffer(indices));
+        mesh.updateBound();
+        mesh.setStatic();
+
+        // Half wireframe, half opaque material.
+        Geometry geometry = new Geometry("", mesh);
+        geometry.setMaterial(wireframeMaterial);
+        attachChild(geometry);
+        geometry = geometry.clone();
+        geometry.setMaterial(transparentMaterial);
+        geometry.setQueueBucket(Bucket.Transparent);
+        attachChild(geometry);
+    }
+
+    @Override
+    public Shape toShape()
+    {
+        return new MeshShape(triangleMesh, getLocalTransform());
+    }
+
+    public TriangleMesh getTriangleMesh()
+    {
+        return triangleMesh;
+    }
+}
@@ -1,10 +1,16 @@
 package business.hull.primitives;
 
-import business.MainApplication;
+import business.meshing.csg.CsgNode;
+import business.meshing.shapes.BoxShape;
+import business.meshing.shapes.CylinderShape;
+import business.meshing.shapes.EllipsoidShape;
+import business.meshing.shapes.MeshShape;
+import business.meshing.shapes.Shape;
+import business.meshing.shapes.VolumeShape;
+import com.jme3.asset.AssetManager;
 import com.jme3.material.Material;
 import com.jme3.material.RenderState.BlendMode;
 import com.jme3.math.ColorRGBA;
-import com.jme3.math.Vector3f;
 import com.jme3.scene.Node;
 import java.util.ArrayList;
 
@@ -14,19 +20,40 @@ import java.util.ArrayList;
  */
 public abstract class Primitive extends Node
 {
-    public final static Material wireframeMaterial = new Material(MainApplication.getInstance().getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-    public final static Material showNormalsMaterial = new Material(MainApplication.getInstance().getAssetManager(), "Common/MatDefs/Misc/ShowNormals.j3md");
-    public final static Material showNormalsWireframeMaterial = new Material(MainApplication.getInstance().getAssetManager(), "Common/MatDefs/Misc/ShowNormals.j3md");
-    public final static Material greenWireframeMaterial = new Material(MainApplication.getInstance().getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-    public final static Material redWireframeMaterial = new Material(MainApplication.getInstance().getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-    public final static Material transparentMaterial = new Material(MainApplication.getInstance().getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-    public final static Material greenTransparentMaterial = new Material(MainApplication.getInstance().getAssetManager(), "Common/MatDefs/Misc/Unshaded.j3md");
-    public final static Material simpleLightMaterial = new Material(MainApplication.getInstance().getAssetManager(), "Common/MatDefs/Light/Lighting.j3md");
-    public final static Material simpleLightWireframeMaterial = new Material(MainApplication.getInstance().getAssetManager(), "Common/MatDefs/Light/Lighting.j3md");
+    public static Material wireframeMaterial;
+    public static Material showNormalsMaterial;
+    public static Material showNormalsWireframeMaterial;
+    public static Material greenWireframeMaterial;
+    public static Material redWireframeMaterial;
+    public static Material transparentMaterial;
+    public static Material greenTransparentMaterial;
+    public static Material simpleLightMaterial;
+    public static Material simpleLightWireframeMaterial;
+    public static Material vertexColorMaterial;
     public final static ArrayList<Primitive> listOfInstances = new ArrayList<>();
+    /**
+     * How the primitive combines with the ones placed before it.
+     */
+    private CsgNode.Operator operation = CsgNode.Operator.UNION;
 
-    static
+    /**
+     * Creates the materials shared by all primitives, then one instance of
+     * each primitive type. Primitives created without calling this first - as
+     * in headless runs, where there is no asset manager - have no material.
+     */
+    public static void initMaterials(AssetManager assetManager)
     {
+        wireframeMaterial = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        showNormalsMaterial = new Material(assetManager, "Common/MatDefs/Misc/ShowNormals.j3md");
+        showNormalsWireframeMaterial = new Material(assetManager, "Common/MatDefs/Misc/ShowNormals.j3md");
+        greenWireframeMaterial = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        redWireframeMaterial = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        transparentMaterial = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        greenTransparentMaterial = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        simpleLightMaterial = new Material(assetManager, "Common/MatDefs/Light/Lighting.j3md");
+        simpleLightWireframeMaterial = new Material(assetManager, "Common/MatDefs/Light/Lighting.j3md");
+        vertexColorMaterial = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+
         wireframeMaterial.getAdditionalRenderState().setWireframe(true);
 
         showNormalsWireframeMaterial.getAdditionalRenderState().setWireframe(true);
@@ -46,7 +73,9 @@ public abstract class Primitive extends Node
         greenTransparentMaterial.getAdditionalRenderState().setBlendMode(BlendMode.Alpha);
 
         simpleLightMaterial.setReceivesShadows(true);
-        
+
+        vertexColorMaterial.setBoolean("VertexColor", true);
+
         // Init all primitive types
         listOfInstances.add(new RectangularBox());
         listOfInstances.add(new Ellipsoid());
@@ -54,13 +83,54 @@ public abstract class Primitive extends Node
     }
 
     /**
-     * Computes the field value at the given point. By using Node transformation
-     * methods, rotations, scaling and positions are handled discretely.
-     *
-     * @param worldPoint
-     * @return
+     * Creates a primitive of the shape's type, placed by the shape's
+     * transform.
      */
-    public abstract float getPointValue(final Vector3f worldPoint);
+    public static Primitive fromShape(Shape shape)
+    {
+        Primitive primitive;
+        if (shape instanceof BoxShape)
+        {
+            primitive = new RectangularBox();
+        } else if (shape instanceof EllipsoidShape)
+        {
+            primitive = new Ellipsoid();
+        } else if (shape instanceof CylinderShape)
+        {
+            primitive = new Cylinder();
+        } else if (shape instanceof MeshShape)
+        {
+            primitive = new MeshPart(((MeshShape) shape).getMesh());
+        } else if (shape instanceof VolumeShape)
+        {
+            primitive = new VolumePart(((VolumeShape) shape).getVolume());
+        } else
+        {
+            throw new IllegalArgumentException("No primitive for " + shape.getClass().getSimpleName());
+        }
+        primitive.setLocalTranslation(shape.getTranslation());
+        primitive.setLocalRotation(shape.getRotation());
+        primitive.setLocalScale(shape.getScale());
+        return primitive;
+    }
 
-    public abstract Vector3f getPointNormal(final Vector3f worldPoint);
+    /**
+     * Returns the shape of the primitive, placed by its local transform: in
+     * the space of the hull it is attached to.
+     */
+    public abstract Shape toShape();
+
+    public CsgNode.Operator getOperation()
+    {
+        return operation;
+    }
+
+    /**
+     * @param operation how the primitive combines with the ones placed
+     * before it: added, subtracted, intersected or blended in.
+     */
+    public void setOperation(CsgNode.Operator operation)
+    {
+        this.operation = operation;
+    }
 }
@@ -0,0 +1,46 @@
+package business.hull.primitives;
+
+import business.meshing.shapes.SampledVolume;
+import business.meshing.shapes.Shape;
+import business.meshing.shapes.VolumeShape;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.shape.Box;
+
+/**
+ * A part of a sampled density volume, shown as the box of its grid. Its
+ * clones share the volume.
+ */
+public final class VolumePart extends Primitive
+{
+
+    private final SampledVolume volume;
+
+    public VolumePart(SampledVolume volume)
+    {
+        super();
+        this.volume = volume;
+
+        float[] h = volume.getHalfExtents();
+        Geometry geometry = new Geometry("", new Box(h[0], h[1], h[2]));
+
+        // Half wireframe, half opaque material.
+        geometry.setMaterial(wireframeMaterial);
+        attachChild(geometry);
+        geometry = geometry.clone();
+        geometry.setMaterial(transparentMaterial);
+        geometry.setQueueBucket(Bucket.Transparent);
+        attachChild(geometry);
+    }
+
+    @Override
+    public Shape toShape()
+    {
+        return new VolumeShape(volume, getLocalTransform());
+    }
+
+    public SampledVolume getVolume()
+    {
+        return volume;
+    }
+}
@@ -0,0 +1,309 @@
+package business.meshing;
+
+import business.meshing.export.MeshExporter;
+import business.meshing.shapes.Shape;
+import java.io.File;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Meshes hull description files from the command line, with no display: the
+ * hulls are meshed concurrently, their tasks sharing a single pool. Prints a
+ * line per hull, then the overall throughput and the summed metrics.
+ *
+ * Arguments: [--threads n] [--jobs n] [--minDepth d] [--maxDepth d]
+ * [--symmetric] [--export stl|ply|obj] [--outOfCore megabytes] [--uniform]
+ * [--specialize] [--breadthFirst] [--dag] file-or-directory...
+ *
+ * Directories are searched for hull description files, by their extension
+ * (see HullDescription.EXTENSION): the meshes exported next to them are not
+ * read back as hulls on the next run.
+ *
+ * With --export, each mesh is also written next to its hull file, in the
+ * given format. With --outOfCore, hulls are meshed chunk by chunk within the
+ * given memory by an OutOfCoreMesher, straight to the exported ply or obj
+ * file. With --uniform, hulls are meshed on the uniform grid of the max depth
+ * by a UniformMesher. With --specialize, the field is compiled to a class
+ * specialized to each hull's shapes before it is meshed. With --breadthFirst,
+ * the octree is built one level at a time. With --dag, each octree is also
+ * merged into its OctreeDag, which is contoured on its own and must give the
+ * same triangles: the hull fails otherwise.
+ */
+public class BatchMesher
+{
+
+    /**
+     * Outcome of the meshing of one hull.
+     */
+    private static class Result
+    {
+
+        File file;
+        int shapes;
+        long vertices;
+        long triangles;
+        long millis;
+        /**
+         * The size of the octree's graph, and the time to contour it, with
+         * --dag.
+         */
+        int dagNodes;
+        long dagBytes;
+        long dagMillis;
+        Exception error;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int jobs = 2;
+        String exportFormat = null;
+        long outOfCoreMegabytes = 0;
+        boolean uniform = false;
+        boolean dag = false;
+        final Mesher mesher = new Mesher();
+        ArrayList<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--jobs":
+                    jobs = Integer.parseInt(args[++i]);
+                    break;
+                case "--minDepth":
+                    mesher.setMinDepth(Integer.parseInt(args[++i]));
+                    break;
+                case "--maxDepth":
+                    mesher.setMaxDepth(Integer.parseInt(args[++i]));
+                    break;
+                case "--symmetric":
+                    mesher.setSymmetric(true);
+                    break;
+                case "--export":
+                    exportFormat = args[++i];
+                    break;
+                case "--outOfCore":
+                    outOfCoreMegabytes = Long.parseLong(args[++i]);
+                    break;
+                case "--uniform":
+                    uniform = true;
+                    break;
+                case "--specialize":
+                    mesher.setSpecializing(true);
+                    break;
+                case "--breadthFirst":
+                    mesher.setBreadthFirst(true);
+                    break;
+                case "--dag":
+                    dag = true;
+                    break;
+                default:
+                    File file = new File(args[i]);
+                    if (file.isDirectory())
+                    {
+                        addDirectory(file, files);
+                    } else
+                    {
+                        files.add(file);
+                    }
+            }
+        }
+        if (files.isEmpty())
+        {
+            System.err.println("Usage: BatchMesher [--threads n] [--jobs n] [--minDepth d] [--maxDepth d] [--symmetric] [--export stl|ply|obj] [--outOfCore megabytes] [--uniform] [--specialize] [--breadthFirst] [--dag] file-or-directory...");
+            System.exit(2);
+        }
+        final Mesher dagMesher;
+        if (dag)
+        {
+            if (mesher.isSymmetric() || uniform || outOfCoreMegabytes > 0)
+            {
+                System.err.println("--dag needs the adaptive octree of a non symmetric hull");
+                System.exit(2);
+            }
+            mesher.setKeepingOctree(true);
+            // Its own metrics, so that the summed ones count each hull once.
+            dagMesher = new Mesher();
+            dagMesher.setSharpAngle(mesher.getSharpAngle());
+        } else
+        {
+            dagMesher = null;
+        }
+        final OutOfCoreMesher outOfCoreMesher;
+        if (outOfCoreMegabytes > 0)
+        {
+            if (exportFormat == null)
+            {
+                System.err.println("--outOfCore needs --export ply or --export obj");
+                System.exit(2);
+            }
+            outOfCoreMesher = new OutOfCoreMesher();
+            outOfCoreMesher.setMinDepth(mesher.getMinDepth());
+            outOfCoreMesher.setMaxDepth(mesher.getMaxDepth());
+            // Each job meshes a hull at a time.
+            outOfCoreMesher.setMemoryBudget((outOfCoreMegabytes << 20) / jobs);
+        } else
+        {
+            outOfCoreMesher = null;
+        }
+        final UniformMesher uniformMesher;
+        if (uniform)
+        {
+            uniformMesher = new UniformMesher();
+            uniformMesher.setMaxDepth(mesher.getMaxDepth());
+            uniformMesher.setSpecializing(mesher.isSpecializing());
+        } else
+        {
+            uniformMesher = null;
+        }
+
+        // The jobs only read files and wait: the meshing itself runs in the
+        // shared pool, which keeps the machine busy without oversubscribing.
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        long start = System.nanoTime();
+        ArrayList<Future<Result>> futures = new ArrayList<>();
+        final String format = exportFormat;
+        for (final File file : files)
+        {
+            futures.add(executor.submit(new Callable<Result>()
+            {
+                @Override
+                public Result call()
+                {
+                    Result result = new Result();
+                    result.file = file;
+                    try
+                    {
+                        ArrayList<Shape> shapes = HullDescription.read(file);
+                        result.shapes = shapes.size();
+                        if (outOfCoreMesher != null)
+                        {
+                            long start = System.currentTimeMillis();
+                            MeshingMetrics metrics = outOfCoreMesher.mesh(shapes, getExportFile(file, format), pool);
+                            mesher.getMetrics().add(metrics);
+                            result.vertices = metrics.getVertices();
+                            result.triangles = metrics.getTriangles();
+                            result.millis = System.currentTimeMillis() - start;
+                        } else
+                        {
+                            MeshData mesh;
+                            if (uniformMesher != null)
+                            {
+                                mesh = uniformMesher.mesh(shapes, pool);
+                                mesher.getMetrics().add(mesh.getMetrics());
+                            } else
+                            {
+                                mesh = mesher.mesh(shapes, pool);
+                            }
+                            if (dagMesher != null)
+                            {
+                                OctreeDag octreeDag = OctreeDag.build(mesh.getOctree(), FloatBuffer.wrap(mesh.getPositions()), shapes);
+                                MeshData dagMesh = dagMesher.contour(octreeDag, shapes, pool);
+                                if (dagMesh.getTriangleCount() != mesh.getTriangleCount())
+                                {
+                                    throw new IllegalStateException(String.format(Locale.ROOT, "the octree graph gives %d triangles, the octree %d",
+                                            dagMesh.getTriangleCount(), mesh.getTriangleCount()));
+                                }
+                                result.dagNodes = octreeDag.getNodeCount();
+                                result.dagBytes = octreeDag.getBytes();
+                                result.dagMillis = dagMesh.getMillis();
+                            }
+                            if (format != null)
+                            {
+                                MeshExporter.export(getExportFile(file, format), mesh);
+                            }
+                            result.vertices = mesh.getVertexCount();
+                            result.triangles = mesh.getTriangleCount();
+                            result.millis = mesh.getMillis();
+                        }
+                    } catch (Exception e)
+                    {
+                        result.error = e;
+                    }
+                    return result;
+                }
+            }));
+        }
+
+        int failures = 0;
+        long triangles = 0;
+        for (Future<Result> future : futures)
+        {
+            Result result = future.get();
+            if (result.error != null)
+            {
+                failures++;
+                System.err.println(result.file + ": " + result.error.getMessage());
+            } else
+            {
+                triangles += result.triangles;
+                String line = String.format(Locale.ROOT, "%s: %d shapes, %d vertices, %d triangles in %d ms", result.file,
+                        result.shapes, result.vertices, result.triangles, result.millis);
+                if (result.dagNodes > 0)
+                {
+                    line += String.format(Locale.ROOT, ", graph of %d nodes (%d KB) contoured in %d ms", result.dagNodes,
+                            result.dagBytes >> 10, result.dagMillis);
+                }
+                System.out.println(line);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        pool.shutdown();
+
+        int hulls = files.size() - failures;
+        System.out.println(String.format(Locale.ROOT, "%d hulls, %d triangles in %.3f s: %.1f hulls/s, %.0f triangles/s",
+                hulls, triangles, seconds, hulls / seconds, triangles / seconds));
+        System.out.println(mesher.getMetrics().format());
+        if (failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the file next to the hull file, with the format's extension.
+     */
+    private static File getExportFile(File file, String format)
+    {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0)
+        {
+            name = name.substring(0, dot);
+        }
+        return new File(file.getAbsoluteFile().getParentFile(), name + "." + format);
+    }
+
+    /**
+     * Adds the hull description files of the directory and its
+     * subdirectories, in name order.
+     */
+    private static void addDirectory(File directory, List<File> files)
+    {
+        File[] children = directory.listFiles();
+        Arrays.sort(children);
+        for (File child : children)
+        {
+            if (child.isDirectory())
+            {
+                addDirectory(child, files);
+            } else if (child.getName().endsWith(HullDescription.EXTENSION))
+            {
+                files.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package business.meshing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A mesh held in direct buffers, which jME can upload as they are, either
+ * copied from a MeshData or memory mapped from a mesh file.
+ *
+ * A mesh file is a header of four ints - MAGIC, VERSION, vertex count and
+ * triangle count - followed by the positions, normals and indices, all in
+ * native byte order.
+ */
+public class CachedMesh
+{
+
+    private static final int MAGIC = 0x4443_4d31;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * 4;
+    private final FloatBuffer positions;
+    private final FloatBuffer normals;
+    private final IntBuffer indices;
+
+    CachedMesh(FloatBuffer positions, FloatBuffer normals, IntBuffer indices)
+    {
+        this.positions = positions;
+        this.normals = normals;
+        this.indices = indices;
+    }
+
+    /**
+     * Copies the mesh to direct buffers.
+     */
+    public static CachedMesh fromData(MeshData data)
+    {
+        FloatBuffer positions = allocate(data.getPositions().length).asFloatBuffer();
+        positions.put(data.getPositions()).clear();
+        FloatBuffer normals = allocate(data.getNormals().length).asFloatBuffer();
+        normals.put(data.getNormals()).clear();
+        IntBuffer indices = allocate(data.getIndices().length).asIntBuffer();
+        indices.put(data.getIndices()).clear();
+        return new CachedMesh(positions, normals, indices);
+    }
+
+    private static ByteBuffer allocate(int count)
+    {
+        return ByteBuffer.allocateDirect(4 * count).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Maps a mesh file: the buffers read the file's pages directly.
+     *
+     * @throws IOException if the file cannot be read, or is not a valid mesh
+     * file of this version and byte order.
+     */
+    public static CachedMesh map(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size < HEADER_SIZE)
+            {
+                throw new IOException(file + ": truncated header");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.nativeOrder());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            {
+                throw new IOException(file + ": not a mesh file of version " + VERSION);
+            }
+            int vertexCount = buffer.getInt();
+            int triangleCount = buffer.getInt();
+            if (vertexCount < 0 || triangleCount < 0
+                    || size != HEADER_SIZE + 4L * (6L * vertexCount + 3L * triangleCount))
+            {
+                throw new IOException(file + ": size does not match the header");
+            }
+
+            // The mapping stays valid once the channel is closed.
+            FloatBuffer positions = slice(buffer, 3 * vertexCount).asFloatBuffer();
+            FloatBuffer normals = slice(buffer, 3 * vertexCount).asFloatBuffer();
+            IntBuffer indices = slice(buffer, 3 * triangleCount).asIntBuffer();
+            return new CachedMesh(positions, normals, indices);
+        }
+    }
+
+    /**
+     * Returns the next count 32 bit values of the buffer, and skips them.
+     */
+    static ByteBuffer slice(ByteBuffer buffer, int count)
+    {
+        ByteBuffer slice = buffer.slice().order(buffer.order());
+        slice.limit(4 * count);
+        buffer.position(buffer.position() + 4 * count);
+        return slice;
+    }
+
+    /**
+     * Writes the mesh file, through a temporary file so that a reader never
+     * maps a partial file.
+     */
+    public void write(File file) throws IOException
+    {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC).putInt(VERSION).putInt(getVertexCount()).putInt(getTriangleCount()).flip();
+            writeFully(channel, header);
+            writeBuffers(channel, ByteOrder.nativeOrder());
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes the positions, normals and indices, in the given byte order.
+     */
+    void writeBuffers(FileChannel channel, ByteOrder order) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(4 * positions.capacity()).order(order);
+        bytes.asFloatBuffer().put(positions.duplicate());
+        writeFully(channel, bytes);
+        bytes.clear();
+        bytes.asFloatBuffer().put(normals.duplicate());
+        writeFully(channel, bytes);
+        bytes = ByteBuffer.allocateDirect(4 * indices.capacity()).order(order);
+        bytes.asIntBuffer().put(indices.duplicate());
+        writeFully(channel, bytes);
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return the vertex positions, 3 floats per vertex. Each call returns a
+     * new view, so that several jME meshes can share the data.
+     */
+    public FloatBuffer getPositions()
+    {
+        return positions.duplicate();
+    }
+
+    /**
+     * @return the vertex normals, 3 floats per vertex.
+     */
+    public FloatBuffer getNormals()
+    {
+        return normals.duplicate();
+    }
+
+    /**
+     * @return the triangles, 3 vertex indices per triangle.
+     */
+    public IntBuffer getIndices()
+    {
+        return indices.duplicate();
+    }
+
+    public int getVertexCount()
+    {
+        return positions.capacity() / 3;
+    }
+
+    public int getTriangleCount()
+    {
+        return indices.capacity() / 3;
+    }
+
+    /**
+     * @return the size of the buffers, in bytes.
+     */
+    public long getByteSize()
+    {
+        return 4L * (positions.capacity() + normals.capacity() + indices.capacity());
+    }
+}
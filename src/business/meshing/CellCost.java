@@ -0,0 +1,66 @@
+package business.meshing;
+
+/**
+ * What building one octree cell cost, recorded when the Mesher profiles.
+ * A cell is processed by a single task, so the counts need no
+ * synchronization.
+ */
+public class CellCost
+{
+
+    private long fieldEvaluations;
+    private long solverIterations;
+    private long rejections;
+    private long nanos;
+
+    public void countFieldEvaluations(int count)
+    {
+        fieldEvaluations += count;
+    }
+
+    public void countSolverIterations(int count)
+    {
+        solverIterations += count;
+    }
+
+    public void countRejection()
+    {
+        rejections++;
+    }
+
+    public void addNanos(long nanos)
+    {
+        this.nanos += nanos;
+    }
+
+    /**
+     * Adds the other cost to this one.
+     */
+    public void add(CellCost other)
+    {
+        fieldEvaluations += other.fieldEvaluations;
+        solverIterations += other.solverIterations;
+        rejections += other.rejections;
+        nanos += other.nanos;
+    }
+
+    public long getFieldEvaluations()
+    {
+        return fieldEvaluations;
+    }
+
+    public long getSolverIterations()
+    {
+        return solverIterations;
+    }
+
+    public long getRejections()
+    {
+        return rejections;
+    }
+
+    public long getNanos()
+    {
+        return nanos;
+    }
+}
@@ -0,0 +1,179 @@
+package business.meshing;
+
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Reads the cell costs of a profiled octree (see Mesher.setProfiling): sums
+ * them over subtrees, finds the hottest cells, and lists the shapes
+ * overlapping them.
+ */
+public class CostReport
+{
+
+    /**
+     * Returns the cost of building the node's whole subtree.
+     */
+    public static CellCost getSubtreeCost(OctreeNode node)
+    {
+        CellCost total = new CellCost();
+        addSubtreeCost(node, total);
+        return total;
+    }
+
+    private static void addSubtreeCost(OctreeNode node, CellCost total)
+    {
+        if (node == null)
+        {
+            return;
+        }
+        if (node.getCost() != null)
+        {
+            total.add(node.getCost());
+        }
+        // Leaves with a vertex are their own children.
+        if (node.isLeaf() || node.getVertexIndex() != -1)
+        {
+            return;
+        }
+        for (OctreeNode child : node.getChildren())
+        {
+            addSubtreeCost(child, total);
+        }
+    }
+
+    /**
+     * Returns the cells of the given depth, and the leaves above it: a
+     * partition of the root cell, skipping the empty leaves.
+     */
+    public static ArrayList<OctreeNode> getCells(OctreeNode root, int depth)
+    {
+        ArrayList<OctreeNode> cells = new ArrayList<>();
+        addCells(root, depth, cells);
+        return cells;
+    }
+
+    private static void addCells(OctreeNode node, int depth, ArrayList<OctreeNode> cells)
+    {
+        if (node == null)
+        {
+            return;
+        }
+        boolean leaf = node.isLeaf() || node.getVertexIndex() != -1;
+        if (node.getDepth() == depth || leaf)
+        {
+            if (!leaf || node.getVertexIndex() != -1)
+            {
+                cells.add(node);
+            }
+            return;
+        }
+        for (OctreeNode child : node.getChildren())
+        {
+            addCells(child, depth, cells);
+        }
+    }
+
+    /**
+     * Returns the n cells of the given depth that took the longest to build,
+     * subtrees included, the hottest first.
+     */
+    public static ArrayList<OctreeNode> getHottestCells(OctreeNode root, int depth, int n)
+    {
+        ArrayList<OctreeNode> cells = getCells(root, depth);
+        final ArrayList<CellCost> costs = new ArrayList<>();
+        for (OctreeNode cell : cells)
+        {
+            costs.add(getSubtreeCost(cell));
+        }
+
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < cells.size(); i++)
+        {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer a, Integer b)
+            {
+                return Long.compare(costs.get(b).getNanos(), costs.get(a).getNanos());
+            }
+        });
+
+        ArrayList<OctreeNode> hottest = new ArrayList<>();
+        for (int i = 0; i < Math.min(n, order.size()); i++)
+        {
+            hottest.add(cells.get(order.get(i)));
+        }
+        return hottest;
+    }
+
+    /**
+     * Returns the indices of the shapes whose bounding sphere overlaps the
+     * cell.
+     */
+    public static ArrayList<Integer> getOverlappingShapes(OctreeNode cell, ArrayList<Shape> shapes)
+    {
+        ArrayList<Integer> overlapping = new ArrayList<>();
+        Vector3f min = cell.getMinBound();
+        Vector3f max = cell.getMaxBound();
+        for (int i = 0; i < shapes.size(); i++)
+        {
+            Vector3f center = shapes.get(i).getTranslation();
+            float radius = shapes.get(i).getBoundingRadius();
+
+            // Distance from the center to the closest point of the cell.
+            float dx = Math.max(0, Math.max(min.x - center.x, center.x - max.x));
+            float dy = Math.max(0, Math.max(min.y - center.y, center.y - max.y));
+            float dz = Math.max(0, Math.max(min.z - center.z, center.z - max.z));
+            if (dx * dx + dy * dy + dz * dz <= radius * radius)
+            {
+                overlapping.add(i);
+            }
+        }
+        return overlapping;
+    }
+
+    /**
+     * Writes the n hottest cells of the given depth, with their costs and the
+     * shapes overlapping them, one per line.
+     */
+    public static void write(File file, OctreeNode root, int depth, int n, ArrayList<Shape> shapes) throws IOException
+    {
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8"))
+        {
+            CellCost total = getSubtreeCost(root);
+            writer.println(String.format(Locale.ROOT, "# total: %.3f ms, %d field evaluations, %d solver iterations, %d rejections",
+                    total.getNanos() / 1e6, total.getFieldEvaluations(), total.getSolverIterations(), total.getRejections()));
+            writer.println("# rank depth minX minY minZ maxX maxY maxZ ms fieldEvaluations solverIterations rejections shapes");
+
+            int rank = 1;
+            for (OctreeNode cell : getHottestCells(root, depth, n))
+            {
+                CellCost cost = getSubtreeCost(cell);
+                StringBuilder overlapping = new StringBuilder();
+                for (int i : getOverlappingShapes(cell, shapes))
+                {
+                    if (overlapping.length() > 0)
+                    {
+                        overlapping.append(',');
+                    }
+                    overlapping.append(i).append(':').append(HullDescription.getType(shapes.get(i)));
+                }
+                Vector3f min = cell.getMinBound();
+                Vector3f max = cell.getMaxBound();
+                writer.println(String.format(Locale.ROOT, "%d %d %.3f %.3f %.3f %.3f %.3f %.3f %.3f %d %d %d %s",
+                        rank++, cell.getDepth(), min.x, min.y, min.z, max.x, max.y, max.z, cost.getNanos() / 1e6,
+                        cost.getFieldEvaluations(), cost.getSolverIterations(), cost.getRejections(), overlapping));
+            }
+        }
+    }
+}
@@ -1,15 +1,12 @@
-package business.misc;
+package business.meshing;
 
-import business.hull.Hull;
-import business.hull.primitives.Primitive;
+import business.meshing.shapes.Shape;
 import com.jme3.math.Vector3f;
 import java.util.ArrayList;
 
 public class DualContouring
 {
     private static final int MAX_ITERATIONS = 100;
-    private static int sumIterations = 0;
-    private static int numberOfIterations = 0;
     private static float FORCE_TRESHOLD = 0.00001f;
     private static float forceRatio = 0.75f;
        public final static int intersections[][][] =
@@ -55,55 +52,63 @@ public class DualContouring
      * For the Adaptive Dual Contouring, return the index of the current cube,
      * given its max and min bound.
      */
-    public static int getCubeIndex(ArrayList<Primitive> primitives, Vector3f minBound, Vector3f maxBound)
+    public static int getCubeIndex(ArrayList<Shape> shapes, Vector3f minBound, Vector3f maxBound)
+    {
+        return getCubeIndex(shapes, minBound, maxBound, new Vector3f());
+    }
+
+    /**
+     * Same as above, sampling the corners in the given scratch vector.
+     */
+    public static int getCubeIndex(ArrayList<Shape> shapes, Vector3f minBound, Vector3f maxBound, Vector3f position)
     {
         int cubeIndex = 0;
-        Vector3f position = new Vector3f(minBound);
+        position.set(minBound);
 
-        if (Hull.getValueAt(position, primitives) < 0)
+        if (HullField.getValueAt(position, shapes) < 0)
         {
             cubeIndex |= 1;
         }
 
         position.x = maxBound.x;
-        if (Hull.getValueAt(position, primitives) < 0)
+        if (HullField.getValueAt(position, shapes) < 0)
         {
             cubeIndex |= 2;
         }
 
         position.y = maxBound.y;
-        if (Hull.getValueAt(position, primitives) < 0)
+        if (HullField.getValueAt(position, shapes) < 0)
         {
             cubeIndex |= 4;
         }
 
         position.x = minBound.x;
-        if (Hull.getValueAt(position, primitives) < 0)
+        if (HullField.getValueAt(position, shapes) < 0)
         {
             cubeIndex |= 8;
         }
 
         position.y = minBound.y;
         position.z = maxBound.z;
-        if (Hull.getValueAt(position, primitives) < 0)
+        if (HullField.getValueAt(position, shapes) < 0)
         {
             cubeIndex |= 16;
         }
 
         position.x = maxBound.x;
-        if (Hull.getValueAt(position, primitives) < 0)
+        if (HullField.getValueAt(position, shapes) < 0)
         {
             cubeIndex |= 32;
         }
 
         position.y = maxBound.y;
-        if (Hull.getValueAt(position, primitives) < 0)
+        if (HullField.getValueAt(position, shapes) < 0)
         {
             cubeIndex |= 64;
         }
 
         position.x = minBound.x;
-        if (Hull.getValueAt(position, primitives) < 0)
+        if (HullField.getValueAt(position, shapes) < 0)
         {
             cubeIndex |= 128;
         }
@@ -111,9 +116,9 @@ public class DualContouring
         return cubeIndex;
     }
 
-    public static int getCubeIndex(ArrayList<Primitive> primitives, OctreeNode octree)
+    public static int getCubeIndex(ArrayList<Shape> shapes, OctreeNode octree)
     {
-        return getCubeIndex(primitives, octree.getMinBound(), octree.getMaxBound());
+        return getCubeIndex(shapes, octree.getMinBound(), octree.getMaxBound());
     }
 
     /**
@@ -128,58 +133,97 @@ public class DualContouring
      * @return the approximated vertex for this cube.
      */
     public static Vector3f vertexFromParticle(ArrayList<Vector3f> intersectionPoints, ArrayList<Vector3f> intersectionNormals, float treshold)
+    {
+        return vertexFromParticle(intersectionPoints, intersectionNormals, treshold, null);
+    }
+
+    /**
+     * Same as above, and records the number of iterations in the metrics (if
+     * not null).
+     */
+    public static Vector3f vertexFromParticle(ArrayList<Vector3f> intersectionPoints, ArrayList<Vector3f> intersectionNormals, float treshold, MeshingMetrics metrics)
+    {
+        return vertexFromParticle(intersectionPoints, intersectionNormals, treshold, metrics, null);
+    }
+
+    /**
+     * Same as above, and also records the number of iterations in the cell's
+     * cost (if not null).
+     */
+    public static Vector3f vertexFromParticle(ArrayList<Vector3f> intersectionPoints, ArrayList<Vector3f> intersectionNormals, float treshold, MeshingMetrics metrics, CellCost cost)
+    {
+        return vertexFromParticle(intersectionPoints, intersectionNormals, treshold, metrics, cost, new Vector3f());
+    }
+
+    /**
+     * Same as above, into the given vector. The force is kept in scalars:
+     * the solve allocates nothing.
+     */
+    public static Vector3f vertexFromParticle(ArrayList<Vector3f> intersectionPoints, ArrayList<Vector3f> intersectionNormals, float treshold, MeshingMetrics metrics, CellCost cost, Vector3f particlePosition)
     {
         treshold *= treshold;
+        int count = intersectionPoints.size();
 
         // Center the particle on the masspoint.
-        Vector3f masspoint = new Vector3f();
-        for (Vector3f v : intersectionPoints)
+        particlePosition.set(0, 0, 0);
+        for (int i = 0; i < count; i++)
         {
-            masspoint.addLocal(v);
+            particlePosition.addLocal(intersectionPoints.get(i));
         }
-        masspoint.divideLocal(intersectionPoints.size());
-        Vector3f particlePosition = new Vector3f(masspoint);
+        particlePosition.divideLocal(count);
 
         // Start iterating:
-        Vector3f force = new Vector3f();
         int iteration;
         for (iteration = 0; iteration < MAX_ITERATIONS; iteration++)
         {
-            force.set(0, 0, 0);
+            float forceX = 0, forceY = 0, forceZ = 0;
 
             // For each intersection point:
-            for (int i = 0; i < intersectionPoints.size(); i++)
+            for (int i = 0; i < count; i++)
             {
                 Vector3f planePoint = intersectionPoints.get(i);
                 Vector3f planeNormal = intersectionNormals.get(i);
 
                 // Compute distance vector to plane.
                 // To do that, compute the normal.dot(AX).
-                float d = planeNormal.dot(particlePosition.subtract(planePoint));
+                float d = planeNormal.x * (particlePosition.x - planePoint.x)
+                        + planeNormal.y * (particlePosition.y - planePoint.y)
+                        + planeNormal.z * (particlePosition.z - planePoint.z);
 
-                force.addLocal(planeNormal.mult(-d));
+                forceX += planeNormal.x * -d;
+                forceY += planeNormal.y * -d;
+                forceZ += planeNormal.z * -d;
             }
 
             // Average the force over all the intersection points, and multiply 
             // with a ratio and some damping to avoid instabilities.
             float damping = 1f - ((float) iteration) / MAX_ITERATIONS;
 
-            force.multLocal(forceRatio * damping / intersectionPoints.size());
+            float scale = forceRatio * damping / count;
+            forceX *= scale;
+            forceY *= scale;
+            forceZ *= scale;
 
             // Apply the force.
-            particlePosition.addLocal(force);
+            particlePosition.x += forceX;
+            particlePosition.y += forceY;
+            particlePosition.z += forceZ;
 
             // If the force was almost null, break.
-            if (force.lengthSquared() < treshold)
+            if (forceX * forceX + forceY * forceY + forceZ * forceZ < treshold)
             {
                 break;
             }
         }
 
-        // Compute average number of iterations:
-        sumIterations += iteration;
-        numberOfIterations++;
-        // System.out.println(1f * sumIterations / numberOfIterations);
+        if (metrics != null)
+        {
+            metrics.recordSolve(iteration);
+        }
+        if (cost != null)
+        {
+            cost.countSolverIterations(iteration);
+        }
 
         return particlePosition;
     }
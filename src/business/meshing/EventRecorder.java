@@ -0,0 +1,40 @@
+package business.meshing;
+
+/**
+ * Records RecordedEvents into the Flight Recorder. Its API, jdk.jfr, is not
+ * in Java 8: the recorders live in jfr/src, which only JDKs that have it
+ * build (see build.xml), and the events load them by name.
+ */
+public interface EventRecorder
+{
+
+    /**
+     * Tells, creating nothing, whether events of the given type are recorded
+     * now: for events so frequent that even a disabled one would cost.
+     */
+    boolean isEnabled(Class<? extends RecordedEvent> type);
+
+    /**
+     * Begins the recorder's own event for the given one.
+     *
+     * @return the recorder's event, or null if the event's type is not
+     * recorded.
+     */
+    Object begin(RecordedEvent event);
+
+    /**
+     * Ends the timing of the recorder's event.
+     */
+    void end(Object recording);
+
+    /**
+     * Tells whether the recorder's event, ended, lasted long enough to be
+     * committed.
+     */
+    boolean shouldCommit(Object recording);
+
+    /**
+     * Copies the event's fields into the recorder's event, and commits it.
+     */
+    void commit(Object recording, RecordedEvent event);
+}
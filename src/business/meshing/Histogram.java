@@ -0,0 +1,99 @@
+package business.meshing;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of non-negative values, in power of two buckets:
+ * bucket 0 holds 0, bucket i holds [2^(i-1), 2^i). Recording is a couple of
+ * uncontended additions, so it can stay enabled in the hot paths.
+ */
+public class Histogram
+{
+
+    private static final int BUCKETS = 64;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value)
+    {
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, value)));
+        buckets[bucket].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    public double getMean()
+    {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile (between 0 and 100): the
+     * top of the bucket it falls in.
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank && counts[i] > 0)
+            {
+                return i == 0 ? 0 : (1L << i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds the other histogram's records to this one.
+     */
+    public void add(Histogram other)
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i].add(other.buckets[i].sum());
+        }
+        count.add(other.getCount());
+        sum.add(other.getSum());
+    }
+
+    public void reset()
+    {
+        for (LongAdder bucket : buckets)
+        {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+    }
+}
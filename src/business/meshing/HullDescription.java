@@ -0,0 +1,357 @@
+package business.meshing;
+
+import business.meshing.csg.CsgNode;
+import business.meshing.csg.CsgShape;
+import business.meshing.shapes.BoxShape;
+import business.meshing.shapes.CylinderShape;
+import business.meshing.shapes.EllipsoidShape;
+import business.meshing.shapes.MeshShape;
+import business.meshing.shapes.SampledVolume;
+import business.meshing.shapes.Shape;
+import business.meshing.shapes.TriangleMesh;
+import business.meshing.shapes.VolumeShape;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads and writes hulls as text, one shape per line:
+ *
+ * type tx ty tz qx qy qz qw sx sy sz
+ *
+ * where type is box, ellipsoid or cylinder, followed by the shape's
+ * translation, rotation quaternion and scale. A mesh, of type mesh, has the
+ * path of its stl or obj file after its scale, as the rest of the line. A
+ * sampled volume, of type volume, has its samples along x, y and z, their
+ * format (f32-le, s16-be, u16-le...), its iso level, then the path of its
+ * raw file.
+ * Blank lines and lines starting with # are ignored.
+ *
+ * CSG trees are written in postfix: a line union, subtraction, intersection
+ * or smooth-union blend replaces the two shapes or trees before it by their
+ * combination (the first minus the second, for a subtraction). The hull is
+ * the union of what remains.
+ */
+public class HullDescription
+{
+
+    /**
+     * The extension of hull description files, which BatchMesher looks for in
+     * directories.
+     */
+    public static final String EXTENSION = ".hull";
+
+    public static ArrayList<Shape> read(File file) throws IOException
+    {
+        // The shapes and trees read so far, the last ones on top.
+        ArrayList<Shape> shapes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+        {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+                try
+                {
+                    parseLine(line, shapes);
+                } catch (IllegalArgumentException e)
+                {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return shapes;
+    }
+
+    public static void write(File file, ArrayList<Shape> shapes) throws IOException
+    {
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8"))
+        {
+            writer.println("# type tx ty tz qx qy qz qw sx sy sz");
+            ArrayList<String> lines = new ArrayList<>();
+            for (Shape shape : shapes)
+            {
+                formatLines(shape, lines);
+            }
+            for (String line : lines)
+            {
+                writer.println(line);
+            }
+        }
+    }
+
+    /**
+     * Parses a line of the format: pushes its shape on the stack, or
+     * replaces the two shapes on top by their CSG combination.
+     */
+    public static void parseLine(String line, List<Shape> stack)
+    {
+        String[] fields = line.trim().split("\\s+");
+        CsgNode.Operator operator = getOperator(fields[0]);
+        if (operator == null)
+        {
+            stack.add(parseShape(line));
+            return;
+        }
+
+        if (stack.size() < 2)
+        {
+            throw new IllegalArgumentException(fields[0] + " needs two shapes before it");
+        }
+        if (fields.length != (operator == CsgNode.Operator.SMOOTH_UNION ? 2 : 1))
+        {
+            throw new IllegalArgumentException("Unexpected fields after " + fields[0]);
+        }
+        combine(stack, operator, operator == CsgNode.Operator.SMOOTH_UNION ? Float.parseFloat(fields[1]) : 0);
+    }
+
+    /**
+     * Replaces the two shapes on top of the stack by their combination.
+     */
+    static void combine(List<Shape> stack, CsgNode.Operator operator, float blend)
+    {
+        CsgNode right = toNode(stack.remove(stack.size() - 1));
+        CsgNode left = toNode(stack.remove(stack.size() - 1));
+        stack.add(new CsgShape(CsgNode.operation(operator, left, right, blend)));
+    }
+
+    /**
+     * Adds the lines of a shape, or of a tree in postfix, to the list.
+     */
+    public static void formatLines(Shape shape, List<String> lines)
+    {
+        if (shape instanceof CsgShape)
+        {
+            formatLines(((CsgShape) shape).getRoot(), lines);
+        } else
+        {
+            lines.add(formatShape(shape));
+        }
+    }
+
+    private static void formatLines(CsgNode node, List<String> lines)
+    {
+        if (node.isShape())
+        {
+            lines.add(formatShape(node.getShape()));
+            return;
+        }
+        formatLines(node.getLeft(), lines);
+        formatLines(node.getRight(), lines);
+        String name = getOperatorName(node.getOperator());
+        if (node.getOperator() == CsgNode.Operator.SMOOTH_UNION)
+        {
+            name += " " + node.getBlend();
+        }
+        lines.add(name);
+    }
+
+    private static CsgNode toNode(Shape shape)
+    {
+        return shape instanceof CsgShape ? ((CsgShape) shape).getRoot() : CsgNode.shape(shape);
+    }
+
+    /**
+     * Returns the operator of the name, or null if it names none.
+     */
+    public static CsgNode.Operator getOperator(String name)
+    {
+        for (CsgNode.Operator operator : CsgNode.Operator.values())
+        {
+            if (getOperatorName(operator).equals(name))
+            {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of the operator in the format.
+     */
+    public static String getOperatorName(CsgNode.Operator operator)
+    {
+        return operator.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * Parses a shape from a line of the format.
+     */
+    public static Shape parseShape(String line)
+    {
+        String type = line.trim().split("\\s+", 2)[0];
+        int expected = type.equals("mesh") ? 12 : type.equals("volume") ? 17 : 11;
+        String[] fields = line.trim().split("\\s+", expected + 1);
+        if (fields.length != expected)
+        {
+            throw new IllegalArgumentException("Expected " + expected + " fields, found " + fields.length);
+        }
+        float[] values = new float[10];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = Float.parseFloat(fields[i + 1]);
+        }
+        Vector3f translation = new Vector3f(values[0], values[1], values[2]);
+        Quaternion rotation = new Quaternion(values[3], values[4], values[5], values[6]);
+        Vector3f scale = new Vector3f(values[7], values[8], values[9]);
+
+        if (fields[0].equals("mesh"))
+        {
+            return createMeshShape(new File(fields[11]), translation, rotation, scale);
+        }
+        if (fields[0].equals("volume"))
+        {
+            SampledVolume.Format format = getFormat(fields[14]);
+            if (format == null)
+            {
+                throw new IllegalArgumentException("Unknown sample format " + fields[14]);
+            }
+            return createVolumeShape(new File(fields[16]), Integer.parseInt(fields[11]), Integer.parseInt(fields[12]),
+                    Integer.parseInt(fields[13]), format, Float.parseFloat(fields[15]), translation, rotation, scale);
+        }
+        return createShape(fields[0], translation, rotation, scale);
+    }
+
+    /**
+     * Creates a shape of the mesh read from the file.
+     */
+    public static Shape createMeshShape(File file, Vector3f translation, Quaternion rotation, Vector3f scale)
+    {
+        try
+        {
+            return new MeshShape(TriangleMesh.read(file), translation, rotation, scale);
+        } catch (IOException e)
+        {
+            throw new IllegalArgumentException("Cannot read mesh " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates a shape of the given type (box, ellipsoid or cylinder).
+     */
+    public static Shape createShape(String type, Vector3f translation, Quaternion rotation, Vector3f scale)
+    {
+        switch (type)
+        {
+            case "box":
+                return new BoxShape(translation, rotation, scale);
+            case "ellipsoid":
+                return new EllipsoidShape(translation, rotation, scale);
+            case "cylinder":
+                return new CylinderShape(translation, rotation, scale);
+            default:
+                throw new IllegalArgumentException("Unknown shape type " + type);
+        }
+    }
+
+    /**
+     * Creates a shape of the volume mapped from the raw file.
+     */
+    public static Shape createVolumeShape(File file, int nx, int ny, int nz, SampledVolume.Format format, float isoLevel,
+            Vector3f translation, Quaternion rotation, Vector3f scale)
+    {
+        try
+        {
+            return new VolumeShape(new SampledVolume(file, nx, ny, nz, format, isoLevel), translation, rotation, scale);
+        } catch (IOException e)
+        {
+            throw new IllegalArgumentException("Cannot read volume " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the sample format of the name, or null if it names none.
+     */
+    public static SampledVolume.Format getFormat(String name)
+    {
+        for (SampledVolume.Format format : SampledVolume.Format.values())
+        {
+            if (getFormatName(format).equals(name))
+            {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of the sample format in the format.
+     */
+    public static String getFormatName(SampledVolume.Format format)
+    {
+        return format.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * Formats a shape as a line of the format.
+     */
+    public static String formatShape(Shape shape)
+    {
+        Vector3f t = shape.getTranslation();
+        Quaternion r = shape.getRotation();
+        Vector3f s = shape.getScale();
+        String line = String.format(Locale.ROOT, "%s %s %s %s %s %s %s %s %s %s %s", getType(shape),
+                t.x, t.y, t.z, r.getX(), r.getY(), r.getZ(), r.getW(), s.x, s.y, s.z);
+        if (shape instanceof MeshShape)
+        {
+            line += " " + getMeshSource((MeshShape) shape).getPath();
+        } else if (shape instanceof VolumeShape)
+        {
+            SampledVolume volume = ((VolumeShape) shape).getVolume();
+            line += String.format(Locale.ROOT, " %d %d %d %s %s %s", volume.getSizeX(), volume.getSizeY(), volume.getSizeZ(),
+                    getFormatName(volume.getFormat()), volume.getIsoLevel(), volume.getSource().getPath());
+        }
+        return line;
+    }
+
+    /**
+     * Returns the name of the shape's type in the format.
+     */
+    public static String getType(Shape shape)
+    {
+        if (shape instanceof BoxShape)
+        {
+            return "box";
+        } else if (shape instanceof EllipsoidShape)
+        {
+            return "ellipsoid";
+        } else if (shape instanceof CylinderShape)
+        {
+            return "cylinder";
+        } else if (shape instanceof MeshShape)
+        {
+            return "mesh";
+        } else if (shape instanceof VolumeShape)
+        {
+            return "volume";
+        }
+        throw new IllegalArgumentException("Unknown shape class " + shape.getClass().getName());
+    }
+
+    /**
+     * Returns the file the shape's mesh was read from: a mesh is written as
+     * its path, so it must have one.
+     */
+    public static File getMeshSource(MeshShape shape)
+    {
+        File source = shape.getMesh().getSource();
+        if (source == null)
+        {
+            throw new IllegalArgumentException("The mesh was not read from a file");
+        }
+        return source;
+    }
+}
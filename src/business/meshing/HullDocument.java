@@ -0,0 +1,623 @@
+package business.meshing;
+
+import business.meshing.csg.CsgNode;
+import business.meshing.csg.CsgShape;
+import business.meshing.shapes.MeshShape;
+import business.meshing.shapes.SampledVolume;
+import business.meshing.shapes.Shape;
+import business.meshing.shapes.TriangleMesh;
+import business.meshing.shapes.VolumeShape;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * A hull saved as a compact binary file: its shapes and the Mesher settings,
+ * and optionally its octree and its mesh, so that opening it needs no
+ * meshing. The file is memory mapped to be read.
+ *
+ * All values are little endian. The file starts with:
+ *
+ * int MAGIC, int VERSION, int minDepth, int maxDepth, float sharpAngle,
+ * int symmetric (0 or 1)
+ *
+ * followed by sections, each made of an int tag, an int reserved for flags,
+ * a long byte length, then its content padded to 4 bytes. Unknown sections
+ * are skipped. The sections are:
+ *
+ * SHAPES: int count, then per record an int type code and 10 floats. A
+ * shape record (type code in TYPES) holds its translation, rotation
+ * quaternion (x, y, z, w) and scale. CSG trees are written in postfix, as in
+ * a HullDescription: an operator record (type code TYPES.length plus the
+ * operator's ordinal) holds its blend then zeros, and replaces the two
+ * shapes or trees before it by their combination. A mesh record (type code
+ * MESH_TYPE) holds the transform as a shape record does, then the byte
+ * length and the UTF-8 path of the mesh's file, padded to 4 bytes: the mesh
+ * is referenced, not embedded. A volume record (type code VOLUME_TYPE) holds
+ * the transform, int samples along x, y and z, int format (the ordinal of a
+ * SampledVolume.Format), float iso level, then the path of its raw file as
+ * a mesh record does. Version 1 documents have shape records only, version
+ * 2 documents no mesh record, version 3 documents no volume record.
+ *
+ * MESH: int vertex count, int triangle count, then the positions, normals
+ * and indices, as in a CachedMesh.
+ *
+ * OCTREE: the root's min and max bounds (6 floats), int node count, int
+ * vertex count, the vertices (3 floats each), then one byte per node in
+ * depth first order: EMPTY, VERTEX (the next vertex) or SUBDIVIDED (the 8
+ * children follow). Written by earlier versions only, still read.
+ *
+ * OCTREE_DAG: the octree with its identical subtrees merged, as written by
+ * OctreeDag.write.
+ */
+public class HullDocument
+{
+
+    private static final int MAGIC = 0x4c4c_5548;
+    private static final int VERSION = 4;
+    private static final int SHAPES = 1;
+    private static final int MESH = 2;
+    private static final int OCTREE = 3;
+    private static final int OCTREE_DAG = 4;
+    private static final int MESH_TYPE = 0x100;
+    private static final int VOLUME_TYPE = 0x101;
+    private static final int SECTION_HEADER_SIZE = 16;
+    private static final byte EMPTY = 0;
+    private static final byte VERTEX = 1;
+    private static final byte SUBDIVIDED = 2;
+    /**
+     * The shape types, by type code.
+     */
+    private static final String[] TYPES =
+    {
+        "box", "ellipsoid", "cylinder"
+    };
+    private final ArrayList<Shape> shapes;
+    private int minDepth;
+    private int maxDepth;
+    private float sharpAngle;
+    private boolean symmetric;
+    private OctreeNode octree = null;
+    /**
+     * The vertices the octree's vertex indices refer to, 3 floats each.
+     */
+    private FloatBuffer octreeVertices = null;
+    /**
+     * The octree section of a read document, parsed into the octree on first
+     * use only: building the nodes is most of the cost of a read.
+     */
+    private ByteBuffer octreeSection = null;
+    /**
+     * The octree's graph, set, built from the octree, or read from the
+     * octree graph section on first use.
+     */
+    private OctreeDag octreeDag = null;
+    private ByteBuffer octreeDagSection = null;
+    private CachedMesh mesh = null;
+
+    /**
+     * Creates a document of the shapes, meshed with the mesher's settings.
+     */
+    public HullDocument(ArrayList<Shape> shapes, Mesher mesher)
+    {
+        this.shapes = shapes;
+        this.minDepth = mesher.getMinDepth();
+        this.maxDepth = mesher.getMaxDepth();
+        this.sharpAngle = mesher.getSharpAngle();
+        this.symmetric = mesher.isSymmetric();
+    }
+
+    private HullDocument()
+    {
+        this.shapes = new ArrayList<>();
+    }
+
+    /**
+     * Reads a document.
+     *
+     * @throws IOException if the file cannot be read or is not a valid hull
+     * document.
+     */
+    public static HullDocument read(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            try
+            {
+                return read(buffer);
+            } catch (RuntimeException e)
+            {
+                // Buffer underflows, bad type codes and the like.
+                throw new IOException(file + ": damaged hull document", e);
+            }
+        }
+    }
+
+    private static HullDocument read(ByteBuffer buffer) throws IOException
+    {
+        if (buffer.remaining() < 24 || buffer.getInt() != MAGIC)
+        {
+            throw new IOException("Not a hull document");
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION)
+        {
+            throw new IOException("Unsupported hull document version " + version);
+        }
+
+        HullDocument document = new HullDocument();
+        document.minDepth = buffer.getInt();
+        document.maxDepth = buffer.getInt();
+        document.sharpAngle = buffer.getFloat();
+        document.symmetric = buffer.getInt() != 0;
+
+        boolean shapesFound = false;
+        while (buffer.hasRemaining())
+        {
+            int tag = buffer.getInt();
+            buffer.getInt();
+            long length = buffer.getLong();
+            if (length < 0 || length > buffer.remaining())
+            {
+                throw new IOException("Truncated section " + tag);
+            }
+            ByteBuffer section = CachedMesh.slice(buffer, (int) (length / 4));
+            switch (tag)
+            {
+                case SHAPES:
+                    document.readShapes(section);
+                    shapesFound = true;
+                    break;
+                case MESH:
+                    document.readMesh(section);
+                    break;
+                case OCTREE:
+                    document.octreeSection = section;
+                    break;
+                case OCTREE_DAG:
+                    document.octreeDagSection = section;
+                    break;
+                default:
+                    // A section of a later version of the format.
+                    break;
+            }
+        }
+        if (!shapesFound)
+        {
+            throw new IOException("No shapes section");
+        }
+        return document;
+    }
+
+    private void readShapes(ByteBuffer section) throws IOException
+    {
+        int count = section.getInt();
+        shapes.ensureCapacity(count);
+        for (int i = 0; i < count; i++)
+        {
+            int code = section.getInt();
+            if (code == MESH_TYPE)
+            {
+                Vector3f translation = new Vector3f(section.getFloat(), section.getFloat(), section.getFloat());
+                Quaternion rotation = new Quaternion(section.getFloat(), section.getFloat(), section.getFloat(), section.getFloat());
+                Vector3f scale = new Vector3f(section.getFloat(), section.getFloat(), section.getFloat());
+                TriangleMesh mesh = TriangleMesh.read(readPath(section));
+                shapes.add(new MeshShape(mesh, translation, rotation, scale));
+                continue;
+            }
+            if (code == VOLUME_TYPE)
+            {
+                Vector3f translation = new Vector3f(section.getFloat(), section.getFloat(), section.getFloat());
+                Quaternion rotation = new Quaternion(section.getFloat(), section.getFloat(), section.getFloat(), section.getFloat());
+                Vector3f scale = new Vector3f(section.getFloat(), section.getFloat(), section.getFloat());
+                int nx = section.getInt();
+                int ny = section.getInt();
+                int nz = section.getInt();
+                SampledVolume.Format format = SampledVolume.Format.values()[section.getInt()];
+                float isoLevel = section.getFloat();
+                SampledVolume volume = new SampledVolume(readPath(section), nx, ny, nz, format, isoLevel);
+                shapes.add(new VolumeShape(volume, translation, rotation, scale));
+                continue;
+            }
+            if (code >= TYPES.length)
+            {
+                CsgNode.Operator operator = CsgNode.Operator.values()[code - TYPES.length];
+                float blend = section.getFloat();
+                section.position(section.position() + 36);
+                HullDescription.combine(shapes, operator, blend);
+                continue;
+            }
+            String type = TYPES[code];
+            Vector3f translation = new Vector3f(section.getFloat(), section.getFloat(), section.getFloat());
+            Quaternion rotation = new Quaternion(section.getFloat(), section.getFloat(), section.getFloat(), section.getFloat());
+            Vector3f scale = new Vector3f(section.getFloat(), section.getFloat(), section.getFloat());
+            shapes.add(HullDescription.createShape(type, translation, rotation, scale));
+        }
+    }
+
+    /**
+     * Reads the byte length and the UTF-8 path of a file, and skips its
+     * padding.
+     */
+    private static File readPath(ByteBuffer section)
+    {
+        byte[] path = new byte[section.getInt()];
+        section.get(path);
+        section.position(section.position() + padding(path.length));
+        return new File(new String(path, StandardCharsets.UTF_8));
+    }
+
+    private void readMesh(ByteBuffer section)
+    {
+        int vertexCount = section.getInt();
+        int triangleCount = section.getInt();
+        ByteBuffer positions = CachedMesh.slice(section, 3 * vertexCount);
+        ByteBuffer normals = CachedMesh.slice(section, 3 * vertexCount);
+        ByteBuffer indices = CachedMesh.slice(section, 3 * triangleCount);
+        if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)
+        {
+            // Use the mapped pages as they are.
+            mesh = new CachedMesh(positions.asFloatBuffer(), normals.asFloatBuffer(), indices.asIntBuffer());
+        } else
+        {
+            mesh = new CachedMesh(nativeCopy(positions).asFloatBuffer(), nativeCopy(normals).asFloatBuffer(), nativeCopy(indices).asIntBuffer());
+        }
+    }
+
+    /**
+     * Copies the 32 bit values of a little endian buffer to a direct buffer
+     * of the native order.
+     */
+    private static ByteBuffer nativeCopy(ByteBuffer buffer)
+    {
+        ByteBuffer copy = ByteBuffer.allocateDirect(buffer.remaining()).order(ByteOrder.nativeOrder());
+        copy.asIntBuffer().put(buffer.asIntBuffer());
+        return copy;
+    }
+
+    private void readOctree()
+    {
+        ByteBuffer section = octreeSection.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        Vector3f minBound = new Vector3f(section.getFloat(), section.getFloat(), section.getFloat());
+        Vector3f maxBound = new Vector3f(section.getFloat(), section.getFloat(), section.getFloat());
+        section.getInt();
+        int vertexCount = section.getInt();
+        FloatBuffer vertices = CachedMesh.slice(section, 3 * vertexCount).asFloatBuffer();
+
+        OctreeNode root = new OctreeNode(minBound, maxBound);
+        int[] vertexIndex =
+        {
+            0
+        };
+        readNode(root, section, vertexIndex);
+        if (vertexIndex[0] != vertexCount)
+        {
+            throw new IllegalStateException("Octree vertices do not match its nodes");
+        }
+        octree = root;
+        octreeVertices = vertices;
+        octreeSection = null;
+    }
+
+    private static void readNode(OctreeNode node, ByteBuffer section, int[] vertexIndex)
+    {
+        switch (section.get())
+        {
+            case EMPTY:
+                break;
+            case VERTEX:
+                node.setVertex(vertexIndex[0]++);
+                break;
+            case SUBDIVIDED:
+                node.subdivide();
+                for (OctreeNode child : node.getChildren())
+                {
+                    readNode(child, section, vertexIndex);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown octree node code");
+        }
+    }
+
+    /**
+     * Writes the document, with the octree and mesh sections if set.
+     */
+    public void write(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer header = allocate(24);
+            header.putInt(MAGIC).putInt(VERSION).putInt(minDepth).putInt(maxDepth)
+                    .putFloat(sharpAngle).putInt(symmetric ? 1 : 0).flip();
+            CachedMesh.writeFully(channel, header);
+
+            // Shapes, and trees in postfix.
+            ArrayList<CsgNode> records = new ArrayList<>();
+            for (Shape shape : shapes)
+            {
+                addRecords(shape instanceof CsgShape ? ((CsgShape) shape).getRoot() : CsgNode.shape(shape), records);
+            }
+            ArrayList<byte[]> paths = new ArrayList<>();
+            int size = 4 + 44 * records.size();
+            for (CsgNode record : records)
+            {
+                if (record.isShape() && record.getShape() instanceof MeshShape)
+                {
+                    byte[] path = HullDescription.getMeshSource((MeshShape) record.getShape()).getPath().getBytes(StandardCharsets.UTF_8);
+                    paths.add(path);
+                    size += 4 + path.length + padding(path.length);
+                } else if (record.isShape() && record.getShape() instanceof VolumeShape)
+                {
+                    byte[] path = ((VolumeShape) record.getShape()).getVolume().getSource().getPath().getBytes(StandardCharsets.UTF_8);
+                    paths.add(path);
+                    size += 20 + 4 + path.length + padding(path.length);
+                }
+            }
+            int pathIndex = 0;
+            ByteBuffer section = allocate(size);
+            section.putInt(records.size());
+            for (CsgNode record : records)
+            {
+                if (!record.isShape())
+                {
+                    section.putInt(TYPES.length + record.getOperator().ordinal()).putFloat(record.getBlend());
+                    for (int i = 0; i < 9; i++)
+                    {
+                        section.putFloat(0);
+                    }
+                    continue;
+                }
+                Shape shape = record.getShape();
+                Vector3f t = shape.getTranslation();
+                Quaternion r = shape.getRotation();
+                Vector3f s = shape.getScale();
+                section.putInt(getTypeCode(shape));
+                section.putFloat(t.x).putFloat(t.y).putFloat(t.z);
+                section.putFloat(r.getX()).putFloat(r.getY()).putFloat(r.getZ()).putFloat(r.getW());
+                section.putFloat(s.x).putFloat(s.y).putFloat(s.z);
+                if (shape instanceof VolumeShape)
+                {
+                    SampledVolume volume = ((VolumeShape) shape).getVolume();
+                    section.putInt(volume.getSizeX()).putInt(volume.getSizeY()).putInt(volume.getSizeZ());
+                    section.putInt(volume.getFormat().ordinal()).putFloat(volume.getIsoLevel());
+                }
+                if (shape instanceof MeshShape || shape instanceof VolumeShape)
+                {
+                    byte[] path = paths.get(pathIndex++);
+                    section.putInt(path.length).put(path);
+                    section.position(section.position() + padding(path.length));
+                }
+            }
+            writeSection(channel, SHAPES, section);
+
+            // Mesh.
+            if (mesh != null)
+            {
+                ByteBuffer meshHeader = allocate(SECTION_HEADER_SIZE + 8);
+                meshHeader.putInt(MESH).putInt(0).putLong(8 + mesh.getByteSize());
+                meshHeader.putInt(mesh.getVertexCount()).putInt(mesh.getTriangleCount()).flip();
+                CachedMesh.writeFully(channel, meshHeader);
+                mesh.writeBuffers(channel, ByteOrder.LITTLE_ENDIAN);
+            }
+
+            // Octree, as its graph.
+            OctreeDag dag = getOctreeDag();
+            if (dag != null)
+            {
+                section = allocate(dag.getByteSize());
+                dag.write(section);
+                writeSection(channel, OCTREE_DAG, section);
+            }
+        }
+    }
+
+    /**
+     * Adds the nodes of the tree to the list, in postfix order.
+     */
+    private static void addRecords(CsgNode node, ArrayList<CsgNode> records)
+    {
+        if (!node.isShape())
+        {
+            addRecords(node.getLeft(), records);
+            addRecords(node.getRight(), records);
+        }
+        records.add(node);
+    }
+
+    private static ByteBuffer allocate(int size)
+    {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes a section header and the (full) section content.
+     */
+    private static void writeSection(FileChannel channel, int tag, ByteBuffer content) throws IOException
+    {
+        content.flip();
+        ByteBuffer header = allocate(SECTION_HEADER_SIZE);
+        header.putInt(tag).putInt(0).putLong(content.remaining()).flip();
+        CachedMesh.writeFully(channel, header);
+        CachedMesh.writeFully(channel, content);
+    }
+
+    /**
+     * Returns the bytes padding the length to a multiple of 4.
+     */
+    private static int padding(int length)
+    {
+        return -length & 3;
+    }
+
+    private static int getTypeCode(Shape shape)
+    {
+        if (shape instanceof MeshShape)
+        {
+            return MESH_TYPE;
+        } else if (shape instanceof VolumeShape)
+        {
+            return VOLUME_TYPE;
+        }
+        String type = HullDescription.getType(shape);
+        for (int i = 0; i < TYPES.length; i++)
+        {
+            if (TYPES[i].equals(type))
+            {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown shape type " + type);
+    }
+
+    /**
+     * Applies the document's settings to the mesher, so that it meshes the
+     * shapes as they were when saved.
+     */
+    public void applySettings(Mesher mesher)
+    {
+        mesher.setMinDepth(minDepth);
+        mesher.setMaxDepth(maxDepth);
+        mesher.setSharpAngle(sharpAngle);
+        mesher.setSymmetric(symmetric);
+    }
+
+    public ArrayList<Shape> getShapes()
+    {
+        return shapes;
+    }
+
+    /**
+     * @return the saved mesh, or null if there is none.
+     */
+    public CachedMesh getMesh()
+    {
+        return mesh;
+    }
+
+    /**
+     * @param mesh the mesh of the shapes with the document's settings, or
+     * null to save none.
+     */
+    public void setMesh(CachedMesh mesh)
+    {
+        this.mesh = mesh;
+    }
+
+    /**
+     * @return true iff the document has an octree.
+     */
+    public boolean hasOctree()
+    {
+        return octree != null || octreeSection != null || octreeDag != null || octreeDagSection != null;
+    }
+
+    /**
+     * Returns the saved octree, or null if there is none. Its vertex indices
+     * refer to getOctreeVertices. The octree of a read document is built on
+     * the first call, expanded from its graph if it has one.
+     *
+     * @throws IllegalStateException if the octree section is damaged.
+     */
+    public OctreeNode getOctree()
+    {
+        if (octreeSection != null)
+        {
+            try
+            {
+                readOctree();
+            } catch (BufferUnderflowException e)
+            {
+                throw new IllegalStateException("Truncated octree section", e);
+            }
+        }
+        if (octree == null && getOctreeDag() != null)
+        {
+            ArrayList<Vector3f> vertices = new ArrayList<>();
+            octree = octreeDag.expand(vertices);
+            octreeVertices = FloatBuffer.allocate(3 * vertices.size());
+            for (Vector3f vertex : vertices)
+            {
+                octreeVertices.put(vertex.x).put(vertex.y).put(vertex.z);
+            }
+            octreeVertices.flip();
+        }
+        return octree;
+    }
+
+    /**
+     * Returns the graph of the saved octree, or null if there is none. The
+     * graph of a read document is read on the first call, or built from its
+     * octree if it was saved as a tree.
+     *
+     * @throws IllegalStateException if the octree section is damaged.
+     */
+    public OctreeDag getOctreeDag()
+    {
+        if (octreeDagSection != null)
+        {
+            try
+            {
+                octreeDag = OctreeDag.read(octreeDagSection.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+            } catch (BufferUnderflowException e)
+            {
+                throw new IllegalStateException("Truncated octree graph section", e);
+            }
+            octreeDagSection = null;
+        }
+        if (octreeDag == null && (octree != null || octreeSection != null))
+        {
+            octreeDag = OctreeDag.build(getOctree(), getOctreeVertices(), shapes);
+        }
+        return octreeDag;
+    }
+
+    /**
+     * @return the vertices the octree's vertex indices refer to, 3 floats
+     * each, or null if there is no octree.
+     */
+    public FloatBuffer getOctreeVertices()
+    {
+        getOctree();
+        return octreeVertices == null ? null : octreeVertices.duplicate();
+    }
+
+    /**
+     * @param octree the octree of the shapes with the document's settings, or
+     * null to save none.
+     * @param vertices the vertices its vertex indices refer to, 3 floats each:
+     * the mesh positions for an octree returned by the Mesher.
+     */
+    public void setOctree(OctreeNode octree, FloatBuffer vertices)
+    {
+        this.octreeSection = null;
+        this.octreeDag = null;
+        this.octreeDagSection = null;
+        this.octree = octree;
+        this.octreeVertices = vertices;
+    }
+
+    /**
+     * @param octreeDag the graph of the octree of the shapes with the
+     * document's settings, or null to save none.
+     */
+    public void setOctreeDag(OctreeDag octreeDag)
+    {
+        this.octreeSection = null;
+        this.octreeDagSection = null;
+        this.octree = null;
+        this.octreeVertices = null;
+        this.octreeDag = octreeDag;
+    }
+}
@@ -0,0 +1,292 @@
+package business.meshing;
+
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The hull's field: the union of its shapes, and the queries run on it.
+ */
+public class HullField
+{
+
+    /**
+     * Interpolates the intersection point from CSG values at both corners.
+     */
+    public static Vector3f interpolateIntersection(ArrayList<Shape> shapes, Vector3f p1, Vector3f p2, float v1, float v2)
+    {
+        return interpolateIntersection(p1, p2, v1, v2, new Vector3f());
+    }
+
+    /**
+     * Same as above, into the given vector.
+     */
+    public static Vector3f interpolateIntersection(Vector3f p1, Vector3f p2, float v1, float v2, Vector3f store)
+    {
+        // If one of the values is too small, snap to the other point.
+        if (Math.abs(v1) < 0.001f)
+        {
+            return store.set(p1);
+        }
+        if (Math.abs(v2) < 0.001f)
+        {
+            return store.set(p2);
+        }
+        // Also, if the two values are too close, return p1.
+        if (Math.abs(v2 - v1) < 0.001f)
+        {
+            return store.set(p1);
+        }
+
+        v1 = Math.abs(v1);
+        v2 = Math.abs(v2);
+
+        float v = v1 + v2;
+        store.set((v2 * p1.x + v1 * p2.x) / v, (v2 * p1.y + v1 * p2.y) / v, (v2 * p1.z + v1 * p2.z) / v);
+
+        return store;
+    }
+
+    /**
+     * Recursively interpolates the intersection point from CSG values at each
+     * point.
+     */
+    public static Vector3f exactIntersection(ArrayList<Shape> shapes, Vector3f p1, Vector3f p2, float v1, float v2, int depth)
+    {
+        Vector3f p = interpolateIntersection(shapes, p1, p2, v1, v2);
+        if (depth == 0)
+        {
+            return p;
+        } else
+        {
+            float newValue = getValueAt(p, shapes);
+            if ((newValue < 0 && v1 < 0) || (newValue > 0 && v1 > 0))
+            {
+                return (exactIntersection(shapes, p, p2, newValue, v2, depth - 1));
+            } else
+            {
+                return (exactIntersection(shapes, p1, p, v1, newValue, depth - 1));
+            }
+        }
+    }
+
+    /**
+     * Same as above, into the given vector, narrowing the edge down in the
+     * two scratch vectors rather than recursing: allocates nothing.
+     */
+    public static Vector3f exactIntersection(ArrayList<Shape> shapes, Vector3f p1, Vector3f p2, float v1, float v2, int depth,
+            Vector3f store, Vector3f scratch1, Vector3f scratch2)
+    {
+        scratch1.set(p1);
+        scratch2.set(p2);
+        interpolateIntersection(scratch1, scratch2, v1, v2, store);
+        for (; depth > 0; depth--)
+        {
+            float newValue = getValueAt(store, shapes);
+            if ((newValue < 0 && v1 < 0) || (newValue > 0 && v1 > 0))
+            {
+                scratch1.set(store);
+                v1 = newValue;
+            } else
+            {
+                scratch2.set(store);
+                v2 = newValue;
+            }
+            interpolateIntersection(scratch1, scratch2, v1, v2, store);
+        }
+        return store;
+    }
+
+    /**
+     * Returns true iff the node contains at least one intersection, after
+     * sampling at the MaxDepth level.
+     */
+    public static boolean containsIntersection(OctreeNode octreeNode, int maxDepth, ArrayList<Shape> shapes)
+    {
+        // First off, check if the node is null. 
+        if (octreeNode == null)
+        {
+            return false;
+        }
+
+        // Subdivide to the finest possible level.
+        // The subdivision level equals 2^n, where n is max-current depth.
+        int divisionLevel = 1 << (maxDepth - octreeNode.getDepth());
+
+        Vector3f startPoint = octreeNode.getMinBound();
+        Vector3f offset = octreeNode.getMaxBound().subtract(startPoint).divideLocal(divisionLevel);
+        boolean sign = getValueAt(startPoint, shapes) > 0;
+        Vector3f currentPoint = new Vector3f();
+        for (int i = 0; i < divisionLevel + 1; i++)
+        {
+            for (int j = 0; j < divisionLevel + 1; j++)
+            {
+                for (int k = 0; k < divisionLevel + 1; k++)
+                {
+                    currentPoint.x = startPoint.x + i * offset.x;
+                    currentPoint.y = startPoint.y + j * offset.y;
+                    currentPoint.z = startPoint.z + k * offset.z;
+
+                    if (getValueAt(currentPoint, shapes) > 0 != sign)
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns false if the surface cannot cross the node: if no shape's can,
+     * each shape keeps one sign all over it, and so does their union.
+     */
+    public static boolean mayContainSurface(OctreeNode octreeNode, ArrayList<Shape> shapes)
+    {
+        for (int i = 0; i < shapes.size(); i++)
+        {
+            if (shapes.get(i).mayCross(octreeNode.getMinBound(), octreeNode.getMaxBound()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the function's normal at the given point. */
+    public static Vector3f getNormalAt(Vector3f p, ArrayList<Shape> shapes)
+    {
+        // Get the normal from the shape closest to the isosurface.
+        return getClosestShape(p, shapes).getPointNormal(p);
+    }
+
+    /**
+     * Same as above, into the given vector.
+     */
+    public static Vector3f getNormalAt(Vector3f p, ArrayList<Shape> shapes, Vector3f store)
+    {
+        return getClosestShape(p, shapes).getPointNormal(p, store);
+    }
+
+    /**
+     * Returns the shape which surface is the closest to the point.
+     */
+    private static Shape getClosestShape(Vector3f p, ArrayList<Shape> shapes)
+    {
+        float bestValue = Float.MAX_VALUE;
+        Shape bestShape = null;
+
+        // Find the shape which surface is the closest to the isosurface.
+        for (int i = 0; i < shapes.size(); i++)
+        {
+            Shape shape = shapes.get(i);
+            float newValue = Math.abs(shape.getPointValue(p));
+            if (newValue < bestValue)
+            {
+                bestValue = newValue;
+                bestShape = shape;
+            }
+        }
+
+        return bestShape;
+    }
+
+    /** Returns the function's value at the given point. */
+    public static float getValueAt(Vector3f p, ArrayList<Shape> shapes)
+    {
+        float bestValue = Float.MAX_VALUE;
+
+        // Find the shape which surface is the closest to the isosurface.
+        // Indexed, so that no iterator is created per sample.
+        for (int i = 0; i < shapes.size(); i++)
+        {
+            bestValue = Math.min(shapes.get(i).getPointValue(p), bestValue);
+        }
+        
+        return bestValue;
+    }
+
+    /**
+     * Computes the function's values at a batch of points, from the index
+     * from to the index to (excluded), one shape at a time over the batch.
+     */
+    public static void getValuesAt(float[] xs, float[] ys, float[] zs, float[] values, int from, int to, ArrayList<Shape> shapes)
+    {
+        Arrays.fill(values, from, to, Float.MAX_VALUE);
+        for (int i = 0; i < shapes.size(); i++)
+        {
+            shapes.get(i).unionPointValues(xs, ys, zs, values, from, to);
+        }
+    }
+
+    /**
+     * Sphere-traces the field along a ray, and returns the first intersection
+     * with the isosurface, or null if there is none. The direction must be
+     * normalized.
+     */
+    public static Vector3f sphereTrace(ArrayList<Shape> shapes, Vector3f origin, Vector3f direction, int maxSteps)
+    {
+        // Restrict the march to the part of the ray crossing the shapes'
+        // bounding spheres, and find the field's Lipschitz bound on the way.
+        float tMin = Float.MAX_VALUE;
+        float tMax = -Float.MAX_VALUE;
+        float minScale = Float.MAX_VALUE;
+        Vector3f toCenter = new Vector3f();
+        for (Shape shape : shapes)
+        {
+            float radius = shape.getBoundingRadius();
+            shape.getTranslation().subtract(origin, toCenter);
+            float b = toCenter.dot(direction);
+            float c = toCenter.lengthSquared() - radius * radius;
+            float delta = b * b - c;
+            if (delta >= 0)
+            {
+                float sqrtDelta = (float) Math.sqrt(delta);
+                tMin = Math.min(tMin, b - sqrtDelta);
+                tMax = Math.max(tMax, b + sqrtDelta);
+            }
+            minScale = Math.min(minScale, shape.getMinScale());
+        }
+        tMin = Math.max(tMin, 0);
+        if (tMin > tMax)
+        {
+            return null;
+        }
+
+        // Never stop closer than a thousandth of the traced span, nor step
+        // less than that: grazing rays would otherwise crawl along the surface.
+        float epsilon = (tMax - tMin) / 1000;
+        Vector3f previousPoint = new Vector3f();
+        Vector3f point = new Vector3f();
+        float previousValue = 0;
+        float t = tMin;
+        for (int step = 0; step < maxSteps && t <= tMax; step++)
+        {
+            point.set(direction).multLocal(t).addLocal(origin);
+            float value = getValueAt(point, shapes);
+
+            if (value < 0)
+            {
+                // Started inside the hull: nothing to pick.
+                if (step == 0)
+                {
+                    return null;
+                }
+                // Stepped through the surface: refine between both samples.
+                return exactIntersection(shapes, previousPoint, point, previousValue, value, 5);
+            }
+            if (value * minScale < epsilon)
+            {
+                return point;
+            }
+
+            previousPoint.set(point);
+            previousValue = value;
+            t += Math.max(value * minScale, epsilon);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,125 @@
+package business.meshing;
+
+import business.meshing.csg.CsgNode;
+import business.meshing.csg.CsgShape;
+import business.meshing.shapes.MeshShape;
+import business.meshing.shapes.SampledVolume;
+import business.meshing.shapes.Shape;
+import business.meshing.shapes.VolumeShape;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * Hashes what a mesh depends on: the shapes and the Mesher's settings. The
+ * hash is canonical, so equal hulls give equal hashes whatever the order of
+ * their shapes (the field is their union) or the sign of their rotations.
+ */
+public class HullHash
+{
+
+    /**
+     * Returns the SHA-256 of the canonical form of the shapes and settings, in
+     * hexadecimal.
+     */
+    public static String compute(ArrayList<Shape> shapes, Mesher mesher)
+    {
+        // One line per shape, sorted.
+        ArrayList<String> lines = new ArrayList<>();
+        for (Shape shape : shapes)
+        {
+            lines.add(canonicalShape(shape));
+        }
+        Collections.sort(lines);
+
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines)
+        {
+            builder.append(line).append('\n');
+        }
+        builder.append(mesher.getMinDepth()).append(' ')
+                .append(mesher.getMaxDepth()).append(' ')
+                .append(bits(mesher.getSharpAngle())).append(' ')
+                .append(bits(mesher.getLatticeCellSize())).append(' ')
+                .append(mesher.isSymmetric());
+
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest)
+            {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e)
+        {
+            // Every JRE has SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the shape's type and the exact bits of its transform (and the
+     * hash of a mesh's or a volume's content), or for a CSG tree, its nodes
+     * in postfix: order matters there.
+     */
+    private static String canonicalShape(Shape shape)
+    {
+        if (shape instanceof CsgShape)
+        {
+            StringBuilder builder = new StringBuilder();
+            appendNode(((CsgShape) shape).getRoot(), builder);
+            return builder.toString();
+        }
+
+        Vector3f t = shape.getTranslation();
+        Quaternion r = shape.getRotation();
+        Vector3f s = shape.getScale();
+
+        // q and -q are the same rotation: keep the one with w >= 0.
+        float sign = r.getW() < 0 ? -1 : 1;
+
+        // A mesh or a volume counts by its content, wherever it was read
+        // from.
+        String type = HullDescription.getType(shape);
+        if (shape instanceof MeshShape)
+        {
+            type += ' ' + Long.toHexString(((MeshShape) shape).getMesh().getContentHash());
+        } else if (shape instanceof VolumeShape)
+        {
+            SampledVolume volume = ((VolumeShape) shape).getVolume();
+            type += ' ' + Long.toHexString(volume.getContentHash()) + ' ' + volume.getSizeX() + ' ' + volume.getSizeY()
+                    + ' ' + volume.getSizeZ() + ' ' + bits(volume.getIsoLevel());
+        }
+
+        return type
+                + ' ' + bits(t.x) + ' ' + bits(t.y) + ' ' + bits(t.z)
+                + ' ' + bits(sign * r.getX()) + ' ' + bits(sign * r.getY()) + ' ' + bits(sign * r.getZ()) + ' ' + bits(sign * r.getW())
+                + ' ' + bits(s.x) + ' ' + bits(s.y) + ' ' + bits(s.z);
+    }
+
+    private static void appendNode(CsgNode node, StringBuilder builder)
+    {
+        if (node.isShape())
+        {
+            builder.append(canonicalShape(node.getShape())).append(';');
+            return;
+        }
+        appendNode(node.getLeft(), builder);
+        appendNode(node.getRight(), builder);
+        builder.append(HullDescription.getOperatorName(node.getOperator())).append(' ').append(bits(node.getBlend())).append(';');
+    }
+
+    /**
+     * Returns the bits of the float, -0 being 0.
+     */
+    private static String bits(float value)
+    {
+        return Integer.toHexString(Float.floatToIntBits(value + 0f));
+    }
+}
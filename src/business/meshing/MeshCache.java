@@ -0,0 +1,227 @@
+package business.meshing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Caches meshes by the HullHash of what they were built from, in two tiers:
+ * the most recently used meshes in memory, within a byte budget, and all of
+ * them (within a larger budget) as mesh files on disk, which are memory
+ * mapped back when needed.
+ *
+ * Not thread safe: the editor uses it from the render thread only.
+ */
+public class MeshCache
+{
+
+    private static final String EXTENSION = ".mesh";
+    private final long memoryBudget;
+    private final File directory;
+    private final long diskBudget;
+    /**
+     * The memory tier, in access order: the first entry is the least recently
+     * used.
+     */
+    private final LinkedHashMap<String, CachedMesh> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    private long memoryHits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a cache with a memory tier only.
+     */
+    public MeshCache(long memoryBudget)
+    {
+        this(memoryBudget, null, 0);
+    }
+
+    /**
+     * @param directory the directory of the disk tier, created if needed.
+     */
+    public MeshCache(long memoryBudget, File directory, long diskBudget)
+    {
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+        this.diskBudget = diskBudget;
+        if (directory != null)
+        {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * Returns the mesh cached for the given hash, or null if there is none.
+     */
+    public CachedMesh get(String hash)
+    {
+        CachedMesh mesh = memory.get(hash);
+        if (mesh != null)
+        {
+            memoryHits++;
+            return mesh;
+        }
+
+        if (directory != null)
+        {
+            File file = getFile(hash);
+            if (file.isFile())
+            {
+                try
+                {
+                    mesh = CachedMesh.map(file);
+                    diskHits++;
+                    file.setLastModified(System.currentTimeMillis());
+                    putInMemory(hash, mesh);
+                    return mesh;
+                } catch (IOException e)
+                {
+                    // A stale or damaged file: drop it, and mesh again.
+                    System.err.println("Dropping cached mesh: " + e.getMessage());
+                    file.delete();
+                }
+            }
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * Caches the mesh built for the given hash, and returns it as cached.
+     */
+    public CachedMesh put(String hash, MeshData data)
+    {
+        return put(hash, CachedMesh.fromData(data));
+    }
+
+    /**
+     * Caches the mesh built for the given hash, for instance one loaded with
+     * a HullDocument.
+     */
+    public CachedMesh put(String hash, CachedMesh mesh)
+    {
+        putInMemory(hash, mesh);
+
+        if (directory != null)
+        {
+            try
+            {
+                File file = getFile(hash);
+                mesh.write(file);
+                trimDisk(file);
+            } catch (IOException e)
+            {
+                // The disk tier is only a bonus.
+                System.err.println("Could not write cached mesh: " + e.getMessage());
+            }
+        }
+        return mesh;
+    }
+
+    private void putInMemory(String hash, CachedMesh mesh)
+    {
+        CachedMesh previous = memory.put(hash, mesh);
+        if (previous != null)
+        {
+            memoryBytes -= previous.getByteSize();
+        }
+        memoryBytes += mesh.getByteSize();
+
+        // Evict the least recently used meshes, but always keep the new one.
+        Iterator<Map.Entry<String, CachedMesh>> iterator = memory.entrySet().iterator();
+        while (memoryBytes > memoryBudget && memory.size() > 1)
+        {
+            memoryBytes -= iterator.next().getValue().getByteSize();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Deletes the least recently used mesh files until the disk tier fits its
+     * budget, the given one excepted.
+     */
+    private void trimDisk(File kept)
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+        long total = 0;
+        for (File file : files)
+        {
+            total += file.length();
+        }
+        if (total <= diskBudget)
+        {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File f1, File f2)
+            {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length && total > diskBudget; i++)
+        {
+            if (files[i].getName().endsWith(EXTENSION) && !files[i].equals(kept))
+            {
+                total -= files[i].length();
+                files[i].delete();
+            }
+        }
+    }
+
+    private File getFile(String hash)
+    {
+        return new File(directory, hash + EXTENSION);
+    }
+
+    /**
+     * Empties the memory tier, keeping the disk tier.
+     */
+    public void clearMemory()
+    {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    public long getMemoryBytes()
+    {
+        return memoryBytes;
+    }
+
+    public long getMemoryHits()
+    {
+        return memoryHits;
+    }
+
+    public long getDiskHits()
+    {
+        return diskHits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Formats the cache statistics on one line.
+     */
+    public String format()
+    {
+        return String.format(Locale.ROOT, "Cache: %d memory hits, %d disk hits, %d misses, %d meshes in %.1f MB",
+                memoryHits, diskHits, misses, memory.size(), memoryBytes / (1024.0 * 1024.0));
+    }
+}
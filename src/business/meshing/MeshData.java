@@ -0,0 +1,92 @@
+package business.meshing;
+
+/**
+ * A mesh produced by the Mesher, as flat arrays ready to fill vertex buffers.
+ */
+public class MeshData
+{
+
+    private final float[] positions;
+    private final float[] normals;
+    private final int[] indices;
+    private final long millis;
+    private final MeshingMetrics metrics;
+    /**
+     * The octree, kept only when profiling (for its cell costs) or when the
+     * Mesher keeps it.
+     */
+    private OctreeNode octree = null;
+
+    public MeshData(float[] positions, float[] normals, int[] indices, long millis, MeshingMetrics metrics)
+    {
+        this.positions = positions;
+        this.normals = normals;
+        this.indices = indices;
+        this.millis = millis;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the vertex positions, 3 floats per vertex.
+     */
+    public float[] getPositions()
+    {
+        return positions;
+    }
+
+    /**
+     * @return the vertex normals, 3 floats per vertex.
+     */
+    public float[] getNormals()
+    {
+        return normals;
+    }
+
+    /**
+     * @return the triangles, 3 vertex indices per triangle.
+     */
+    public int[] getIndices()
+    {
+        return indices;
+    }
+
+    /**
+     * @return the time taken to build the mesh.
+     */
+    public long getMillis()
+    {
+        return millis;
+    }
+
+    /**
+     * @return the metrics of the run that built the mesh.
+     */
+    public MeshingMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * @return the octree, or null if the Mesher was neither profiling nor
+     * keeping it.
+     */
+    public OctreeNode getOctree()
+    {
+        return octree;
+    }
+
+    void setOctree(OctreeNode octree)
+    {
+        this.octree = octree;
+    }
+
+    public int getVertexCount()
+    {
+        return positions.length / 3;
+    }
+
+    public int getTriangleCount()
+    {
+        return indices.length / 3;
+    }
+}
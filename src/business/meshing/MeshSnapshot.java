@@ -0,0 +1,461 @@
+package business.meshing;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * An immutable mesh, cut into the chunks of a fixed lattice and held in a
+ * persistent octree of chunks. A snapshot built from the previous one shares
+ * its unchanged chunks, and the nodes above them: only the paths down to the
+ * chunks an edit changed are new, so a snapshot costs memory in proportion
+ * to the edited region.
+ *
+ * Each triangle goes to the chunk of its centroid, with copies of its
+ * vertices. Chunks are kept in a canonical order - vertices by position and
+ * normal, triangles by their vertices - so that equal geometry makes equal
+ * chunks, whatever order the mesher produced it in. A chunk only stays the
+ * same if its vertices do: an edit that grows the octree's root cell moves
+ * all of them, and the whole mesh is new.
+ */
+public final class MeshSnapshot
+{
+
+    /**
+     * The root spans 2^LEVELS chunks per axis, centered on the origin.
+     * Triangles beyond go to the border chunks.
+     */
+    private static final int LEVELS = 10;
+    private static final int HALF_SPAN = 1 << (LEVELS - 1);
+    /**
+     * Approximate size of a node, its children array included, and of a
+     * chunk's headers.
+     */
+    private static final long NODE_BYTES = 96;
+    private static final long CHUNK_BYTES = 64;
+    private final Node root;
+    private final float chunkSize;
+    private final long addedBytes;
+
+    /**
+     * A node of the chunk octree: a chunk, or children in 0bZYX order.
+     */
+    private static final class Node
+    {
+
+        final Node[] children;
+        final Chunk chunk;
+        /**
+         * Memory held by the subtree.
+         */
+        final long bytes;
+
+        Node(Node[] children, Chunk chunk, long bytes)
+        {
+            this.children = children;
+            this.chunk = chunk;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The triangles of a chunk, with their own vertices.
+     */
+    private static final class Chunk
+    {
+
+        final float[] positions;
+        final float[] normals;
+        final int[] indices;
+        final int hash;
+
+        Chunk(float[] positions, float[] normals, int[] indices)
+        {
+            this.positions = positions;
+            this.normals = normals;
+            this.indices = indices;
+            this.hash = 31 * (31 * Arrays.hashCode(positions) + Arrays.hashCode(normals)) + Arrays.hashCode(indices);
+        }
+
+        boolean isSame(Chunk other)
+        {
+            return hash == other.hash && Arrays.equals(indices, other.indices)
+                    && Arrays.equals(positions, other.positions) && Arrays.equals(normals, other.normals);
+        }
+
+        long getBytes()
+        {
+            return CHUNK_BYTES + 4L * (positions.length + normals.length + indices.length);
+        }
+    }
+
+    private MeshSnapshot(Node root, float chunkSize, long addedBytes)
+    {
+        this.root = root;
+        this.chunkSize = chunkSize;
+        this.addedBytes = addedBytes;
+    }
+
+    /**
+     * Takes a snapshot of the mesh, sharing the chunks of the previous
+     * snapshot it did not change.
+     *
+     * @param previous the snapshot to share with, or null.
+     * @param chunkSize the edge of the chunks, if there is no previous
+     * snapshot: they use the previous snapshot's lattice otherwise.
+     */
+    public static MeshSnapshot build(CachedMesh mesh, MeshSnapshot previous, float chunkSize)
+    {
+        if (previous != null)
+        {
+            chunkSize = previous.chunkSize;
+        }
+
+        // Sort the triangles by the Morton code of their chunk: the chunks of
+        // each subtree are then a run of the sorted triangles.
+        FloatBuffer positions = mesh.getPositions();
+        IntBuffer indices = mesh.getIndices();
+        long[] keys = new long[mesh.getTriangleCount()];
+        for (int t = 0; t < keys.length; t++)
+        {
+            int i0 = 3 * indices.get(3 * t);
+            int i1 = 3 * indices.get(3 * t + 1);
+            int i2 = 3 * indices.get(3 * t + 2);
+            long code = 0;
+            for (int axis = 0; axis < 3; axis++)
+            {
+                float centroid = (positions.get(i0 + axis) + positions.get(i1 + axis) + positions.get(i2 + axis)) / 3;
+                long cell = Math.max(0, Math.min(2 * HALF_SPAN - 1, (long) Math.floor(centroid / chunkSize) + HALF_SPAN));
+                code |= spread(cell) << axis;
+            }
+            keys[t] = code << 32 | t;
+        }
+        Arrays.sort(keys);
+
+        Builder builder = new Builder(mesh, keys);
+        Node root = builder.build(LEVELS, 0, 0, keys.length, previous == null ? null : previous.root);
+        return new MeshSnapshot(root, chunkSize, builder.addedBytes);
+    }
+
+    /**
+     * Spreads the bits of the value three bits apart, for a Morton code.
+     */
+    private static long spread(long value)
+    {
+        long spread = 0;
+        for (int bit = 0; bit < LEVELS; bit++)
+        {
+            spread |= (value >> bit & 1) << 3 * bit;
+        }
+        return spread;
+    }
+
+    /**
+     * Builds a snapshot's nodes, reusing the previous snapshot's where
+     * nothing changed.
+     */
+    private static class Builder
+    {
+
+        final FloatBuffer positions;
+        final FloatBuffer normals;
+        final IntBuffer indices;
+        final long[] keys;
+        long addedBytes = 0;
+
+        Builder(CachedMesh mesh, long[] keys)
+        {
+            this.positions = mesh.getPositions();
+            this.normals = mesh.getNormals();
+            this.indices = mesh.getIndices();
+            this.keys = keys;
+        }
+
+        /**
+         * Builds the subtree of the given level whose first code is given,
+         * from the triangles keys[from, to).
+         */
+        Node build(int level, long firstCode, int from, int to, Node previous)
+        {
+            if (from == to)
+            {
+                return null;
+            }
+            if (level == 0)
+            {
+                Chunk chunk = createChunk(from, to);
+                if (previous != null && previous.chunk.isSame(chunk))
+                {
+                    return previous;
+                }
+                Node leaf = new Node(null, chunk, NODE_BYTES + chunk.getBytes());
+                addedBytes += leaf.bytes;
+                return leaf;
+            }
+
+            long span = 1L << 3 * (level - 1);
+            Node[] children = new Node[8];
+            boolean same = previous != null;
+            long bytes = NODE_BYTES;
+            int start = from;
+            for (int c = 0; c < 8; c++)
+            {
+                long endCode = firstCode + (c + 1) * span;
+                int end = start;
+                while (end < to && keys[end] >>> 32 < endCode)
+                {
+                    end++;
+                }
+                children[c] = build(level - 1, firstCode + c * span, start, end, previous == null ? null : previous.children[c]);
+                same = same && children[c] == previous.children[c];
+                if (children[c] != null)
+                {
+                    bytes += children[c].bytes;
+                }
+                start = end;
+            }
+            if (same)
+            {
+                return previous;
+            }
+            addedBytes += NODE_BYTES;
+            return new Node(children, null, bytes);
+        }
+
+        /**
+         * Copies the triangles keys[from, to) and their vertices, in
+         * canonical order.
+         */
+        Chunk createChunk(int from, int to)
+        {
+            // The distinct vertices of the triangles.
+            int[] vertices = new int[3 * (to - from)];
+            for (int i = from; i < to; i++)
+            {
+                int t = (int) keys[i];
+                for (int k = 0; k < 3; k++)
+                {
+                    vertices[3 * (i - from) + k] = indices.get(3 * t + k);
+                }
+            }
+            Arrays.sort(vertices);
+            int count = 0;
+            for (int i = 0; i < vertices.length; i++)
+            {
+                if (i == 0 || vertices[i] != vertices[i - 1])
+                {
+                    vertices[count++] = vertices[i];
+                }
+            }
+            final int[] distinct = Arrays.copyOf(vertices, count);
+
+            // Order them by position, then normal.
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++)
+            {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>()
+            {
+                @Override
+                public int compare(Integer a, Integer b)
+                {
+                    return compareVertices(distinct[a], distinct[b]);
+                }
+            });
+            int[] rank = new int[count];
+            float[] chunkPositions = new float[3 * count];
+            float[] chunkNormals = new float[3 * count];
+            for (int i = 0; i < count; i++)
+            {
+                rank[order[i]] = i;
+                int v = 3 * distinct[order[i]];
+                for (int k = 0; k < 3; k++)
+                {
+                    chunkPositions[3 * i + k] = positions.get(v + k);
+                    chunkNormals[3 * i + k] = normals.get(v + k);
+                }
+            }
+
+            // Each triangle starts at its lowest vertex, which keeps its
+            // winding, and the triangles are sorted.
+            int[][] triangles = new int[to - from][];
+            for (int i = from; i < to; i++)
+            {
+                int t = (int) keys[i];
+                int[] triangle = new int[3];
+                for (int k = 0; k < 3; k++)
+                {
+                    triangle[k] = rank[Arrays.binarySearch(distinct, indices.get(3 * t + k))];
+                }
+                int first = triangle[0] <= triangle[1] ? (triangle[0] <= triangle[2] ? 0 : 2) : (triangle[1] <= triangle[2] ? 1 : 2);
+                triangles[i - from] = new int[]
+                {
+                    triangle[first], triangle[(first + 1) % 3], triangle[(first + 2) % 3]
+                };
+            }
+            Arrays.sort(triangles, new Comparator<int[]>()
+            {
+                @Override
+                public int compare(int[] a, int[] b)
+                {
+                    for (int k = 0; k < 3; k++)
+                    {
+                        if (a[k] != b[k])
+                        {
+                            return Integer.compare(a[k], b[k]);
+                        }
+                    }
+                    return 0;
+                }
+            });
+            int[] chunkIndices = new int[3 * triangles.length];
+            for (int i = 0; i < triangles.length; i++)
+            {
+                System.arraycopy(triangles[i], 0, chunkIndices, 3 * i, 3);
+            }
+            return new Chunk(chunkPositions, chunkNormals, chunkIndices);
+        }
+
+        int compareVertices(int a, int b)
+        {
+            for (int k = 0; k < 3; k++)
+            {
+                int c = Integer.compare(Float.floatToIntBits(positions.get(3 * a + k)), Float.floatToIntBits(positions.get(3 * b + k)));
+                if (c != 0)
+                {
+                    return c;
+                }
+            }
+            for (int k = 0; k < 3; k++)
+            {
+                int c = Integer.compare(Float.floatToIntBits(normals.get(3 * a + k)), Float.floatToIntBits(normals.get(3 * b + k)));
+                if (c != 0)
+                {
+                    return c;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Puts the chunks back together, welding the vertices they share. Only
+     * copies: no field is evaluated.
+     */
+    public CachedMesh toMesh()
+    {
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        collectChunks(root, chunks);
+        int vertexCount = 0;
+        int indexCount = 0;
+        for (Chunk chunk : chunks)
+        {
+            vertexCount += chunk.positions.length / 3;
+            indexCount += chunk.indices.length;
+        }
+
+        float[] positions = new float[3 * vertexCount];
+        float[] normals = new float[3 * vertexCount];
+        int[] indices = new int[indexCount];
+        HashMap<VertexKey, Integer> welded = new HashMap<>();
+        int count = 0;
+        int index = 0;
+        for (Chunk chunk : chunks)
+        {
+            int[] local = new int[chunk.positions.length / 3];
+            for (int i = 0; i < local.length; i++)
+            {
+                VertexKey key = new VertexKey(chunk.positions, chunk.normals, 3 * i);
+                Integer existing = welded.get(key);
+                if (existing == null)
+                {
+                    System.arraycopy(chunk.positions, 3 * i, positions, 3 * count, 3);
+                    System.arraycopy(chunk.normals, 3 * i, normals, 3 * count, 3);
+                    existing = count++;
+                    welded.put(key, existing);
+                }
+                local[i] = existing;
+            }
+            for (int i : chunk.indices)
+            {
+                indices[index++] = local[i];
+            }
+        }
+        return CachedMesh.fromData(new MeshData(Arrays.copyOf(positions, 3 * count), Arrays.copyOf(normals, 3 * count), indices, 0, new MeshingMetrics()));
+    }
+
+    private static void collectChunks(Node node, ArrayList<Chunk> chunks)
+    {
+        if (node == null)
+        {
+            return;
+        }
+        if (node.chunk != null)
+        {
+            chunks.add(node.chunk);
+            return;
+        }
+        for (Node child : node.children)
+        {
+            collectChunks(child, chunks);
+        }
+    }
+
+    /**
+     * A vertex's position and normal, by their bits.
+     */
+    private static final class VertexKey
+    {
+
+        final int[] bits = new int[6];
+        final int hash;
+
+        VertexKey(float[] positions, float[] normals, int offset)
+        {
+            for (int k = 0; k < 3; k++)
+            {
+                bits[k] = Float.floatToIntBits(positions[offset + k]);
+                bits[3 + k] = Float.floatToIntBits(normals[offset + k]);
+            }
+            hash = Arrays.hashCode(bits);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof VertexKey && Arrays.equals(bits, ((VertexKey) other).bits);
+        }
+    }
+
+    /**
+     * @return the memory the snapshot holds, shared nodes included.
+     */
+    public long getBytes()
+    {
+        return root == null ? 0 : root.bytes;
+    }
+
+    /**
+     * @return the memory of the nodes this snapshot did not share with the
+     * previous one.
+     */
+    public long getAddedBytes()
+    {
+        return addedBytes;
+    }
+
+    public float getChunkSize()
+    {
+        return chunkSize;
+    }
+}
@@ -1,9 +1,9 @@
-package business.misc;
+package business.meshing;
 
-import business.hull.Hull;
-import business.hull.primitives.Primitive;
+import business.meshing.shapes.Shape;
 import com.jme3.math.Vector3f;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 
 public class MeshUtils
@@ -65,7 +65,15 @@ public class MeshUtils
      * too different from the normal of the face, the vertex is duplicated to
      * allow sharp angles in the normals.
      */
-    public static Vector3f[] facetedNormalsFromFaces(ArrayList<Vector3i> triangles, ArrayList<Vector3f> vertices, ArrayList<Primitive> primitives, float sharpAngle)
+    public static Vector3f[] facetedNormalsFromFaces(ArrayList<Vector3i> triangles, ArrayList<Vector3f> vertices, ArrayList<Shape> shapes, float sharpAngle)
+    {
+        return facetedNormalsFromFaces(triangles, vertices, shapes, sharpAngle, new MeshingMetrics());
+    }
+
+    /**
+     * Same as above, counting the field evaluations in the metrics.
+     */
+    public static Vector3f[] facetedNormalsFromFaces(ArrayList<Vector3i> triangles, ArrayList<Vector3f> vertices, ArrayList<Shape> shapes, float sharpAngle, MeshingMetrics metrics)
     {
         ArrayList<Vector3f> mainNormals = new ArrayList<>();
         ArrayList<Vector3f> normals = new ArrayList<>();
@@ -80,8 +88,9 @@ public class MeshUtils
             ArrayList<Vector3i> adjacentTriangles = getAdjacentTriangles(vertex, triangles);
 
             // For each adjacent triangle, process the normals.
+            metrics.countFieldEvaluations(1 + adjacentTriangles.size());
             ArrayList<Vector3f> currentNormals = new ArrayList<>();
-            currentNormals.add(Hull.getNormalAt(vertices.get(vertex), primitives));
+            currentNormals.add(HullField.getNormalAt(vertices.get(vertex), shapes));
             for (Vector3i triangle : adjacentTriangles)
             {
                 // Process the normal from the geometry, at the center of the triangle.
@@ -89,7 +98,7 @@ public class MeshUtils
                 triangleCenter.addLocal(vertices.get(triangle.y));
                 triangleCenter.addLocal(vertices.get(triangle.z));
                 triangleCenter.divideLocal(3);
-                Vector3f normal = Hull.getNormalAt(triangleCenter, primitives);
+                Vector3f normal = HullField.getNormalAt(triangleCenter, shapes);
 
                 int bestIndex = -1;
                 float bestAngle = Float.MAX_VALUE;
@@ -142,4 +151,51 @@ public class MeshUtils
         mainNormals.addAll(normals);
         return mainNormals.toArray(new Vector3f[0]);
     }
-}
\ No newline at end of file
+
+    /**
+     * Mirrors a mesh lying in the x >= 0 half space across the x = 0 plane:
+     * appends the mirrored vertices and the mirrored triangles, with reversed
+     * winding. Vertices on the plane whose normal is parallel to it are shared
+     * by both halves, the others are duplicated to keep their crease. Returns
+     * the normals of the whole mesh.
+     */
+    public static Vector3f[] mirrorX(ArrayList<Vector3i> triangles, ArrayList<Vector3f> vertices, Vector3f[] normals)
+    {
+        ArrayList<Vector3f> allNormals = new ArrayList<>(Arrays.asList(normals));
+
+        // Mirror (or weld) each vertex.
+        int n = vertices.size();
+        int[] mirrorIndex = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            Vector3f vertex = vertices.get(i);
+            Vector3f normal = normals[i];
+            if (vertex.x == 0 && Math.abs(normal.x) < 0.01f)
+            {
+                normal.x = 0;
+                normal.normalizeLocal();
+                mirrorIndex[i] = i;
+            } else
+            {
+                mirrorIndex[i] = vertices.size();
+                vertices.add(new Vector3f(-vertex.x, vertex.y, vertex.z));
+                allNormals.add(new Vector3f(-normal.x, normal.y, normal.z));
+            }
+        }
+
+        // Mirror each triangle, reversing its orientation.
+        int m = triangles.size();
+        for (int i = 0; i < m; i++)
+        {
+            Vector3i triangle = triangles.get(i);
+            Vector3i mirror = new Vector3i(mirrorIndex[triangle.x], mirrorIndex[triangle.z], mirrorIndex[triangle.y]);
+            // A triangle lying on the plane is its own mirror.
+            if (mirror.x != triangle.x || mirror.y != triangle.z || mirror.z != triangle.y)
+            {
+                triangles.add(mirror);
+            }
+        }
+
+        return allNormals.toArray(new Vector3f[0]);
+    }
+}
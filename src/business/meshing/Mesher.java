@@ -0,0 +1,509 @@
+package business.meshing;
+
+import business.meshing.codegen.FieldCompiler;
+import business.meshing.shapes.Shape;
+import business.meshing.tasks.AdaptiveDualContouringTask;
+import business.meshing.tasks.DagContouringTask;
+import business.meshing.tasks.LevelConstructionTask;
+import business.meshing.tasks.MirrorSeamTask;
+import business.meshing.tasks.OctreeConstructionTask;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Meshes a set of shapes with the adaptive Dual Contouring: builds the
+ * octree, contours it, then computes the faceted normals. Needs no
+ * application nor display, only the shapes.
+ */
+public class Mesher
+{
+
+    /**
+     * The fraction of the shapes' box padded on each side of the root.
+     */
+    private static final float BOUNDS_MARGIN = 0.05f;
+    private int minDepth = 3;
+    private int maxDepth = 6;
+    private float sharpAngle = (float) Math.toRadians(10);
+    /**
+     * If true, the shapes are assumed symmetric across the x = 0 plane: only
+     * their x >= 0 half is meshed, then mirrored.
+     */
+    private boolean symmetric = false;
+    /**
+     * If true, the cost of each octree cell is recorded, and the octree is
+     * returned with the mesh.
+     */
+    private boolean profiling = false;
+    /**
+     * If true, the octree is returned with the mesh, even when not profiling.
+     */
+    private boolean keepingOctree = false;
+    /**
+     * If true, the field is specialized to the shapes before each run (see
+     * FieldCompiler).
+     */
+    private boolean specializing = false;
+    /**
+     * If true, the octree is built one level at a time (see
+     * LevelConstructionTask), unless profiling.
+     */
+    private boolean breadthFirst = false;
+    /**
+     * The size of the finest cells of the global lattice the root is snapped
+     * to, or 0 to fit the root to the shapes.
+     */
+    private float latticeCellSize = 0;
+    private final FieldCompiler fieldCompiler = new FieldCompiler();
+    /**
+     * Metrics summed over all the runs.
+     */
+    private final MeshingMetrics metrics = new MeshingMetrics();
+
+    /**
+     * Meshes the shapes in the shared pool (see MeshingPool).
+     */
+    public MeshData mesh(ArrayList<Shape> shapes)
+    {
+        return mesh(shapes, MeshingPool.get());
+    }
+
+    /**
+     * Meshes the shapes, running the tasks in the given pool.
+     */
+    public MeshData mesh(ArrayList<Shape> shapes, ForkJoinPool pool)
+    {
+        long start = System.currentTimeMillis();
+        MeshingMetrics runMetrics = new MeshingMetrics();
+        runMetrics.countRun();
+        MeshingEvent event = new MeshingEvent();
+        event.begin();
+        if (shapes.isEmpty())
+        {
+            metrics.add(runMetrics);
+            return new MeshData(new float[0], new float[0], new int[0], 0, runMetrics);
+        }
+        event.setSettings(this, shapes.size(), pool.getParallelism());
+        StageTimer timer = new StageTimer(runMetrics, event);
+
+        // Create an octree from the data
+        Vector3f[] bounds = getBounds(shapes, symmetric);
+        int depth = maxDepth;
+        if (latticeCellSize > 0)
+        {
+            Vector3f[] snapped = snapToLattice(bounds, latticeCellSize, symmetric);
+            depth = maxDepth + getSnappingLevels(bounds, snapped);
+            bounds = snapped;
+        }
+        int shallowDepth = Math.min(minDepth, depth);
+        ArrayList<Shape> field = specializing ? fieldCompiler.specialize(shapes) : shapes;
+        OctreeNode octree = new OctreeNode(bounds[0], bounds[1]);
+        runMetrics.countNodes(0, 1);
+        ArrayList<Vector3f> verticesList;
+        if (breadthFirst && !profiling)
+        {
+            LevelConstructionTask levelTask = new LevelConstructionTask(octree, field, shallowDepth, depth, symmetric, runMetrics);
+            pool.invoke(levelTask);
+            verticesList = levelTask.getVertices();
+        } else
+        {
+            OctreeConstructionTask dcOctreeTask = new OctreeConstructionTask(octree, field, shallowDepth, depth, symmetric, runMetrics);
+            dcOctreeTask.setProfiling(profiling);
+            pool.invoke(dcOctreeTask);
+            verticesList = dcOctreeTask.getVertices();
+        }
+        timer.end(MeshingMetrics.Stage.CONSTRUCTION, verticesList.size(), 0);
+
+        // Contour the octree.
+        AdaptiveDualContouringTask adaptiveTask = new AdaptiveDualContouringTask(octree, field, runMetrics);
+        pool.invoke(adaptiveTask);
+        timer.end(MeshingMetrics.Stage.CONTOURING, verticesList.size(), adaptiveTask.getTriangles().size());
+
+        // Retrieve computed data.
+        ArrayList<Vector3i> triangles = adaptiveTask.getTriangles();
+
+        // Stitch the half mesh to the symmetry plane.
+        if (symmetric)
+        {
+            MirrorSeamTask seamTask = new MirrorSeamTask(octree, field, verticesList, runMetrics);
+            pool.invoke(seamTask);
+            triangles.addAll(seamTask.getTriangles());
+            timer.end(MeshingMetrics.Stage.SEAM, verticesList.size(), triangles.size());
+        }
+
+        // Compute normals both from data and triangles.
+        Vector3f normals[] = MeshUtils.facetedNormalsFromFaces(triangles, verticesList, field, sharpAngle, runMetrics);
+        timer.end(MeshingMetrics.Stage.NORMALS, verticesList.size(), triangles.size());
+
+        // Mirror the half mesh, normals included.
+        if (symmetric)
+        {
+            normals = MeshUtils.mirrorX(triangles, verticesList, normals);
+            timer.end(MeshingMetrics.Stage.MIRROR, verticesList.size(), triangles.size());
+        }
+
+        MeshData data = toMeshData(verticesList, normals, triangles, start, runMetrics, event);
+        if (profiling || keepingOctree)
+        {
+            data.setOctree(octree);
+        }
+        return data;
+    }
+
+    /**
+     * Meshes the shapes from the graph of their octree, built by an earlier
+     * run with the same settings: only the contouring and the normals run,
+     * not the construction, which samples the field. The graph holds no mirror
+     * seam, so a symmetric hull must be meshed instead.
+     *
+     * @throws IllegalStateException if the mesher is symmetric.
+     */
+    public MeshData contour(OctreeDag dag, ArrayList<Shape> shapes, ForkJoinPool pool)
+    {
+        if (symmetric)
+        {
+            throw new IllegalStateException("An octree graph has no mirror seam: mesh a symmetric hull instead");
+        }
+        long start = System.currentTimeMillis();
+        MeshingMetrics runMetrics = new MeshingMetrics();
+        runMetrics.countRun();
+        MeshingEvent event = new MeshingEvent();
+        event.begin();
+        event.setSettings(this, shapes.size(), pool.getParallelism());
+        StageTimer timer = new StageTimer(runMetrics, event);
+
+        DagContouringTask dagTask = new DagContouringTask(dag);
+        pool.invoke(dagTask);
+        ArrayList<Vector3f> verticesList = dagTask.getVertices();
+        ArrayList<Vector3i> triangles = dagTask.getTriangles();
+        timer.end(MeshingMetrics.Stage.CONTOURING, verticesList.size(), triangles.size());
+
+        Vector3f normals[] = MeshUtils.facetedNormalsFromFaces(triangles, verticesList, shapes, sharpAngle, runMetrics);
+        timer.end(MeshingMetrics.Stage.NORMALS, verticesList.size(), triangles.size());
+
+        return toMeshData(verticesList, normals, triangles, start, runMetrics, event);
+    }
+
+    /**
+     * Drops a run's output to arrays, and ends its metrics and event.
+     */
+    private MeshData toMeshData(ArrayList<Vector3f> verticesList, Vector3f[] normals, ArrayList<Vector3i> triangles, long start,
+            MeshingMetrics runMetrics, MeshingEvent event)
+    {
+        int index = 0;
+        float[] positions = new float[3 * verticesList.size()];
+        for (Vector3f v : verticesList)
+        {
+            positions[index++] = v.x;
+            positions[index++] = v.y;
+            positions[index++] = v.z;
+        }
+        index = 0;
+        float[] normalList = new float[3 * normals.length];
+        for (Vector3f n : normals)
+        {
+            normalList[index++] = n.x;
+            normalList[index++] = n.y;
+            normalList[index++] = n.z;
+        }
+        index = 0;
+        int[] triangleList = new int[3 * triangles.size()];
+        for (Vector3i v : triangles)
+        {
+            triangleList[index++] = v.x;
+            triangleList[index++] = v.y;
+            triangleList[index++] = v.z;
+        }
+
+        runMetrics.countVertices(verticesList.size());
+        runMetrics.countTriangles(triangles.size());
+        metrics.add(runMetrics);
+        event.vertices = verticesList.size();
+        event.triangles = triangles.size();
+        event.commit();
+
+        return new MeshData(positions, normalList, triangleList, System.currentTimeMillis() - start, runMetrics);
+    }
+
+    /**
+     * Times the consecutive stages of a run, into its metrics and into Flight
+     * Recorder events.
+     */
+    private static class StageTimer
+    {
+
+        private final MeshingMetrics metrics;
+        private final MeshingEvent runEvent;
+        private long stageStart;
+        private MeshingStageEvent stageEvent;
+
+        StageTimer(MeshingMetrics metrics, MeshingEvent runEvent)
+        {
+            this.metrics = metrics;
+            this.runEvent = runEvent;
+            start();
+        }
+
+        private void start()
+        {
+            stageStart = System.nanoTime();
+            stageEvent = new MeshingStageEvent();
+            stageEvent.begin();
+        }
+
+        /**
+         * Ends the current stage, given its output size, and starts the next.
+         */
+        void end(MeshingMetrics.Stage stage, int vertices, int triangles)
+        {
+            metrics.recordStage(stage, System.nanoTime() - stageStart);
+            stageEvent.end();
+            if (stageEvent.shouldCommit())
+            {
+                stageEvent.copySettings(runEvent);
+                stageEvent.stage = stage.name();
+                stageEvent.vertices = vertices;
+                stageEvent.triangles = triangles;
+                stageEvent.commit();
+            }
+            start();
+        }
+    }
+
+    /**
+     * Returns the min and max corners of the root cell: the box enclosing the
+     * shapes' world bounds, padded by BOUNDS_MARGIN so that the surface stays
+     * clear of its faces. In symmetric mode, it is also centered on the x = 0
+     * plane.
+     */
+    public static Vector3f[] getBounds(ArrayList<Shape> shapes, boolean symmetric)
+    {
+        Vector3f minBound = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+        Vector3f maxBound = new Vector3f(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+        Vector3f shapeMin = new Vector3f();
+        Vector3f shapeMax = new Vector3f();
+        for (Shape shape : shapes)
+        {
+            shape.getWorldBounds(shapeMin, shapeMax);
+            minBound.minLocal(shapeMin);
+            maxBound.maxLocal(shapeMax);
+        }
+
+        float margin = BOUNDS_MARGIN * Math.max(maxBound.x - minBound.x, Math.max(maxBound.y - minBound.y, maxBound.z - minBound.z));
+        minBound.subtractLocal(margin, margin, margin);
+        maxBound.addLocal(margin, margin, margin);
+        if (symmetric)
+        {
+            // The root must be centered on the symmetry plane.
+            maxBound.x = Math.max(maxBound.x, -minBound.x);
+            minBound.x = -maxBound.x;
+        }
+
+        return new Vector3f[]
+        {
+            minBound, maxBound
+        };
+    }
+
+    /**
+     * Returns the min and max corners of the smallest box of the global
+     * lattice that encloses the given one: along each axis, its side is the
+     * cell size times a power of 2, and its min corner a multiple of half its
+     * side. The cells below it then have corners that are multiples of their
+     * size, so a cell and its corners keep the same place - and the same
+     * samples - whatever the shapes around, as long as the box keeps its
+     * sides. In symmetric mode, the box is centered on the x = 0 plane.
+     */
+    public static Vector3f[] snapToLattice(Vector3f[] bounds, float cellSize, boolean symmetric)
+    {
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        for (int axis = 0; axis < 3; axis++)
+        {
+            float low = bounds[0].get(axis);
+            float high = bounds[1].get(axis);
+            int level = 0;
+            float side, start;
+            do
+            {
+                if (level == Float.MAX_EXPONENT)
+                {
+                    throw new IllegalArgumentException("The shapes do not fit on the lattice");
+                }
+
+                // Powers of 2 times the cell size: all the corners are exact.
+                side = Math.scalb(cellSize, level++);
+                start = symmetric && axis == 0 ? -side / 2 : (float) Math.floor(low / (side / 2)) * (side / 2);
+            }
+            while (start > low || start + side < high);
+            min.set(axis, start);
+            max.set(axis, start + side);
+        }
+
+        return new Vector3f[]
+        {
+            min, max
+        };
+    }
+
+    /**
+     * Returns how many levels the octree must go deeper in the snapped box,
+     * for its finest cells to be no coarser, along any axis, than in the
+     * fitted one: the snapping grows each side up to 4 times, more for
+     * shapes smaller than a lattice cell.
+     */
+    private static int getSnappingLevels(Vector3f[] fitted, Vector3f[] snapped)
+    {
+        int levels = 0;
+        for (int axis = 0; axis < 3; axis++)
+        {
+            float fittedSide = fitted[1].get(axis) - fitted[0].get(axis);
+            float snappedSide = snapped[1].get(axis) - snapped[0].get(axis);
+            while (fittedSide > 0 && Math.scalb(fittedSide, levels) < snappedSide)
+            {
+                levels++;
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * @return the metrics summed over all the runs of this mesher. Each run's
+     * own metrics come with its MeshData.
+     */
+    public MeshingMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public boolean isProfiling()
+    {
+        return profiling;
+    }
+
+    /**
+     * @param profiling true to record what each octree cell costs to build,
+     * and return the octree with the mesh (see CostReport).
+     */
+    public void setProfiling(boolean profiling)
+    {
+        this.profiling = profiling;
+    }
+
+    public boolean isKeepingOctree()
+    {
+        return keepingOctree;
+    }
+
+    /**
+     * @param keepingOctree true to return the octree with the mesh, to save it
+     * with the hull (see HullDocument).
+     */
+    public void setKeepingOctree(boolean keepingOctree)
+    {
+        this.keepingOctree = keepingOctree;
+    }
+
+    public boolean isBreadthFirst()
+    {
+        return breadthFirst;
+    }
+
+    /**
+     * @param breadthFirst true to build the octree one level at a time, the
+     * field evaluated at the corners of each level in batches. The octree is
+     * the same; the vertices are numbered in another order.
+     */
+    public void setBreadthFirst(boolean breadthFirst)
+    {
+        this.breadthFirst = breadthFirst;
+    }
+
+    public boolean isSpecializing()
+    {
+        return specializing;
+    }
+
+    /**
+     * @param specializing true to compile a field specialized to the shapes
+     * before meshing them. Compiling costs some time, once per hull: it pays
+     * off on deep meshes.
+     */
+    public void setSpecializing(boolean specializing)
+    {
+        this.specializing = specializing;
+    }
+
+    public int getMinDepth()
+    {
+        return minDepth;
+    }
+
+    /**
+     * @param minDepth the depth down to which the octree is always
+     * subdivided. The tasks split where there is work, whatever the depth.
+     */
+    public void setMinDepth(int minDepth)
+    {
+        this.minDepth = minDepth;
+    }
+
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    /**
+     * @param maxDepth the depth of the finest cells.
+     */
+    public void setMaxDepth(int maxDepth)
+    {
+        this.maxDepth = maxDepth;
+    }
+
+    public float getSharpAngle()
+    {
+        return sharpAngle;
+    }
+
+    /**
+     * @param sharpAngle the angle (in radians) between face normals above which
+     * a vertex is split to keep a sharp edge.
+     */
+    public void setSharpAngle(float sharpAngle)
+    {
+        this.sharpAngle = sharpAngle;
+    }
+
+    public float getLatticeCellSize()
+    {
+        return latticeCellSize;
+    }
+
+    /**
+     * @param latticeCellSize the size of the finest cells of the global
+     * lattice the root is snapped to (see snapToLattice), or 0 to fit the
+     * root to the shapes. The octree then goes deeper than maxDepth by the
+     * levels the snapping grew the root, so that its finest cells are no
+     * coarser than those of the fitted root.
+     */
+    public void setLatticeCellSize(float latticeCellSize)
+    {
+        this.latticeCellSize = latticeCellSize;
+    }
+
+    public boolean isSymmetric()
+    {
+        return symmetric;
+    }
+
+    /**
+     * @param symmetric true to mesh only the x >= 0 half of the shapes and
+     * mirror it, which halves meshing time and memory for symmetric designs.
+     */
+    public void setSymmetric(boolean symmetric)
+    {
+        this.symmetric = symmetric;
+    }
+}
@@ -0,0 +1,55 @@
+package business.meshing;
+
+/**
+ * Flight Recorder event spanning a whole meshing run, with its settings and
+ * output sizes. Recorded as business.meshing.Mesh.
+ */
+public class MeshingEvent extends RecordedEvent
+{
+
+    /**
+     * Records the meshing's events: this one, MeshingStageEvent and
+     * TaskSplitEvent.
+     */
+    static final EventRecorder RECORDER = load("business.meshing.JfrMeshingRecorder");
+    public int shapeCount;
+    public int minDepth;
+    public int maxDepth;
+    public boolean symmetric;
+    /**
+     * Parallelism of the fork-join pool running the tasks.
+     */
+    public int parallelism;
+    public int vertices;
+    public int triangles;
+
+    @Override
+    protected EventRecorder getRecorder()
+    {
+        return RECORDER;
+    }
+
+    /**
+     * Sets the run's settings.
+     */
+    public void setSettings(Mesher mesher, int shapeCount, int parallelism)
+    {
+        this.shapeCount = shapeCount;
+        this.minDepth = mesher.getMinDepth();
+        this.maxDepth = mesher.getMaxDepth();
+        this.symmetric = mesher.isSymmetric();
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Copies the other event's settings.
+     */
+    void copySettings(MeshingEvent other)
+    {
+        this.shapeCount = other.shapeCount;
+        this.minDepth = other.minDepth;
+        this.maxDepth = other.maxDepth;
+        this.symmetric = other.symmetric;
+        this.parallelism = other.parallelism;
+    }
+}
@@ -0,0 +1,287 @@
+package business.meshing;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the meshing pipeline: time per stage, octree nodes created per
+ * depth, field evaluations, intersection solves, vertex solver iterations,
+ * vertices rejected (which force a subdivision) and triangles emitted - and
+ * the meshes reused from a cache or the undo history instead.
+ *
+ * Counters are LongAdders, so the tasks of any number of threads - or of
+ * concurrent meshings - can update the same metrics without contention.
+ */
+public class MeshingMetrics
+{
+
+    /**
+     * The stages of the pipeline. Upload is the copy to the GPU buffers, which
+     * only the editor does.
+     */
+    public static enum Stage
+    {
+
+        CONSTRUCTION, CONTOURING, SEAM, NORMALS, MIRROR, UPLOAD
+    }
+    /**
+     * Deepest octree level counted; deeper nodes are counted at this level.
+     */
+    public static final int MAX_DEPTH = 31;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    /**
+     * Time of each stage per run, in microseconds.
+     */
+    private final Histogram[] stageMicros = new Histogram[Stage.values().length];
+    private final LongAdder[] nodesPerDepth = new LongAdder[MAX_DEPTH + 1];
+    private final LongAdder fieldEvaluations = new LongAdder();
+    private final LongAdder intersectionSolves = new LongAdder();
+    /**
+     * Iterations of the vertex solver, per solve.
+     */
+    private final Histogram solverIterations = new Histogram();
+    private final LongAdder rejectedVertices = new LongAdder();
+    private final LongAdder vertices = new LongAdder();
+    private final LongAdder triangles = new LongAdder();
+    /**
+     * Remeshes answered from the mesh cache, with nothing meshed.
+     */
+    private final LongAdder cacheHits = new LongAdder();
+    /**
+     * Undos and redos, whose mesh comes from the history.
+     */
+    private final LongAdder historyHits = new LongAdder();
+
+    public MeshingMetrics()
+    {
+        for (int i = 0; i < stageNanos.length; i++)
+        {
+            stageNanos[i] = new LongAdder();
+            stageMicros[i] = new Histogram();
+        }
+        for (int i = 0; i < nodesPerDepth.length; i++)
+        {
+            nodesPerDepth[i] = new LongAdder();
+        }
+    }
+
+    public void countRun()
+    {
+        runs.increment();
+    }
+
+    public void recordStage(Stage stage, long nanos)
+    {
+        stageNanos[stage.ordinal()].add(nanos);
+        stageMicros[stage.ordinal()].record(nanos / 1000);
+    }
+
+    public void countNodes(int depth, int count)
+    {
+        nodesPerDepth[Math.min(depth, MAX_DEPTH)].add(count);
+    }
+
+    public void countFieldEvaluations(int count)
+    {
+        fieldEvaluations.add(count);
+    }
+
+    public void countIntersectionSolve()
+    {
+        intersectionSolves.increment();
+    }
+
+    public void recordSolve(int iterations)
+    {
+        solverIterations.record(iterations);
+    }
+
+    public void countRejectedVertex()
+    {
+        rejectedVertices.increment();
+    }
+
+    public void countVertices(int count)
+    {
+        vertices.add(count);
+    }
+
+    public void countTriangles(int count)
+    {
+        triangles.add(count);
+    }
+
+    public void countCacheHit()
+    {
+        cacheHits.increment();
+    }
+
+    public void countHistoryHit()
+    {
+        historyHits.increment();
+    }
+
+    public long getRuns()
+    {
+        return runs.sum();
+    }
+
+    public double getStageMillis(Stage stage)
+    {
+        return stageNanos[stage.ordinal()].sum() / 1e6;
+    }
+
+    /**
+     * @return the distribution of the stage's time per run, in microseconds.
+     */
+    public Histogram getStageHistogram(Stage stage)
+    {
+        return stageMicros[stage.ordinal()];
+    }
+
+    public long getNodes(int depth)
+    {
+        return nodesPerDepth[Math.min(depth, MAX_DEPTH)].sum();
+    }
+
+    public long getNodeCount()
+    {
+        long sum = 0;
+        for (LongAdder adder : nodesPerDepth)
+        {
+            sum += adder.sum();
+        }
+        return sum;
+    }
+
+    public long getFieldEvaluations()
+    {
+        return fieldEvaluations.sum();
+    }
+
+    public long getIntersectionSolves()
+    {
+        return intersectionSolves.sum();
+    }
+
+    /**
+     * @return the distribution of the vertex solver's iterations per solve.
+     */
+    public Histogram getSolverIterations()
+    {
+        return solverIterations;
+    }
+
+    public long getRejectedVertices()
+    {
+        return rejectedVertices.sum();
+    }
+
+    public long getVertices()
+    {
+        return vertices.sum();
+    }
+
+    public long getTriangles()
+    {
+        return triangles.sum();
+    }
+
+    public long getCacheHits()
+    {
+        return cacheHits.sum();
+    }
+
+    public long getHistoryHits()
+    {
+        return historyHits.sum();
+    }
+
+    /**
+     * Adds the other metrics' counts to these.
+     */
+    public void add(MeshingMetrics other)
+    {
+        runs.add(other.getRuns());
+        for (int i = 0; i < stageNanos.length; i++)
+        {
+            stageNanos[i].add(other.stageNanos[i].sum());
+            stageMicros[i].add(other.stageMicros[i]);
+        }
+        for (int i = 0; i < nodesPerDepth.length; i++)
+        {
+            nodesPerDepth[i].add(other.nodesPerDepth[i].sum());
+        }
+        fieldEvaluations.add(other.getFieldEvaluations());
+        intersectionSolves.add(other.getIntersectionSolves());
+        solverIterations.add(other.solverIterations);
+        rejectedVertices.add(other.getRejectedVertices());
+        vertices.add(other.getVertices());
+        triangles.add(other.getTriangles());
+        cacheHits.add(other.getCacheHits());
+        historyHits.add(other.getHistoryHits());
+    }
+
+    public void reset()
+    {
+        runs.reset();
+        for (int i = 0; i < stageNanos.length; i++)
+        {
+            stageNanos[i].reset();
+            stageMicros[i].reset();
+        }
+        for (LongAdder adder : nodesPerDepth)
+        {
+            adder.reset();
+        }
+        fieldEvaluations.reset();
+        intersectionSolves.reset();
+        solverIterations.reset();
+        rejectedVertices.reset();
+        vertices.reset();
+        triangles.reset();
+        cacheHits.reset();
+        historyHits.reset();
+    }
+
+    /**
+     * Formats the metrics as a few lines of text.
+     */
+    public String format()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Stage stage : Stage.values())
+        {
+            if (getStageHistogram(stage).getCount() > 0)
+            {
+                builder.append(String.format(Locale.ROOT, "%-13s %,.1f ms%n", stage.name().toLowerCase(Locale.ROOT), getStageMillis(stage)));
+            }
+        }
+        builder.append("nodes/depth  ");
+        for (int depth = 0; depth <= MAX_DEPTH; depth++)
+        {
+            long nodes = getNodes(depth);
+            if (nodes > 0)
+            {
+                builder.append(' ').append(depth).append(':').append(nodes);
+            }
+        }
+        builder.append(String.format(Locale.ROOT, "%n"));
+        builder.append(String.format(Locale.ROOT, "field evals   %,d%n", getFieldEvaluations()));
+        builder.append(String.format(Locale.ROOT, "intersections %,d%n", getIntersectionSolves()));
+        builder.append(String.format(Locale.ROOT, "vertex solves %,d (%.1f iterations avg, p99 <= %d)%n",
+                solverIterations.getCount(), solverIterations.getMean(), solverIterations.getPercentile(99)));
+        builder.append(String.format(Locale.ROOT, "rejected      %,d vertices%n", getRejectedVertices()));
+        builder.append(String.format(Locale.ROOT, "output        %,d vertices, %,d triangles", getVertices(), getTriangles()));
+        if (getCacheHits() > 0)
+        {
+            builder.append(String.format(Locale.ROOT, "%nfrom cache    %,d meshes", getCacheHits()));
+        }
+        if (getHistoryHits() > 0)
+        {
+            builder.append(String.format(Locale.ROOT, "%nfrom history  %,d meshes", getHistoryHits()));
+        }
+        return builder.toString();
+    }
+}
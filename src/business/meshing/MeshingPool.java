@@ -0,0 +1,31 @@
+package business.meshing;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The pool the meshers run in when not given one. Created on first use, and
+ * kept for the life of the application, so that a remesh starts no threads
+ * and finds the workers warm. Its workers are daemon threads, and the idle
+ * ones time out on their own.
+ */
+public class MeshingPool
+{
+
+    private static ForkJoinPool pool = null;
+
+    private MeshingPool()
+    {
+    }
+
+    /**
+     * @return the shared pool, with one worker per core.
+     */
+    public static synchronized ForkJoinPool get()
+    {
+        if (pool == null)
+        {
+            pool = new ForkJoinPool();
+        }
+        return pool;
+    }
+}
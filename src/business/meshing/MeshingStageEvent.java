@@ -0,0 +1,12 @@
+package business.meshing;
+
+/**
+ * Flight Recorder event spanning one stage of a meshing run: construction,
+ * contouring, seam, normals, mirror or upload. Recorded as
+ * business.meshing.Stage.
+ */
+public class MeshingStageEvent extends MeshingEvent
+{
+
+    public String stage;
+}
@@ -0,0 +1,541 @@
+package business.meshing;
+
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * An octree with its identical subtrees merged: a directed acyclic graph,
+ * built by hash consing the tree bottom up. The nodes hold no position, only
+ * their structure and, at the leaves, their Hermite data relative to their
+ * cell: two copies of a frame one cell apart, or two stiffeners, are one
+ * subtree. The subtrees without a vertex, in or out of the hull, contribute
+ * nothing to the contouring: they collapse to the empty leaf.
+ *
+ * A node is an int id: EMPTY, a vertex leaf (negative) or a subdivided node
+ * (positive), whose children have smaller ids. A vertex leaf holds its
+ * vertex, relative to its cell and quantized to 21 bits per axis over seven
+ * cells' width, and the sign of the field at its 8 corners, for the
+ * contouring to run without the shapes (see DagContouringTask). The rare
+ * vertex straying further from its cell is kept exact, in a leaf of its own.
+ */
+public class OctreeDag
+{
+
+    public static final int EMPTY = 0;
+    /**
+     * The sign of the field at a corner, 2 bits per corner in a leaf's signs.
+     */
+    public static final int POSITIVE = 0;
+    public static final int NEGATIVE = 1;
+    public static final int ZERO = 2;
+    private static final int QUANTIZATION_BITS = 21;
+    private static final int QUANTIZATION_MAX = (1 << QUANTIZATION_BITS) - 1;
+    /**
+     * The cells' widths quantized on either side of a cell.
+     */
+    private static final int QUANTIZATION_MARGIN = 3;
+    /**
+     * The bit marking a leaf's vertex as exact: the rest of it is then the
+     * index of its coordinates in the exact vertices.
+     */
+    private static final long EXACT = 1L << 63;
+    private final Vector3f minBound;
+    private final Vector3f maxBound;
+    private int root;
+    /**
+     * The children of the subdivided nodes, 8 per node: node id k has its
+     * children at 8 * (k - 1).
+     */
+    private int[] children;
+    private int nodeCount;
+    /**
+     * The vertex leaves: leaf id -1 - k has its quantized vertex and its
+     * corners' signs at k.
+     */
+    private long[] leafVertices;
+    private char[] leafSigns;
+    private int leafCount;
+    /**
+     * The coordinates of the exact vertices, 3 floats each.
+     */
+    private float[] exactVertices;
+    private int exactCount;
+
+    private OctreeDag(Vector3f minBound, Vector3f maxBound, int nodeCapacity, int leafCapacity)
+    {
+        this.minBound = minBound.clone();
+        this.maxBound = maxBound.clone();
+        this.children = new int[8 * Math.max(1, nodeCapacity)];
+        this.leafVertices = new long[Math.max(1, leafCapacity)];
+        this.leafSigns = new char[Math.max(1, leafCapacity)];
+        this.exactVertices = new float[0];
+    }
+
+    /**
+     * Builds the graph of an octree.
+     *
+     * @param vertices the vertices the octree's vertex indices refer to, 3
+     * floats each.
+     * @param shapes the shapes the octree was built from, to sign the
+     * corners of its vertex cells.
+     */
+    public static OctreeDag build(OctreeNode octree, FloatBuffer vertices, ArrayList<Shape> shapes)
+    {
+        OctreeDag dag = new OctreeDag(octree.getMinBound(), octree.getMaxBound(), 64, 64);
+        Builder builder = new Builder(dag, vertices, shapes);
+        dag.root = builder.add(octree);
+        return dag;
+    }
+
+    /**
+     * @return the id of the root.
+     */
+    public int getRoot()
+    {
+        return root;
+    }
+
+    public Vector3f getMinBound()
+    {
+        return minBound;
+    }
+
+    public Vector3f getMaxBound()
+    {
+        return maxBound;
+    }
+
+    public static boolean isLeaf(int node)
+    {
+        return node <= 0;
+    }
+
+    public static boolean isVertex(int node)
+    {
+        return node < 0;
+    }
+
+    /**
+     * Returns a child of a subdivided node, or the node itself if it is a
+     * leaf, as the children of an OctreeNode bearing a vertex are.
+     */
+    public int getChild(int node, int child)
+    {
+        return node > 0 ? children[8 * (node - 1) + child] : node;
+    }
+
+    /**
+     * Returns the sign of the field at a corner of a vertex leaf: POSITIVE,
+     * NEGATIVE or ZERO.
+     */
+    public int getCornerSign(int leaf, int corner)
+    {
+        return (leafSigns[-1 - leaf] >> (2 * corner)) & 3;
+    }
+
+    /**
+     * Writes the vertex of a vertex leaf, standing in the given cell, into
+     * the given vector.
+     */
+    public Vector3f getVertex(int leaf, Vector3f cellMin, Vector3f cellMax, Vector3f store)
+    {
+        long quantized = leafVertices[-1 - leaf];
+        if ((quantized & EXACT) != 0)
+        {
+            int index = 3 * (int) (quantized & ~EXACT);
+            return store.set(exactVertices[index], exactVertices[index + 1], exactVertices[index + 2]);
+        }
+        store.x = dequantize(quantized >>> (2 * QUANTIZATION_BITS), cellMin.x, cellMax.x);
+        store.y = dequantize(quantized >>> QUANTIZATION_BITS, cellMin.y, cellMax.y);
+        store.z = dequantize(quantized, cellMin.z, cellMax.z);
+        return store;
+    }
+
+    /**
+     * Maps a coordinate to [0, QUANTIZATION_MAX], from QUANTIZATION_MARGIN
+     * cells' widths below the cell to as many above, or returns -1 if it lies
+     * further: the vertices may stray out of their cells.
+     */
+    private static long quantize(float value, float min, float max)
+    {
+        float relative = max > min ? (value - min) / (max - min) : 0;
+        long quantized = Math.round((relative + QUANTIZATION_MARGIN) / (2 * QUANTIZATION_MARGIN + 1) * QUANTIZATION_MAX);
+        return quantized >= 0 && quantized <= QUANTIZATION_MAX ? quantized : -1;
+    }
+
+    private static float dequantize(long quantized, float min, float max)
+    {
+        float relative = (quantized & QUANTIZATION_MAX) * (2f * QUANTIZATION_MARGIN + 1) / QUANTIZATION_MAX - QUANTIZATION_MARGIN;
+        return min + relative * (max - min);
+    }
+
+    /**
+     * @return the number of distinct subdivided nodes.
+     */
+    public int getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * @return the number of distinct vertex leaves.
+     */
+    public int getLeafCount()
+    {
+        return leafCount;
+    }
+
+    /**
+     * @return the number of vertex leaves kept exact.
+     */
+    public int getExactCount()
+    {
+        return exactCount;
+    }
+
+    /**
+     * @return the memory the graph holds, roughly.
+     */
+    public long getBytes()
+    {
+        return 4L * children.length + 8L * leafVertices.length + 2L * leafSigns.length + 4L * exactVertices.length + 64;
+    }
+
+    /**
+     * Expands the graph back into a tree, each path its own node, and adds
+     * its vertices to the list, in depth first order.
+     */
+    public OctreeNode expand(ArrayList<Vector3f> vertices)
+    {
+        OctreeNode octree = new OctreeNode(minBound.clone(), maxBound.clone());
+        expand(root, octree, vertices);
+        return octree;
+    }
+
+    private void expand(int node, OctreeNode cell, ArrayList<Vector3f> vertices)
+    {
+        if (isVertex(node))
+        {
+            cell.setVertex(vertices.size());
+            vertices.add(getVertex(node, cell.getMinBound(), cell.getMaxBound(), new Vector3f()));
+        } else if (node != EMPTY)
+        {
+            cell.subdivide();
+            for (int i = 0; i < 8; i++)
+            {
+                expand(getChild(node, i), cell.getChildren()[i], vertices);
+            }
+        }
+    }
+
+    /**
+     * @return the size of the graph written by write.
+     */
+    public int getByteSize()
+    {
+        return 6 * 4 + 4 * 4 + 4 * 8 * nodeCount + 8 * leafCount + (2 * leafCount + 3) / 4 * 4 + 12 * exactCount;
+    }
+
+    /**
+     * Writes the graph: its bounds (6 floats), its root id, node count, leaf
+     * count and exact vertex count (4 ints), the children of the nodes (8
+     * ints each), the leaves' vertices (a long each), their signs (a char
+     * each) padded to 4 bytes, then the exact vertices (3 floats each).
+     */
+    public void write(ByteBuffer buffer)
+    {
+        buffer.putFloat(minBound.x).putFloat(minBound.y).putFloat(minBound.z);
+        buffer.putFloat(maxBound.x).putFloat(maxBound.y).putFloat(maxBound.z);
+        buffer.putInt(root).putInt(nodeCount).putInt(leafCount).putInt(exactCount);
+        for (int i = 0; i < 8 * nodeCount; i++)
+        {
+            buffer.putInt(children[i]);
+        }
+        for (int i = 0; i < leafCount; i++)
+        {
+            buffer.putLong(leafVertices[i]);
+        }
+        for (int i = 0; i < leafCount; i++)
+        {
+            buffer.putChar(leafSigns[i]);
+        }
+        if (leafCount % 2 != 0)
+        {
+            buffer.putChar((char) 0);
+        }
+        for (int i = 0; i < 3 * exactCount; i++)
+        {
+            buffer.putFloat(exactVertices[i]);
+        }
+    }
+
+    /**
+     * Reads a graph written by write.
+     *
+     * @throws IllegalStateException if a node refers to a node not read yet,
+     * or a leaf to a missing exact vertex.
+     */
+    public static OctreeDag read(ByteBuffer buffer)
+    {
+        Vector3f min = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        Vector3f max = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        int root = buffer.getInt();
+        int nodeCount = buffer.getInt();
+        int leafCount = buffer.getInt();
+        int exactCount = buffer.getInt();
+        if (nodeCount < 0 || leafCount < 0 || exactCount < 0
+                || 32L * nodeCount + 10L * leafCount + 12L * exactCount > buffer.remaining())
+        {
+            throw new IllegalStateException("Truncated octree graph");
+        }
+
+        OctreeDag dag = new OctreeDag(min, max, nodeCount, leafCount);
+        for (int i = 0; i < 8 * nodeCount; i++)
+        {
+            int child = buffer.getInt();
+            // Children come before their parents.
+            if (child > i / 8 || -1 - child >= leafCount)
+            {
+                throw new IllegalStateException("Bad octree graph node");
+            }
+            dag.children[i] = child;
+        }
+        for (int i = 0; i < leafCount; i++)
+        {
+            long vertex = buffer.getLong();
+            if ((vertex & EXACT) != 0 && (vertex & ~EXACT) >= exactCount)
+            {
+                throw new IllegalStateException("Bad octree graph leaf");
+            }
+            dag.leafVertices[i] = vertex;
+        }
+        for (int i = 0; i < leafCount; i++)
+        {
+            dag.leafSigns[i] = buffer.getChar();
+        }
+        if (leafCount % 2 != 0)
+        {
+            buffer.getChar();
+        }
+        dag.exactVertices = new float[3 * exactCount];
+        for (int i = 0; i < 3 * exactCount; i++)
+        {
+            dag.exactVertices[i] = buffer.getFloat();
+        }
+        if (root > nodeCount || -1 - root >= leafCount)
+        {
+            throw new IllegalStateException("Bad octree graph root");
+        }
+        dag.root = root;
+        dag.nodeCount = nodeCount;
+        dag.leafCount = leafCount;
+        dag.exactCount = exactCount;
+        return dag;
+    }
+
+    /**
+     * Hash conses the nodes of a tree into a graph: open addressing tables
+     * from the nodes' content to their ids.
+     */
+    private static class Builder
+    {
+
+        private final OctreeDag dag;
+        private final FloatBuffer vertices;
+        private final ArrayList<Shape> shapes;
+        private final Vector3f corner = new Vector3f();
+        private int[] nodeTable = new int[64];
+        private int[] leafTable = new int[64];
+
+        Builder(OctreeDag dag, FloatBuffer vertices, ArrayList<Shape> shapes)
+        {
+            this.dag = dag;
+            this.vertices = vertices;
+            this.shapes = shapes;
+        }
+
+        /**
+         * Adds the subtree to the graph, and returns its id.
+         */
+        int add(OctreeNode cell)
+        {
+            if (cell == null)
+            {
+                return EMPTY;
+            }
+            if (cell.getVertexIndex() != -1)
+            {
+                return addLeaf(cell);
+            }
+            if (cell.isLeaf())
+            {
+                return EMPTY;
+            }
+
+            int[] ids = new int[8];
+            boolean empty = true;
+            for (int i = 0; i < 8; i++)
+            {
+                ids[i] = add(cell.getChildren()[i]);
+                empty &= ids[i] == EMPTY;
+            }
+            return empty ? EMPTY : addNode(ids);
+        }
+
+        private int addLeaf(OctreeNode cell)
+        {
+            Vector3f min = cell.getMinBound();
+            Vector3f max = cell.getMaxBound();
+            int index = 3 * cell.getVertexIndex();
+            float x = vertices.get(index);
+            float y = vertices.get(index + 1);
+            float z = vertices.get(index + 2);
+            long qx = quantize(x, min.x, max.x);
+            long qy = quantize(y, min.y, max.y);
+            long qz = quantize(z, min.z, max.z);
+            long vertex;
+            if (qx != -1 && qy != -1 && qz != -1)
+            {
+                vertex = qx << (2 * QUANTIZATION_BITS) | qy << QUANTIZATION_BITS | qz;
+            } else
+            {
+                // Too far from its cell: keep it exact.
+                if (3 * dag.exactCount == dag.exactVertices.length)
+                {
+                    dag.exactVertices = Arrays.copyOf(dag.exactVertices, Math.max(48, 2 * dag.exactVertices.length));
+                }
+                dag.exactVertices[3 * dag.exactCount] = x;
+                dag.exactVertices[3 * dag.exactCount + 1] = y;
+                dag.exactVertices[3 * dag.exactCount + 2] = z;
+                vertex = EXACT | dag.exactCount++;
+            }
+            int signs = 0;
+            for (int i = 0; i < 8; i++)
+            {
+                float value = HullField.getValueAt(cell.getCorner(i, corner), shapes);
+                signs |= (value < 0 ? NEGATIVE : value > 0 ? POSITIVE : ZERO) << (2 * i);
+            }
+
+            int hash = mix(Long.hashCode(vertex) * 31 + signs);
+            int mask = leafTable.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask)
+            {
+                int id = leafTable[slot];
+                if (id == 0)
+                {
+                    break;
+                }
+                if (dag.leafVertices[-1 - id] == vertex && dag.leafSigns[-1 - id] == signs)
+                {
+                    return id;
+                }
+            }
+
+            if (dag.leafCount == dag.leafVertices.length)
+            {
+                dag.leafVertices = Arrays.copyOf(dag.leafVertices, 2 * dag.leafCount);
+                dag.leafSigns = Arrays.copyOf(dag.leafSigns, 2 * dag.leafCount);
+            }
+            dag.leafVertices[dag.leafCount] = vertex;
+            dag.leafSigns[dag.leafCount] = (char) signs;
+            int id = -1 - dag.leafCount++;
+            leafTable = insert(leafTable, id, hash, dag.leafCount);
+            return id;
+        }
+
+        private int addNode(int[] ids)
+        {
+            int hash = mix(Arrays.hashCode(ids));
+            int mask = nodeTable.length - 1;
+            for (int slot = hash & mask;; slot = (slot + 1) & mask)
+            {
+                int id = nodeTable[slot];
+                if (id == 0)
+                {
+                    break;
+                }
+                if (sameChildren(id, ids))
+                {
+                    return id;
+                }
+            }
+
+            if (8 * dag.nodeCount == dag.children.length)
+            {
+                dag.children = Arrays.copyOf(dag.children, 2 * dag.children.length);
+            }
+            System.arraycopy(ids, 0, dag.children, 8 * dag.nodeCount, 8);
+            int id = ++dag.nodeCount;
+            nodeTable = insert(nodeTable, id, hash, dag.nodeCount);
+            return id;
+        }
+
+        private boolean sameChildren(int id, int[] ids)
+        {
+            for (int i = 0; i < 8; i++)
+            {
+                if (dag.children[8 * (id - 1) + i] != ids[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Inserts the id in the table at its hash, and returns the table,
+         * doubled if it was getting half full.
+         */
+        private int[] insert(int[] table, int id, int hash, int count)
+        {
+            if (2 * count > table.length)
+            {
+                int[] grown = new int[2 * table.length];
+                for (int old : table)
+                {
+                    if (old != 0)
+                    {
+                        put(grown, old, hash(old));
+                    }
+                }
+                table = grown;
+            }
+            put(table, id, hash);
+            return table;
+        }
+
+        private static void put(int[] table, int id, int hash)
+        {
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (table[slot] != 0)
+            {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id;
+        }
+
+        /**
+         * Returns the hash of a node or leaf of the graph.
+         */
+        private int hash(int id)
+        {
+            if (id < 0)
+            {
+                return mix(Long.hashCode(dag.leafVertices[-1 - id]) * 31 + dag.leafSigns[-1 - id]);
+            }
+            int start = 8 * (id - 1);
+            return mix(Arrays.hashCode(Arrays.copyOfRange(dag.children, start, start + 8)));
+        }
+
+        private static int mix(int hash)
+        {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -1,4 +1,4 @@
-package business.misc;
+package business.meshing;
 
 import com.jme3.math.Vector3f;
 
@@ -14,8 +14,17 @@ public class OctreeNode
     private final Vector3f minBound, maxBound;
     private int vertexIndex = -1;
     private int depth;
+    /**
+     * Cost of building this very cell, its children excluded. Null unless the
+     * construction was profiled.
+     */
+    private CellCost cost;
 
-    private OctreeNode(Vector3f minBound, Vector3f maxBound, int depth)
+    /**
+     * Creates a node standing at the given depth, as a cell of a larger
+     * octree built piece by piece.
+     */
+    public OctreeNode(Vector3f minBound, Vector3f maxBound, int depth)
     {
         this.minBound = minBound;
         this.maxBound = maxBound;
@@ -119,6 +128,15 @@ public class OctreeNode
         }
     }
 
+    /**
+     * Removes a child, for a subtree the contouring no longer needs: the
+     * contouring skips missing children as cells without vertices.
+     */
+    public void removeChild(int index)
+    {
+        children[index] = null;
+    }
+
     /**
      * Returns true iff the the vertex is inside the cubes bounds.
      */
@@ -142,21 +160,58 @@ public class OctreeNode
             return maxBound;
         }
 
-        Vector3f result = minBound.clone();
-        if ((corner & 1) != 0)
-        {
-            result.x = maxBound.x;
-        }
-        if ((corner & 2) != 0)
+        return getCorner(corner, new Vector3f());
+    }
+
+    /**
+     * Writes the location of the given corner into the given vector, and
+     * returns it.
+     */
+    public Vector3f getCorner(int corner, Vector3f store)
+    {
+        store.x = (corner & 1) != 0 ? maxBound.x : minBound.x;
+        store.y = (corner & 2) != 0 ? maxBound.y : minBound.y;
+        store.z = (corner & 4) != 0 ? maxBound.z : minBound.z;
+        return store;
+    }
+
+    /**
+     * Returns the mirror image of this node across the x = 0 plane, for a node
+     * lying on the x >= 0 side and touching the plane. Only the subtree
+     * touching the plane is mirrored, and the mirrored vertex of vertex i is
+     * referenced as -2 - i.
+     */
+    public OctreeNode mirrorOnSeam()
+    {
+        OctreeNode mirror = new OctreeNode(new Vector3f(-maxBound.x, minBound.y, minBound.z), new Vector3f(-minBound.x, maxBound.y, maxBound.z), depth);
+
+        if (vertexIndex != -1)
         {
-            result.y = maxBound.y;
-        }
-        if ((corner & 4) != 0)
+            mirror.setVertex(-2 - vertexIndex);
+        } else if (!isLeaf())
         {
-            result.z = maxBound.z;
+            // The children touching the plane are the ones on the low X side,
+            // they become the high X children of the mirror.
+            for (int i = 0; i < 8; i += 2)
+            {
+                mirror.children[i | 1] = children[i].mirrorOnSeam();
+            }
         }
 
-        return result;
+        return mirror;
+    }
+
+    /**
+     * @return the cost of building this cell, or null if not profiled.
+     */
+    public CellCost getCost()
+    {
+        return cost;
+    }
+
+    public void setCost(CellCost cost)
+    {
+        this.cost = cost;
     }
 
     /** Returns the length of the cube's diagonal. */
@@ -0,0 +1,375 @@
+package business.meshing;
+
+import business.meshing.export.MeshExporter;
+import business.meshing.export.ObjExporter;
+import business.meshing.export.PlyExporter;
+import business.meshing.shapes.Shape;
+import business.meshing.tasks.ChunkContouringTask;
+import business.meshing.tasks.OctreeConstructionTask;
+import com.jme3.math.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Meshes shapes at depths whose octree would not fit in memory, straight to
+ * a PLY or OBJ file.
+ *
+ * The root cell is cut into a grid of chunks, the cells of the chunk depth,
+ * processed in Z, then Y, then X order. The chunks of a row are built in
+ * parallel, then processed one at a time: each chunk is
+ * contoured, then stitched to the chunks built before it across their
+ * shared faces and edges, and its vertices and triangles are written right
+ * away. Only the previous and current slabs of chunks are kept, pruned down
+ * to what later chunks can still stitch to: the subtrees holding vertices
+ * and touching the chunk's high X, Y or Z face. The chunk depth is the
+ * shallowest whose rows of chunks fit in half the memory budget. With the
+ * same depths, the triangles are the ones the Mesher builds.
+ *
+ * The vertex normals are the field's gradient, as the faceted normals would
+ * need the whole mesh. Symmetry is not used: the hull is meshed in full.
+ */
+public class OutOfCoreMesher
+{
+
+    /**
+     * Approximate size of an octree node, its bounds and children included.
+     */
+    private static final long NODE_BYTES = 160;
+    private int minDepth = 3;
+    private int maxDepth = 9;
+    private long memoryBudget = 256L << 20;
+
+    /**
+     * Meshes the shapes to the file, in the format of its extension (ply or
+     * obj), in the shared pool (see MeshingPool).
+     *
+     * @return the metrics of the run.
+     */
+    public MeshingMetrics mesh(ArrayList<Shape> shapes, File file) throws IOException
+    {
+        return mesh(shapes, file, MeshingPool.get());
+    }
+
+    /**
+     * Meshes the shapes to the file, running the tasks in the given pool.
+     */
+    public MeshingMetrics mesh(ArrayList<Shape> shapes, File file, ForkJoinPool pool) throws IOException
+    {
+        String name = file.getName().toLowerCase();
+        MeshExporter exporter;
+        if (name.endsWith(".ply"))
+        {
+            exporter = new PlyExporter(file, true, true);
+        } else if (name.endsWith(".obj"))
+        {
+            exporter = new ObjExporter(file, true);
+        } else
+        {
+            // STL would need every vertex position until the end.
+            throw new IllegalArgumentException("Out of core meshing writes ply or obj, not " + file.getName());
+        }
+
+        try (MeshExporter output = exporter)
+        {
+            return mesh(shapes, output, pool);
+        }
+    }
+
+    private MeshingMetrics mesh(ArrayList<Shape> shapes, MeshExporter exporter, ForkJoinPool pool) throws IOException
+    {
+        MeshingMetrics metrics = new MeshingMetrics();
+        metrics.countRun();
+        if (shapes.isEmpty())
+        {
+            return metrics;
+        }
+
+        Vector3f[] bounds = Mesher.getBounds(shapes, false);
+        int chunkDepth = getChunkDepth();
+        int size = 1 << chunkDepth;
+        ChunkContouringTask contouring = new ChunkContouringTask(shapes, metrics);
+        int vertexCount = 0;
+
+        // The chunks of the previous and current Z slabs, by y * size + x.
+        OctreeNode[] previous = new OctreeNode[size * size];
+        OctreeNode[] current = new OctreeNode[size * size];
+        for (int z = 0; z < size; z++)
+        {
+            for (int y = 0; y < size; y++)
+            {
+                // Build the row of chunks in parallel.
+                long start = System.nanoTime();
+                final OctreeConstructionTask[] row = new OctreeConstructionTask[size];
+                OctreeNode[] rowChunks = new OctreeNode[size];
+                for (int x = 0; x < size; x++)
+                {
+                    rowChunks[x] = createChunk(bounds, chunkDepth, x, y, z);
+                    row[x] = new OctreeConstructionTask(rowChunks[x], shapes, Math.max(minDepth, chunkDepth), maxDepth, false, metrics);
+                }
+                pool.invoke(new RecursiveAction()
+                {
+                    @Override
+                    protected void compute()
+                    {
+                        invokeAll(row);
+                    }
+                });
+                metrics.recordStage(MeshingMetrics.Stage.CONSTRUCTION, System.nanoTime() - start);
+
+                for (int x = 0; x < size; x++)
+                {
+                    // Number its vertices after the ones written, and write them.
+                    OctreeNode chunk = rowChunks[x];
+                    rowChunks[x] = null;
+                    ArrayList<Vector3f> vertices = row[x].getVertices();
+                    row[x] = null;
+                    offsetVertices(chunk, vertexCount);
+                    writeVertices(vertices, shapes, exporter);
+                    vertexCount += vertices.size();
+                    metrics.countVertices(vertices.size());
+                    if (!prune(chunk, 0b111, false))
+                    {
+                        chunk = null;
+                    }
+
+                    // Contour it, and stitch it to the chunks before it.
+                    start = System.nanoTime();
+                    current[y * size + x] = chunk;
+                    if (chunk != null)
+                    {
+                        contouring.contourChunk(chunk);
+                        if (x > 0)
+                        {
+                            contouring.contourFace(current[y * size + x - 1], chunk, 0);
+                        }
+                        if (y > 0)
+                        {
+                            contouring.contourFace(current[(y - 1) * size + x], chunk, 1);
+                        }
+                        if (z > 0)
+                        {
+                            contouring.contourFace(previous[y * size + x], chunk, 2);
+                        }
+                        if (y > 0 && z > 0)
+                        {
+                            contouring.contourEdge(previous[(y - 1) * size + x], previous[y * size + x],
+                                    current[(y - 1) * size + x], chunk, 0);
+                        }
+                        if (x > 0 && z > 0)
+                        {
+                            contouring.contourEdge(previous[y * size + x - 1], previous[y * size + x],
+                                    current[y * size + x - 1], chunk, 1);
+                        }
+                        if (x > 0 && y > 0)
+                        {
+                            contouring.contourEdge(current[(y - 1) * size + x - 1], current[(y - 1) * size + x],
+                                    current[y * size + x - 1], chunk, 2);
+                        }
+                    }
+                    metrics.recordStage(MeshingMetrics.Stage.CONTOURING, System.nanoTime() - start);
+                    writeTriangles(contouring.getTriangles(), exporter);
+                    metrics.countTriangles(contouring.getTriangles().size());
+                    contouring.getTriangles().clear();
+
+                    // Keep only what the next chunks stitch to.
+                    if (chunk != null && !prune(chunk, 0b111, true))
+                    {
+                        current[y * size + x] = null;
+                    }
+                }
+            }
+
+            // The slab before the previous one is no longer needed.
+            OctreeNode[] slab = previous;
+            previous = current;
+            current = slab;
+            Arrays.fill(current, null);
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Returns the chunk (x, y, z) of the grid of the given depth, with the
+     * very bounds the subdivision of the root would give it.
+     */
+    private static OctreeNode createChunk(Vector3f[] rootBounds, int depth, int x, int y, int z)
+    {
+        Vector3f min = rootBounds[0].clone();
+        Vector3f max = rootBounds[1].clone();
+        for (int level = depth - 1; level >= 0; level--)
+        {
+            Vector3f center = min.add(max).divideLocal(2);
+            if ((x >> level & 1) == 0)
+            {
+                max.x = center.x;
+            } else
+            {
+                min.x = center.x;
+            }
+            if ((y >> level & 1) == 0)
+            {
+                max.y = center.y;
+            } else
+            {
+                min.y = center.y;
+            }
+            if ((z >> level & 1) == 0)
+            {
+                max.z = center.z;
+            } else
+            {
+                min.z = center.z;
+            }
+        }
+        return new OctreeNode(min, max, depth);
+    }
+
+    /**
+     * Adds the offset to the vertex indices of the subtree.
+     */
+    private static void offsetVertices(OctreeNode node, int offset)
+    {
+        if (node.getVertexIndex() != -1)
+        {
+            node.setVertex(node.getVertexIndex() + offset);
+        } else if (!node.isLeaf())
+        {
+            for (OctreeNode child : node.getChildren())
+            {
+                offsetVertices(child, offset);
+            }
+        }
+    }
+
+    /**
+     * Removes the children of the subtree that hold no vertex, and, if
+     * boundaryOnly, the ones not touching the high faces of the given mask
+     * (bit 0 for X, 1 for Y, 2 for Z).
+     *
+     * @return true iff the node itself is still needed.
+     */
+    private static boolean prune(OctreeNode node, int faces, boolean boundaryOnly)
+    {
+        if (node.getVertexIndex() != -1)
+        {
+            return true;
+        }
+        boolean needed = false;
+        OctreeNode[] children = node.getChildren();
+        for (int i = 0; i < children.length; i++)
+        {
+            if (children[i] == null)
+            {
+                continue;
+            }
+            // A child touches the high faces of its parent on its high sides.
+            int childFaces = boundaryOnly ? faces & i : faces;
+            if (childFaces != 0 && prune(children[i], childFaces, boundaryOnly))
+            {
+                needed = true;
+            } else
+            {
+                node.removeChild(i);
+            }
+        }
+        return needed;
+    }
+
+    private static void writeVertices(ArrayList<Vector3f> vertices, ArrayList<Shape> shapes, MeshExporter exporter) throws IOException
+    {
+        FloatBuffer positions = FloatBuffer.allocate(3 * vertices.size());
+        FloatBuffer normals = FloatBuffer.allocate(3 * vertices.size());
+        for (Vector3f vertex : vertices)
+        {
+            Vector3f normal = HullField.getNormalAt(vertex, shapes);
+            positions.put(vertex.x).put(vertex.y).put(vertex.z);
+            normals.put(normal.x).put(normal.y).put(normal.z);
+        }
+        positions.flip();
+        normals.flip();
+        exporter.addVertices(positions, normals);
+    }
+
+    private static void writeTriangles(ArrayList<Vector3i> triangles, MeshExporter exporter) throws IOException
+    {
+        IntBuffer indices = IntBuffer.allocate(3 * triangles.size());
+        for (Vector3i triangle : triangles)
+        {
+            indices.put(triangle.x).put(triangle.y).put(triangle.z);
+        }
+        indices.flip();
+        exporter.addTriangles(indices);
+    }
+
+    /**
+     * Returns the shallowest chunk depth whose rows of chunks, fully
+     * subdivided down to the max depth, fit in half the memory budget: the
+     * other half is left to the kept slabs and the output.
+     */
+    public int getChunkDepth()
+    {
+        int depth = 0;
+        while (depth < maxDepth && (getRowBits(depth) > 48 || NODE_BYTES << getRowBits(depth) > memoryBudget / 2))
+        {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the log2 of the number of nodes of a row of chunks of the
+     * given depth: 2^depth chunks of 8^(maxDepth - depth) nodes.
+     */
+    private int getRowBits(int depth)
+    {
+        return depth + 3 * (maxDepth - depth);
+    }
+
+    public int getMinDepth()
+    {
+        return minDepth;
+    }
+
+    /**
+     * @param minDepth the depth down to which the octree is always subdivided,
+     * as for the Mesher.
+     */
+    public void setMinDepth(int minDepth)
+    {
+        this.minDepth = minDepth;
+    }
+
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    /**
+     * @param maxDepth the depth of the finest cells.
+     */
+    public void setMaxDepth(int maxDepth)
+    {
+        this.maxDepth = maxDepth;
+    }
+
+    public long getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    /**
+     * @param memoryBudget the memory (in bytes) the meshing may use, which
+     * sets the chunk depth.
+     */
+    public void setMemoryBudget(long memoryBudget)
+    {
+        this.memoryBudget = memoryBudget;
+    }
+}
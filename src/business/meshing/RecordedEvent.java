@@ -0,0 +1,79 @@
+package business.meshing;
+
+/**
+ * An event for the Flight Recorder, with the lifecycle of jdk.jfr.Event:
+ * begin, end, then commit if shouldCommit. Its fields are copied into the
+ * recorder's own event on commit. With no recorder (a Java 8 runtime, or a
+ * build without jfr/src), it records nothing, and costs a null check.
+ */
+public abstract class RecordedEvent
+{
+
+    /**
+     * The recorder's event, null if not recorded.
+     */
+    private Object recording = null;
+
+    /**
+     * @return the recorder of this type of event, null if there is none.
+     */
+    protected abstract EventRecorder getRecorder();
+
+    public final void begin()
+    {
+        EventRecorder recorder = getRecorder();
+        if (recorder != null)
+        {
+            recording = recorder.begin(this);
+        }
+    }
+
+    /**
+     * Tells whether the event, begun, is recorded: if not, its fields need not
+     * be set.
+     */
+    public final boolean isEnabled()
+    {
+        return recording != null;
+    }
+
+    public final void end()
+    {
+        if (recording != null)
+        {
+            getRecorder().end(recording);
+        }
+    }
+
+    public final boolean shouldCommit()
+    {
+        return recording != null && getRecorder().shouldCommit(recording);
+    }
+
+    public final void commit()
+    {
+        if (recording != null)
+        {
+            getRecorder().commit(recording, this);
+            recording = null;
+        }
+    }
+
+    /**
+     * Loads the recorder of the given class, which needs a public no-arg
+     * constructor.
+     *
+     * @return the recorder, or null if it was not built or the runtime has no
+     * Flight Recorder.
+     */
+    protected static EventRecorder load(String className)
+    {
+        try
+        {
+            return (EventRecorder) Class.forName(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex)
+        {
+            return null;
+        }
+    }
+}
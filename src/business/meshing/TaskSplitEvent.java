@@ -0,0 +1,47 @@
+package business.meshing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Flight Recorder event sampling the split decisions of the fork-join tasks:
+ * whether a task forked subtasks for its node or processed it directly. Only
+ * one decision in SAMPLE_RATE is recorded, since there may be millions.
+ * Recorded as business.meshing.TaskSplit.
+ */
+public class TaskSplitEvent extends RecordedEvent
+{
+
+    public static final int SAMPLE_RATE = 64;
+    public String task;
+    public int depth;
+    /**
+     * Number of subtasks forked, 0 if the node was processed directly.
+     */
+    public int forked;
+
+    @Override
+    protected EventRecorder getRecorder()
+    {
+        return MeshingEvent.RECORDER;
+    }
+
+    /**
+     * Records a split decision, if recording and sampled. The event is only
+     * created then: otherwise this costs the recorder's check, and nothing
+     * at all with no recorder.
+     */
+    public static void record(String task, int depth, int forked)
+    {
+        EventRecorder recorder = MeshingEvent.RECORDER;
+        if (recorder == null || !recorder.isEnabled(TaskSplitEvent.class) || ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0)
+        {
+            return;
+        }
+        TaskSplitEvent event = new TaskSplitEvent();
+        event.begin();
+        event.task = task;
+        event.depth = depth;
+        event.forked = forked;
+        event.commit();
+    }
+}
@@ -0,0 +1,224 @@
+package business.meshing;
+
+import business.meshing.codegen.FieldCompiler;
+import business.meshing.shapes.Shape;
+import business.meshing.tasks.SlabContouringTask;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Meshes shapes by plain, non adaptive, Dual Contouring of the uniform grid of
+ * the max depth, with no octree.
+ *
+ * The grid is swept slab by slab along Z, keeping two planes of corner values
+ * and edge crossings and two slabs of vertex indices in flat arrays: the
+ * working memory grows with the square of the resolution, not its cube. The
+ * slabs are cut into bands swept in parallel, then the bands are stitched
+ * across the planes between them. Every cell the surface crosses gets a
+ * vertex, so the mesh is the one the Mesher builds with a min depth equal to
+ * the max depth; for dense hulls at a fixed resolution, this is the faster
+ * path.
+ *
+ * In surface nets mode, the vertices are the averages of their cells'
+ * interpolated crossings: a coarse mesh for previews, in a fraction of the
+ * time.
+ *
+ * The vertex normals are the field's gradient. Symmetry is not used.
+ */
+public class UniformMesher
+{
+
+    private int maxDepth = 6;
+    private boolean surfaceNets = false;
+    /**
+     * Time a run may take before it is abandoned, or 0 for no limit.
+     */
+    private long timeBudget = 0;
+    /**
+     * If true, the field is specialized to the shapes before each run.
+     */
+    private boolean specializing = false;
+    private final FieldCompiler fieldCompiler = new FieldCompiler();
+    private final MeshingMetrics metrics = new MeshingMetrics();
+
+    /**
+     * Meshes the shapes in the shared pool (see MeshingPool).
+     */
+    public MeshData mesh(ArrayList<Shape> shapes)
+    {
+        return mesh(shapes, MeshingPool.get());
+    }
+
+    /**
+     * Meshes the shapes, running the bands in the given pool.
+     */
+    public MeshData mesh(ArrayList<Shape> shapes, ForkJoinPool pool)
+    {
+        if (shapes.isEmpty())
+        {
+            return mesh(shapes, Vector3f.ZERO, Vector3f.ZERO, pool);
+        }
+        Vector3f[] bounds = Mesher.getBounds(shapes, false);
+        return mesh(shapes, bounds[0], bounds[1], pool);
+    }
+
+    /**
+     * Meshes the part of the shapes' surface within the given box, which the
+     * grid spans: the mesh is open where the surface crosses the box.
+     *
+     * @return the mesh, or null if the time budget ran out.
+     */
+    public MeshData mesh(ArrayList<Shape> shapes, Vector3f minBound, Vector3f maxBound, ForkJoinPool pool)
+    {
+        long start = System.currentTimeMillis();
+        long deadline = System.nanoTime() + timeBudget;
+        MeshingMetrics runMetrics = new MeshingMetrics();
+        runMetrics.countRun();
+        if (shapes.isEmpty())
+        {
+            metrics.add(runMetrics);
+            return new MeshData(new float[0], new float[0], new int[0], 0, runMetrics);
+        }
+
+        ArrayList<Shape> field = specializing ? fieldCompiler.specialize(shapes) : shapes;
+        int n = 1 << maxDepth;
+        Vector3f cellSize = maxBound.subtract(minBound).divideLocal(n);
+
+        // A few bands per thread balance the load, but each band resamples
+        // its bottom plane: keep them a few slabs thick.
+        int bandCount = Math.max(1, Math.min(2 * pool.getParallelism(), n / 4));
+        final SlabContouringTask[] bands = new SlabContouringTask[bandCount];
+        for (int i = 0; i < bandCount; i++)
+        {
+            bands[i] = new SlabContouringTask(field, minBound, cellSize, n, i * n / bandCount, (i + 1) * n / bandCount, runMetrics);
+            bands[i].setSurfaceNets(surfaceNets);
+            if (timeBudget > 0)
+            {
+                bands[i].setDeadline(deadline);
+            }
+        }
+        long stageStart = System.nanoTime();
+        pool.invoke(new RecursiveAction()
+        {
+            @Override
+            protected void compute()
+            {
+                invokeAll(bands);
+            }
+        });
+        runMetrics.recordStage(MeshingMetrics.Stage.CONSTRUCTION, System.nanoTime() - stageStart);
+        for (SlabContouringTask band : bands)
+        {
+            if (band.isAbandoned())
+            {
+                metrics.add(runMetrics);
+                return null;
+            }
+        }
+
+        // Number the vertices of each band after the ones below it, then
+        // stitch the bands together.
+        stageStart = System.nanoTime();
+        int vertexCount = 0;
+        for (SlabContouringTask band : bands)
+        {
+            band.offsetIndices(vertexCount);
+            vertexCount += band.getVertexCount();
+        }
+        for (int i = 1; i < bandCount; i++)
+        {
+            bands[i].stitch(bands[i - 1]);
+        }
+        runMetrics.recordStage(MeshingMetrics.Stage.SEAM, System.nanoTime() - stageStart);
+
+        int indexCount = 0;
+        for (SlabContouringTask band : bands)
+        {
+            indexCount += band.getIndexCount();
+        }
+        float[] positions = new float[3 * vertexCount];
+        float[] normals = new float[3 * vertexCount];
+        int[] indices = new int[indexCount];
+        int vertexOffset = 0;
+        int indexOffset = 0;
+        for (SlabContouringTask band : bands)
+        {
+            System.arraycopy(band.getPositions(), 0, positions, vertexOffset, 3 * band.getVertexCount());
+            System.arraycopy(band.getNormals(), 0, normals, vertexOffset, 3 * band.getVertexCount());
+            System.arraycopy(band.getIndices(), 0, indices, indexOffset, band.getIndexCount());
+            vertexOffset += 3 * band.getVertexCount();
+            indexOffset += band.getIndexCount();
+        }
+        runMetrics.countVertices(vertexCount);
+        runMetrics.countTriangles(indexCount / 3);
+        metrics.add(runMetrics);
+
+        return new MeshData(positions, normals, indices, System.currentTimeMillis() - start, runMetrics);
+    }
+
+    /**
+     * @return the depth of the grid: it has 2^maxDepth cells per axis.
+     */
+    public int getMaxDepth()
+    {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth)
+    {
+        this.maxDepth = maxDepth;
+    }
+
+    public boolean isSurfaceNets()
+    {
+        return surfaceNets;
+    }
+
+    /**
+     * @param surfaceNets true to mesh as surface nets: no intersection search
+     * nor vertex solver, for previews.
+     */
+    public void setSurfaceNets(boolean surfaceNets)
+    {
+        this.surfaceNets = surfaceNets;
+    }
+
+    public boolean isSpecializing()
+    {
+        return specializing;
+    }
+
+    /**
+     * @param specializing true to compile a field specialized to the shapes
+     * before meshing them (see FieldCompiler).
+     */
+    public void setSpecializing(boolean specializing)
+    {
+        this.specializing = specializing;
+    }
+
+    public long getTimeBudget()
+    {
+        return timeBudget;
+    }
+
+    /**
+     * @param timeBudget the nanoseconds a run may take before it is abandoned,
+     * or 0 for no limit. Bands stop between two slabs, so a run may overrun
+     * its budget by a slab.
+     */
+    public void setTimeBudget(long timeBudget)
+    {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * @return the metrics summed over all the runs of this mesher.
+     */
+    public MeshingMetrics getMetrics()
+    {
+        return metrics;
+    }
+}
@@ -2,7 +2,7 @@
  * To change this template, choose Tools | Templates
  * and open the template in the editor.
  */
-package business.misc;
+package business.meshing;
 
 import com.jme3.math.Vector3f;
 
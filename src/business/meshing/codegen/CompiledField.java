@@ -0,0 +1,117 @@
+package business.meshing.codegen;
+
+import business.meshing.HullField;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+
+/**
+ * The union of a list of shapes as a single shape, whose value a generated
+ * subclass computes with the shapes' transforms as constants (see
+ * FieldCompiler). Its normal is the union's, from the shapes themselves.
+ */
+public abstract class CompiledField extends Shape
+{
+
+    /**
+     * The shapes of the union, for the normals and the shapes the generated
+     * code calls rather than inlines.
+     */
+    protected final Shape[] shapes;
+    private final ArrayList<Shape> shapeList;
+    private final float localRadius;
+    private final float minScale;
+
+    protected CompiledField(ArrayList<Shape> shapes)
+    {
+        super(getCenter(shapes), new Quaternion(), new Vector3f(1, 1, 1));
+        this.shapes = shapes.toArray(new Shape[shapes.size()]);
+        this.shapeList = new ArrayList<>(shapes);
+        float radius = 0;
+        float scale = Float.MAX_VALUE;
+        for (Shape shape : shapes)
+        {
+            radius = Math.max(radius, getTranslation().distance(shape.getTranslation()) + shape.getBoundingRadius());
+            scale = Math.min(scale, shape.getMinScale());
+        }
+        this.localRadius = radius;
+        this.minScale = scale;
+    }
+
+    /**
+     * Returns the center of the box enclosing the shapes' bounding spheres.
+     */
+    private static Vector3f getCenter(ArrayList<Shape> shapes)
+    {
+        Vector3f min = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+        Vector3f max = new Vector3f(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+        for (Shape shape : shapes)
+        {
+            float radius = shape.getBoundingRadius();
+            min.minLocal(shape.getTranslation().subtract(radius, radius, radius));
+            max.maxLocal(shape.getTranslation().add(radius, radius, radius));
+        }
+        return min.addLocal(max).multLocal(0.5f);
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint)
+    {
+        return HullField.getNormalAt(worldPoint, shapeList);
+    }
+
+    /**
+     * The union may cross the box only where one of its shapes may.
+     */
+    @Override
+    public boolean mayCross(Vector3f min, Vector3f max)
+    {
+        for (Shape shape : shapes)
+        {
+            if (shape.mayCross(min, max))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The union lies within the box of its shapes' boxes.
+     */
+    @Override
+    public void getWorldBounds(Vector3f min, Vector3f max)
+    {
+        min.set(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+        max.set(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+        Vector3f shapeMin = new Vector3f();
+        Vector3f shapeMax = new Vector3f();
+        for (Shape shape : shapes)
+        {
+            shape.getWorldBounds(shapeMin, shapeMax);
+            min.minLocal(shapeMin);
+            max.maxLocal(shapeMax);
+        }
+    }
+
+    @Override
+    protected float getLocalRadius()
+    {
+        return localRadius;
+    }
+
+    @Override
+    public float getMinScale()
+    {
+        return minScale;
+    }
+
+    /**
+     * @return the shapes the field was compiled from.
+     */
+    public ArrayList<Shape> getShapes()
+    {
+        return shapeList;
+    }
+}
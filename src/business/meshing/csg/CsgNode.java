@@ -0,0 +1,351 @@
+package business.meshing.csg;
+
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node of a CSG tree: a shape, or an operation on two subtrees. Nodes are
+ * immutable, and know a sphere enclosing their surface.
+ *
+ * Field values are the shapes' own: negative inside, positive outside. The
+ * operations are min (union), max (intersection), max(a, -b) (subtraction),
+ * and a polynomial smooth min (smooth union), rounding the crease over a
+ * blend width given in field units.
+ */
+public final class CsgNode
+{
+
+    public static enum Operator
+    {
+
+        UNION, SUBTRACTION, INTERSECTION, SMOOTH_UNION
+    }
+    /**
+     * Null for a shape.
+     */
+    private final Operator operator;
+    private final Shape shape;
+    private final CsgNode left;
+    private final CsgNode right;
+    private final float blend;
+    private final Vector3f boundCenter;
+    private final float boundRadius;
+
+    private CsgNode(Operator operator, Shape shape, CsgNode left, CsgNode right, float blend, Vector3f boundCenter, float boundRadius)
+    {
+        this.operator = operator;
+        this.shape = shape;
+        this.left = left;
+        this.right = right;
+        this.blend = blend;
+        this.boundCenter = boundCenter;
+        this.boundRadius = boundRadius;
+    }
+
+    public static CsgNode shape(Shape shape)
+    {
+        return new CsgNode(null, shape, null, null, 0, shape.getTranslation().clone(), shape.getBoundingRadius());
+    }
+
+    public static CsgNode union(CsgNode left, CsgNode right)
+    {
+        return operation(Operator.UNION, left, right, 0);
+    }
+
+    /**
+     * Returns left minus right.
+     */
+    public static CsgNode subtraction(CsgNode left, CsgNode right)
+    {
+        return operation(Operator.SUBTRACTION, left, right, 0);
+    }
+
+    public static CsgNode intersection(CsgNode left, CsgNode right)
+    {
+        return operation(Operator.INTERSECTION, left, right, 0);
+    }
+
+    /**
+     * @param blend the width of the fillet, in field units.
+     */
+    public static CsgNode smoothUnion(CsgNode left, CsgNode right, float blend)
+    {
+        return operation(Operator.SMOOTH_UNION, left, right, blend);
+    }
+
+    /**
+     * Returns the operation of the given operator (blend only matters to
+     * smooth unions).
+     */
+    public static CsgNode operation(Operator operator, CsgNode left, CsgNode right, float blend)
+    {
+        switch (operator)
+        {
+            case SUBTRACTION:
+                // Only what is left of the left operand remains.
+                return new CsgNode(operator, null, left, right, 0, left.boundCenter, left.boundRadius);
+            case INTERSECTION:
+                // Within both: the smaller sphere will do.
+                CsgNode smaller = left.boundRadius <= right.boundRadius ? left : right;
+                return new CsgNode(operator, null, left, right, 0, smaller.boundCenter, smaller.boundRadius);
+            default:
+                // The fillet may bulge a little out of both spheres.
+                Vector3f[] sphere = enclose(left, right);
+                float radius = sphere[1].x;
+                if (operator == Operator.SMOOTH_UNION)
+                {
+                    radius *= 1 + blend;
+                }
+                return new CsgNode(operator, null, left, right, blend, sphere[0], radius);
+        }
+    }
+
+    /**
+     * Returns the union of the nodes, as a balanced tree: its subtrees are
+     * smaller, which prunes better than a comb.
+     */
+    public static CsgNode union(List<CsgNode> nodes)
+    {
+        return union(nodes, 0, nodes.size());
+    }
+
+    private static CsgNode union(List<CsgNode> nodes, int start, int end)
+    {
+        if (end - start == 1)
+        {
+            return nodes.get(start);
+        }
+        int middle = (start + end) / 2;
+        return union(union(nodes, start, middle), union(nodes, middle, end));
+    }
+
+    /**
+     * Returns the center, then the radius (as x), of the smallest sphere
+     * enclosing both nodes' spheres.
+     */
+    private static Vector3f[] enclose(CsgNode a, CsgNode b)
+    {
+        float distance = a.boundCenter.distance(b.boundCenter);
+        if (distance + b.boundRadius <= a.boundRadius)
+        {
+            return new Vector3f[]
+            {
+                a.boundCenter, new Vector3f(a.boundRadius, 0, 0)
+            };
+        }
+        if (distance + a.boundRadius <= b.boundRadius)
+        {
+            return new Vector3f[]
+            {
+                b.boundCenter, new Vector3f(b.boundRadius, 0, 0)
+            };
+        }
+        float radius = (distance + a.boundRadius + b.boundRadius) / 2;
+        Vector3f center = b.boundCenter.subtract(a.boundCenter).multLocal((radius - a.boundRadius) / distance).addLocal(a.boundCenter);
+        return new Vector3f[]
+        {
+            center, new Vector3f(radius, 0, 0)
+        };
+    }
+
+    /**
+     * Returns true iff the tree is a union of shapes only.
+     */
+    public boolean isUnionOnly()
+    {
+        return isShape() || operator == Operator.UNION && left.isUnionOnly() && right.isUnionOnly();
+    }
+
+    /**
+     * Adds the shapes of the tree to the list, left to right.
+     */
+    public void collectShapes(List<Shape> shapes)
+    {
+        if (isShape())
+        {
+            shapes.add(shape);
+        } else
+        {
+            left.collectShapes(shapes);
+            right.collectShapes(shapes);
+        }
+    }
+
+    /**
+     * Turns the tree into a list of shapes, each applied by its operator to
+     * all the shapes before it, as the editor's primitives are. Fails for
+     * trees such a list cannot express: an intersection or a smooth union
+     * with a subtree on its right, say.
+     *
+     * @return false if the tree cannot be expressed so.
+     */
+    public boolean flatten(ArrayList<Shape> shapes, ArrayList<Operator> operators)
+    {
+        if (isShape())
+        {
+            shapes.add(shape);
+            operators.add(Operator.UNION);
+            return true;
+        }
+        switch (operator)
+        {
+            case UNION:
+                // Union commutes: the subtree with other operators goes first.
+                CsgNode first = right.isUnionOnly() ? left : right;
+                CsgNode second = first == left ? right : left;
+                if (!second.isUnionOnly() || !first.flatten(shapes, operators))
+                {
+                    return false;
+                }
+                return second.flatten(shapes, operators);
+            case SUBTRACTION:
+                // Subtracting a union subtracts each of its shapes.
+                if (!right.isUnionOnly() || !left.flatten(shapes, operators))
+                {
+                    return false;
+                }
+                int start = shapes.size();
+                right.collectShapes(shapes);
+                while (operators.size() < shapes.size())
+                {
+                    operators.add(Operator.SUBTRACTION);
+                }
+                return start < shapes.size();
+            default:
+                if (!right.isShape() || !left.flatten(shapes, operators))
+                {
+                    return false;
+                }
+                shapes.add(right.shape);
+                operators.add(operator);
+                return true;
+        }
+    }
+
+    /**
+     * Builds the tree the list of shapes stands for, each applied by its
+     * operator to the ones before it. The runs of unions are balanced.
+     *
+     * @param blend the fillet width of the smooth unions.
+     */
+    public static CsgNode fromList(List<Shape> shapes, List<Operator> operators, float blend)
+    {
+        CsgNode tree = null;
+        ArrayList<CsgNode> unions = new ArrayList<>();
+        for (int i = 0; i < shapes.size(); i++)
+        {
+            CsgNode node = shape(shapes.get(i));
+            Operator operator = operators.get(i);
+            // There is nothing to apply the first shape to: it is added.
+            if (operator == Operator.UNION || tree == null && unions.isEmpty())
+            {
+                unions.add(node);
+            } else
+            {
+                if (!unions.isEmpty())
+                {
+                    CsgNode union = union(unions);
+                    tree = tree == null ? union : union(tree, union);
+                    unions.clear();
+                }
+                tree = operation(operator, tree, node, blend);
+            }
+        }
+        if (!unions.isEmpty())
+        {
+            CsgNode union = union(unions);
+            tree = tree == null ? union : union(tree, union);
+        }
+        return tree;
+    }
+
+    /**
+     * Writes the corners of a world box enclosing the node's surface into min
+     * and max, as the bounding sphere does: the union of both boxes (grown
+     * by the blend for a smooth union, which may bulge), the left one for a
+     * subtraction, and their overlap for an intersection.
+     */
+    public void getWorldBounds(Vector3f min, Vector3f max)
+    {
+        if (isShape())
+        {
+            shape.getWorldBounds(min, max);
+            return;
+        }
+        left.getWorldBounds(min, max);
+        if (operator == Operator.SUBTRACTION)
+        {
+            return;
+        }
+        Vector3f rightMin = new Vector3f();
+        Vector3f rightMax = new Vector3f();
+        right.getWorldBounds(rightMin, rightMax);
+        if (operator == Operator.INTERSECTION)
+        {
+            min.maxLocal(rightMin);
+            max.minLocal(rightMax);
+            // An empty overlap: no surface, any point will do.
+            max.maxLocal(min);
+            return;
+        }
+        min.minLocal(rightMin);
+        max.maxLocal(rightMax);
+        if (operator == Operator.SMOOTH_UNION)
+        {
+            float grow = blend * Math.max(max.x - min.x, Math.max(max.y - min.y, max.z - min.z)) / 2;
+            min.subtractLocal(grow, grow, grow);
+            max.addLocal(grow, grow, grow);
+        }
+    }
+
+    public boolean isShape()
+    {
+        return operator == null;
+    }
+
+    /**
+     * @return the operator, or null for a shape.
+     */
+    public Operator getOperator()
+    {
+        return operator;
+    }
+
+    /**
+     * @return the shape, or null for an operation.
+     */
+    public Shape getShape()
+    {
+        return shape;
+    }
+
+    public CsgNode getLeft()
+    {
+        return left;
+    }
+
+    public CsgNode getRight()
+    {
+        return right;
+    }
+
+    public float getBlend()
+    {
+        return blend;
+    }
+
+    /**
+     * @return the center of a sphere enclosing the node's surface.
+     */
+    public Vector3f getBoundCenter()
+    {
+        return boundCenter;
+    }
+
+    public float getBoundRadius()
+    {
+        return boundRadius;
+    }
+}
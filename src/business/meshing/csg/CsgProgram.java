@@ -0,0 +1,367 @@
+package business.meshing.csg;
+
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A CSG tree compiled to a flat postfix program: shapes push their value,
+ * operations pop two values and push one. The interpreter is a loop over an
+ * int array, with the values on a stack the caller provides and reuses: an
+ * evaluation allocates nothing.
+ *
+ * Each operation's subtree starts with a BOUND instruction: where the point
+ * is farther than twice the subtree's bounding radius from its center, the
+ * subtree is skipped, and pushes PRUNED_VALUE instead. The shapes' values are
+ * at least that far there (their unit shapes lie within their local radius),
+ * so the signs are unchanged, and the values close to the surface exact.
+ */
+public final class CsgProgram
+{
+
+    /**
+     * The value a skipped subtree pushes.
+     */
+    public static final float PRUNED_VALUE = 1;
+    private static final int SHAPE = 0;
+    private static final int UNION = 1;
+    private static final int SUBTRACTION = 2;
+    private static final int INTERSECTION = 3;
+    private static final int SMOOTH_UNION = 4;
+    private static final int BOUND = 5;
+    private final int[] codes;
+    /**
+     * Per instruction: the shape index of SHAPE, the blend index of
+     * SMOOTH_UNION, the bound index of BOUND.
+     */
+    private final int[] arguments;
+    private final Shape[] shapes;
+    private final float[] blends;
+    /**
+     * Per bound: center x, y, z and the squared pruning radius.
+     */
+    private final float[] bounds;
+    /**
+     * Per bound: the instruction after its subtree.
+     */
+    private final int[] ends;
+    private final int stackSize;
+
+    private CsgProgram(int[] codes, int[] arguments, Shape[] shapes, float[] blends, float[] bounds, int[] ends, int stackSize)
+    {
+        this.codes = codes;
+        this.arguments = arguments;
+        this.shapes = shapes;
+        this.blends = blends;
+        this.bounds = bounds;
+        this.ends = ends;
+        this.stackSize = stackSize;
+    }
+
+    /**
+     * Compiles the tree.
+     */
+    public static CsgProgram compile(CsgNode root)
+    {
+        Compiler compiler = new Compiler();
+        int stackSize = compiler.emit(root);
+        return new CsgProgram(Arrays.copyOf(compiler.codes, compiler.count), Arrays.copyOf(compiler.arguments, compiler.count),
+                compiler.shapes.toArray(new Shape[compiler.shapes.size()]), toArray(compiler.blends), toArray(compiler.bounds),
+                Arrays.copyOf(compiler.ends, compiler.boundCount), stackSize);
+    }
+
+    /**
+     * Emits the postfix instructions of a tree.
+     */
+    private static class Compiler
+    {
+
+        int[] codes = new int[16];
+        int[] arguments = new int[16];
+        int count = 0;
+        ArrayList<Shape> shapes = new ArrayList<>();
+        ArrayList<Float> blends = new ArrayList<>();
+        ArrayList<Float> bounds = new ArrayList<>();
+        int[] ends = new int[4];
+        int boundCount = 0;
+
+        /**
+         * Emits the subtree, and returns the stack depth it needs.
+         */
+        int emit(CsgNode node)
+        {
+            if (node.isShape())
+            {
+                add(SHAPE, shapes.size());
+                shapes.add(node.getShape());
+                return 1;
+            }
+
+            int bound = boundCount++;
+            if (bound == ends.length)
+            {
+                ends = Arrays.copyOf(ends, 2 * ends.length);
+            }
+            float radius = 2 * node.getBoundRadius();
+            bounds.add(node.getBoundCenter().x);
+            bounds.add(node.getBoundCenter().y);
+            bounds.add(node.getBoundCenter().z);
+            bounds.add(radius * radius);
+            add(BOUND, bound);
+
+            // The right operand waits for the left one on the stack.
+            int depth = Math.max(emit(node.getLeft()), 1 + emit(node.getRight()));
+            switch (node.getOperator())
+            {
+                case UNION:
+                    add(UNION, 0);
+                    break;
+                case SUBTRACTION:
+                    add(SUBTRACTION, 0);
+                    break;
+                case INTERSECTION:
+                    add(INTERSECTION, 0);
+                    break;
+                case SMOOTH_UNION:
+                    add(SMOOTH_UNION, blends.size());
+                    blends.add(node.getBlend());
+                    break;
+            }
+            ends[bound] = count;
+            return depth;
+        }
+
+        void add(int code, int argument)
+        {
+            if (count == codes.length)
+            {
+                codes = Arrays.copyOf(codes, 2 * count);
+                arguments = Arrays.copyOf(arguments, 2 * count);
+            }
+            codes[count] = code;
+            arguments[count] = argument;
+            count++;
+        }
+    }
+
+    private static float[] toArray(ArrayList<Float> values)
+    {
+        float[] array = new float[values.size()];
+        for (int i = 0; i < array.length; i++)
+        {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * @return a stack large enough for the program.
+     */
+    public float[] createStack()
+    {
+        return new float[stackSize];
+    }
+
+    public int getStackSize()
+    {
+        return stackSize;
+    }
+
+    /**
+     * Evaluates the field at the point.
+     *
+     * @param stack a stack from createStack, which the evaluation overwrites.
+     */
+    public float evaluate(Vector3f p, float[] stack)
+    {
+        int top = -1;
+        int pc = 0;
+        while (pc < codes.length)
+        {
+            int argument = arguments[pc];
+            switch (codes[pc])
+            {
+                case SHAPE:
+                    stack[++top] = shapes[argument].getPointValue(p);
+                    break;
+                case UNION:
+                    top--;
+                    stack[top] = Math.min(stack[top], stack[top + 1]);
+                    break;
+                case SUBTRACTION:
+                    top--;
+                    stack[top] = Math.max(stack[top], -stack[top + 1]);
+                    break;
+                case INTERSECTION:
+                    top--;
+                    stack[top] = Math.max(stack[top], stack[top + 1]);
+                    break;
+                case SMOOTH_UNION:
+                    top--;
+                    stack[top] = smoothMin(stack[top], stack[top + 1], blends[argument]);
+                    break;
+                case BOUND:
+                    if (isOutside(p, argument))
+                    {
+                        stack[++top] = PRUNED_VALUE;
+                        pc = ends[argument];
+                        continue;
+                    }
+                    break;
+            }
+            pc++;
+        }
+        return stack[0];
+    }
+
+    /**
+     * Computes the unit normal of the surface at the point: the normal of
+     * the shape the value comes from, or the gradient where a smooth union
+     * blends two of them.
+     *
+     * @param stack a stack from createStack.
+     * @param sources a stack of the same size, for the shape each value comes
+     * from.
+     */
+    public Vector3f getNormal(Vector3f p, float[] stack, int[] sources)
+    {
+        // Sources are shape index + 1, negated for a subtracted shape, or 0
+        // for a blend or a skipped subtree.
+        int top = -1;
+        int pc = 0;
+        while (pc < codes.length)
+        {
+            int argument = arguments[pc];
+            switch (codes[pc])
+            {
+                case SHAPE:
+                    stack[++top] = shapes[argument].getPointValue(p);
+                    sources[top] = argument + 1;
+                    break;
+                case UNION:
+                    top--;
+                    if (stack[top + 1] < stack[top])
+                    {
+                        stack[top] = stack[top + 1];
+                        sources[top] = sources[top + 1];
+                    }
+                    break;
+                case SUBTRACTION:
+                    top--;
+                    if (-stack[top + 1] > stack[top])
+                    {
+                        stack[top] = -stack[top + 1];
+                        sources[top] = -sources[top + 1];
+                    }
+                    break;
+                case INTERSECTION:
+                    top--;
+                    if (stack[top + 1] > stack[top])
+                    {
+                        stack[top] = stack[top + 1];
+                        sources[top] = sources[top + 1];
+                    }
+                    break;
+                case SMOOTH_UNION:
+                    top--;
+                    float a = stack[top];
+                    float b = stack[top + 1];
+                    float blend = blends[argument];
+                    if (Math.abs(a - b) < blend)
+                    {
+                        sources[top] = 0;
+                    } else if (b < a)
+                    {
+                        sources[top] = sources[top + 1];
+                    }
+                    stack[top] = smoothMin(a, b, blend);
+                    break;
+                case BOUND:
+                    if (isOutside(p, argument))
+                    {
+                        stack[++top] = PRUNED_VALUE;
+                        sources[top] = 0;
+                        pc = ends[argument];
+                        continue;
+                    }
+                    break;
+            }
+            pc++;
+        }
+
+        int source = sources[0];
+        if (source > 0)
+        {
+            return shapes[source - 1].getPointNormal(p);
+        } else if (source < 0)
+        {
+            return shapes[-source - 1].getPointNormal(p).negateLocal();
+        }
+        return getGradient(p, stack);
+    }
+
+    /**
+     * Returns the normalized gradient, by central differences.
+     */
+    private Vector3f getGradient(Vector3f p, float[] stack)
+    {
+        float step = 1e-3f * (1 + Math.abs(p.x) + Math.abs(p.y) + Math.abs(p.z));
+        Vector3f q = new Vector3f(p);
+        Vector3f gradient = new Vector3f();
+        q.x = p.x + step;
+        gradient.x = evaluate(q, stack);
+        q.x = p.x - step;
+        gradient.x -= evaluate(q, stack);
+        q.x = p.x;
+        q.y = p.y + step;
+        gradient.y = evaluate(q, stack);
+        q.y = p.y - step;
+        gradient.y -= evaluate(q, stack);
+        q.y = p.y;
+        q.z = p.z + step;
+        gradient.z = evaluate(q, stack);
+        q.z = p.z - step;
+        gradient.z -= evaluate(q, stack);
+        return gradient.normalizeLocal();
+    }
+
+    private boolean isOutside(Vector3f p, int bound)
+    {
+        int offset = 4 * bound;
+        float dx = p.x - bounds[offset];
+        float dy = p.y - bounds[offset + 1];
+        float dz = p.z - bounds[offset + 2];
+        return dx * dx + dy * dy + dz * dz > bounds[offset + 3];
+    }
+
+    /**
+     * The polynomial smooth min: min(a, b), minus up to blend / 4 where a
+     * and b are within blend of each other.
+     */
+    private static float smoothMin(float a, float b, float blend)
+    {
+        if (blend <= 0)
+        {
+            return Math.min(a, b);
+        }
+        float h = Math.max(blend - Math.abs(a - b), 0) / blend;
+        return Math.min(a, b) - h * h * blend / 4;
+    }
+
+    /**
+     * @return the shapes, in program order.
+     */
+    public Shape[] getShapes()
+    {
+        return shapes;
+    }
+
+    /**
+     * @return the number of instructions.
+     */
+    public int getLength()
+    {
+        return codes.length;
+    }
+}
@@ -0,0 +1,93 @@
+package business.meshing.csg;
+
+import business.meshing.shapes.Shape;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * A CSG tree seen as a single shape, so that the meshers and the field mesh
+ * it as they mesh any list of shapes. Its field is its compiled program's;
+ * its transform is the identity, placed on the tree's bounding sphere.
+ *
+ * Each thread evaluates with stacks of its own, kept across evaluations.
+ */
+public final class CsgShape extends Shape
+{
+
+    private final CsgNode root;
+    private final CsgProgram program;
+    private final float minScale;
+    private final ThreadLocal<float[]> stacks = new ThreadLocal<float[]>()
+    {
+        @Override
+        protected float[] initialValue()
+        {
+            return program.createStack();
+        }
+    };
+    private final ThreadLocal<int[]> sources = new ThreadLocal<int[]>()
+    {
+        @Override
+        protected int[] initialValue()
+        {
+            return new int[program.getStackSize()];
+        }
+    };
+
+    public CsgShape(CsgNode root)
+    {
+        super(root.getBoundCenter(), new Quaternion(), new Vector3f(1, 1, 1));
+        this.root = root;
+        this.program = CsgProgram.compile(root);
+        float scale = Float.MAX_VALUE;
+        for (Shape shape : program.getShapes())
+        {
+            scale = Math.min(scale, shape.getMinScale());
+        }
+        this.minScale = scale;
+    }
+
+    @Override
+    public float getPointValue(Vector3f worldPoint)
+    {
+        return program.evaluate(worldPoint, stacks.get());
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint)
+    {
+        return program.getNormal(worldPoint, stacks.get(), sources.get());
+    }
+
+    @Override
+    protected float getLocalRadius()
+    {
+        return root.getBoundRadius();
+    }
+
+    @Override
+    public void getWorldBounds(Vector3f min, Vector3f max)
+    {
+        root.getWorldBounds(min, max);
+    }
+
+    /**
+     * @return the smallest scale of the tree's shapes, which bounds the
+     * field's slope as for a shape.
+     */
+    @Override
+    public float getMinScale()
+    {
+        return minScale;
+    }
+
+    public CsgNode getRoot()
+    {
+        return root;
+    }
+
+    public CsgProgram getProgram()
+    {
+        return program;
+    }
+}
@@ -0,0 +1,179 @@
+package business.meshing.export;
+
+import business.meshing.CachedMesh;
+import business.meshing.MeshData;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams a mesh to a file: vertices and triangles are encoded straight from
+ * the given buffers into a large direct buffer, which is written to the file
+ * whenever full. Vertices and triangles can be added in any number of
+ * chunks, as they are produced, and the counts the format needs up front are
+ * written on close.
+ *
+ * The buffers passed in are read, not copied: they must stay unchanged until
+ * the exporter is closed.
+ */
+public abstract class MeshExporter implements Closeable
+{
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private final FileChannel channel;
+    /**
+     * The buffer records are encoded into.
+     */
+    protected final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    protected final boolean normals;
+    protected int vertexCount = 0;
+    protected int triangleCount = 0;
+
+    /**
+     * @param normals true to write the vertex normals, if the format can.
+     */
+    protected MeshExporter(File file, boolean normals, ByteOrder order) throws IOException
+    {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.normals = normals;
+        buffer.order(order);
+    }
+
+    /**
+     * Creates the exporter of the file's extension: stl, ply or obj.
+     */
+    public static MeshExporter create(File file, boolean normals) throws IOException
+    {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".stl"))
+        {
+            return new StlExporter(file);
+        } else if (name.endsWith(".ply"))
+        {
+            return new PlyExporter(file, normals);
+        } else if (name.endsWith(".obj"))
+        {
+            return new ObjExporter(file, normals);
+        }
+        throw new IllegalArgumentException("Unknown mesh format: " + file.getName());
+    }
+
+    /**
+     * Exports a whole mesh, in the format of the file's extension.
+     */
+    public static void export(File file, FloatBuffer positions, FloatBuffer normals, IntBuffer indices) throws IOException
+    {
+        try (MeshExporter exporter = create(file, normals != null))
+        {
+            exporter.addVertices(positions, normals);
+            exporter.addTriangles(indices);
+        }
+    }
+
+    public static void export(File file, MeshData data) throws IOException
+    {
+        export(file, FloatBuffer.wrap(data.getPositions()), FloatBuffer.wrap(data.getNormals()), IntBuffer.wrap(data.getIndices()));
+    }
+
+    public static void export(File file, CachedMesh mesh) throws IOException
+    {
+        export(file, mesh.getPositions(), mesh.getNormals(), mesh.getIndices());
+    }
+
+    /**
+     * Adds the vertices from the positions' position to their limit, 3 floats
+     * each. Their indices follow the ones of the vertices added before.
+     *
+     * @param normals the vertex normals, or null if not written.
+     */
+    public abstract void addVertices(FloatBuffer positions, FloatBuffer normals) throws IOException;
+
+    /**
+     * Adds the triangles from the indices' position to their limit, 3 vertex
+     * indices each.
+     */
+    public abstract void addTriangles(IntBuffer indices) throws IOException;
+
+    /**
+     * Makes room in the buffer for a record of at most the given size.
+     */
+    protected void ensureRemaining(int bytes) throws IOException
+    {
+        if (buffer.remaining() < bytes)
+        {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Overwrites bytes already written, once the buffer is flushed.
+     */
+    protected void writeAt(ByteBuffer bytes, long position) throws IOException
+    {
+        while (bytes.hasRemaining())
+        {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    /**
+     * Appends the whole content of another file, once the buffer is flushed.
+     */
+    protected void append(FileChannel source) throws IOException
+    {
+        long position = 0;
+        long size = source.size();
+        while (position < size)
+        {
+            position += source.transferTo(position, size - position, channel);
+        }
+    }
+
+    /**
+     * Called on close, after the last flush: writes what the format needs
+     * once the counts are known.
+     */
+    protected void finish() throws IOException
+    {
+    }
+
+    public int getVertexCount()
+    {
+        return vertexCount;
+    }
+
+    public int getTriangleCount()
+    {
+        return triangleCount;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+            finish();
+        } finally
+        {
+            channel.close();
+        }
+    }
+}
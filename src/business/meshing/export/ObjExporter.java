@@ -0,0 +1,129 @@
+package business.meshing.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Exports Wavefront OBJ: a "v" line per vertex (and a "vn" line, if asked),
+ * and an "f" line per triangle. Numbers are printed digit by digit into the
+ * buffer, with 6 decimals, without going through strings. OBJ indices are
+ * absolute, so vertices and triangles can come in any order.
+ */
+public class ObjExporter extends MeshExporter
+{
+
+    /**
+     * Longest line: "vn" and three floats, or "f" and three index pairs.
+     */
+    private static final int MAX_LINE = 96;
+    private static final int DECIMALS = 1000000;
+    private final byte[] digits = new byte[20];
+
+    public ObjExporter(File file, boolean normals) throws IOException
+    {
+        super(file, normals, ByteOrder.nativeOrder());
+        putAscii("# dual-contouring hull\n");
+    }
+
+    @Override
+    public void addVertices(FloatBuffer positions, FloatBuffer normals) throws IOException
+    {
+        int start = positions.position();
+        while (positions.remaining() >= 3)
+        {
+            ensureRemaining(MAX_LINE);
+            buffer.put((byte) 'v');
+            putFloat(positions.get());
+            putFloat(positions.get());
+            putFloat(positions.get());
+            buffer.put((byte) '\n');
+            vertexCount++;
+        }
+        if (this.normals)
+        {
+            int end = normals.position() + positions.position() - start;
+            while (normals.position() < end)
+            {
+                ensureRemaining(MAX_LINE);
+                buffer.put((byte) 'v').put((byte) 'n');
+                putFloat(normals.get());
+                putFloat(normals.get());
+                putFloat(normals.get());
+                buffer.put((byte) '\n');
+            }
+        }
+    }
+
+    @Override
+    public void addTriangles(IntBuffer indices) throws IOException
+    {
+        while (indices.remaining() >= 3)
+        {
+            ensureRemaining(MAX_LINE);
+            buffer.put((byte) 'f');
+            for (int i = 0; i < 3; i++)
+            {
+                // OBJ indices start at 1.
+                int index = indices.get() + 1;
+                buffer.put((byte) ' ');
+                putLong(index);
+                if (normals)
+                {
+                    buffer.put((byte) '/').put((byte) '/');
+                    putLong(index);
+                }
+            }
+            buffer.put((byte) '\n');
+            triangleCount++;
+        }
+    }
+
+    /**
+     * Puts a space and the value, with 6 decimals.
+     */
+    private void putFloat(float value)
+    {
+        buffer.put((byte) ' ');
+        if (value < 0)
+        {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long scaled = Math.round(value * (double) DECIMALS);
+        putLong(scaled / DECIMALS);
+        buffer.put((byte) '.');
+        long fraction = scaled % DECIMALS;
+        for (int divisor = DECIMALS / 10; divisor > 0; divisor /= 10)
+        {
+            buffer.put((byte) ('0' + fraction / divisor % 10));
+        }
+    }
+
+    /**
+     * Puts the digits of a non negative value.
+     */
+    private void putLong(long value)
+    {
+        int length = 0;
+        do
+        {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length > 0)
+        {
+            buffer.put(digits[--length]);
+        }
+    }
+
+    private void putAscii(String text)
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+}
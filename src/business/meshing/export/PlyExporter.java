@@ -0,0 +1,152 @@
+package business.meshing.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exports binary little endian PLY: the vertices (with their normals, if
+ * asked), then the triangles. The element counts of the header are written
+ * as fixed width numbers, filled in on close.
+ *
+ * PLY lists all the vertices before the faces. To add vertices after
+ * triangles, create the exporter as interleaved: the triangles are then
+ * spilled to a temporary file, appended on close.
+ */
+public class PlyExporter extends MeshExporter
+{
+
+    /**
+     * Width of the element counts in the header.
+     */
+    private static final int COUNT_DIGITS = 10;
+    private static final String COUNT_PLACEHOLDER = "0000000000";
+    private static final int TRIANGLE_SIZE = 13;
+    private final long vertexCountOffset;
+    private final long triangleCountOffset;
+    /**
+     * The temporary file of the triangles, when interleaved.
+     */
+    private File spillFile = null;
+    private FileChannel spill = null;
+    private ByteBuffer spillBuffer = null;
+
+    public PlyExporter(File file, boolean normals) throws IOException
+    {
+        this(file, normals, false);
+    }
+
+    public PlyExporter(File file, boolean normals, boolean interleaved) throws IOException
+    {
+        super(file, normals, ByteOrder.LITTLE_ENDIAN);
+        String start = "ply\nformat binary_little_endian 1.0\ncomment dual-contouring hull\nelement vertex ";
+        String vertex = "\nproperty float x\nproperty float y\nproperty float z\n"
+                + (normals ? "property float nx\nproperty float ny\nproperty float nz\n" : "")
+                + "element face ";
+        String face = "\nproperty list uchar int vertex_indices\nend_header\n";
+
+        vertexCountOffset = start.length();
+        triangleCountOffset = vertexCountOffset + COUNT_DIGITS + vertex.length();
+        buffer.put((start + COUNT_PLACEHOLDER + vertex + COUNT_PLACEHOLDER + face).getBytes(StandardCharsets.US_ASCII));
+
+        if (interleaved)
+        {
+            spillFile = File.createTempFile(file.getName(), ".faces", file.getAbsoluteFile().getParentFile());
+            spill = FileChannel.open(spillFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.READ);
+            spillBuffer = ByteBuffer.allocateDirect(buffer.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    @Override
+    public void addVertices(FloatBuffer positions, FloatBuffer normals) throws IOException
+    {
+        if (triangleCount > 0 && spill == null)
+        {
+            throw new IllegalStateException("PLY needs all the vertices before the triangles, unless interleaved");
+        }
+        int size = this.normals ? 24 : 12;
+        while (positions.remaining() >= 3)
+        {
+            ensureRemaining(size);
+            buffer.putFloat(positions.get()).putFloat(positions.get()).putFloat(positions.get());
+            if (this.normals)
+            {
+                buffer.putFloat(normals.get()).putFloat(normals.get()).putFloat(normals.get());
+            }
+            vertexCount++;
+        }
+    }
+
+    @Override
+    public void addTriangles(IntBuffer indices) throws IOException
+    {
+        while (indices.remaining() >= 3)
+        {
+            ByteBuffer target;
+            if (spill == null)
+            {
+                ensureRemaining(TRIANGLE_SIZE);
+                target = buffer;
+            } else
+            {
+                if (spillBuffer.remaining() < TRIANGLE_SIZE)
+                {
+                    flushSpill();
+                }
+                target = spillBuffer;
+            }
+            target.put((byte) 3).putInt(indices.get()).putInt(indices.get()).putInt(indices.get());
+            triangleCount++;
+        }
+    }
+
+    private void flushSpill() throws IOException
+    {
+        spillBuffer.flip();
+        while (spillBuffer.hasRemaining())
+        {
+            spill.write(spillBuffer);
+        }
+        spillBuffer.clear();
+    }
+
+    @Override
+    protected void finish() throws IOException
+    {
+        if (spill != null)
+        {
+            try
+            {
+                flushSpill();
+                append(spill);
+            } finally
+            {
+                spill.close();
+                Files.delete(spillFile.toPath());
+            }
+        }
+        writeAt(formatCount(vertexCount), vertexCountOffset);
+        writeAt(formatCount(triangleCount), triangleCountOffset);
+    }
+
+    /**
+     * Formats the count on COUNT_DIGITS digits, zero padded.
+     */
+    private static ByteBuffer formatCount(int count)
+    {
+        ByteBuffer digits = ByteBuffer.allocate(COUNT_DIGITS);
+        for (int i = COUNT_DIGITS - 1; i >= 0; i--)
+        {
+            digits.put(i, (byte) ('0' + count % 10));
+            count /= 10;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,125 @@
+package business.meshing.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+
+/**
+ * Exports binary STL: an 80 byte header, the triangle count, then per
+ * triangle its normal, its three corners and an unused attribute. STL has
+ * no shared vertices, so the corners are read from the positions added
+ * before, and the normal is the face's.
+ */
+public class StlExporter extends MeshExporter
+{
+
+    private static final int HEADER_SIZE = 80;
+    private static final int TRIANGLE_SIZE = 50;
+    /**
+     * The chunks of positions added, and the index of the first vertex of
+     * each.
+     */
+    private final ArrayList<FloatBuffer> chunks = new ArrayList<>();
+    private int[] chunkStarts = new int[4];
+    /**
+     * Index of the chunk found by the last getChunk.
+     */
+    private int chunkIndex = 0;
+
+    public StlExporter(File file) throws IOException
+    {
+        super(file, false, ByteOrder.LITTLE_ENDIAN);
+        byte[] header = new byte[HEADER_SIZE];
+        byte[] title = "dual-contouring hull".getBytes("US-ASCII");
+        System.arraycopy(title, 0, header, 0, title.length);
+        buffer.put(header);
+        // The count, written on close.
+        buffer.putInt(0);
+    }
+
+    @Override
+    public void addVertices(FloatBuffer positions, FloatBuffer normals)
+    {
+        if (chunks.size() == chunkStarts.length)
+        {
+            int[] starts = new int[2 * chunkStarts.length];
+            System.arraycopy(chunkStarts, 0, starts, 0, chunkStarts.length);
+            chunkStarts = starts;
+        }
+        chunkStarts[chunks.size()] = vertexCount;
+        chunks.add(positions.slice());
+        vertexCount += positions.remaining() / 3;
+    }
+
+    @Override
+    public void addTriangles(IntBuffer indices) throws IOException
+    {
+        float[] corners = new float[9];
+        while (indices.remaining() >= 3)
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                int vertex = indices.get();
+                FloatBuffer chunk = getChunk(vertex);
+                int offset = 3 * (vertex - chunkStarts[chunkIndex]);
+                corners[3 * i] = chunk.get(offset);
+                corners[3 * i + 1] = chunk.get(offset + 1);
+                corners[3 * i + 2] = chunk.get(offset + 2);
+            }
+
+            // The face normal: (b - a) x (c - a).
+            float ux = corners[3] - corners[0], uy = corners[4] - corners[1], uz = corners[5] - corners[2];
+            float vx = corners[6] - corners[0], vy = corners[7] - corners[1], vz = corners[8] - corners[2];
+            float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0)
+            {
+                nx /= length;
+                ny /= length;
+                nz /= length;
+            }
+
+            ensureRemaining(TRIANGLE_SIZE);
+            buffer.putFloat(nx).putFloat(ny).putFloat(nz);
+            for (float corner : corners)
+            {
+                buffer.putFloat(corner);
+            }
+            buffer.putShort((short) 0);
+            triangleCount++;
+        }
+    }
+
+    /**
+     * Returns the chunk holding the vertex, starting from the last one found:
+     * triangles mostly use recent vertices.
+     */
+    private FloatBuffer getChunk(int vertex)
+    {
+        if (vertex < 0 || vertex >= vertexCount)
+        {
+            throw new IndexOutOfBoundsException("No vertex " + vertex);
+        }
+        while (vertex < chunkStarts[chunkIndex])
+        {
+            chunkIndex--;
+        }
+        while (chunkIndex + 1 < chunks.size() && vertex >= chunkStarts[chunkIndex + 1])
+        {
+            chunkIndex++;
+        }
+        return chunks.get(chunkIndex);
+    }
+
+    @Override
+    protected void finish() throws IOException
+    {
+        ByteBuffer count = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        count.putInt(0, triangleCount);
+        writeAt(count, HEADER_SIZE);
+    }
+}
@@ -0,0 +1,86 @@
+package business.meshing.shapes;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+/**
+ * A cube of half size 1 / sqrt(2).
+ */
+public final class BoxShape extends Shape
+{
+
+    public static final float SIZE = 1 / FastMath.sqrt(2);
+
+    public BoxShape(Transform transform)
+    {
+        super(transform);
+    }
+
+    public BoxShape(Vector3f translation, Quaternion rotation, Vector3f scale)
+    {
+        super(translation, rotation, scale);
+    }
+
+    /**
+     * For squares, consider infinite norm squared.
+     */
+    @Override
+    public float getPointValue(Vector3f worldPoint)
+    {
+        float infiniteNorm = Math.max(Math.abs(localX(worldPoint)), Math.max(Math.abs(localZ(worldPoint)), Math.abs(localY(worldPoint))));
+        return infiniteNorm - SIZE;
+    }
+
+    @Override
+    public void unionPointValues(float[] xs, float[] ys, float[] zs, float[] values, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            float x = xs[i], y = ys[i], z = zs[i];
+            float infiniteNorm = Math.max(Math.abs(localX(x, y, z)), Math.max(Math.abs(localZ(x, y, z)), Math.abs(localY(x, y, z))));
+            values[i] = Math.min(infiniteNorm - SIZE, values[i]);
+        }
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint)
+    {
+        return getPointNormal(worldPoint, new Vector3f());
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint, Vector3f store)
+    {
+        Vector3f v = store.set(localX(worldPoint), localY(worldPoint), localZ(worldPoint));
+
+        // Determine on which side of the cube the point is, and determine the 
+        // unit vector bearing the normal. f'(x) = 2f(x).
+        if (Math.abs(v.z) > Math.abs(v.y) && Math.abs(v.z) > Math.abs(v.x))
+        {
+            v.set(0, 0, v.z);
+        } else if (Math.abs(v.y) > Math.abs(v.x))
+        {
+            v.set(0, v.y, 0);
+        } else
+        {
+            v.set(v.x, 0, 0);
+        }
+
+        return localToWorldNormal(v);
+    }
+
+    @Override
+    protected float getLocalRadius()
+    {
+        // Half diagonal of the cube.
+        return SIZE * FastMath.sqrt(3);
+    }
+
+    @Override
+    public void getWorldBounds(Vector3f min, Vector3f max)
+    {
+        localBoxToWorld(0, 0, 0, SIZE, SIZE, SIZE, min, max);
+    }
+}
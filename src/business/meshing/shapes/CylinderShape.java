@@ -0,0 +1,101 @@
+package business.meshing.shapes;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+/**
+ * A cylinder of radius 1 along the Y axis, of half length 1 / sqrt(2).
+ */
+public final class CylinderShape extends Shape
+{
+
+    public static final float SIZE = 1 / FastMath.sqrt(2);
+
+    public CylinderShape(Transform transform)
+    {
+        super(transform);
+    }
+
+    public CylinderShape(Vector3f translation, Quaternion rotation, Vector3f scale)
+    {
+        super(translation, rotation, scale);
+    }
+
+    @Override
+    public float getPointValue(Vector3f worldPoint)
+    {
+        float x = localX(worldPoint);
+        float z = localZ(worldPoint);
+        float length = Math.abs(localY(worldPoint));
+        float radius = FastMath.sqrt(x * x + z * z);
+
+        return Math.max(length - SIZE, radius - 1);
+    }
+
+    @Override
+    public void unionPointValues(float[] xs, float[] ys, float[] zs, float[] values, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            float x = localX(xs[i], ys[i], zs[i]);
+            float z = localZ(xs[i], ys[i], zs[i]);
+            float length = Math.abs(localY(xs[i], ys[i], zs[i]));
+            float radius = FastMath.sqrt(x * x + z * z);
+            values[i] = Math.min(Math.max(length - SIZE, radius - 1), values[i]);
+        }
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint)
+    {
+        return getPointNormal(worldPoint, new Vector3f());
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint, Vector3f store)
+    {
+        Vector3f v = store.set(localX(worldPoint), localY(worldPoint), localZ(worldPoint));
+
+        // If the point is on top of the cylinder, up- or downward normal.
+        if (Math.abs(v.y) - SIZE > FastMath.sqrt(v.x * v.x + v.z * v.z) - 1)
+        {
+            if (v.y < 0)
+            {
+                v.set(0, -100f, 0);
+            } else
+            {
+                v.set(0, 100f, 0);
+            }
+        } else
+        {
+            v.y = 0;
+        }
+
+        return localToWorldNormal(v);
+    }
+
+    @Override
+    protected float getLocalRadius()
+    {
+        // Distance from the center to the rim of the caps.
+        return FastMath.sqrt(1 + SIZE * SIZE);
+    }
+
+    /**
+     * Boxes the turned axis, plus the turned unit disc around it.
+     */
+    @Override
+    public void getWorldBounds(Vector3f min, Vector3f max)
+    {
+        Vector3f t = getTranslation();
+        for (int row = 0; row < 3; row++)
+        {
+            float disc = FastMath.sqrt(getLocalToWorld(row, 0) * getLocalToWorld(row, 0) + getLocalToWorld(row, 2) * getLocalToWorld(row, 2));
+            float half = Math.abs(getLocalToWorld(row, 1)) * SIZE + disc;
+            min.set(row, t.get(row) - half);
+            max.set(row, t.get(row) + half);
+        }
+    }
+}
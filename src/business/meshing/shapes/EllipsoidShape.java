@@ -0,0 +1,86 @@
+package business.meshing.shapes;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+/**
+ * A unit sphere, which its transform turns into an ellipsoid.
+ */
+public final class EllipsoidShape extends Shape
+{
+
+    public EllipsoidShape(Transform transform)
+    {
+        super(transform);
+    }
+
+    public EllipsoidShape(Vector3f translation, Quaternion rotation, Vector3f scale)
+    {
+        super(translation, rotation, scale);
+    }
+
+    @Override
+    public float getPointValue(Vector3f worldPoint)
+    {
+        float x = localX(worldPoint);
+        float y = localY(worldPoint);
+        float z = localZ(worldPoint);
+
+        // Value = norm 2.
+        return FastMath.sqrt(x * x + y * y + z * z) - 1;
+    }
+
+    @Override
+    public void unionPointValues(float[] xs, float[] ys, float[] zs, float[] values, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            float x = localX(xs[i], ys[i], zs[i]);
+            float y = localY(xs[i], ys[i], zs[i]);
+            float z = localZ(xs[i], ys[i], zs[i]);
+            values[i] = Math.min(FastMath.sqrt(x * x + y * y + z * z) - 1, values[i]);
+        }
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint)
+    {
+        return getPointNormal(worldPoint, new Vector3f());
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint, Vector3f store)
+    {
+        Vector3f v = store.set(localX(worldPoint), localY(worldPoint), localZ(worldPoint));
+
+        // Undo the scaling that turning back to world applies.
+        v.divideLocal(getScale());
+
+        return localToWorldNormal(v);
+    }
+
+    @Override
+    protected float getLocalRadius()
+    {
+        return 1;
+    }
+
+    /**
+     * Boxes the ellipsoid exactly: along each world axis, its half extent is
+     * the norm of the matching row of the local to world matrix.
+     */
+    @Override
+    public void getWorldBounds(Vector3f min, Vector3f max)
+    {
+        Vector3f t = getTranslation();
+        for (int row = 0; row < 3; row++)
+        {
+            float half = FastMath.sqrt(getLocalToWorld(row, 0) * getLocalToWorld(row, 0) + getLocalToWorld(row, 1) * getLocalToWorld(row, 1)
+                    + getLocalToWorld(row, 2) * getLocalToWorld(row, 2));
+            min.set(row, t.get(row) - half);
+            max.set(row, t.get(row) + half);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package business.meshing.shapes;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+/**
+ * A closed triangle mesh, placed by a plain transform: its field is the
+ * signed distance to the mesh, in the mesh's own units. The mesh is shared,
+ * not copied, by the shapes placing it.
+ */
+public final class MeshShape extends Shape
+{
+
+    private final TriangleMesh mesh;
+
+    public MeshShape(TriangleMesh mesh, Transform transform)
+    {
+        super(transform);
+        this.mesh = mesh;
+    }
+
+    public MeshShape(TriangleMesh mesh, Vector3f translation, Quaternion rotation, Vector3f scale)
+    {
+        super(translation, rotation, scale);
+        this.mesh = mesh;
+    }
+
+    @Override
+    public float getPointValue(Vector3f worldPoint)
+    {
+        return mesh.getSignedDistance(localX(worldPoint), localY(worldPoint), localZ(worldPoint));
+    }
+
+    @Override
+    public void unionPointValues(float[] xs, float[] ys, float[] zs, float[] values, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            float x = localX(xs[i], ys[i], zs[i]);
+            float y = localY(xs[i], ys[i], zs[i]);
+            float z = localZ(xs[i], ys[i], zs[i]);
+
+            // Outside the mesh's box, the distance to the box bounds the value
+            // from below: if it cannot lower the value, skip the search.
+            float bound = mesh.getBoundsDistance(x, y, z);
+            if (bound == 0 || bound < values[i])
+            {
+                values[i] = Math.min(mesh.getSignedDistance(x, y, z), values[i]);
+            }
+        }
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint)
+    {
+        return getPointNormal(worldPoint, new Vector3f());
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint, Vector3f store)
+    {
+        Vector3f v = mesh.getNormal(localX(worldPoint), localY(worldPoint), localZ(worldPoint), store);
+
+        // A normal turns by the inverse transpose: undo the scaling that
+        // turning back to world applies, and apply its inverse.
+        v.divideLocal(getScale()).divideLocal(getScale());
+
+        return localToWorldNormal(v);
+    }
+
+    @Override
+    protected float getLocalRadius()
+    {
+        return mesh.getRadius();
+    }
+
+    @Override
+    public void getWorldBounds(Vector3f min, Vector3f max)
+    {
+        Vector3f localMin = mesh.getMinBound();
+        Vector3f localMax = mesh.getMaxBound();
+        localBoxToWorld((localMin.x + localMax.x) / 2, (localMin.y + localMax.y) / 2, (localMin.z + localMax.z) / 2,
+                (localMax.x - localMin.x) / 2, (localMax.y - localMin.y) / 2, (localMax.z - localMin.z) / 2, min, max);
+    }
+
+    /**
+     * Tightens the bounding sphere test with the mesh's hierarchy: the box,
+     * turned local, is the box of its 8 corners.
+     */
+    @Override
+    public boolean mayCross(Vector3f min, Vector3f max)
+    {
+        if (!super.mayCross(min, max))
+        {
+            return false;
+        }
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int corner = 0; corner < 8; corner++)
+        {
+            float x = (corner & 1) == 0 ? min.x : max.x;
+            float y = (corner & 2) == 0 ? min.y : max.y;
+            float z = (corner & 4) == 0 ? min.z : max.z;
+            float lx = localX(x, y, z);
+            float ly = localY(x, y, z);
+            float lz = localZ(x, y, z);
+            minX = Math.min(minX, lx);
+            minY = Math.min(minY, ly);
+            minZ = Math.min(minZ, lz);
+            maxX = Math.max(maxX, lx);
+            maxY = Math.max(maxY, ly);
+            maxZ = Math.max(maxZ, lz);
+        }
+        return mesh.getDistanceBound(minX, minY, minZ, maxX, maxY, maxZ) <= 0;
+    }
+
+    public TriangleMesh getMesh()
+    {
+        return mesh;
+    }
+}
@@ -0,0 +1,462 @@
+package business.meshing.shapes;
+
+import com.jme3.math.Vector3f;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A density volume sampled on a regular grid, read from a raw file through
+ * memory maps: the samples stay in the file's pages, off the heap, and any
+ * number of threads read them at once, with absolute reads only, without a
+ * copy. The samples are stored x first, then y, then z; between them the
+ * density is trilinear.
+ *
+ * In local space, the grid is centered on the origin and spans [-1, 1] along
+ * its longest axis. The field is negative where the density is above the
+ * iso level, scaled by the steepest slope between neighbouring samples so
+ * that it never exceeds the distance to the surface, as a tracer needs.
+ * Outside the grid, the field is positive: the surface is closed at the
+ * grid's faces.
+ *
+ * Opening the volume reads it once, to build a pyramid of the minimum and
+ * maximum densities of its bricks, which tells at once that the surface
+ * misses a box.
+ */
+public final class SampledVolume
+{
+
+    /**
+     * The layout of a sample in the file.
+     */
+    public enum Format
+    {
+
+        F32_LE(4, ByteOrder.LITTLE_ENDIAN), F32_BE(4, ByteOrder.BIG_ENDIAN),
+        S16_LE(2, ByteOrder.LITTLE_ENDIAN), S16_BE(2, ByteOrder.BIG_ENDIAN),
+        U16_LE(2, ByteOrder.LITTLE_ENDIAN), U16_BE(2, ByteOrder.BIG_ENDIAN);
+        final int bytes;
+        final ByteOrder order;
+
+        private Format(int bytes, ByteOrder order)
+        {
+            this.bytes = bytes;
+            this.order = order;
+        }
+    }
+    /**
+     * Samples per brick edge, at the finest level of the pyramid.
+     */
+    private static final int BRICK_SIZE = 16;
+    /**
+     * Maps are at most 2^CHUNK_BITS bytes, a multiple of every sample size.
+     */
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    private final File source;
+    private final int nx, ny, nz;
+    private final Format format;
+    private final float isoLevel;
+    private final ByteBuffer[] chunks;
+    /**
+     * The local size of a voxel, and the factor from density to field.
+     */
+    private final float voxelSize;
+    private final float fieldScale;
+    /**
+     * The pyramid, finest level first: per level, its size in bricks along
+     * each axis, and the minimum and maximum density of each brick. A brick
+     * of level l covers BRICK_SIZE << l voxels along each axis, and the
+     * samples on both its faces.
+     */
+    private final int[][] levelSizes;
+    private final float[][] brickMins;
+    private final float[][] brickMaxs;
+    private final long contentHash;
+
+    /**
+     * Maps a raw volume and builds its pyramid.
+     *
+     * @param source the file of the samples.
+     * @param nx the samples along x, at least 2 (and likewise ny, nz).
+     * @param format the layout of a sample.
+     * @param isoLevel the density of the surface.
+     * @throws IOException if the file cannot be read or is too short.
+     */
+    public SampledVolume(File source, int nx, int ny, int nz, Format format, float isoLevel) throws IOException
+    {
+        if (nx < 2 || ny < 2 || nz < 2)
+        {
+            throw new IllegalArgumentException("A volume needs 2 samples or more along each axis");
+        }
+        this.source = source;
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        this.format = format;
+        this.isoLevel = isoLevel;
+        this.voxelSize = 2f / (Math.max(nx, Math.max(ny, nz)) - 1);
+
+        long length = (long) nx * ny * nz * format.bytes;
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ))
+        {
+            if (channel.size() < length)
+            {
+                throw new IOException(source + ": " + channel.size() + " bytes, " + length + " expected");
+            }
+            // A mapping outlives its channel.
+            chunks = new ByteBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++)
+            {
+                long start = (long) i << CHUNK_BITS;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length - start, 1L << CHUNK_BITS))
+                        .order(format.order);
+            }
+        }
+
+        // The pyramid's sizes.
+        int levels = 1;
+        int size = Math.max(nx, Math.max(ny, nz)) - 1;
+        while (BRICK_SIZE << (levels - 1) < size)
+        {
+            levels++;
+        }
+        levelSizes = new int[levels][];
+        brickMins = new float[levels][];
+        brickMaxs = new float[levels][];
+        for (int level = 0; level < levels; level++)
+        {
+            int span = BRICK_SIZE << level;
+            levelSizes[level] = new int[]
+            {
+                (nx - 2) / span + 1, (ny - 2) / span + 1, (nz - 2) / span + 1
+            };
+            int count = levelSizes[level][0] * levelSizes[level][1] * levelSizes[level][2];
+            brickMins[level] = new float[count];
+            brickMaxs[level] = new float[count];
+            Arrays.fill(brickMins[level], Float.MAX_VALUE);
+            Arrays.fill(brickMaxs[level], -Float.MAX_VALUE);
+        }
+
+        // One pass over the samples, in file order: the finest bricks, the
+        // steepest slope, and the hash.
+        int[] firstX = firstBricks(nx), lastX = lastBricks(nx, levelSizes[0][0]);
+        int[] firstY = firstBricks(ny), lastY = lastBricks(ny, levelSizes[0][1]);
+        int[] firstZ = firstBricks(nz), lastZ = lastBricks(nz, levelSizes[0][2]);
+        float[] slice = new float[nx * ny];
+        float[] previousSlice = new float[nx * ny];
+        float slope = 0;
+        long hash = 0xcbf29ce484222325L;
+        float[] mins = brickMins[0];
+        float[] maxs = brickMaxs[0];
+        int bx = levelSizes[0][0], by = levelSizes[0][1];
+        for (int k = 0; k < nz; k++)
+        {
+            for (int j = 0; j < ny; j++)
+            {
+                for (int i = 0; i < nx; i++)
+                {
+                    float value = sample(i, j, k);
+                    int s = j * nx + i;
+                    slice[s] = value;
+                    hash = (hash ^ Float.floatToIntBits(value)) * 0x100000001b3L;
+                    if (i > 0)
+                    {
+                        slope = Math.max(slope, Math.abs(value - slice[s - 1]));
+                    }
+                    if (j > 0)
+                    {
+                        slope = Math.max(slope, Math.abs(value - slice[s - nx]));
+                    }
+                    if (k > 0)
+                    {
+                        slope = Math.max(slope, Math.abs(value - previousSlice[s]));
+                    }
+                    for (int c = firstZ[k]; c <= lastZ[k]; c++)
+                    {
+                        for (int b = firstY[j]; b <= lastY[j]; b++)
+                        {
+                            for (int a = firstX[i]; a <= lastX[i]; a++)
+                            {
+                                int brick = (c * by + b) * bx + a;
+                                mins[brick] = Math.min(mins[brick], value);
+                                maxs[brick] = Math.max(maxs[brick], value);
+                            }
+                        }
+                    }
+                }
+            }
+            float[] swap = previousSlice;
+            previousSlice = slice;
+            slice = swap;
+        }
+        contentHash = hash;
+
+        // Each coarser brick merges the 8 finer ones it covers.
+        for (int level = 1; level < levels; level++)
+        {
+            int[] sizes = levelSizes[level];
+            int[] finer = levelSizes[level - 1];
+            for (int c = 0; c < finer[2]; c++)
+            {
+                for (int b = 0; b < finer[1]; b++)
+                {
+                    for (int a = 0; a < finer[0]; a++)
+                    {
+                        int from = (c * finer[1] + b) * finer[0] + a;
+                        int to = ((c / 2) * sizes[1] + b / 2) * sizes[0] + a / 2;
+                        brickMins[level][to] = Math.min(brickMins[level][to], brickMins[level - 1][from]);
+                        brickMaxs[level][to] = Math.max(brickMaxs[level][to], brickMaxs[level - 1][from]);
+                    }
+                }
+            }
+        }
+
+        // The trilinear density changes by at most slope per voxel along
+        // each axis, so by sqrt(3) slope per voxel along any direction.
+        fieldScale = slope > 0 ? voxelSize / (slope * (float) Math.sqrt(3)) : voxelSize;
+    }
+
+    /**
+     * Returns, for each sample along an axis, the first finest brick that
+     * holds it. A sample on a face between bricks is in both.
+     */
+    private static int[] firstBricks(int n)
+    {
+        int[] bricks = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            bricks[i] = Math.max(0, (i + BRICK_SIZE - 1) / BRICK_SIZE - 1);
+        }
+        return bricks;
+    }
+
+    private static int[] lastBricks(int n, int brickCount)
+    {
+        int[] bricks = new int[n];
+        for (int i = 0; i < n; i++)
+        {
+            bricks[i] = Math.min(brickCount - 1, i / BRICK_SIZE);
+        }
+        return bricks;
+    }
+
+    /**
+     * Reads a sample. Absolute reads do not touch the buffers' positions, so
+     * that threads share them.
+     */
+    private float sample(int i, int j, int k)
+    {
+        long offset = (((long) k * ny + j) * nx + i) * format.bytes;
+        ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_BITS)];
+        int position = (int) (offset & CHUNK_MASK);
+        switch (format)
+        {
+            case F32_LE:
+            case F32_BE:
+                return chunk.getFloat(position);
+            case S16_LE:
+            case S16_BE:
+                return chunk.getShort(position);
+            default:
+                return chunk.getShort(position) & 0xffff;
+        }
+    }
+
+    /**
+     * Returns the field at the local point.
+     */
+    public float getValue(float x, float y, float z)
+    {
+        // Grid coordinates, clamped into the grid.
+        float gx = x / voxelSize + (nx - 1) * 0.5f;
+        float gy = y / voxelSize + (ny - 1) * 0.5f;
+        float gz = z / voxelSize + (nz - 1) * 0.5f;
+        float cx = Math.max(0, Math.min(nx - 1, gx));
+        float cy = Math.max(0, Math.min(ny - 1, gy));
+        float cz = Math.max(0, Math.min(nz - 1, gz));
+
+        int i = Math.min((int) cx, nx - 2);
+        int j = Math.min((int) cy, ny - 2);
+        int k = Math.min((int) cz, nz - 2);
+        float fx = cx - i, fy = cy - j, fz = cz - k;
+        float d00 = sample(i, j, k) + fx * (sample(i + 1, j, k) - sample(i, j, k));
+        float d10 = sample(i, j + 1, k) + fx * (sample(i + 1, j + 1, k) - sample(i, j + 1, k));
+        float d01 = sample(i, j, k + 1) + fx * (sample(i + 1, j, k + 1) - sample(i, j, k + 1));
+        float d11 = sample(i, j + 1, k + 1) + fx * (sample(i + 1, j + 1, k + 1) - sample(i, j + 1, k + 1));
+        float d0 = d00 + fy * (d10 - d00);
+        float d1 = d01 + fy * (d11 - d01);
+        float value = (isoLevel - (d0 + fz * (d1 - d0))) * fieldScale;
+
+        // Outside, at least the distance to the grid: positive, and as
+        // continuous as inside.
+        if (cx != gx || cy != gy || cz != gz)
+        {
+            float dx = (gx - cx) * voxelSize, dy = (gy - cy) * voxelSize, dz = (gz - cz) * voxelSize;
+            value = Math.max(value, (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+        }
+        return value;
+    }
+
+    /**
+     * Computes the field's gradient at the local point by central
+     * differences a voxel apart, into the given vector, and returns it.
+     */
+    public Vector3f getGradient(float x, float y, float z, Vector3f store)
+    {
+        float h = voxelSize;
+        return store.set(getValue(x + h, y, z) - getValue(x - h, y, z), getValue(x, y + h, z) - getValue(x, y - h, z),
+                getValue(x, y, z + h) - getValue(x, y, z - h));
+    }
+
+    /**
+     * Tells whether the surface may cross the local box: false only if the
+     * field keeps the same sign all over it.
+     */
+    public boolean mayCross(float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        // The samples the trilinear density over the box depends on.
+        float loX = minX / voxelSize + (nx - 1) * 0.5f, hiX = maxX / voxelSize + (nx - 1) * 0.5f;
+        float loY = minY / voxelSize + (ny - 1) * 0.5f, hiY = maxY / voxelSize + (ny - 1) * 0.5f;
+        float loZ = minZ / voxelSize + (nz - 1) * 0.5f, hiZ = maxZ / voxelSize + (nz - 1) * 0.5f;
+        if (hiX < 0 || hiY < 0 || hiZ < 0 || loX > nx - 1 || loY > ny - 1 || loZ > nz - 1)
+        {
+            // Outside the grid, the field is positive.
+            return false;
+        }
+        boolean outside = loX < 0 || loY < 0 || loZ < 0 || hiX > nx - 1 || hiY > ny - 1 || hiZ > nz - 1;
+        int[] range =
+        {
+            Math.max(0, (int) Math.floor(loX)), Math.max(0, (int) Math.floor(loY)), Math.max(0, (int) Math.floor(loZ)),
+            Math.min(nx - 1, (int) Math.ceil(hiX)), Math.min(ny - 1, (int) Math.ceil(hiY)), Math.min(nz - 1, (int) Math.ceil(hiZ))
+        };
+        float[] bounds =
+        {
+            Float.MAX_VALUE, -Float.MAX_VALUE
+        };
+        int top = levelSizes.length - 1;
+        for (int c = 0; c < levelSizes[top][2]; c++)
+        {
+            for (int b = 0; b < levelSizes[top][1]; b++)
+            {
+                for (int a = 0; a < levelSizes[top][0]; a++)
+                {
+                    if (mergeBricks(top, a, b, c, range, bounds, outside))
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        // Negative somewhere, and positive or zero somewhere.
+        return bounds[1] > isoLevel && (outside || bounds[0] <= isoLevel);
+    }
+
+    /**
+     * Merges into the bounds the density bounds of the brick over the range
+     * of samples: its own if it lies within the range, or at the finest
+     * level, else its children's. Returns true as soon as the bounds straddle
+     * the iso level.
+     */
+    private boolean mergeBricks(int level, int a, int b, int c, int[] range, float[] bounds, boolean outside)
+    {
+        int span = BRICK_SIZE << level;
+        int coverX = cover(a, span, nx, range[0], range[3]);
+        int coverY = cover(b, span, ny, range[1], range[4]);
+        int coverZ = cover(c, span, nz, range[2], range[5]);
+        if (coverX < 0 || coverY < 0 || coverZ < 0)
+        {
+            return false;
+        }
+        boolean within = coverX > 0 && coverY > 0 && coverZ > 0;
+
+        int[] sizes = levelSizes[level];
+        if (within || level == 0)
+        {
+            int index = (c * sizes[1] + b) * sizes[0] + a;
+            bounds[0] = Math.min(bounds[0], brickMins[level][index]);
+            bounds[1] = Math.max(bounds[1], brickMaxs[level][index]);
+            return bounds[1] > isoLevel && (outside || bounds[0] <= isoLevel);
+        }
+
+        int[] finer = levelSizes[level - 1];
+        for (int child = 0; child < 8; child++)
+        {
+            int ca = 2 * a + (child & 1), cb = 2 * b + ((child >> 1) & 1), cc = 2 * c + ((child >> 2) & 1);
+            if (ca < finer[0] && cb < finer[1] && cc < finer[2] && mergeBricks(level - 1, ca, cb, cc, range, bounds, outside))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how the samples of a brick along an axis meet the range from
+     * low to high: -1 if they miss it, 1 if they lie within it, else 0.
+     */
+    private static int cover(int brick, int span, int n, int low, int high)
+    {
+        int start = brick * span;
+        int end = Math.min(start + span, n - 1);
+        if (start > high || end < low)
+        {
+            return -1;
+        }
+        return start >= low && end <= high ? 1 : 0;
+    }
+
+    public File getSource()
+    {
+        return source;
+    }
+
+    public int getSizeX()
+    {
+        return nx;
+    }
+
+    public int getSizeY()
+    {
+        return ny;
+    }
+
+    public int getSizeZ()
+    {
+        return nz;
+    }
+
+    public Format getFormat()
+    {
+        return format;
+    }
+
+    public float getIsoLevel()
+    {
+        return isoLevel;
+    }
+
+    /**
+     * @return the local half extents of the grid along x, y and z.
+     */
+    public float[] getHalfExtents()
+    {
+        return new float[]
+        {
+            (nx - 1) * voxelSize / 2, (ny - 1) * voxelSize / 2, (nz - 1) * voxelSize / 2
+        };
+    }
+
+    /**
+     * @return a hash of the samples, to tell volumes apart.
+     */
+    public long getContentHash()
+    {
+        return contentHash;
+    }
+}
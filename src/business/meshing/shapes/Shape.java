@@ -0,0 +1,239 @@
+package business.meshing.shapes;
+
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+/**
+ * A primitive field, defined in its local space by a unit shape, and placed
+ * by a plain transform. Shapes are immutable, so they can be evaluated from
+ * any number of threads.
+ */
+public abstract class Shape
+{
+
+    private final Vector3f translation;
+    private final Quaternion rotation;
+    private final Vector3f scale;
+    /**
+     * World to local matrix, inverse scale included.
+     */
+    private final float m00, m01, m02, m10, m11, m12, m20, m21, m22;
+    /**
+     * Local to world matrix, scale included, to turn local normals back.
+     */
+    private final Matrix3f normalMatrix;
+
+    public Shape(Transform transform)
+    {
+        this(transform.getTranslation(), transform.getRotation(), transform.getScale());
+    }
+
+    public Shape(Vector3f translation, Quaternion rotation, Vector3f scale)
+    {
+        this.translation = translation.clone();
+        this.rotation = rotation.clone();
+        this.scale = scale.clone();
+
+        // The inverse of a rotation is its transpose.
+        Matrix3f r = rotation.toRotationMatrix();
+        m00 = r.get(0, 0) / scale.x;
+        m01 = r.get(1, 0) / scale.x;
+        m02 = r.get(2, 0) / scale.x;
+        m10 = r.get(0, 1) / scale.y;
+        m11 = r.get(1, 1) / scale.y;
+        m12 = r.get(2, 1) / scale.y;
+        m20 = r.get(0, 2) / scale.z;
+        m21 = r.get(1, 2) / scale.z;
+        m22 = r.get(2, 2) / scale.z;
+
+        normalMatrix = new Matrix3f(
+                r.get(0, 0) * scale.x, r.get(0, 1) * scale.y, r.get(0, 2) * scale.z,
+                r.get(1, 0) * scale.x, r.get(1, 1) * scale.y, r.get(1, 2) * scale.z,
+                r.get(2, 0) * scale.x, r.get(2, 1) * scale.y, r.get(2, 2) * scale.z);
+    }
+
+    /**
+     * Computes the field value at the given point: negative inside, positive
+     * outside.
+     */
+    public abstract float getPointValue(Vector3f worldPoint);
+
+    /**
+     * Lowers each value of the batch, from the index from to the index to
+     * (excluded), to the field value at the matching point: the union of the
+     * shape with the values. The shapes of the meshing's hot path override it
+     * with a plain loop over the arrays, free of calls, that the JIT can
+     * unroll and vectorize.
+     */
+    public void unionPointValues(float[] xs, float[] ys, float[] zs, float[] values, int from, int to)
+    {
+        Vector3f point = new Vector3f();
+        for (int i = from; i < to; i++)
+        {
+            point.set(xs[i], ys[i], zs[i]);
+            values[i] = Math.min(getPointValue(point), values[i]);
+        }
+    }
+
+    /**
+     * Computes the unit normal of the surface at the given point.
+     */
+    public abstract Vector3f getPointNormal(Vector3f worldPoint);
+
+    /**
+     * Computes the unit normal into the given vector, and returns it. The
+     * shapes of the meshing's hot path override it to allocate nothing.
+     */
+    public Vector3f getPointNormal(Vector3f worldPoint, Vector3f store)
+    {
+        return store.set(getPointNormal(worldPoint));
+    }
+
+    /**
+     * Returns the radius of a sphere, centered on the local origin, that
+     * encloses the unit shape.
+     */
+    protected abstract float getLocalRadius();
+
+    /**
+     * Tells whether the surface of the shape may cross the box: false only if
+     * the field keeps the same sign all over it. This one tests the box
+     * against the bounding sphere; shapes costly to evaluate tighten it, so
+     * that the meshing skips the cells they do not reach.
+     */
+    public boolean mayCross(Vector3f min, Vector3f max)
+    {
+        Vector3f c = getTranslation();
+        float dx = Math.max(0, Math.max(min.x - c.x, c.x - max.x));
+        float dy = Math.max(0, Math.max(min.y - c.y, c.y - max.y));
+        float dz = Math.max(0, Math.max(min.z - c.z, c.z - max.z));
+        float radius = getBoundingRadius();
+        return dx * dx + dy * dy + dz * dz <= radius * radius;
+    }
+
+    /**
+     * Writes the corners of a world box enclosing the shape into min and max.
+     * This one boxes the bounding sphere; the shapes box their unit shape
+     * turned by the transform, which is much tighter for long, flat or
+     * turned shapes.
+     */
+    public void getWorldBounds(Vector3f min, Vector3f max)
+    {
+        float radius = getBoundingRadius();
+        min.set(translation).subtractLocal(radius, radius, radius);
+        max.set(translation).addLocal(radius, radius, radius);
+    }
+
+    /**
+     * Writes the world box enclosing a local box, given by its center and
+     * half extents, turned by the transform.
+     */
+    protected final void localBoxToWorld(float cx, float cy, float cz, float hx, float hy, float hz, Vector3f min, Vector3f max)
+    {
+        for (int row = 0; row < 3; row++)
+        {
+            // Each world half extent sums the local ones along the turned axes.
+            float center = translation.get(row) + normalMatrix.get(row, 0) * cx + normalMatrix.get(row, 1) * cy + normalMatrix.get(row, 2) * cz;
+            float half = Math.abs(normalMatrix.get(row, 0)) * hx + Math.abs(normalMatrix.get(row, 1)) * hy + Math.abs(normalMatrix.get(row, 2)) * hz;
+            min.set(row, center - half);
+            max.set(row, center + half);
+        }
+    }
+
+    /**
+     * Returns an element of the local to world matrix, scale included.
+     */
+    protected final float getLocalToWorld(int row, int column)
+    {
+        return normalMatrix.get(row, column);
+    }
+
+    /**
+     * Returns the X coordinate of the point in local space.
+     */
+    protected final float localX(Vector3f p)
+    {
+        return localX(p.x, p.y, p.z);
+    }
+
+    protected final float localY(Vector3f p)
+    {
+        return localY(p.x, p.y, p.z);
+    }
+
+    protected final float localZ(Vector3f p)
+    {
+        return localZ(p.x, p.y, p.z);
+    }
+
+    protected final float localX(float x, float y, float z)
+    {
+        return m00 * (x - translation.x) + m01 * (y - translation.y) + m02 * (z - translation.z);
+    }
+
+    protected final float localY(float x, float y, float z)
+    {
+        return m10 * (x - translation.x) + m11 * (y - translation.y) + m12 * (z - translation.z);
+    }
+
+    protected final float localZ(float x, float y, float z)
+    {
+        return m20 * (x - translation.x) + m21 * (y - translation.y) + m22 * (z - translation.z);
+    }
+
+    /**
+     * Returns the world to local matrix, inverse scale included, row by row:
+     * localX(p) is the first row times p - translation.
+     */
+    public final float[] getWorldToLocal()
+    {
+        return new float[]
+        {
+            m00, m01, m02, m10, m11, m12, m20, m21, m22
+        };
+    }
+
+    /**
+     * Turns a local direction into a normalized world direction, in place.
+     */
+    protected final Vector3f localToWorldNormal(Vector3f v)
+    {
+        return normalMatrix.mult(v, v).normalizeLocal();
+    }
+
+    /**
+     * Returns the radius of a sphere, centered on the translation, that
+     * encloses the shape.
+     */
+    public float getBoundingRadius()
+    {
+        return getLocalRadius() * Math.max(Math.abs(scale.x), Math.max(Math.abs(scale.y), Math.abs(scale.z)));
+    }
+
+    /**
+     * Returns the smallest scale factor. Local field values are at most
+     * 1 / minScale times the world distance to the surface, which bounds the
+     * step a sphere tracer may safely take.
+     */
+    public float getMinScale()
+    {
+        return Math.min(Math.abs(scale.x), Math.min(Math.abs(scale.y), Math.abs(scale.z)));
+    }
+
+    public Vector3f getTranslation()
+    {
+        return translation;
+    }
+
+    public Quaternion getRotation()
+    {
+        return rotation;
+    }
+
+    public Vector3f getScale()
+    {
+        return scale;
+    }
+}
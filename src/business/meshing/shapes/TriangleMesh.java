@@ -0,0 +1,1025 @@
+package business.meshing.shapes;
+
+import com.jme3.math.Vector3f;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A closed triangle mesh, seen as the boundary of a solid: its vertices
+ * welded, and a bounding volume hierarchy over its triangles, to find the
+ * triangle nearest to a point in logarithmic time. The signed distance to
+ * the mesh takes its sign from the angle weighted pseudo-normal of the
+ * nearest feature - face, edge or vertex - which is exact for closed,
+ * consistently oriented meshes.
+ *
+ * The mesh is immutable once built, so it can be queried from any number of
+ * threads. Each thread queries with a scratch of its own, which remembers
+ * the last nearest triangle: its distance bounds the next search, which
+ * prunes most of the tree for points close to each other, as the corners of
+ * neighbouring cells are.
+ */
+public final class TriangleMesh
+{
+
+    /**
+     * At most this many triangles per leaf of the hierarchy.
+     */
+    private static final int LEAF_SIZE = 4;
+    /**
+     * The nearest feature of a triangle: its face, a vertex or an edge (edge
+     * k from vertex k to vertex k + 1).
+     */
+    private static final int FACE = 0, VERTEX = 1, EDGE = 4;
+    private final File source;
+    private final float[] positions;
+    /**
+     * The triangles, 3 vertex indices each, in the order of the leaves.
+     */
+    private final int[] indices;
+    private final float[] faceNormals;
+    /**
+     * The pseudo-normals of each triangle's edges, 9 floats per triangle.
+     */
+    private final float[] edgeNormals;
+    private final float[] vertexNormals;
+    /**
+     * The hierarchy: node n has its box at 6 * n (min then max). A leaf has
+     * nodeCounts[n] triangles from nodeFirsts[n]; an inner node has none, and
+     * its children at nodeFirsts[n] and nodeFirsts[n] + 1.
+     */
+    private final float[] nodeBounds;
+    private final int[] nodeFirsts;
+    private final int[] nodeCounts;
+    private final float radius;
+    private final long contentHash;
+    private final ThreadLocal<Query> queries = new ThreadLocal<Query>()
+    {
+        @Override
+        protected Query initialValue()
+        {
+            return new Query();
+        }
+    };
+
+    /**
+     * Builds the mesh of the given triangles. Vertices at the same position
+     * are welded; triangles of no area are dropped.
+     *
+     * @param positions the vertices, 3 floats each.
+     * @param indices the triangles, 3 vertex indices each, counterclockwise
+     * seen from outside.
+     * @param source the file the mesh was read from, or null.
+     */
+    public TriangleMesh(float[] positions, int[] indices, File source)
+    {
+        this.source = source;
+        this.contentHash = hash(positions, indices);
+
+        // Weld, then drop the degenerate triangles.
+        int[] welded = new int[positions.length / 3];
+        this.positions = weld(positions, welded);
+        int[] kept = new int[indices.length];
+        int triangleCount = 0;
+        float[] normal = new float[3];
+        for (int t = 0; t < indices.length / 3; t++)
+        {
+            int a = welded[indices[3 * t]];
+            int b = welded[indices[3 * t + 1]];
+            int c = welded[indices[3 * t + 2]];
+            if (a != b && b != c && c != a && faceNormal(this.positions, a, b, c, normal))
+            {
+                kept[3 * triangleCount] = a;
+                kept[3 * triangleCount + 1] = b;
+                kept[3 * triangleCount + 2] = c;
+                triangleCount++;
+            }
+        }
+        if (triangleCount == 0)
+        {
+            throw new IllegalArgumentException("The mesh has no triangle");
+        }
+
+        // Build the hierarchy, then lay the triangles out in its order.
+        int[] order = new int[triangleCount];
+        float[] centroids = new float[3 * triangleCount];
+        for (int t = 0; t < triangleCount; t++)
+        {
+            order[t] = t;
+            for (int axis = 0; axis < 3; axis++)
+            {
+                centroids[3 * t + axis] = (this.positions[3 * kept[3 * t] + axis] + this.positions[3 * kept[3 * t + 1] + axis]
+                        + this.positions[3 * kept[3 * t + 2] + axis]) / 3;
+            }
+        }
+        Builder builder = new Builder(kept, centroids, order, triangleCount);
+        builder.build(builder.allocate(), 0, triangleCount);
+        this.nodeBounds = Arrays.copyOf(builder.bounds, 6 * builder.nodeCount);
+        this.nodeFirsts = Arrays.copyOf(builder.firsts, builder.nodeCount);
+        this.nodeCounts = Arrays.copyOf(builder.counts, builder.nodeCount);
+        this.indices = new int[3 * triangleCount];
+        for (int t = 0; t < triangleCount; t++)
+        {
+            System.arraycopy(kept, 3 * order[t], this.indices, 3 * t, 3);
+        }
+
+        // Face normals, and the pseudo-normals of the vertices (the faces'
+        // weighted by their angle at the vertex) and the edges (the sum of
+        // both faces').
+        this.faceNormals = new float[3 * triangleCount];
+        this.vertexNormals = new float[this.positions.length];
+        this.edgeNormals = new float[9 * triangleCount];
+        EdgeTable edges = new EdgeTable(3 * triangleCount);
+        int[] edgeIds = new int[3 * triangleCount];
+        for (int t = 0; t < triangleCount; t++)
+        {
+            faceNormal(this.positions, this.indices[3 * t], this.indices[3 * t + 1], this.indices[3 * t + 2], normal);
+            System.arraycopy(normal, 0, faceNormals, 3 * t, 3);
+            for (int k = 0; k < 3; k++)
+            {
+                int v = this.indices[3 * t + k];
+                float angle = angle(v, this.indices[3 * t + (k + 1) % 3], this.indices[3 * t + (k + 2) % 3]);
+                for (int axis = 0; axis < 3; axis++)
+                {
+                    vertexNormals[3 * v + axis] += angle * normal[axis];
+                }
+                edgeIds[3 * t + k] = edges.add(v, this.indices[3 * t + (k + 1) % 3], normal);
+            }
+        }
+        for (int v = 0; v < this.positions.length / 3; v++)
+        {
+            normalize(vertexNormals, 3 * v);
+        }
+        for (int e = 0; e < edgeIds.length; e++)
+        {
+            System.arraycopy(edges.normals, 3 * edgeIds[e], edgeNormals, 3 * e, 3);
+            normalize(edgeNormals, 3 * e);
+        }
+
+        float r = 0;
+        for (int v = 0; v < this.positions.length; v += 3)
+        {
+            r = Math.max(r, (float) Math.sqrt(this.positions[v] * this.positions[v]
+                    + this.positions[v + 1] * this.positions[v + 1] + this.positions[v + 2] * this.positions[v + 2]));
+        }
+        this.radius = r;
+    }
+
+    /**
+     * Reads a mesh from a file, in the format of its extension: binary or
+     * ASCII stl, or obj (its faces fanned into triangles).
+     */
+    public static TriangleMesh read(File file) throws IOException
+    {
+        String name = file.getName().toLowerCase();
+        Triangles read;
+        if (name.endsWith(".stl"))
+        {
+            read = readStl(file);
+        } else if (name.endsWith(".obj"))
+        {
+            read = readObj(file);
+        } else
+        {
+            throw new IOException("Unknown mesh format: " + file.getName());
+        }
+
+        try
+        {
+            return new TriangleMesh(read.positions, read.indices, file);
+        } catch (IllegalArgumentException e)
+        {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the triangles of an stl file, one vertex per triangle corner.
+     */
+    private static Triangles readStl(File file) throws IOException
+    {
+        float[] positions;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (size >= 84 && 84 + 50L * (buffer.getInt(80) & 0xffffffffL) == size)
+            {
+                // Binary: a header, the count, then per triangle its normal,
+                // its 3 vertices and 2 bytes of attributes.
+                int count = buffer.getInt(80);
+                positions = new float[9 * count];
+                for (int t = 0; t < count; t++)
+                {
+                    int offset = 84 + 50 * t + 12;
+                    for (int i = 0; i < 9; i++)
+                    {
+                        positions[9 * t + i] = buffer.getFloat(offset + 4 * i);
+                    }
+                }
+            } else
+            {
+                positions = readAsciiStl(file);
+            }
+        }
+
+        int[] indices = new int[positions.length / 3];
+        for (int i = 0; i < indices.length; i++)
+        {
+            indices[i] = i;
+        }
+        return new Triangles(positions, indices);
+    }
+
+    private static float[] readAsciiStl(File file) throws IOException
+    {
+        FloatList positions = new FloatList();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] fields = line.trim().split("\\s+");
+                if (fields[0].equals("vertex"))
+                {
+                    if (fields.length != 4)
+                    {
+                        throw new IOException(file + ": bad vertex " + line.trim());
+                    }
+                    for (int i = 1; i < 4; i++)
+                    {
+                        positions.add(Float.parseFloat(fields[i]));
+                    }
+                }
+            }
+        } catch (NumberFormatException e)
+        {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+        if (positions.size % 9 != 0)
+        {
+            throw new IOException(file + ": truncated facet");
+        }
+        return positions.toArray();
+    }
+
+    private static Triangles readObj(File file) throws IOException
+    {
+        FloatList positions = new FloatList();
+        IntList indices = new IntList();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] fields = line.trim().split("\\s+");
+                if (fields[0].equals("v"))
+                {
+                    for (int i = 1; i < 4; i++)
+                    {
+                        positions.add(Float.parseFloat(fields[i]));
+                    }
+                } else if (fields[0].equals("f"))
+                {
+                    // Vertex indices start at 1, or count back from the last.
+                    int vertexCount = positions.size / 3;
+                    int[] face = new int[fields.length - 1];
+                    for (int i = 0; i < face.length; i++)
+                    {
+                        int slash = fields[i + 1].indexOf('/');
+                        int index = Integer.parseInt(slash < 0 ? fields[i + 1] : fields[i + 1].substring(0, slash));
+                        face[i] = index < 0 ? vertexCount + index : index - 1;
+                        if (face[i] < 0 || face[i] >= vertexCount)
+                        {
+                            throw new IOException(file + ": bad vertex index in " + line.trim());
+                        }
+                    }
+                    for (int i = 2; i < face.length; i++)
+                    {
+                        indices.add(face[0]);
+                        indices.add(face[i - 1]);
+                        indices.add(face[i]);
+                    }
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+        {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+        return new Triangles(positions.toArray(), indices.toArray());
+    }
+
+    /**
+     * Returns the signed distance from the point to the mesh: negative
+     * inside, positive outside.
+     */
+    public float getSignedDistance(float x, float y, float z)
+    {
+        Query query = queries.get();
+        query.findNearest(x, y, z);
+        float[] normal;
+        int offset;
+        int triangle = query.nearest;
+        if (query.feature == FACE)
+        {
+            normal = faceNormals;
+            offset = 3 * triangle;
+        } else if (query.feature < EDGE)
+        {
+            normal = vertexNormals;
+            offset = 3 * indices[3 * triangle + query.feature - VERTEX];
+        } else
+        {
+            normal = edgeNormals;
+            offset = 9 * triangle + 3 * (query.feature - EDGE);
+        }
+        float side = (x - query.nearestX) * normal[offset] + (y - query.nearestY) * normal[offset + 1]
+                + (z - query.nearestZ) * normal[offset + 2];
+        float distance = (float) Math.sqrt(query.nearestDistance);
+        return side < 0 ? -distance : distance;
+    }
+
+    /**
+     * Writes the normal of the triangle nearest to the point into the given
+     * vector, and returns it.
+     */
+    public Vector3f getNormal(float x, float y, float z, Vector3f store)
+    {
+        Query query = queries.get();
+        query.findNearest(x, y, z);
+        int offset = 3 * query.nearest;
+        return store.set(faceNormals[offset], faceNormals[offset + 1], faceNormals[offset + 2]);
+    }
+
+    /**
+     * Returns the distance from the point to the mesh's bounding box: 0
+     * inside it. Outside, the signed distance is at least as large.
+     */
+    public float getBoundsDistance(float x, float y, float z)
+    {
+        return (float) Math.sqrt(boxDistanceSquared(0, x, y, z));
+    }
+
+    /**
+     * Returns a lower bound of the distance from the box to the mesh: the
+     * distance to the nearest triangle's bounding box. If positive, the
+     * mesh does not cross the box.
+     */
+    public float getDistanceBound(float minX, float minY, float minZ, float maxX, float maxY, float maxZ)
+    {
+        int[] stack = queries.get().stack;
+        int size = 0;
+        stack[size++] = 0;
+        float best = Float.MAX_VALUE;
+        while (size > 0)
+        {
+            int node = stack[--size];
+            int b = 6 * node;
+            float gap = gapSquared(nodeBounds[b], nodeBounds[b + 1], nodeBounds[b + 2], nodeBounds[b + 3], nodeBounds[b + 4], nodeBounds[b + 5],
+                    minX, minY, minZ, maxX, maxY, maxZ);
+            if (gap >= best)
+            {
+                continue;
+            }
+            if (nodeCounts[node] == 0)
+            {
+                stack[size++] = nodeFirsts[node];
+                stack[size++] = nodeFirsts[node] + 1;
+                continue;
+            }
+            for (int t = nodeFirsts[node]; t < nodeFirsts[node] + nodeCounts[node]; t++)
+            {
+                int a = 3 * indices[3 * t];
+                int c = 3 * indices[3 * t + 1];
+                int d = 3 * indices[3 * t + 2];
+                gap = gapSquared(Math.min(positions[a], Math.min(positions[c], positions[d])),
+                        Math.min(positions[a + 1], Math.min(positions[c + 1], positions[d + 1])),
+                        Math.min(positions[a + 2], Math.min(positions[c + 2], positions[d + 2])),
+                        Math.max(positions[a], Math.max(positions[c], positions[d])),
+                        Math.max(positions[a + 1], Math.max(positions[c + 1], positions[d + 1])),
+                        Math.max(positions[a + 2], Math.max(positions[c + 2], positions[d + 2])),
+                        minX, minY, minZ, maxX, maxY, maxZ);
+                if (gap == 0)
+                {
+                    return 0;
+                }
+                best = Math.min(best, gap);
+            }
+        }
+        return (float) Math.sqrt(best);
+    }
+
+    /**
+     * Returns the squared distance between two boxes.
+     */
+    private static float gapSquared(float minX1, float minY1, float minZ1, float maxX1, float maxY1, float maxZ1,
+            float minX2, float minY2, float minZ2, float maxX2, float maxY2, float maxZ2)
+    {
+        float dx = Math.max(0, Math.max(minX1 - maxX2, minX2 - maxX1));
+        float dy = Math.max(0, Math.max(minY1 - maxY2, minY2 - maxY1));
+        float dz = Math.max(0, Math.max(minZ1 - maxZ2, minZ2 - maxZ1));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private float boxDistanceSquared(int node, float x, float y, float z)
+    {
+        int b = 6 * node;
+        float dx = Math.max(0, Math.max(nodeBounds[b] - x, x - nodeBounds[b + 3]));
+        float dy = Math.max(0, Math.max(nodeBounds[b + 1] - y, y - nodeBounds[b + 4]));
+        float dz = Math.max(0, Math.max(nodeBounds[b + 2] - z, z - nodeBounds[b + 5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * The scratch of a thread's queries: the traversal stack, the nearest
+     * point found, and the last nearest triangle.
+     */
+    private final class Query
+    {
+
+        final int[] stack = new int[64];
+        int nearest = -1;
+        int feature;
+        float nearestX, nearestY, nearestZ;
+        float nearestDistance;
+        /**
+         * The closest point of the last triangle tested, and its feature.
+         */
+        float closestX, closestY, closestZ;
+        int closestFeature;
+
+        /**
+         * Finds the point of the mesh nearest to the given point.
+         */
+        void findNearest(float x, float y, float z)
+        {
+            // Start from the last nearest triangle: its distance prunes the
+            // search.
+            nearestDistance = Float.MAX_VALUE;
+            if (nearest >= 0)
+            {
+                test(nearest, x, y, z);
+            }
+
+            int size = 0;
+            stack[size++] = 0;
+            while (size > 0)
+            {
+                int node = stack[--size];
+                if (boxDistanceSquared(node, x, y, z) >= nearestDistance)
+                {
+                    continue;
+                }
+                if (nodeCounts[node] > 0)
+                {
+                    for (int t = nodeFirsts[node]; t < nodeFirsts[node] + nodeCounts[node]; t++)
+                    {
+                        test(t, x, y, z);
+                    }
+                    continue;
+                }
+
+                // Visit the nearer child first: push it last.
+                int left = nodeFirsts[node];
+                float leftDistance = boxDistanceSquared(left, x, y, z);
+                float rightDistance = boxDistanceSquared(left + 1, x, y, z);
+                if (leftDistance <= rightDistance)
+                {
+                    if (rightDistance < nearestDistance)
+                    {
+                        stack[size++] = left + 1;
+                    }
+                    if (leftDistance < nearestDistance)
+                    {
+                        stack[size++] = left;
+                    }
+                } else
+                {
+                    if (leftDistance < nearestDistance)
+                    {
+                        stack[size++] = left;
+                    }
+                    if (rightDistance < nearestDistance)
+                    {
+                        stack[size++] = left + 1;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Keeps the triangle if it is nearer than the nearest so far.
+         */
+        private void test(int triangle, float x, float y, float z)
+        {
+            float distance = closestPoint(triangle, x, y, z);
+            if (distance < nearestDistance)
+            {
+                nearestDistance = distance;
+                nearest = triangle;
+                feature = closestFeature;
+                nearestX = closestX;
+                nearestY = closestY;
+                nearestZ = closestZ;
+            }
+        }
+
+        /**
+         * Finds the closest point of the triangle and its feature (after
+         * Ericson, Real-Time Collision Detection, 5.1.5), and returns its
+         * squared distance to the given point.
+         */
+        private float closestPoint(int triangle, float px, float py, float pz)
+        {
+            int a = 3 * indices[3 * triangle];
+            int b = 3 * indices[3 * triangle + 1];
+            int c = 3 * indices[3 * triangle + 2];
+            float ax = positions[a], ay = positions[a + 1], az = positions[a + 2];
+            float abx = positions[b] - ax, aby = positions[b + 1] - ay, abz = positions[b + 2] - az;
+            float acx = positions[c] - ax, acy = positions[c + 1] - ay, acz = positions[c + 2] - az;
+            float apx = px - ax, apy = py - ay, apz = pz - az;
+
+            float d1 = abx * apx + aby * apy + abz * apz;
+            float d2 = acx * apx + acy * apy + acz * apz;
+            if (d1 <= 0 && d2 <= 0)
+            {
+                return closest(ax, ay, az, VERTEX, px, py, pz);
+            }
+
+            float bpx = apx - abx, bpy = apy - aby, bpz = apz - abz;
+            float d3 = abx * bpx + aby * bpy + abz * bpz;
+            float d4 = acx * bpx + acy * bpy + acz * bpz;
+            if (d3 >= 0 && d4 <= d3)
+            {
+                return closest(ax + abx, ay + aby, az + abz, VERTEX + 1, px, py, pz);
+            }
+
+            float vc = d1 * d4 - d3 * d2;
+            if (vc <= 0 && d1 >= 0 && d3 <= 0)
+            {
+                float v = d1 / (d1 - d3);
+                return closest(ax + v * abx, ay + v * aby, az + v * abz, EDGE, px, py, pz);
+            }
+
+            float cpx = apx - acx, cpy = apy - acy, cpz = apz - acz;
+            float d5 = abx * cpx + aby * cpy + abz * cpz;
+            float d6 = acx * cpx + acy * cpy + acz * cpz;
+            if (d6 >= 0 && d5 <= d6)
+            {
+                return closest(ax + acx, ay + acy, az + acz, VERTEX + 2, px, py, pz);
+            }
+
+            float vb = d5 * d2 - d1 * d6;
+            if (vb <= 0 && d2 >= 0 && d6 <= 0)
+            {
+                float w = d2 / (d2 - d6);
+                return closest(ax + w * acx, ay + w * acy, az + w * acz, EDGE + 2, px, py, pz);
+            }
+
+            float va = d3 * d6 - d5 * d4;
+            if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0)
+            {
+                float w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+                return closest(ax + abx + w * (acx - abx), ay + aby + w * (acy - aby), az + abz + w * (acz - abz), EDGE + 1, px, py, pz);
+            }
+
+            float denominator = 1 / (va + vb + vc);
+            float v = vb * denominator;
+            float w = vc * denominator;
+            return closest(ax + v * abx + w * acx, ay + v * aby + w * acy, az + v * abz + w * acz, FACE, px, py, pz);
+        }
+
+        private float closest(float x, float y, float z, int feature, float px, float py, float pz)
+        {
+            closestX = x;
+            closestY = y;
+            closestZ = z;
+            closestFeature = feature;
+            return (px - x) * (px - x) + (py - y) * (py - y) + (pz - z) * (pz - z);
+        }
+    }
+
+    /**
+     * Builds the hierarchy top down, splitting each node at the median of
+     * its triangles' centroids along the longest axis of their bounds.
+     */
+    private final class Builder
+    {
+
+        final int[] triangles;
+        final float[] centroids;
+        final int[] order;
+        float[] bounds;
+        int[] firsts;
+        int[] counts;
+        int nodeCount = 0;
+
+        Builder(int[] triangles, float[] centroids, int[] order, int triangleCount)
+        {
+            this.triangles = triangles;
+            this.centroids = centroids;
+            this.order = order;
+            // A tree of leaves of at least one triangle has fewer nodes.
+            int capacity = 2 * triangleCount;
+            this.bounds = new float[6 * capacity];
+            this.firsts = new int[capacity];
+            this.counts = new int[capacity];
+        }
+
+        int allocate()
+        {
+            return nodeCount++;
+        }
+
+        /**
+         * Builds the node of the triangles of order from start to end
+         * (excluded).
+         */
+        void build(int node, int start, int end)
+        {
+            float[] box =
+            {
+                Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE
+            };
+            float[] centroidBox = box.clone();
+            for (int i = start; i < end; i++)
+            {
+                int t = order[i];
+                for (int k = 0; k < 3; k++)
+                {
+                    int v = 3 * triangles[3 * t + k];
+                    for (int axis = 0; axis < 3; axis++)
+                    {
+                        box[axis] = Math.min(box[axis], positions[v + axis]);
+                        box[axis + 3] = Math.max(box[axis + 3], positions[v + axis]);
+                    }
+                }
+                for (int axis = 0; axis < 3; axis++)
+                {
+                    centroidBox[axis] = Math.min(centroidBox[axis], centroids[3 * t + axis]);
+                    centroidBox[axis + 3] = Math.max(centroidBox[axis + 3], centroids[3 * t + axis]);
+                }
+            }
+            System.arraycopy(box, 0, bounds, 6 * node, 6);
+
+            if (end - start <= LEAF_SIZE)
+            {
+                firsts[node] = start;
+                counts[node] = end - start;
+                return;
+            }
+
+            int axis = 0;
+            for (int i = 1; i < 3; i++)
+            {
+                if (centroidBox[i + 3] - centroidBox[i] > centroidBox[axis + 3] - centroidBox[axis])
+                {
+                    axis = i;
+                }
+            }
+            int middle = (start + end) / 2;
+            select(start, end, middle, axis);
+
+            int left = allocate();
+            allocate();
+            firsts[node] = left;
+            counts[node] = 0;
+            build(left, start, middle);
+            build(left + 1, middle, end);
+        }
+
+        /**
+         * Partially sorts order from start to end (excluded) by centroid
+         * along the axis, so that the k-th is in place.
+         */
+        private void select(int start, int end, int k, int axis)
+        {
+            int low = start;
+            int high = end - 1;
+            while (high > low)
+            {
+                float pivot = centroids[3 * order[(low + high) >>> 1] + axis];
+                int i = low;
+                int j = high;
+                while (i <= j)
+                {
+                    while (centroids[3 * order[i] + axis] < pivot)
+                    {
+                        i++;
+                    }
+                    while (centroids[3 * order[j] + axis] > pivot)
+                    {
+                        j--;
+                    }
+                    if (i <= j)
+                    {
+                        int swap = order[i];
+                        order[i++] = order[j];
+                        order[j--] = swap;
+                    }
+                }
+                if (k <= j)
+                {
+                    high = j;
+                } else if (k >= i)
+                {
+                    low = i;
+                } else
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The distinct edges of the mesh: an open addressing table from vertex
+     * pairs, either way round, to the sums of their faces' normals.
+     */
+    private static final class EdgeTable
+    {
+
+        private final long[] keys;
+        private final int[] ids;
+        private final int mask;
+        final float[] normals;
+        private int count = 0;
+
+        EdgeTable(int expected)
+        {
+            int capacity = Integer.highestOneBit(Math.max(16, 2 * expected - 1)) << 1;
+            keys = new long[capacity];
+            ids = new int[capacity];
+            Arrays.fill(keys, -1);
+            mask = capacity - 1;
+            normals = new float[3 * expected];
+        }
+
+        /**
+         * Adds the face normal to the edge's, and returns the edge's id.
+         */
+        int add(int v1, int v2, float[] normal)
+        {
+            long key = (long) Math.min(v1, v2) << 32 | Math.max(v1, v2);
+            long hash = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (keys[slot] != -1 && keys[slot] != key)
+            {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == -1)
+            {
+                keys[slot] = key;
+                ids[slot] = count++;
+            }
+            int id = ids[slot];
+            for (int axis = 0; axis < 3; axis++)
+            {
+                normals[3 * id + axis] += normal[axis];
+            }
+            return id;
+        }
+    }
+
+    /**
+     * A growable list of floats, for the readers.
+     */
+    private static final class FloatList
+    {
+
+        float[] values = new float[1024];
+        int size = 0;
+
+        void add(float value)
+        {
+            if (size == values.length)
+            {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = value;
+        }
+
+        float[] toArray()
+        {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * A growable list of ints, for the readers.
+     */
+    private static final class IntList
+    {
+
+        int[] values = new int[1024];
+        int size = 0;
+
+        void add(int value)
+        {
+            if (size == values.length)
+            {
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray()
+        {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * What the readers return: the positions, 3 floats per vertex, and the
+     * triangles, 3 vertex indices each.
+     */
+    private static final class Triangles
+    {
+
+        final float[] positions;
+        final int[] indices;
+
+        Triangles(float[] positions, int[] indices)
+        {
+            this.positions = positions;
+            this.indices = indices;
+        }
+    }
+
+    /**
+     * Merges the vertices at the same position: returns the distinct
+     * positions, and fills the index of each vertex among them.
+     */
+    private static float[] weld(float[] positions, int[] welded)
+    {
+        int vertexCount = positions.length / 3;
+        int capacity = Integer.highestOneBit(Math.max(16, 2 * vertexCount - 1)) << 1;
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        float[] distinct = new float[positions.length];
+        int count = 0;
+        for (int v = 0; v < vertexCount; v++)
+        {
+            float x = positions[3 * v] + 0f, y = positions[3 * v + 1] + 0f, z = positions[3 * v + 2] + 0f;
+            int hash = ((Float.floatToIntBits(x) * 31 + Float.floatToIntBits(y)) * 31 + Float.floatToIntBits(z)) * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & (capacity - 1);
+            while (table[slot] != -1)
+            {
+                int other = 3 * table[slot];
+                if (distinct[other] == x && distinct[other + 1] == y && distinct[other + 2] == z)
+                {
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (table[slot] == -1)
+            {
+                table[slot] = count;
+                distinct[3 * count] = x;
+                distinct[3 * count + 1] = y;
+                distinct[3 * count + 2] = z;
+                count++;
+            }
+            welded[v] = table[slot];
+        }
+        return Arrays.copyOf(distinct, 3 * count);
+    }
+
+    /**
+     * Computes the unit normal of the triangle, and returns false if it has
+     * no area.
+     */
+    private static boolean faceNormal(float[] positions, int a, int b, int c, float[] normal)
+    {
+        float abx = positions[3 * b] - positions[3 * a];
+        float aby = positions[3 * b + 1] - positions[3 * a + 1];
+        float abz = positions[3 * b + 2] - positions[3 * a + 2];
+        float acx = positions[3 * c] - positions[3 * a];
+        float acy = positions[3 * c + 1] - positions[3 * a + 1];
+        float acz = positions[3 * c + 2] - positions[3 * a + 2];
+        normal[0] = aby * acz - abz * acy;
+        normal[1] = abz * acx - abx * acz;
+        normal[2] = abx * acy - aby * acx;
+        return normalize(normal, 0);
+    }
+
+    /**
+     * Normalizes the vector at the offset, and returns false if it is null.
+     */
+    private static boolean normalize(float[] vectors, int offset)
+    {
+        float length = (float) Math.sqrt(vectors[offset] * vectors[offset]
+                + vectors[offset + 1] * vectors[offset + 1] + vectors[offset + 2] * vectors[offset + 2]);
+        if (length == 0 || Float.isNaN(length))
+        {
+            return false;
+        }
+        vectors[offset] /= length;
+        vectors[offset + 1] /= length;
+        vectors[offset + 2] /= length;
+        return true;
+    }
+
+    /**
+     * Returns the angle at vertex v of the triangle v, v1, v2.
+     */
+    private float angle(int v, int v1, int v2)
+    {
+        float ux = positions[3 * v1] - positions[3 * v];
+        float uy = positions[3 * v1 + 1] - positions[3 * v + 1];
+        float uz = positions[3 * v1 + 2] - positions[3 * v + 2];
+        float wx = positions[3 * v2] - positions[3 * v];
+        float wy = positions[3 * v2 + 1] - positions[3 * v + 1];
+        float wz = positions[3 * v2 + 2] - positions[3 * v + 2];
+        float cross = (float) Math.sqrt((uy * wz - uz * wy) * (uy * wz - uz * wy) + (uz * wx - ux * wz) * (uz * wx - ux * wz)
+                + (ux * wy - uy * wx) * (ux * wy - uy * wx));
+        return (float) Math.atan2(cross, ux * wx + uy * wy + uz * wz);
+    }
+
+    /**
+     * Hashes the exact bits of the mesh as given.
+     */
+    private static long hash(float[] positions, int[] indices)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (float value : positions)
+        {
+            hash = (hash ^ Float.floatToIntBits(value)) * 0x100000001b3L;
+        }
+        for (int index : indices)
+        {
+            hash = (hash ^ index) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return the file the mesh was read from, or null.
+     */
+    public File getSource()
+    {
+        return source;
+    }
+
+    /**
+     * @return a hash of the mesh's content, to tell meshes apart.
+     */
+    public long getContentHash()
+    {
+        return contentHash;
+    }
+
+    /**
+     * @return the radius of the sphere, centered on the origin, that
+     * encloses the mesh.
+     */
+    public float getRadius()
+    {
+        return radius;
+    }
+
+    /**
+     * @return the min corner of the mesh's box.
+     */
+    public Vector3f getMinBound()
+    {
+        return new Vector3f(nodeBounds[0], nodeBounds[1], nodeBounds[2]);
+    }
+
+    /**
+     * @return the max corner of the mesh's box.
+     */
+    public Vector3f getMaxBound()
+    {
+        return new Vector3f(nodeBounds[3], nodeBounds[4], nodeBounds[5]);
+    }
+
+    public int getVertexCount()
+    {
+        return positions.length / 3;
+    }
+
+    public int getTriangleCount()
+    {
+        return indices.length / 3;
+    }
+
+    public Vector3f getVertex(int vertex, Vector3f store)
+    {
+        return store.set(positions[3 * vertex], positions[3 * vertex + 1], positions[3 * vertex + 2]);
+    }
+
+    /**
+     * Returns the index of a triangle's vertex (corner 0, 1 or 2).
+     */
+    public int getIndex(int triangle, int corner)
+    {
+        return indices[3 * triangle + corner];
+    }
+}
@@ -0,0 +1,119 @@
+package business.meshing.shapes;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+
+/**
+ * A sampled density volume, placed by a plain transform. The volume is
+ * shared, not copied, by the shapes placing it.
+ */
+public final class VolumeShape extends Shape
+{
+
+    private final SampledVolume volume;
+
+    public VolumeShape(SampledVolume volume, Transform transform)
+    {
+        super(transform);
+        this.volume = volume;
+    }
+
+    public VolumeShape(SampledVolume volume, Vector3f translation, Quaternion rotation, Vector3f scale)
+    {
+        super(translation, rotation, scale);
+        this.volume = volume;
+    }
+
+    @Override
+    public float getPointValue(Vector3f worldPoint)
+    {
+        return volume.getValue(localX(worldPoint), localY(worldPoint), localZ(worldPoint));
+    }
+
+    @Override
+    public void unionPointValues(float[] xs, float[] ys, float[] zs, float[] values, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            float x = localX(xs[i], ys[i], zs[i]);
+            float y = localY(xs[i], ys[i], zs[i]);
+            float z = localZ(xs[i], ys[i], zs[i]);
+            values[i] = Math.min(volume.getValue(x, y, z), values[i]);
+        }
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint)
+    {
+        return getPointNormal(worldPoint, new Vector3f());
+    }
+
+    @Override
+    public Vector3f getPointNormal(Vector3f worldPoint, Vector3f store)
+    {
+        Vector3f v = volume.getGradient(localX(worldPoint), localY(worldPoint), localZ(worldPoint), store);
+        if (v.x == 0 && v.y == 0 && v.z == 0)
+        {
+            // A flat spot: any direction will do.
+            v.set(0, 1, 0);
+        }
+
+        // A normal turns by the inverse transpose: undo the scaling that
+        // turning back to world applies, and apply its inverse.
+        v.divideLocal(getScale()).divideLocal(getScale());
+
+        return localToWorldNormal(v);
+    }
+
+    @Override
+    protected float getLocalRadius()
+    {
+        float[] h = volume.getHalfExtents();
+        return (float) Math.sqrt(h[0] * h[0] + h[1] * h[1] + h[2] * h[2]);
+    }
+
+    @Override
+    public void getWorldBounds(Vector3f min, Vector3f max)
+    {
+        float[] h = volume.getHalfExtents();
+        localBoxToWorld(0, 0, 0, h[0], h[1], h[2], min, max);
+    }
+
+    /**
+     * Tightens the bounding sphere test with the volume's pyramid: the box,
+     * turned local, is the box of its 8 corners.
+     */
+    @Override
+    public boolean mayCross(Vector3f min, Vector3f max)
+    {
+        if (!super.mayCross(min, max))
+        {
+            return false;
+        }
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int corner = 0; corner < 8; corner++)
+        {
+            float x = (corner & 1) == 0 ? min.x : max.x;
+            float y = (corner & 2) == 0 ? min.y : max.y;
+            float z = (corner & 4) == 0 ? min.z : max.z;
+            float lx = localX(x, y, z);
+            float ly = localY(x, y, z);
+            float lz = localZ(x, y, z);
+            minX = Math.min(minX, lx);
+            minY = Math.min(minY, ly);
+            minZ = Math.min(minZ, lz);
+            maxX = Math.max(maxX, lx);
+            maxY = Math.max(maxY, ly);
+            maxZ = Math.max(maxZ, lz);
+        }
+        return volume.mayCross(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    public SampledVolume getVolume()
+    {
+        return volume;
+    }
+}
@@ -0,0 +1,305 @@
+package business.meshing.tasks;
+
+import business.meshing.OctreeNode;
+import business.meshing.Vector3i;
+import business.meshing.HullField;
+import business.meshing.MeshingMetrics;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Constructs a mesh from a given octree.
+ */
+public class AdaptiveDualContouringTask extends RecursiveAction
+{
+
+    protected static enum AXIS
+    {
+
+        X, Y, Z
+    };
+    /**
+     * For each axis, the corners at both ends of the minimal edge, in each of
+     * the four cells around it (in edgeProc order).
+     */
+    private static final int[][] EDGE_CORNERS1 =
+    {
+        {
+            6, 4, 2, 0
+        },
+        {
+            5, 4, 1, 0
+        },
+        {
+            3, 2, 1, 0
+        }
+    };
+    private static final int[][] EDGE_CORNERS2 =
+    {
+        {
+            7, 5, 3, 1
+        },
+        {
+            7, 6, 3, 2
+        },
+        {
+            7, 6, 5, 4
+        }
+    };
+    private OctreeNode rootNode;
+    private ArrayList<Shape> shapes;
+    private ArrayList<Vector3i> triangles;
+    private MeshingMetrics metrics;
+    /**
+     * The corner being sampled: edgeProc allocates nothing.
+     */
+    private final Vector3f corner = new Vector3f();
+
+    protected AdaptiveDualContouringTask(OctreeNode rootNode, ArrayList<Shape> shapes, ArrayList<Vector3i> triangles, MeshingMetrics metrics)
+    {
+        this.rootNode = rootNode;
+        this.shapes = shapes;
+        this.triangles = triangles;
+        this.metrics = metrics;
+    }
+
+    public AdaptiveDualContouringTask(OctreeNode rootNode, ArrayList<Shape> shapes)
+    {
+        this(rootNode, shapes, new MeshingMetrics());
+    }
+
+    /**
+     * @param metrics the metrics to count the field evaluations in.
+     */
+    public AdaptiveDualContouringTask(OctreeNode rootNode, ArrayList<Shape> shapes, MeshingMetrics metrics)
+    {
+        this(rootNode, shapes, new ArrayList<Vector3i>(), metrics);
+    }
+
+    /**
+     * Recursive polygonisation function that handles cubes and, if the cube is
+     * not a leaf of the octree, calls other functions on its subcells, edges
+     * and faces.
+     *
+     * @param q is an octree node to process.
+     */
+    protected void cellProc(OctreeNode q)
+    {
+        if (q != null && !q.isLeaf())
+        {
+            OctreeNode[] kids = q.getChildren();
+            // 8 calls to cellProc
+            for (OctreeNode child : kids)
+            {
+                cellProc(child);
+            }
+
+            // 12 calls to faceProc
+            faceProc(kids[0], kids[1], AXIS.X);
+            faceProc(kids[2], kids[3], AXIS.X);
+            faceProc(kids[4], kids[5], AXIS.X);
+            faceProc(kids[6], kids[7], AXIS.X);
+
+            faceProc(kids[0], kids[2], AXIS.Y);
+            faceProc(kids[1], kids[3], AXIS.Y);
+            faceProc(kids[4], kids[6], AXIS.Y);
+            faceProc(kids[5], kids[7], AXIS.Y);
+
+            faceProc(kids[0], kids[4], AXIS.Z);
+            faceProc(kids[1], kids[5], AXIS.Z);
+            faceProc(kids[2], kids[6], AXIS.Z);
+            faceProc(kids[3], kids[7], AXIS.Z);
+
+
+            // 6 calls to edgeProc
+            edgeProc(kids[0], kids[2], kids[4], kids[6], AXIS.X);
+            edgeProc(kids[1], kids[3], kids[5], kids[7], AXIS.X);
+            edgeProc(kids[0], kids[1], kids[4], kids[5], AXIS.Y);
+            edgeProc(kids[2], kids[3], kids[6], kids[7], AXIS.Y);
+            edgeProc(kids[0], kids[1], kids[2], kids[3], AXIS.Z);
+            edgeProc(kids[4], kids[5], kids[6], kids[7], AXIS.Z);
+
+        }
+    }
+
+    /**
+     * Recursive polygonisation function that handles faces and, if no cube is a
+     * leaf of the octree, calls other functions on its edges and subfaces.
+     *
+     * @param q1 is the left-, bottom- or whatever-most octree node.
+     * @param q2 is its neighbour.
+     * @param axis is the axis of the face.
+     */
+    protected void faceProc(OctreeNode q1, OctreeNode q2, AXIS axis)
+    {
+        // If all nodes are leaves, or one is empty, bail out.
+        if (q1 != null && q2 != null && (!q1.isLeaf() || !q2.isLeaf()))
+        {
+            OctreeNode[] kids1 = q1.getChildren();
+            OctreeNode[] kids2 = q2.getChildren();
+
+            // First determine the orientation of the face.
+            switch (axis)
+            {
+                case X:
+                    // X axis
+                    // 4 calls to faceProc.
+                    faceProc(kids1[1], kids2[0], AXIS.X);
+                    faceProc(kids1[3], kids2[2], AXIS.X);
+                    faceProc(kids1[5], kids2[4], AXIS.X);
+                    faceProc(kids1[7], kids2[6], AXIS.X);
+
+                    // 4 calls to edgeProc
+                    edgeProc(kids1[1], kids2[0], kids1[5], kids2[4], AXIS.Y);
+                    edgeProc(kids1[3], kids2[2], kids1[7], kids2[6], AXIS.Y);
+                    edgeProc(kids1[1], kids2[0], kids1[3], kids2[2], AXIS.Z);
+                    edgeProc(kids1[5], kids2[4], kids1[7], kids2[6], AXIS.Z);
+
+                    break;
+                case Y:
+                    // Y axis
+                    // 4 calls to faceProc.
+                    faceProc(kids1[2], kids2[0], AXIS.Y);
+                    faceProc(kids1[3], kids2[1], AXIS.Y);
+                    faceProc(kids1[6], kids2[4], AXIS.Y);
+                    faceProc(kids1[7], kids2[5], AXIS.Y);
+
+                    // 4 calls to edgeProc
+                    edgeProc(kids1[2], kids2[0], kids1[6], kids2[4], AXIS.X);
+                    edgeProc(kids1[3], kids2[1], kids1[7], kids2[5], AXIS.X);
+                    edgeProc(kids1[2], kids1[3], kids2[0], kids2[1], AXIS.Z);
+                    edgeProc(kids1[6], kids1[7], kids2[4], kids2[5], AXIS.Z);
+
+                    break;
+                case Z:
+                    // Z axis
+                    // 4 calls to faceProc.
+                    faceProc(kids1[4], kids2[0], AXIS.Z);
+                    faceProc(kids1[5], kids2[1], AXIS.Z);
+                    faceProc(kids1[6], kids2[2], AXIS.Z);
+                    faceProc(kids1[7], kids2[3], AXIS.Z);
+
+                    // 4 calls to edgeProc
+                    edgeProc(kids1[4], kids1[5], kids2[0], kids2[1], AXIS.Y);
+                    edgeProc(kids1[6], kids1[7], kids2[2], kids2[3], AXIS.Y);
+                    edgeProc(kids1[4], kids1[6], kids2[0], kids2[2], AXIS.X);
+                    edgeProc(kids1[5], kids1[7], kids2[1], kids2[3], AXIS.X);
+
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Recursive polygonisation function that handles edges and, if no cube is a
+     * leaf of the octree, calls itself on its subedges. Also creates a Quad if
+     * needed.
+     *
+     * Octrees are oriented as follow: If the edge is along the X axis, q0 is
+     * y=0 and z=0, q1 is y=1, q2 is z=1, q3 is y=1 and z=1.
+     * 
+     *
+     * @param axis is the axis of the edge.
+     */
+    protected void edgeProc(OctreeNode q0, OctreeNode q1, OctreeNode q2, OctreeNode q3, AXIS axis)
+    {
+        // If one of the nodes is null, bail out.
+        if (q0 != null && q1 != null && q2 != null && q3 != null)
+        {
+            // If all cubes are leaves, stop recursion.
+            if (q0.isLeaf() && q1.isLeaf() && q2.isLeaf() && q3.isLeaf())
+            {
+                // If they all bear a vertex and there is an intersection on the
+                // edge, woot, generate a quad, kthxbai.
+                if (q0.getVertexIndex() != -1 && q1.getVertexIndex() != -1 && q2.getVertexIndex() != -1 && q3.getVertexIndex() != -1)
+                {
+                    // To check if there is an intersection on the edge, check each central edge - as they can be of different size.
+                    int corners1[] = EDGE_CORNERS1[axis.ordinal()];
+                    int corners2[] = EDGE_CORNERS2[axis.ordinal()];
+
+                    float v1, v2;
+                    for (int i = 0; i < 4; i++)
+                    {
+                        OctreeNode q = i == 0 ? q0 : i == 1 ? q1 : i == 2 ? q2 : q3;
+                        v1 = HullField.getValueAt(q.getCorner(corners1[i], corner), shapes);
+                        v2 = HullField.getValueAt(q.getCorner(corners2[i], corner), shapes);
+                        metrics.countFieldEvaluations(2);
+                        // Check if the signs are different.
+                        if (v1 < 0 && v2 >= 0 || v1 > 0 && v2 <= 0)
+                        {
+                            // If so, create a quad with the right triangle orientation.
+                            if (axis == AXIS.Y)
+                            {
+                                v1 = -v1;
+                            }
+
+                            addQuad(q0.getVertexIndex(), q1.getVertexIndex(), q2.getVertexIndex(), q3.getVertexIndex(), v1 < 0);
+                            break;
+                        }
+                    }
+
+
+                }
+            } else
+            {
+                // If not all cubes are leaves, make 2 calls to edgeProc.
+                OctreeNode[] kids1 = q0.getChildren();
+                OctreeNode[] kids2 = q1.getChildren();
+                OctreeNode[] kids3 = q2.getChildren();
+                OctreeNode[] kids4 = q3.getChildren();
+
+                switch (axis)
+                {
+                    case X:
+                        edgeProc(kids1[6], kids2[4], kids3[2], kids4[0], AXIS.X);
+                        edgeProc(kids1[7], kids2[5], kids3[3], kids4[1], AXIS.X);
+                        break;
+                    case Y:
+                        edgeProc(kids1[5], kids2[4], kids3[1], kids4[0], AXIS.Y);
+                        edgeProc(kids1[7], kids2[6], kids3[3], kids4[2], AXIS.Y);
+                        break;
+                    case Z:
+                        edgeProc(kids1[3], kids2[2], kids3[1], kids4[0], AXIS.Z);
+                        edgeProc(kids1[7], kids2[6], kids3[5], kids4[4], AXIS.Z);
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the quad around a minimal edge, given the vertices of the four
+     * cells sharing that edge (in edgeProc order).
+     *
+     * @param inward is true if the first corner of the edge is inside.
+     */
+    protected void addQuad(int i0, int i1, int i2, int i3, boolean inward)
+    {
+        if (inward)
+        {
+            triangles.add(new Vector3i(i0, i1, i2));
+            triangles.add(new Vector3i(i2, i1, i3));
+        } else
+        {
+            triangles.add(new Vector3i(i2, i1, i0));
+            triangles.add(new Vector3i(i3, i1, i2));
+        }
+    }
+
+    @Override
+    public void compute()
+    {
+        // TODO: parallelize :D
+        cellProc(rootNode);
+    }
+
+    /**
+     * @return the triangles
+     */
+    public ArrayList<Vector3i> getTriangles()
+    {
+        return triangles;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,172 @@
+package business.meshing.tasks;
+
+import business.meshing.CellCost;
+import business.meshing.DualContouring;
+import business.meshing.HullField;
+import business.meshing.MeshingMetrics;
+import business.meshing.OctreeNode;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+
+/**
+ * Computes the vertex of a cell crossed by the surface, from its edges'
+ * intersections, and tells whether it fits the cell. Keeps the scratch of
+ * the solve: one solver per thread, used for one cell at a time, allocates
+ * nothing.
+ */
+class CellVertexSolver
+{
+
+    /**
+     * Bisection steps refining each edge intersection.
+     */
+    private static final int INTERSECTION_STEPS = 5;
+    private final ArrayList<Shape> shapes;
+    private final int maxDepth;
+    private final MeshingMetrics metrics;
+    /**
+     * The intersections of the current cell, pooled, the edge being solved,
+     * and the vertex being solved.
+     */
+    private final ArrayList<Vector3f> cubePoints = new ArrayList<>(12);
+    private final ArrayList<Vector3f> cubeNormals = new ArrayList<>(12);
+    private final Vector3f[] pointPool = newPool();
+    private final Vector3f[] normalPool = newPool();
+    private final Vector3f corner1 = new Vector3f();
+    private final Vector3f corner2 = new Vector3f();
+    private final Vector3f edgeStart = new Vector3f();
+    private final Vector3f edgeEnd = new Vector3f();
+    private final Vector3f solvedVertex = new Vector3f();
+
+    CellVertexSolver(ArrayList<Shape> shapes, int maxDepth, MeshingMetrics metrics)
+    {
+        this.shapes = shapes;
+        this.maxDepth = maxDepth;
+        this.metrics = metrics;
+    }
+
+    private static Vector3f[] newPool()
+    {
+        Vector3f[] pool = new Vector3f[12];
+        for (int i = 0; i < pool.length; i++)
+        {
+            pool[i] = new Vector3f();
+        }
+        return pool;
+    }
+
+    /**
+     * Returns the index of the cell's cube, sampling its corners in the
+     * solver's scratch.
+     */
+    int getCubeIndex(OctreeNode octreeNode)
+    {
+        countFieldEvaluations(octreeNode.getCost(), 8);
+        return DualContouring.getCubeIndex(shapes, octreeNode.getMinBound(), octreeNode.getMaxBound(), corner1);
+    }
+
+    /**
+     * Computes the vertex of a cell crossed by the surface.
+     *
+     * @param cubeIndex the index of the cell's cube.
+     * @return the vertex, in the solver's scratch until the next cell, or
+     * null if it does not fit the cell - unless at max depth, thus max
+     * precision.
+     */
+    Vector3f solve(OctreeNode octreeNode, int cubeIndex)
+    {
+        cubePoints.clear();
+        cubeNormals.clear();
+        getIntersectionPoints(octreeNode.getMinBound(), octreeNode.getMaxBound(), cubeIndex, octreeNode.getCost());
+        Vector3f vertex = DualContouring.vertexFromParticle(cubePoints, cubeNormals, octreeNode.getCubeDiagonal() / 1000, metrics, octreeNode.getCost(), solvedVertex);
+
+        // OK here means with an aceptable distance to surface and inside the octreecube.
+        if (octreeNode.getDepth() == maxDepth
+                || (octreeNode.contains(vertex) && isOnSurface(vertex, octreeNode)))
+        {
+            return vertex;
+        }
+
+        metrics.countRejectedVertex();
+        if (octreeNode.getCost() != null)
+        {
+            octreeNode.getCost().countRejection();
+        }
+        return null;
+    }
+
+    /**
+     * Computes - and fills the pooled lists with - the intersection points
+     * and normals for the current cube.
+     *
+     * @param cost the cost of the cube, or null if not profiled.
+     */
+    private void getIntersectionPoints(Vector3f minBound, Vector3f maxBound, int cubeIndex, CellCost cost)
+    {
+        int edgeInfo = DualContouring.edgeTable[cubeIndex];
+
+        // For each pair of corners:
+        for (int i = 0; i < 12; i++)
+        {
+            // No need to process this edge if there is no intersection along it.
+            if ((edgeInfo & (1 << i)) == 0)
+            {
+                continue;
+            }
+
+            int offset1[] = DualContouring.intersections[i][0];
+            int offset2[] = DualContouring.intersections[i][1];
+
+            // The first corner is set according to the intersection table.
+            corner1.set(offset1[0] != 0 ? maxBound.x : minBound.x,
+                    offset1[1] != 0 ? maxBound.y : minBound.y,
+                    offset1[2] != 0 ? maxBound.z : minBound.z);
+
+            // Same with the second corner
+            corner2.set(offset2[0] != 0 ? maxBound.x : minBound.x,
+                    offset2[1] != 0 ? maxBound.y : minBound.y,
+                    offset2[2] != 0 ? maxBound.z : minBound.z);
+
+            // Values at both vertices of the edge:
+            float v1 = HullField.getValueAt(corner1, shapes);
+            float v2 = HullField.getValueAt(corner2, shapes);
+
+            // Interpolate the intersection point with the surface.
+            Vector3f intersectionPoint = HullField.exactIntersection(shapes, corner1, corner2, v1, v2, INTERSECTION_STEPS,
+                    pointPool[cubePoints.size()], edgeStart, edgeEnd);
+
+            // Now compute the exact normal at that point.
+            Vector3f currentNormal = HullField.getNormalAt(intersectionPoint, shapes, normalPool[cubeNormals.size()]);
+            // Both corners, the bisection steps, then the normal.
+            metrics.countIntersectionSolve();
+            countFieldEvaluations(cost, 2 + INTERSECTION_STEPS + 1);
+
+            // Save both the intersection point and the normal at that point.
+            cubePoints.add(intersectionPoint);
+            cubeNormals.add(currentNormal);
+        }
+    }
+
+    /**
+     * Returns true iff the vertex is close enough to the surface to be kept.
+     */
+    private boolean isOnSurface(Vector3f vertex, OctreeNode octreeNode)
+    {
+        countFieldEvaluations(octreeNode.getCost(), 1);
+        return Math.abs(HullField.getValueAt(vertex, shapes)) < octreeNode.getCubeDiagonal() / 1000;
+    }
+
+    /**
+     * Counts field evaluations in the metrics, and in the cell's cost if not
+     * null.
+     */
+    private void countFieldEvaluations(CellCost cost, int count)
+    {
+        metrics.countFieldEvaluations(count);
+        if (cost != null)
+        {
+            cost.countFieldEvaluations(count);
+        }
+    }
+}
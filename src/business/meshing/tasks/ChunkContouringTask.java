@@ -0,0 +1,60 @@
+package business.meshing.tasks;
+
+import business.meshing.MeshingMetrics;
+import business.meshing.OctreeNode;
+import business.meshing.Vector3i;
+import business.meshing.shapes.Shape;
+import java.util.ArrayList;
+
+/**
+ * Contours an octree built chunk by chunk: each chunk is a cell of the same
+ * depth, contoured on its own, then stitched to the chunks before it across
+ * their shared faces and edges. Contouring all the chunks, faces and edges
+ * gives the same triangles as contouring the whole octree.
+ */
+public class ChunkContouringTask extends AdaptiveDualContouringTask
+{
+
+    public ChunkContouringTask(ArrayList<Shape> shapes, MeshingMetrics metrics)
+    {
+        super(null, shapes, new ArrayList<Vector3i>(), metrics);
+    }
+
+    /**
+     * Contours the inside of a chunk.
+     */
+    public void contourChunk(OctreeNode chunk)
+    {
+        cellProc(chunk);
+    }
+
+    /**
+     * Contours the face between two chunks.
+     *
+     * @param low the chunk on the low side of the face.
+     * @param high its neighbour.
+     * @param axis the axis of the face: 0, 1 or 2 for X, Y or Z.
+     */
+    public void contourFace(OctreeNode low, OctreeNode high, int axis)
+    {
+        faceProc(low, high, AXIS.values()[axis]);
+    }
+
+    /**
+     * Contours the edge between four chunks, ordered as in edgeProc.
+     *
+     * @param axis the axis of the edge: 0, 1 or 2 for X, Y or Z.
+     */
+    public void contourEdge(OctreeNode q0, OctreeNode q1, OctreeNode q2, OctreeNode q3, int axis)
+    {
+        edgeProc(q0, q1, q2, q3, AXIS.values()[axis]);
+    }
+
+    /**
+     * Nothing to do: the chunks are contoured one call at a time.
+     */
+    @Override
+    public void compute()
+    {
+    }
+}
@@ -0,0 +1,359 @@
+package business.meshing.tasks;
+
+import business.meshing.OctreeDag;
+import business.meshing.Vector3i;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Constructs a mesh from an octree graph, as the AdaptiveDualContouringTask
+ * does from the octree itself: the same recursion, over the graph's nodes
+ * placed in their cells on the way down. The signs of the minimal edges come
+ * from the leaves, so that no shape is needed. The empty leaf, for all the
+ * subtrees without a vertex, is skipped at once.
+ *
+ * A vertex is numbered when its first quad is, so that the vertices of no
+ * quad are left out. The graph must be at most MAX_LEVEL levels deep.
+ */
+public class DagContouringTask extends RecursiveAction
+{
+
+    /**
+     * The deepest level whose cells' coordinates fit in an int.
+     */
+    public static final int MAX_LEVEL = 30;
+    private static final int X = 0, Y = 1, Z = 2;
+    /**
+     * For each axis, the corners at both ends of the minimal edge, in each of
+     * the four cells around it (in edgeProc order).
+     */
+    private static final int[][] EDGE_CORNERS1 =
+    {
+        {
+            6, 4, 2, 0
+        },
+        {
+            5, 4, 1, 0
+        },
+        {
+            3, 2, 1, 0
+        }
+    };
+    private static final int[][] EDGE_CORNERS2 =
+    {
+        {
+            7, 5, 3, 1
+        },
+        {
+            7, 6, 3, 2
+        },
+        {
+            7, 6, 5, 4
+        }
+    };
+    private final OctreeDag dag;
+    private final ArrayList<Vector3f> vertices = new ArrayList<>();
+    private final ArrayList<Vector3i> triangles = new ArrayList<>();
+    /**
+     * The index of each vertex numbered so far, by its cell.
+     */
+    private final HashMap<Cell, Integer> vertexIndices = new HashMap<>();
+
+    public DagContouringTask(OctreeDag dag)
+    {
+        this.dag = dag;
+    }
+
+    /**
+     * A node of the graph, placed in its cell: the cell's level below the
+     * root, and its coordinates on the level's grid. Cells are equal if they
+     * are the same cell, whatever their node.
+     */
+    private class Cell
+    {
+
+        final int node;
+        final int level;
+        final int x, y, z;
+
+        Cell(int node, int level, int x, int y, int z)
+        {
+            this.node = node;
+            this.level = level;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        boolean isLeaf()
+        {
+            return OctreeDag.isLeaf(node);
+        }
+
+        /**
+         * Returns the child, numbered 0bZYX, or null if it is empty. A leaf is
+         * its own child.
+         */
+        Cell child(int child)
+        {
+            if (isLeaf())
+            {
+                return this;
+            }
+            int childNode = dag.getChild(node, child);
+            if (childNode == OctreeDag.EMPTY)
+            {
+                return null;
+            }
+            if (level == MAX_LEVEL)
+            {
+                throw new IllegalStateException("The graph is deeper than " + MAX_LEVEL + " levels");
+            }
+            return new Cell(childNode, level + 1, 2 * x + (child & 1), 2 * y + ((child >> 1) & 1), 2 * z + ((child >> 2) & 1));
+        }
+
+        Cell[] children()
+        {
+            Cell[] children = new Cell[8];
+            for (int i = 0; i < 8; i++)
+            {
+                children[i] = child(i);
+            }
+            return children;
+        }
+
+        /**
+         * Returns the index of the cell's vertex, numbering it if new.
+         */
+        int vertexIndex()
+        {
+            Integer index = vertexIndices.get(this);
+            if (index == null)
+            {
+                Vector3f min = dag.getMinBound();
+                Vector3f max = dag.getMaxBound();
+                float size = 1 << level;
+                Vector3f cellMin = new Vector3f(min.x + (max.x - min.x) * x / size, min.y + (max.y - min.y) * y / size, min.z + (max.z - min.z) * z / size);
+                Vector3f cellMax = new Vector3f(min.x + (max.x - min.x) * (x + 1) / size, min.y + (max.y - min.y) * (y + 1) / size, min.z + (max.z - min.z) * (z + 1) / size);
+                index = vertices.size();
+                vertices.add(dag.getVertex(node, cellMin, cellMax, new Vector3f()));
+                vertexIndices.put(this, index);
+            }
+            return index;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof Cell))
+            {
+                return false;
+            }
+            Cell cell = (Cell) other;
+            return level == cell.level && x == cell.x && y == cell.y && z == cell.z;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return ((level * 31 + x) * 31 + y) * 31 + z;
+        }
+    }
+
+    /**
+     * Recursive polygonisation function that handles cubes and, if the cube is
+     * not a leaf of the graph, calls other functions on its subcells, edges
+     * and faces.
+     */
+    private void cellProc(Cell q)
+    {
+        if (q != null && !q.isLeaf())
+        {
+            Cell[] kids = q.children();
+            // 8 calls to cellProc
+            for (Cell child : kids)
+            {
+                cellProc(child);
+            }
+
+            // 12 calls to faceProc
+            faceProc(kids[0], kids[1], X);
+            faceProc(kids[2], kids[3], X);
+            faceProc(kids[4], kids[5], X);
+            faceProc(kids[6], kids[7], X);
+
+            faceProc(kids[0], kids[2], Y);
+            faceProc(kids[1], kids[3], Y);
+            faceProc(kids[4], kids[6], Y);
+            faceProc(kids[5], kids[7], Y);
+
+            faceProc(kids[0], kids[4], Z);
+            faceProc(kids[1], kids[5], Z);
+            faceProc(kids[2], kids[6], Z);
+            faceProc(kids[3], kids[7], Z);
+
+            // 6 calls to edgeProc
+            edgeProc(kids[0], kids[2], kids[4], kids[6], X);
+            edgeProc(kids[1], kids[3], kids[5], kids[7], X);
+            edgeProc(kids[0], kids[1], kids[4], kids[5], Y);
+            edgeProc(kids[2], kids[3], kids[6], kids[7], Y);
+            edgeProc(kids[0], kids[1], kids[2], kids[3], Z);
+            edgeProc(kids[4], kids[5], kids[6], kids[7], Z);
+        }
+    }
+
+    /**
+     * Recursive polygonisation function that handles faces and, if no cube is a
+     * leaf of the graph, calls other functions on its edges and subfaces.
+     */
+    private void faceProc(Cell q1, Cell q2, int axis)
+    {
+        // If all nodes are leaves, or one is empty, bail out.
+        if (q1 != null && q2 != null && (!q1.isLeaf() || !q2.isLeaf()))
+        {
+            Cell[] kids1 = q1.children();
+            Cell[] kids2 = q2.children();
+
+            switch (axis)
+            {
+                case X:
+                    faceProc(kids1[1], kids2[0], X);
+                    faceProc(kids1[3], kids2[2], X);
+                    faceProc(kids1[5], kids2[4], X);
+                    faceProc(kids1[7], kids2[6], X);
+
+                    edgeProc(kids1[1], kids2[0], kids1[5], kids2[4], Y);
+                    edgeProc(kids1[3], kids2[2], kids1[7], kids2[6], Y);
+                    edgeProc(kids1[1], kids2[0], kids1[3], kids2[2], Z);
+                    edgeProc(kids1[5], kids2[4], kids1[7], kids2[6], Z);
+                    break;
+                case Y:
+                    faceProc(kids1[2], kids2[0], Y);
+                    faceProc(kids1[3], kids2[1], Y);
+                    faceProc(kids1[6], kids2[4], Y);
+                    faceProc(kids1[7], kids2[5], Y);
+
+                    edgeProc(kids1[2], kids2[0], kids1[6], kids2[4], X);
+                    edgeProc(kids1[3], kids2[1], kids1[7], kids2[5], X);
+                    edgeProc(kids1[2], kids1[3], kids2[0], kids2[1], Z);
+                    edgeProc(kids1[6], kids1[7], kids2[4], kids2[5], Z);
+                    break;
+                case Z:
+                    faceProc(kids1[4], kids2[0], Z);
+                    faceProc(kids1[5], kids2[1], Z);
+                    faceProc(kids1[6], kids2[2], Z);
+                    faceProc(kids1[7], kids2[3], Z);
+
+                    edgeProc(kids1[4], kids1[5], kids2[0], kids2[1], Y);
+                    edgeProc(kids1[6], kids1[7], kids2[2], kids2[3], Y);
+                    edgeProc(kids1[4], kids1[6], kids2[0], kids2[2], X);
+                    edgeProc(kids1[5], kids1[7], kids2[1], kids2[3], X);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Recursive polygonisation function that handles edges and, if no cube is
+     * a leaf of the graph, calls itself on its subedges. Also creates a quad
+     * if needed. The cells are ordered as in the AdaptiveDualContouringTask.
+     */
+    private void edgeProc(Cell q0, Cell q1, Cell q2, Cell q3, int axis)
+    {
+        // If one of the nodes is empty, bail out.
+        if (q0 == null || q1 == null || q2 == null || q3 == null)
+        {
+            return;
+        }
+
+        if (q0.isLeaf() && q1.isLeaf() && q2.isLeaf() && q3.isLeaf())
+        {
+            // All four bear a vertex: the empty leaves were bailed out on.
+            Cell[] q =
+            {
+                q0, q1, q2, q3
+            };
+            for (int i = 0; i < 4; i++)
+            {
+                int s1 = dag.getCornerSign(q[i].node, EDGE_CORNERS1[axis][i]);
+                int s2 = dag.getCornerSign(q[i].node, EDGE_CORNERS2[axis][i]);
+                // Check if the signs are different.
+                if (s1 == OctreeDag.NEGATIVE && s2 != OctreeDag.NEGATIVE
+                        || s1 == OctreeDag.POSITIVE && s2 != OctreeDag.POSITIVE)
+                {
+                    // Create a quad with the right triangle orientation.
+                    boolean inward = axis == Y ? s1 == OctreeDag.POSITIVE : s1 == OctreeDag.NEGATIVE;
+                    addQuad(q0.vertexIndex(), q1.vertexIndex(), q2.vertexIndex(), q3.vertexIndex(), inward);
+                    return;
+                }
+            }
+            return;
+        }
+
+        // If not all cubes are leaves, make 2 calls to edgeProc.
+        Cell[] kids1 = q0.children();
+        Cell[] kids2 = q1.children();
+        Cell[] kids3 = q2.children();
+        Cell[] kids4 = q3.children();
+        switch (axis)
+        {
+            case X:
+                edgeProc(kids1[6], kids2[4], kids3[2], kids4[0], X);
+                edgeProc(kids1[7], kids2[5], kids3[3], kids4[1], X);
+                break;
+            case Y:
+                edgeProc(kids1[5], kids2[4], kids3[1], kids4[0], Y);
+                edgeProc(kids1[7], kids2[6], kids3[3], kids4[2], Y);
+                break;
+            case Z:
+                edgeProc(kids1[3], kids2[2], kids3[1], kids4[0], Z);
+                edgeProc(kids1[7], kids2[6], kids3[5], kids4[4], Z);
+                break;
+        }
+    }
+
+    /**
+     * Adds the quad around a minimal edge, as the AdaptiveDualContouringTask
+     * does.
+     */
+    private void addQuad(int i0, int i1, int i2, int i3, boolean inward)
+    {
+        if (inward)
+        {
+            triangles.add(new Vector3i(i0, i1, i2));
+            triangles.add(new Vector3i(i2, i1, i3));
+        } else
+        {
+            triangles.add(new Vector3i(i2, i1, i0));
+            triangles.add(new Vector3i(i3, i1, i2));
+        }
+    }
+
+    @Override
+    public void compute()
+    {
+        int root = dag.getRoot();
+        if (root != OctreeDag.EMPTY)
+        {
+            cellProc(new Cell(root, 0, 0, 0, 0));
+        }
+    }
+
+    /**
+     * @return the vertices of the quads, in the order they were numbered.
+     */
+    public ArrayList<Vector3f> getVertices()
+    {
+        return vertices;
+    }
+
+    /**
+     * @return the triangles
+     */
+    public ArrayList<Vector3i> getTriangles()
+    {
+        return triangles;
+    }
+}
@@ -0,0 +1,370 @@
+package business.meshing.tasks;
+
+import business.meshing.HullField;
+import business.meshing.MeshingMetrics;
+import business.meshing.OctreeNode;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Subdivides an octree into the same adapted octree as the
+ * OctreeConstructionTask, one depth level at a time rather than depth first:
+ * gathers the cells of the level, evaluates the field once at each of their
+ * distinct corners, in large batches split across the pool, then classifies
+ * the cells, solves the vertices of the ones crossed by the surface, and
+ * subdivides the others into the next level.
+ *
+ * The vertices are numbered level by level, in the order of the cells. The
+ * cells' costs are not recorded.
+ */
+public class LevelConstructionTask extends RecursiveAction
+{
+
+    /**
+     * Points evaluated per subtask.
+     */
+    private static final int BATCH_SIZE = 4096;
+    /**
+     * Cells crossed by the surface solved per subtask.
+     */
+    private static final int SOLVE_BATCH_SIZE = 64;
+    /**
+     * The bit of each corner, numbered 0bZYX, in the cube index (see
+     * DualContouring.getCubeIndex).
+     */
+    private static final int[] CUBE_INDEX_BITS =
+    {
+        1, 2, 8, 4, 16, 32, 128, 64
+    };
+    private OctreeNode rootNode;
+    private ArrayList<Shape> shapes;
+    private int minDepth;
+    private int maxDepth;
+    private ArrayList<Vector3f> vertices = new ArrayList<>();
+    private boolean halfSpace;
+    private MeshingMetrics metrics;
+    private volatile int completedDepth = -1;
+
+    public LevelConstructionTask(OctreeNode rootNode, ArrayList<Shape> shapes, int minDepth, int maxDepth)
+    {
+        this(rootNode, shapes, minDepth, maxDepth, false, new MeshingMetrics());
+    }
+
+    /**
+     * @param halfSpace if true, only the x >= 0 half of the root node is
+     * subdivided, the other half is left as empty leaves. The root node must
+     * be centered on the x = 0 plane.
+     * @param metrics the metrics to count the created nodes, field
+     * evaluations, solves and rejected vertices in.
+     */
+    public LevelConstructionTask(OctreeNode rootNode, ArrayList<Shape> shapes, int minDepth, int maxDepth, boolean halfSpace, MeshingMetrics metrics)
+    {
+        this.rootNode = rootNode;
+        this.shapes = shapes;
+        this.minDepth = minDepth;
+        this.maxDepth = maxDepth;
+        this.halfSpace = halfSpace;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void compute()
+    {
+        ArrayList<OctreeNode> level = new ArrayList<>();
+        if (halfSpace)
+        {
+            // Only process the children on the high X side of the root.
+            rootNode.subdivide();
+            metrics.countNodes(rootNode.getDepth() + 1, 8);
+            for (int i = 1; i < 8; i += 2)
+            {
+                level.add(rootNode.getChildren()[i]);
+            }
+        } else
+        {
+            level.add(rootNode);
+        }
+
+        while (!level.isEmpty())
+        {
+            int depth = level.get(0).getDepth();
+            ArrayList<OctreeNode> next = new ArrayList<>();
+            if (depth < minDepth)
+            {
+                for (OctreeNode cell : level)
+                {
+                    subdivide(cell, next);
+                }
+            } else
+            {
+                // The cells the surface cannot cross stay empty leaves.
+                ArrayList<OctreeNode> crossed = new ArrayList<>(level.size());
+                for (OctreeNode cell : level)
+                {
+                    if (HullField.mayContainSurface(cell, shapes))
+                    {
+                        crossed.add(cell);
+                    }
+                }
+                if (!crossed.isEmpty())
+                {
+                    processLevel(crossed, next);
+                }
+            }
+            completedDepth = depth;
+            level = next;
+        }
+    }
+
+    private void subdivide(OctreeNode cell, ArrayList<OctreeNode> next)
+    {
+        cell.subdivide();
+        metrics.countNodes(cell.getDepth() + 1, 8);
+        next.addAll(Arrays.asList(cell.getChildren()));
+    }
+
+    /**
+     * Computes the vertices of a level's cells, and subdivides the cells left
+     * without one into the next level.
+     */
+    private void processLevel(ArrayList<OctreeNode> level, ArrayList<OctreeNode> next)
+    {
+        final int depth = level.get(0).getDepth();
+        final int cellCount = level.size();
+
+        // Gather the distinct corners, keyed by their place on the level's
+        // lattice. A corner's coordinates are the same floats in every cell
+        // sharing it, as each level halves the same pairs of floats.
+        int size = 1 << (depth - rootNode.getDepth());
+        long lattice = size + 1;
+        Vector3f rootMin = rootNode.getMinBound();
+        Vector3f rootMax = rootNode.getMaxBound();
+        float cellX = (rootMax.x - rootMin.x) / size;
+        float cellY = (rootMax.y - rootMin.y) / size;
+        float cellZ = (rootMax.z - rootMin.z) / size;
+        CornerTable corners = new CornerTable(2 * cellCount);
+        int[] cellCorners = new int[8 * cellCount];
+        for (int i = 0; i < cellCount; i++)
+        {
+            Vector3f min = level.get(i).getMinBound();
+            Vector3f max = level.get(i).getMaxBound();
+            long x = Math.round((min.x - rootMin.x) / cellX);
+            long y = Math.round((min.y - rootMin.y) / cellY);
+            long z = Math.round((min.z - rootMin.z) / cellZ);
+            for (int corner = 0; corner < 8; corner++)
+            {
+                int dx = corner & 1;
+                int dy = (corner >> 1) & 1;
+                int dz = (corner >> 2) & 1;
+                long key = ((x + dx) * lattice + y + dy) * lattice + z + dz;
+                cellCorners[8 * i + corner] = corners.add(key,
+                        dx != 0 ? max.x : min.x, dy != 0 ? max.y : min.y, dz != 0 ? max.z : min.z);
+            }
+        }
+
+        // Evaluate the field at the corners, a batch per subtask.
+        final float[] xs = corners.xs;
+        final float[] ys = corners.ys;
+        final float[] zs = corners.zs;
+        final int pointCount = corners.count;
+        final float[] values = new float[pointCount];
+        RecursiveAction[] evaluations = new RecursiveAction[(pointCount + BATCH_SIZE - 1) / BATCH_SIZE];
+        for (int b = 0; b < evaluations.length; b++)
+        {
+            final int from = b * BATCH_SIZE;
+            final int to = Math.min(pointCount, from + BATCH_SIZE);
+            evaluations[b] = new RecursiveAction()
+            {
+                @Override
+                protected void compute()
+                {
+                    HullField.getValuesAt(xs, ys, zs, values, from, to, shapes);
+                }
+            };
+        }
+        invokeAll(evaluations);
+        metrics.countFieldEvaluations(pointCount);
+
+        // Classify the cells: the ones crossed by the surface solve a vertex.
+        final int[] surfaceCells = new int[cellCount];
+        final int[] cubeIndices = new int[cellCount];
+        int surfaceCount = 0;
+        for (int i = 0; i < cellCount; i++)
+        {
+            int cubeIndex = 0;
+            for (int corner = 0; corner < 8; corner++)
+            {
+                if (values[cellCorners[8 * i + corner]] < 0)
+                {
+                    cubeIndex |= CUBE_INDEX_BITS[corner];
+                }
+            }
+            if (cubeIndex != 0b00000000 && cubeIndex != 0b11111111)
+            {
+                surfaceCells[surfaceCount] = i;
+                cubeIndices[surfaceCount] = cubeIndex;
+                surfaceCount++;
+            }
+        }
+
+        // Solve their vertices, a solver per subtask.
+        final ArrayList<OctreeNode> cells = level;
+        final Vector3f[] solved = new Vector3f[surfaceCount];
+        RecursiveAction[] solves = new RecursiveAction[(surfaceCount + SOLVE_BATCH_SIZE - 1) / SOLVE_BATCH_SIZE];
+        for (int b = 0; b < solves.length; b++)
+        {
+            final int from = b * SOLVE_BATCH_SIZE;
+            final int to = Math.min(surfaceCount, from + SOLVE_BATCH_SIZE);
+            solves[b] = new RecursiveAction()
+            {
+                @Override
+                protected void compute()
+                {
+                    CellVertexSolver solver = new CellVertexSolver(shapes, maxDepth, metrics);
+                    for (int i = from; i < to; i++)
+                    {
+                        Vector3f vertex = solver.solve(cells.get(surfaceCells[i]), cubeIndices[i]);
+                        solved[i] = vertex != null ? vertex.clone() : null;
+                    }
+                }
+            };
+        }
+        invokeAll(solves);
+
+        // Keep the vertices, in the order of the cells, and subdivide the
+        // cells left without one, unless at max depth.
+        int surface = 0;
+        for (int i = 0; i < cellCount; i++)
+        {
+            OctreeNode cell = cells.get(i);
+            Vector3f vertex = null;
+            if (surface < surfaceCount && surfaceCells[surface] == i)
+            {
+                vertex = solved[surface++];
+            }
+
+            if (vertex != null)
+            {
+                cell.setVertex(vertices.size());
+                vertices.add(vertex);
+            } else if (depth < maxDepth)
+            {
+                subdivide(cell, next);
+            }
+        }
+    }
+
+    /**
+     * @return the deepest level done so far, or -1 before the first. Read
+     * from another thread, it tells how far the construction is.
+     */
+    public int getCompletedDepth()
+    {
+        return completedDepth;
+    }
+
+    /**
+     * @return the vertices
+     */
+    public ArrayList<Vector3f> getVertices()
+    {
+        return vertices;
+    }
+
+    /**
+     * The distinct corners of a level: an open addressing table from lattice
+     * keys to indices, and the corners' coordinates by index.
+     */
+    private static class CornerTable
+    {
+
+        private long[] keys;
+        private int[] indices;
+        private int mask;
+        float[] xs;
+        float[] ys;
+        float[] zs;
+        int count = 0;
+
+        CornerTable(int expected)
+        {
+            int capacity = Integer.highestOneBit(Math.max(16, 2 * expected - 1)) << 1;
+            keys = new long[capacity];
+            indices = new int[capacity];
+            Arrays.fill(keys, -1);
+            mask = capacity - 1;
+            xs = new float[expected];
+            ys = new float[expected];
+            zs = new float[expected];
+        }
+
+        /**
+         * Returns the index of the corner with the given key, added with the
+         * given coordinates if new.
+         */
+        int add(long key, float x, float y, float z)
+        {
+            int slot = slot(key);
+            while (keys[slot] != -1)
+            {
+                if (keys[slot] == key)
+                {
+                    return indices[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if (count == xs.length)
+            {
+                xs = Arrays.copyOf(xs, 2 * count);
+                ys = Arrays.copyOf(ys, 2 * count);
+                zs = Arrays.copyOf(zs, 2 * count);
+            }
+            xs[count] = x;
+            ys[count] = y;
+            zs[count] = z;
+            keys[slot] = key;
+            indices[slot] = count;
+            count++;
+
+            // Keep the table at most half full.
+            if (2 * count > keys.length)
+            {
+                grow();
+            }
+            return count - 1;
+        }
+
+        private int slot(long key)
+        {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private void grow()
+        {
+            long[] oldKeys = keys;
+            int[] oldIndices = indices;
+            keys = new long[2 * oldKeys.length];
+            indices = new int[2 * oldKeys.length];
+            Arrays.fill(keys, -1);
+            mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] != -1)
+                {
+                    int slot = slot(oldKeys[i]);
+                    while (keys[slot] != -1)
+                    {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    indices[slot] = oldIndices[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package business.meshing.tasks;
+
+import business.meshing.MeshingMetrics;
+import business.meshing.OctreeNode;
+import business.meshing.Vector3i;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Contours the x = 0 plane of an octree of which only the x >= 0 half was
+ * built. Quads crossing the plane are cut in two on the plane, and only their
+ * x >= 0 half is kept, so that mirroring the half mesh gives an exactly
+ * symmetric, watertight mesh.
+ */
+public class MirrorSeamTask extends AdaptiveDualContouringTask
+{
+
+    private OctreeNode rootNode;
+    private ArrayList<Vector3f> vertices;
+    /**
+     * Index of the projection on the plane of each seam vertex.
+     */
+    private HashMap<Integer, Integer> planeVertices = new HashMap<>();
+
+    public MirrorSeamTask(OctreeNode rootNode, ArrayList<Shape> shapes, ArrayList<Vector3f> vertices)
+    {
+        this(rootNode, shapes, vertices, new MeshingMetrics());
+    }
+
+    public MirrorSeamTask(OctreeNode rootNode, ArrayList<Shape> shapes, ArrayList<Vector3f> vertices, MeshingMetrics metrics)
+    {
+        super(rootNode, shapes, new ArrayList<Vector3i>(), metrics);
+        this.rootNode = rootNode;
+        this.vertices = vertices;
+    }
+
+    /**
+     * The quads crossing the plane always come as the cells (a', a, b', b),
+     * where a' and b' are the mirrors of a and b. Keep the half quad
+     * (a0, a, b, b0), where a0 and b0 are the projections of a and b on the
+     * plane.
+     */
+    @Override
+    protected void addQuad(int i0, int i1, int i2, int i3, boolean inward)
+    {
+        if (i1 == i3)
+        {
+            return;
+        }
+
+        int a0 = getPlaneVertex(i1);
+        int b0 = getPlaneVertex(i3);
+        if (inward)
+        {
+            addTriangle(a0, i1, i3);
+            addTriangle(a0, i3, b0);
+        } else
+        {
+            addTriangle(b0, i3, i1);
+            addTriangle(b0, i1, a0);
+        }
+    }
+
+    /**
+     * Adds a triangle, unless a vertex lying on the plane made it degenerate.
+     */
+    private void addTriangle(int i0, int i1, int i2)
+    {
+        if (i0 != i1 && i1 != i2 && i2 != i0)
+        {
+            getTriangles().add(new Vector3i(i0, i1, i2));
+        }
+    }
+
+    /**
+     * Returns the index of the projection of the given vertex on the plane,
+     * creating it if needed.
+     */
+    private int getPlaneVertex(int vertexIndex)
+    {
+        Vector3f vertex = vertices.get(vertexIndex);
+        if (vertex.x == 0)
+        {
+            return vertexIndex;
+        }
+
+        Integer planeIndex = planeVertices.get(vertexIndex);
+        if (planeIndex == null)
+        {
+            planeIndex = vertices.size();
+            vertices.add(new Vector3f(0, vertex.y, vertex.z));
+            planeVertices.put(vertexIndex, planeIndex);
+        }
+        return planeIndex;
+    }
+
+    @Override
+    public void compute()
+    {
+        // Vertices solved at max depth may lie slightly past the plane: pull
+        // them back onto it so that the mirrored halves cannot overlap.
+        for (Vector3f vertex : vertices)
+        {
+            if (vertex.x < 0)
+            {
+                vertex.x = 0;
+            }
+        }
+
+        OctreeNode[] kids = rootNode.getChildren();
+        if (rootNode.isLeaf())
+        {
+            return;
+        }
+
+        // Mirror the high X children touching the plane, the low X children of
+        // the root being empty in a half space octree.
+        OctreeNode[] mirrors = new OctreeNode[8];
+        for (int i = 1; i < 8; i += 2)
+        {
+            mirrors[i ^ 1] = kids[i].mirrorOnSeam();
+        }
+
+        // The faces and edges of the root's cellProc that cross the plane.
+        faceProc(mirrors[0], kids[1], AXIS.X);
+        faceProc(mirrors[2], kids[3], AXIS.X);
+        faceProc(mirrors[4], kids[5], AXIS.X);
+        faceProc(mirrors[6], kids[7], AXIS.X);
+
+        edgeProc(mirrors[0], kids[1], mirrors[4], kids[5], AXIS.Y);
+        edgeProc(mirrors[2], kids[3], mirrors[6], kids[7], AXIS.Y);
+        edgeProc(mirrors[0], kids[1], mirrors[2], kids[3], AXIS.Z);
+        edgeProc(mirrors[4], kids[5], mirrors[6], kids[7], AXIS.Z);
+    }
+}
@@ -0,0 +1,238 @@
+package business.meshing.tasks;
+
+import business.meshing.CellCost;
+import business.meshing.HullField;
+import business.meshing.OctreeNode;
+import business.meshing.MeshingMetrics;
+import business.meshing.TaskSplitEvent;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Subdivides an octree into an adapted octree that best fits the data.
+ *
+ * @author chcarpen
+ */
+public class OctreeConstructionTask extends RecursiveAction
+{
+
+    /**
+     * A cell's children are forked as tasks only if there are at least this
+     * many levels below them: fewer, and the tasks cost more than they save.
+     * A cell whose corners show no surface needs one level more, since its
+     * subtree solves no vertex.
+     */
+    private static final int MIN_SPLIT_LEVELS = 2;
+    /**
+     * The children are not forked while the worker has more than this many
+     * tasks queued that no idle worker has stolen yet.
+     */
+    private static final int MAX_SURPLUS_TASKS = 3;
+    private OctreeNode rootNode;
+    private ArrayList<Shape> shapes;
+    private int minDepth;
+    private int maxDepth;
+    private ArrayList<Vector3f> vertices;
+    private boolean halfSpace;
+    private MeshingMetrics metrics;
+    /**
+     * If true, the cost of each cell is recorded in its node.
+     */
+    private boolean profiling = false;
+    /**
+     * The task's solver: the cells are processed one at a time, so that it
+     * allocates nothing but the octree and its vertices.
+     */
+    private final CellVertexSolver solver;
+
+    private OctreeConstructionTask(OctreeNode rootNode, ArrayList<Shape> shapes, int minDepth, int maxDepth, ArrayList<Vector3f> vertices, boolean halfSpace, MeshingMetrics metrics, boolean profiling)
+    {
+        this.rootNode = rootNode;
+        this.shapes = shapes;
+        this.minDepth = minDepth;
+        this.maxDepth = maxDepth;
+        this.vertices = vertices;
+        this.halfSpace = halfSpace;
+        this.metrics = metrics;
+        this.profiling = profiling;
+        this.solver = new CellVertexSolver(shapes, maxDepth, metrics);
+    }
+
+    public OctreeConstructionTask(OctreeNode rootNode, ArrayList<Shape> shapes, int minDepth, int maxDepth)
+    {
+        this(rootNode, shapes, minDepth, maxDepth, false);
+    }
+
+    /**
+     * @param halfSpace if true, only the x >= 0 half of the root node is
+     * subdivided, the other half is left as empty leaves. The root node must
+     * be centered on the x = 0 plane.
+     */
+    public OctreeConstructionTask(OctreeNode rootNode, ArrayList<Shape> shapes, int minDepth, int maxDepth, boolean halfSpace)
+    {
+        this(rootNode, shapes, minDepth, maxDepth, halfSpace, new MeshingMetrics());
+    }
+
+    /**
+     * @param metrics the metrics to count the created nodes, field
+     * evaluations, solves and rejected vertices in.
+     */
+    public OctreeConstructionTask(OctreeNode rootNode, ArrayList<Shape> shapes, int minDepth, int maxDepth, boolean halfSpace, MeshingMetrics metrics)
+    {
+        this(rootNode, shapes, minDepth, maxDepth, new ArrayList<Vector3f>(), halfSpace, metrics, false);
+    }
+
+    private void computeDirectly(OctreeNode octreeNode)
+    {
+        long start = 0;
+        if (profiling)
+        {
+            start = System.nanoTime();
+            octreeNode.setCost(new CellCost());
+        }
+
+        // A cell the surface cannot cross stays an empty leaf, unsampled.
+        if (!HullField.mayContainSurface(octreeNode, shapes))
+        {
+            if (profiling)
+            {
+                octreeNode.getCost().addNanos(System.nanoTime() - start);
+            }
+            return;
+        }
+
+        Vector3f vertex = null;
+        // First off, check if the node should generate a vertex:
+        int cubeIndex = solver.getCubeIndex(octreeNode);
+        boolean surface = cubeIndex != 0b00000000 && cubeIndex != 0b11111111;
+        if (surface)
+        {
+            // If the vertex is OK -- or at max depth, thus max precision,
+            // add it. If it's not ok, and above max depth, it is null.
+            vertex = solver.solve(octreeNode, cubeIndex);
+            if (vertex != null)
+            {
+                // TODO: subdivide if there are more intersection, deeper?
+                synchronized (OctreeConstructionTask.class)
+                {
+                    octreeNode.setVertex(vertices.size());
+                    vertices.add(vertex.clone());
+                }
+            }
+        }
+
+        // The children's costs are their own.
+        if (profiling)
+        {
+            octreeNode.getCost().addNanos(System.nanoTime() - start);
+        }
+
+        // If there is no vertex, or not OK:
+        if (vertex == null)
+        {
+            if (octreeNode.getDepth() < maxDepth /*&& HullField.containsIntersection(octreeNode, maxDepth, shapes)*/)
+            {
+                // If we are above max depth and there is an intersection 
+                // somewhere, subdivide.
+                octreeNode.subdivide();
+                metrics.countNodes(octreeNode.getDepth() + 1, 8);
+                computeChildren(octreeNode, surface);
+            } else
+            {
+                // If we are at max depth, or if there's no intersection at any level,
+                // It's an empty leaf. Do nothing.
+            }
+        }
+    }
+
+    /**
+     * Processes a node: subdivides it if above the min depth, else computes
+     * its vertex, or subdivides it if it has none.
+     */
+    private void process(OctreeNode octreeNode)
+    {
+        if (octreeNode.getDepth() < minDepth)
+        {
+            octreeNode.subdivide();
+            metrics.countNodes(octreeNode.getDepth() + 1, 8);
+            computeChildren(octreeNode, true);
+        } else
+        {
+            computeDirectly(octreeNode);
+        }
+    }
+
+    /**
+     * Processes the children of a subdivided node, forking them as tasks if
+     * their subtrees are worth it and the pool is short of work, else in
+     * this task.
+     *
+     * @param surface true if the node likely contains surface.
+     */
+    private void computeChildren(OctreeNode octreeNode, boolean surface)
+    {
+        OctreeNode[] children = octreeNode.getChildren();
+        int levels = maxDepth - octreeNode.getDepth() - 1;
+        if (inForkJoinPool() && levels >= MIN_SPLIT_LEVELS + (surface ? 0 : 1)
+                && getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS)
+        {
+            OctreeConstructionTask[] tasks = new OctreeConstructionTask[children.length];
+            for (int i = 0; i < children.length; i++)
+            {
+                tasks[i] = new OctreeConstructionTask(children[i], shapes, minDepth, maxDepth, vertices, false, metrics, profiling);
+            }
+
+            TaskSplitEvent.record("construction", octreeNode.getDepth(), tasks.length);
+            invokeAll(tasks);
+        } else
+        {
+            for (OctreeNode child : children)
+            {
+                process(child);
+            }
+        }
+    }
+
+    @Override
+    public void compute()
+    {
+        if (halfSpace)
+        {
+            // Only process the children on the high X side of the root.
+            rootNode.subdivide();
+            metrics.countNodes(rootNode.getDepth() + 1, 8);
+            OctreeConstructionTask[] tasks = new OctreeConstructionTask[4];
+
+            for (int i = 0; i < tasks.length; i++)
+            {
+                tasks[i] = new OctreeConstructionTask(rootNode.getChildren()[2 * i + 1], shapes, minDepth, maxDepth, vertices, false, metrics, profiling);
+            }
+
+            TaskSplitEvent.record("construction", rootNode.getDepth(), tasks.length);
+            invokeAll(tasks);
+        } else
+        {
+            TaskSplitEvent.record("construction", rootNode.getDepth(), 0);
+            process(rootNode);
+        }
+    }
+
+    /**
+     * @param profiling true to record the cost of each cell in its node (see
+     * OctreeNode.getCost).
+     */
+    public void setProfiling(boolean profiling)
+    {
+        this.profiling = profiling;
+    }
+
+    /**
+     * @return the vertices
+     */
+    public ArrayList<Vector3f> getVertices()
+    {
+        return vertices;
+    }
+}
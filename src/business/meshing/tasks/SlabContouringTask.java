@@ -0,0 +1,518 @@
+package business.meshing.tasks;
+
+import business.meshing.DualContouring;
+import business.meshing.HullField;
+import business.meshing.MeshingMetrics;
+import business.meshing.shapes.Shape;
+import com.jme3.math.Vector3f;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Dual Contours a band of Z slabs of a uniform grid in a single sweep. Only
+ * two planes of corner values and edge crossings, and two slabs of cell
+ * vertex indices, are kept, in flat arrays. Vertices and quads are appended
+ * to flat arrays as the sweep goes.
+ *
+ * The quads across the bottom plane of the band need the last slab of the
+ * band below: see stitch.
+ *
+ * In surface nets mode, for previews, the crossings are interpolated from the
+ * corner values, with no search nor normal, and each vertex is the average of
+ * its cell's crossings, with no solver.
+ */
+public class SlabContouringTask extends RecursiveAction
+{
+
+    /**
+     * Bisection steps refining each edge crossing, as in the octree.
+     */
+    private static final int INTERSECTION_STEPS = 5;
+    private final ArrayList<Shape> shapes;
+    private final Vector3f origin;
+    private final Vector3f cellSize;
+    /**
+     * Cells per axis.
+     */
+    private final int n;
+    private final int firstSlab;
+    private final int endSlab;
+    private final MeshingMetrics metrics;
+    private boolean surfaceNets = false;
+    /**
+     * The System.nanoTime past which the sweep is abandoned, if hasDeadline.
+     */
+    private long deadline = 0;
+    private boolean hasDeadline = false;
+    private volatile boolean abandoned = false;
+    private float[] positions = new float[3 * 1024];
+    private float[] normals = new float[3 * 1024];
+    private int vertexCount = 0;
+    private int[] indices = new int[3 * 2048];
+    private int indexCount = 0;
+    /**
+     * The corner values of the band's bottom plane, and the vertex indices
+     * of its first and last slabs, for the stitching.
+     */
+    private float[] firstPlane;
+    private int[] firstCells;
+    private int[] lastCells;
+    // Scratch objects of the vertex solver.
+    private final ArrayList<Vector3f> cellPoints = new ArrayList<>(12);
+    private final ArrayList<Vector3f> cellNormals = new ArrayList<>(12);
+    private final Vector3f[] pointPool = new Vector3f[12];
+    private final Vector3f[] normalPool = new Vector3f[12];
+    private final Vector3f corner = new Vector3f();
+    private final Vector3f masspoint = new Vector3f();
+
+    /**
+     * @param origin the min corner of the grid.
+     * @param cellSize the size of a cell.
+     * @param n the number of cells per axis.
+     * @param firstSlab the first slab of cells of the band.
+     * @param endSlab the slab after the last one of the band.
+     */
+    public SlabContouringTask(ArrayList<Shape> shapes, Vector3f origin, Vector3f cellSize, int n, int firstSlab, int endSlab, MeshingMetrics metrics)
+    {
+        this.shapes = shapes;
+        this.origin = origin;
+        this.cellSize = cellSize;
+        this.n = n;
+        this.firstSlab = firstSlab;
+        this.endSlab = endSlab;
+        this.metrics = metrics;
+        for (int i = 0; i < 12; i++)
+        {
+            pointPool[i] = new Vector3f();
+            normalPool[i] = new Vector3f();
+        }
+    }
+
+    @Override
+    protected void compute()
+    {
+        int m = n + 1;
+        float[] lowPlane = samplePlane(firstSlab);
+        float[] highPlane = new float[m * m];
+        // Crossings, 6 floats each: the point, then the normal.
+        float[] lowX = new float[6 * n * m];
+        float[] lowY = new float[6 * n * m];
+        float[] highX = new float[6 * n * m];
+        float[] highY = new float[6 * n * m];
+        float[] slabZ = new float[6 * m * m];
+        int[] lowCells = null;
+        int[] cells = new int[n * n];
+        computePlaneCrossings(lowPlane, firstSlab, lowX, lowY);
+        firstPlane = lowPlane.clone();
+
+        for (int k = firstSlab; k < endSlab; k++)
+        {
+            if (hasDeadline && System.nanoTime() - deadline > 0)
+            {
+                abandoned = true;
+                return;
+            }
+            samplePlane(k + 1, highPlane);
+            computePlaneCrossings(highPlane, k + 1, highX, highY);
+            computeSlabCrossings(lowPlane, highPlane, k, slabZ);
+            solveCells(lowPlane, highPlane, k, lowX, lowY, highX, highY, slabZ, cells);
+
+            // The quads around the Z edges of the slab, then around the X and
+            // Y edges of its bottom plane.
+            addSlabQuads(lowPlane, highPlane, cells);
+            if (lowCells != null)
+            {
+                addPlaneQuads(lowPlane, lowCells, cells);
+            } else
+            {
+                firstCells = cells.clone();
+            }
+
+            // Move up a slab.
+            float[] swap = lowPlane;
+            lowPlane = highPlane;
+            highPlane = swap;
+            swap = lowX;
+            lowX = highX;
+            highX = swap;
+            swap = lowY;
+            lowY = highY;
+            highY = swap;
+            if (lowCells == null)
+            {
+                lowCells = new int[n * n];
+            }
+            int[] cellSwap = lowCells;
+            lowCells = cells;
+            cells = cellSwap;
+        }
+        lastCells = lowCells;
+    }
+
+    private float[] samplePlane(int k)
+    {
+        float[] plane = new float[(n + 1) * (n + 1)];
+        samplePlane(k, plane);
+        return plane;
+    }
+
+    /**
+     * Samples the field at the corners of the plane z = k.
+     */
+    private void samplePlane(int k, float[] plane)
+    {
+        int m = n + 1;
+        corner.z = origin.z + k * cellSize.z;
+        for (int j = 0; j < m; j++)
+        {
+            corner.y = origin.y + j * cellSize.y;
+            for (int i = 0; i < m; i++)
+            {
+                corner.x = origin.x + i * cellSize.x;
+                plane[j * m + i] = HullField.getValueAt(corner, shapes);
+            }
+        }
+        metrics.countFieldEvaluations(m * m);
+    }
+
+    /**
+     * Computes the crossings of the X and Y edges of the plane z = k.
+     */
+    private void computePlaneCrossings(float[] plane, int k, float[] xCrossings, float[] yCrossings)
+    {
+        int m = n + 1;
+        float z = origin.z + k * cellSize.z;
+        for (int j = 0; j < m; j++)
+        {
+            float y = origin.y + j * cellSize.y;
+            for (int i = 0; i < m; i++)
+            {
+                float x = origin.x + i * cellSize.x;
+                float v = plane[j * m + i];
+                if (i < n && crosses(v, plane[j * m + i + 1]))
+                {
+                    computeCrossing(xCrossings, j * n + i, x, y, z, v, x + cellSize.x, y, z, plane[j * m + i + 1]);
+                }
+                if (j < n && crosses(v, plane[(j + 1) * m + i]))
+                {
+                    computeCrossing(yCrossings, j * m + i, x, y, z, v, x, y + cellSize.y, z, plane[(j + 1) * m + i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the crossings of the Z edges between the planes k and k + 1.
+     */
+    private void computeSlabCrossings(float[] lowPlane, float[] highPlane, int k, float[] zCrossings)
+    {
+        int m = n + 1;
+        float z = origin.z + k * cellSize.z;
+        for (int j = 0; j < m; j++)
+        {
+            float y = origin.y + j * cellSize.y;
+            for (int i = 0; i < m; i++)
+            {
+                int index = j * m + i;
+                if (crosses(lowPlane[index], highPlane[index]))
+                {
+                    float x = origin.x + i * cellSize.x;
+                    computeCrossing(zCrossings, index, x, y, z, lowPlane[index], x, y, z + cellSize.z, highPlane[index]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true iff the surface crosses the edge: its ends are on either
+     * side, by the sign test of the cube index.
+     */
+    private static boolean crosses(float v1, float v2)
+    {
+        return (v1 < 0) != (v2 < 0);
+    }
+
+    private void computeCrossing(float[] crossings, int edge, float x1, float y1, float z1, float v1, float x2, float y2, float z2, float v2)
+    {
+        int offset = 6 * edge;
+        if (surfaceNets)
+        {
+            Vector3f point = HullField.interpolateIntersection(shapes, new Vector3f(x1, y1, z1), new Vector3f(x2, y2, z2), v1, v2);
+            crossings[offset] = point.x;
+            crossings[offset + 1] = point.y;
+            crossings[offset + 2] = point.z;
+            return;
+        }
+
+        Vector3f point = HullField.exactIntersection(shapes, new Vector3f(x1, y1, z1), new Vector3f(x2, y2, z2), v1, v2, INTERSECTION_STEPS);
+        Vector3f normal = HullField.getNormalAt(point, shapes);
+        crossings[offset] = point.x;
+        crossings[offset + 1] = point.y;
+        crossings[offset + 2] = point.z;
+        crossings[offset + 3] = normal.x;
+        crossings[offset + 4] = normal.y;
+        crossings[offset + 5] = normal.z;
+        metrics.countIntersectionSolve();
+        metrics.countFieldEvaluations(INTERSECTION_STEPS + 1);
+    }
+
+    /**
+     * Solves the vertex of each cell of the slab k the surface crosses, and
+     * stores its index, or -1, in cells.
+     */
+    private void solveCells(float[] lowPlane, float[] highPlane, int k, float[] lowX, float[] lowY, float[] highX, float[] highY, float[] slabZ, int[] cells)
+    {
+        int m = n + 1;
+        float threshold = cellSize.length() / 1000;
+        for (int j = 0; j < n; j++)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                int c = j * m + i;
+                cellPoints.clear();
+                cellNormals.clear();
+                // The 4 X edges, the 4 Y edges and the 4 Z edges of the cell.
+                addCrossing(lowPlane[c], lowPlane[c + 1], lowX, j * n + i);
+                addCrossing(lowPlane[c + m], lowPlane[c + m + 1], lowX, (j + 1) * n + i);
+                addCrossing(highPlane[c], highPlane[c + 1], highX, j * n + i);
+                addCrossing(highPlane[c + m], highPlane[c + m + 1], highX, (j + 1) * n + i);
+                addCrossing(lowPlane[c], lowPlane[c + m], lowY, c);
+                addCrossing(lowPlane[c + 1], lowPlane[c + m + 1], lowY, c + 1);
+                addCrossing(highPlane[c], highPlane[c + m], highY, c);
+                addCrossing(highPlane[c + 1], highPlane[c + m + 1], highY, c + 1);
+                addCrossing(lowPlane[c], highPlane[c], slabZ, c);
+                addCrossing(lowPlane[c + 1], highPlane[c + 1], slabZ, c + 1);
+                addCrossing(lowPlane[c + m], highPlane[c + m], slabZ, c + m);
+                addCrossing(lowPlane[c + m + 1], highPlane[c + m + 1], slabZ, c + m + 1);
+
+                if (cellPoints.isEmpty())
+                {
+                    cells[j * n + i] = -1;
+                } else if (surfaceNets)
+                {
+                    Vector3f vertex = masspoint.set(0, 0, 0);
+                    for (Vector3f point : cellPoints)
+                    {
+                        vertex.addLocal(point);
+                    }
+                    cells[j * n + i] = addVertex(vertex.divideLocal(cellPoints.size()));
+                } else
+                {
+                    Vector3f vertex = DualContouring.vertexFromParticle(cellPoints, cellNormals, threshold, metrics);
+                    cells[j * n + i] = addVertex(vertex);
+                }
+            }
+        }
+    }
+
+    private void addCrossing(float v1, float v2, float[] crossings, int edge)
+    {
+        if (crosses(v1, v2))
+        {
+            int offset = 6 * edge;
+            int count = cellPoints.size();
+            cellPoints.add(pointPool[count].set(crossings[offset], crossings[offset + 1], crossings[offset + 2]));
+            cellNormals.add(normalPool[count].set(crossings[offset + 3], crossings[offset + 4], crossings[offset + 5]));
+        }
+    }
+
+    private int addVertex(Vector3f vertex)
+    {
+        if (3 * vertexCount == positions.length)
+        {
+            positions = Arrays.copyOf(positions, 2 * positions.length);
+            normals = Arrays.copyOf(normals, 2 * normals.length);
+        }
+        Vector3f normal = HullField.getNormalAt(vertex, shapes);
+        metrics.countFieldEvaluations(1);
+        positions[3 * vertexCount] = vertex.x;
+        positions[3 * vertexCount + 1] = vertex.y;
+        positions[3 * vertexCount + 2] = vertex.z;
+        normals[3 * vertexCount] = normal.x;
+        normals[3 * vertexCount + 1] = normal.y;
+        normals[3 * vertexCount + 2] = normal.z;
+        return vertexCount++;
+    }
+
+    /**
+     * Adds the quads around the inner Z edges of a slab.
+     */
+    private void addSlabQuads(float[] lowPlane, float[] highPlane, int[] cells)
+    {
+        int m = n + 1;
+        for (int j = 1; j < n; j++)
+        {
+            for (int i = 1; i < n; i++)
+            {
+                float v1 = lowPlane[j * m + i];
+                if (hasQuad(v1, highPlane[j * m + i]))
+                {
+                    addQuad(cells[(j - 1) * n + i - 1], cells[(j - 1) * n + i], cells[j * n + i - 1], cells[j * n + i], v1 < 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the quads around the inner X and Y edges of a plane, between the
+     * slabs below and above it.
+     */
+    private void addPlaneQuads(float[] plane, int[] lowCells, int[] highCells)
+    {
+        int m = n + 1;
+        for (int j = 0; j < m; j++)
+        {
+            for (int i = 0; i < m; i++)
+            {
+                float v1 = plane[j * m + i];
+                // X edges.
+                if (i < n && j > 0 && j < n && hasQuad(v1, plane[j * m + i + 1]))
+                {
+                    addQuad(lowCells[(j - 1) * n + i], lowCells[j * n + i], highCells[(j - 1) * n + i], highCells[j * n + i], v1 < 0);
+                }
+                // Y edges, whose orientation is flipped.
+                if (j < n && i > 0 && i < n && hasQuad(v1, plane[(j + 1) * m + i]))
+                {
+                    addQuad(lowCells[j * n + i - 1], lowCells[j * n + i], highCells[j * n + i - 1], highCells[j * n + i], v1 > 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true iff the edge gets a quad: the sign test of the octree's
+     * edgeProc.
+     */
+    private static boolean hasQuad(float v1, float v2)
+    {
+        return v1 < 0 && v2 >= 0 || v1 > 0 && v2 <= 0;
+    }
+
+    /**
+     * Adds the quad of the four cells around an edge, ordered as in edgeProc,
+     * if they all have a vertex.
+     */
+    private void addQuad(int i0, int i1, int i2, int i3, boolean inward)
+    {
+        if (i0 == -1 || i1 == -1 || i2 == -1 || i3 == -1)
+        {
+            return;
+        }
+        if (indexCount + 6 > indices.length)
+        {
+            indices = Arrays.copyOf(indices, 2 * indices.length);
+        }
+        if (inward)
+        {
+            addTriangle(i0, i1, i2);
+            addTriangle(i2, i1, i3);
+        } else
+        {
+            addTriangle(i2, i1, i0);
+            addTriangle(i3, i1, i2);
+        }
+    }
+
+    private void addTriangle(int i0, int i1, int i2)
+    {
+        indices[indexCount++] = i0;
+        indices[indexCount++] = i1;
+        indices[indexCount++] = i2;
+    }
+
+    /**
+     * @param surfaceNets true to mesh as surface nets, for previews.
+     */
+    public void setSurfaceNets(boolean surfaceNets)
+    {
+        this.surfaceNets = surfaceNets;
+    }
+
+    /**
+     * Sets a time past which the sweep stops between two slabs, leaving the
+     * band abandoned.
+     *
+     * @param deadline a System.nanoTime value.
+     */
+    public void setDeadline(long deadline)
+    {
+        this.deadline = deadline;
+        this.hasDeadline = true;
+    }
+
+    /**
+     * @return true iff the sweep stopped at the deadline, with its output
+     * incomplete.
+     */
+    public boolean isAbandoned()
+    {
+        return abandoned;
+    }
+
+    /**
+     * Shifts the band's vertex indices, once its place in the whole mesh is
+     * known.
+     */
+    public void offsetIndices(int offset)
+    {
+        for (int i = 0; i < indexCount; i++)
+        {
+            indices[i] += offset;
+        }
+        for (int[] cells : new int[][]
+        {
+            firstCells, lastCells
+        })
+        {
+            for (int i = 0; i < cells.length; i++)
+            {
+                if (cells[i] != -1)
+                {
+                    cells[i] += offset;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the quads across the band's bottom plane, given the band below.
+     * Both bands' indices must have been offset.
+     */
+    public void stitch(SlabContouringTask below)
+    {
+        addPlaneQuads(firstPlane, below.lastCells, firstCells);
+    }
+
+    /**
+     * @return the vertex positions, 3 floats per vertex, in an array that may
+     * be longer.
+     */
+    public float[] getPositions()
+    {
+        return positions;
+    }
+
+    public float[] getNormals()
+    {
+        return normals;
+    }
+
+    public int getVertexCount()
+    {
+        return vertexCount;
+    }
+
+    /**
+     * @return the triangles, 3 indices each, in an array that may be longer.
+     */
+    public int[] getIndices()
+    {
+        return indices;
+    }
+
+    public int getIndexCount()
+    {
+        return indexCount;
+    }
+}